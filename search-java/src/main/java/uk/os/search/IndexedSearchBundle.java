@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search;
+
+/**
+ * The search bundle for one search term of a batch, tagged with the position of the term in the batch.
+ *
+ * @see SearchManager#queryAll(rx.Observable, int)
+ */
+public class IndexedSearchBundle {
+
+    private final long mIndex;
+    private final String mSearchTerm;
+    private final SearchBundle mSearchBundle;
+
+    public IndexedSearchBundle(long index, String searchTerm, SearchBundle searchBundle) {
+        mIndex = index;
+        mSearchTerm = searchTerm;
+        mSearchBundle = searchBundle;
+    }
+
+    /**
+     * @return the position of the search term in the batch, from zero
+     */
+    public long getIndex() {
+        return mIndex;
+    }
+
+    public String getSearchTerm() {
+        return mSearchTerm;
+    }
+
+    public SearchBundle getSearchBundle() {
+        return mSearchBundle;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * When each stage of one query started and ended, to see why a particular search was slow.
+ *
+ * Times are {@link System#nanoTime()} values, or {@link #NOT_RECORDED} for a stage that has not run, e.g. a provider
+ * not queried for the type of search term or, in a bundle from {@link SearchManager#queryProgressive(String)}, one
+ * that had not completed when the bundle was made.  Each bundle holds its own copy, so the trace of an earlier
+ * progressive bundle does not change as later providers complete.  Recording writes to slots allocated with the
+ * trace, so it is cheap enough to leave on; only {@link #toString()} builds text.
+ */
+public final class QueryTrace {
+
+    public static final long NOT_RECORDED = 0;
+
+    /**
+     * The stages of a query besides querying the providers.
+     */
+    public enum Phase {
+        /** {@link uk.os.search.android.providers.recents.RecentsManager#query(String)} */
+        RECENTS_QUERY,
+        /** removing results of different providers for the same place */
+        DEDUPLICATE,
+        /** {@link uk.os.search.android.providers.recents.RecentsManager#queryById(String...)} */
+        RECENTS_QUERY_BY_ID,
+        /** removing recents from the providers' results */
+        REMOVE_RECENTS,
+        /** merging the recents matched by search term and by id */
+        MERGE_RECENTS
+    }
+
+    private static final int PHASES = Phase.values().length;
+    private static final int END = 0;
+    private static final int FIRST_PHASE = 1;
+    private static final int FIRST_PROVIDER = FIRST_PHASE + 2 * PHASES;
+
+    private final String[] mSources;
+    private final long mStartNanos;
+    private final AtomicLongArray mNanos;
+
+    /**
+     * @param sources the names of the providers, in the order they are queried; not copied
+     * @param startNanos when the query started
+     */
+    QueryTrace(String[] sources, long startNanos) {
+        mSources = sources;
+        mStartNanos = startNanos;
+        mNanos = new AtomicLongArray(FIRST_PROVIDER + 2 * sources.length);
+    }
+
+    private QueryTrace(QueryTrace trace) {
+        mSources = trace.mSources;
+        mStartNanos = trace.mStartNanos;
+        mNanos = new AtomicLongArray(trace.mNanos.length());
+        for (int i = 0; i < mNanos.length(); i++) {
+            mNanos.set(i, trace.mNanos.get(i));
+        }
+    }
+
+    /**
+     * @return when the query started
+     */
+    public long getStartNanos() {
+        return mStartNanos;
+    }
+
+    /**
+     * @return when the query's search bundle was made
+     */
+    public long getEndNanos() {
+        return mNanos.get(END);
+    }
+
+    /**
+     * @return when the phase started
+     */
+    public long getStartNanos(Phase phase) {
+        return mNanos.get(FIRST_PHASE + 2 * phase.ordinal());
+    }
+
+    /**
+     * @return when the phase ended
+     */
+    public long getEndNanos(Phase phase) {
+        return mNanos.get(FIRST_PHASE + 2 * phase.ordinal() + 1);
+    }
+
+    /**
+     * @return the number of providers queried
+     */
+    public int getProviderCount() {
+        return mSources.length;
+    }
+
+    /**
+     * @param provider the index of a provider, from 0 to {@link #getProviderCount()}
+     * @return the name of the provider, as in its {@link uk.os.search.android.providers.ProviderResponse}
+     */
+    public String getProviderSource(int provider) {
+        return mSources[provider];
+    }
+
+    /**
+     * @return when the provider was queried
+     */
+    public long getProviderStartNanos(int provider) {
+        return mNanos.get(FIRST_PROVIDER + 2 * provider);
+    }
+
+    /**
+     * @return when the provider responded, failed or timed out
+     */
+    public long getProviderEndNanos(int provider) {
+        return mNanos.get(FIRST_PROVIDER + 2 * provider + 1);
+    }
+
+    long startPhase(Phase phase) {
+        return record(FIRST_PHASE + 2 * phase.ordinal());
+    }
+
+    long endPhase(Phase phase) {
+        return record(FIRST_PHASE + 2 * phase.ordinal() + 1);
+    }
+
+    long startProvider(int provider) {
+        return record(FIRST_PROVIDER + 2 * provider);
+    }
+
+    long endProvider(int provider) {
+        return record(FIRST_PROVIDER + 2 * provider + 1);
+    }
+
+    void end() {
+        record(END);
+    }
+
+    /**
+     * @return a copy of the times recorded so far, which later recording does not change
+     */
+    QueryTrace snapshot() {
+        return new QueryTrace(this);
+    }
+
+    private long record(int slot) {
+        long now = System.nanoTime();
+        mNanos.set(slot, now);
+        return now;
+    }
+
+    /**
+     * @return each stage that ran, as milliseconds from the start of the query, e.g.
+     * {@code "12.31 ms: OpennamesProvider 0.02-12.05 ms, RECENTS_QUERY 0.01-0.40 ms"}
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(millis(getEndNanos())).append(" ms:");
+        String separator = " ";
+        for (int i = 0; i < mSources.length; i++) {
+            if (append(sb, separator, mSources[i], getProviderStartNanos(i), getProviderEndNanos(i))) {
+                separator = ", ";
+            }
+        }
+        for (Phase phase : Phase.values()) {
+            if (append(sb, separator, phase.name(), getStartNanos(phase), getEndNanos(phase))) {
+                separator = ", ";
+            }
+        }
+        return sb.toString();
+    }
+
+    private boolean append(StringBuilder sb, String separator, String name, long startNanos, long endNanos) {
+        if (startNanos == NOT_RECORDED) {
+            return false;
+        }
+        sb.append(separator).append(name).append(' ').append(millis(startNanos)).append('-').append(millis(endNanos))
+                .append(" ms");
+        return true;
+    }
+
+    private String millis(long nanos) {
+        if (nanos == NOT_RECORDED) {
+            return "?";
+        }
+        return String.format(Locale.ENGLISH, "%.2f", (nanos - mStartNanos) / 1e6);
+    }
+}
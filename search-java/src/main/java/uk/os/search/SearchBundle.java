@@ -20,15 +20,32 @@ import java.util.ArrayList;
 import java.util.List;
 
 import uk.os.search.android.providers.ProviderResponse;
+import uk.os.search.ranking.Ranking;
 
 public class SearchBundle {
 
     private final ProviderResponse mRecents;
     private final List<ProviderResponse> mRemaining;
+    private final QueryTrace mTrace;
+    private final Ranking mRanking;
 
     public SearchBundle(ProviderResponse recents, List<ProviderResponse> remaining) {
+        this(recents, remaining, null);
+    }
+
+    public SearchBundle(ProviderResponse recents, List<ProviderResponse> remaining, QueryTrace trace) {
+        this(recents, remaining, trace, null);
+    }
+
+    /**
+     * @param ranking ranks the results for {@link #getRanked(int)}, or null to keep them in provider order
+     */
+    public SearchBundle(ProviderResponse recents, List<ProviderResponse> remaining, QueryTrace trace,
+                        Ranking ranking) {
         mRecents = recents;
         mRemaining = remaining;
+        mTrace = trace;
+        mRanking = ranking;
     }
 
     public List<Throwable> getErrors() {
@@ -49,13 +66,48 @@ public class SearchBundle {
     }
 
     public List<SearchResult> getRemaining() {
-        List<SearchResult> response = new ArrayList<>();
+        int size = 0;
+        for (ProviderResponse providerResponse : mRemaining) {
+            size += providerResponse.getSearchResults().size();
+        }
+        List<SearchResult> response = new ArrayList<>(size);
         for (ProviderResponse providerResponse : mRemaining) {
             response.addAll(providerResponse.getSearchResults());
         }
         return response;
     }
 
+    /**
+     * Merge the recents and the remaining results into the best {@code k}, e.g. the rows a search box shows, without
+     * sorting or copying every result.
+     *
+     * @param k the most results to return
+     * @return the best {@code k} results, best first, as scored by the search manager's
+     * {@link uk.os.search.ranking.Scorer}; or, for a bundle not made by a search manager, the first {@code k} recents
+     * and then remaining results
+     */
+    public List<SearchResult> getRanked(int k) {
+        if (mRanking != null) {
+            return mRanking.top(k, mRecents, mRemaining);
+        }
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least one");
+        }
+        List<SearchResult> first = new ArrayList<>(Math.min(k, 16));
+        addFirst(first, k, mRecents.getSearchResults());
+        for (ProviderResponse providerResponse : mRemaining) {
+            addFirst(first, k, providerResponse.getSearchResults());
+        }
+        return first;
+    }
+
+    /**
+     * @return when each stage of the query that made this bundle started and ended, or null if it was not traced
+     */
+    public QueryTrace getTrace() {
+        return mTrace;
+    }
+
     protected ProviderResponse getRecentsResponse() {
         return mRecents;
     }
@@ -63,4 +115,11 @@ public class SearchBundle {
     protected List<ProviderResponse> getRemainingResponses() {
         return mRemaining;
     }
+
+    private static void addFirst(List<SearchResult> first, int k, List<SearchResult> searchResults) {
+        int count = Math.min(k - first.size(), searchResults.size());
+        if (count > 0) {
+            first.addAll(searchResults.subList(0, count));
+        }
+    }
 }
@@ -22,25 +22,66 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.functions.Func2;
 import rx.functions.FuncN;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import uk.os.search.android.providers.LocalProvider;
 import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.ProviderDecorator;
 import uk.os.search.android.providers.ProviderResponse;
+import uk.os.search.android.providers.QueryClassifier;
+import uk.os.search.android.providers.QueryClassifierImpl;
+import uk.os.search.android.providers.QueryType;
+import uk.os.search.android.providers.TypedProvider;
 import uk.os.search.android.providers.addresses.AddressesProvider;
 import uk.os.search.android.providers.bng.GridReferenceProvider;
+import uk.os.search.android.providers.cache.CachingProvider;
+import uk.os.search.android.providers.circuitbreaker.CircuitBreakerProvider;
+import uk.os.search.android.providers.coalescing.CoalescingProvider;
 import uk.os.search.android.providers.latlon.LatLonProvider;
 import uk.os.search.android.providers.opennames.OpennamesProvider;
+import uk.os.search.android.providers.opennames.service.SearchApi;
 import uk.os.search.android.providers.recents.RecentUtils;
 import uk.os.search.android.providers.recents.RecentsManager;
+import uk.os.search.dedup.SpatialDeduplicator;
+import uk.os.search.metrics.SearchMetrics;
+import uk.os.search.ranking.DefaultScorer;
+import uk.os.search.ranking.Ranking;
+import uk.os.search.ranking.Scorer;
+import uk.os.search.util.SearchSchedulers;
 
 public class SearchManager {
 
     public static final class Builder {
         List<Provider> providers = new ArrayList<>();
         RecentsManager recentsManager;
+        long providerTimeoutNanos = NO_TIMEOUT;
+        long queryTimeoutNanos = NO_TIMEOUT;
+        int cacheMaxEntries;
+        long cacheTimeToLive;
+        TimeUnit cacheTimeToLiveUnit;
+        boolean refineCachedPrefixes;
+        double circuitFailureRate;
+        long circuitOpenDuration;
+        TimeUnit circuitOpenDurationUnit;
+        int maxRetries;
+        boolean coalesceQueries;
+        double deduplicationTolerance;
+        Scheduler scheduler = SearchSchedulers.getDefault();
+        QueryClassifier queryClassifier = new QueryClassifierImpl();
+        SearchMetrics metrics = SearchMetrics.NONE;
+        Scorer scorer = new DefaultScorer.Builder().build();
 
         public Builder() {
             providers.addAll(Arrays.asList(getDefaultProviders()));
@@ -76,20 +117,284 @@ public class SearchManager {
             return this;
         }
 
+        /**
+         * A provider that has not answered within this time is abandoned and reported as a {@link ProviderResponse}
+         * holding a {@link java.util.concurrent.TimeoutException}; the remaining responses are still returned.
+         *
+         * @param timeout the maximum time to wait for each provider, or zero for no limit (the default)
+         * @param unit the unit of the timeout
+         * @return this builder for fluent construction
+         */
+        public Builder setProviderTimeout(long timeout, TimeUnit unit) {
+            this.providerTimeoutNanos = toNanos(timeout, unit);
+            return this;
+        }
+
+        /**
+         * The overall latency budget of a query, covering the providers and the recents lookups.  Any stage still
+         * outstanding when the budget is spent is reported as a {@link java.util.concurrent.TimeoutException} and
+         * the search bundle is emitted with everything else.
+         *
+         * @param timeout the maximum time for a query, or zero for no limit (the default)
+         * @param unit the unit of the timeout
+         * @return this builder for fluent construction
+         */
+        public Builder setQueryTimeout(long timeout, TimeUnit unit) {
+            this.queryTimeoutNanos = toNanos(timeout, unit);
+            return this;
+        }
+
+        /**
+         * Cache the results of the OS Open Names and OS Places providers so that repeated searches do not go back
+         * to the network.
+         *
+         * @param maxEntries the maximum number of search terms cached per provider
+         * @param timeToLive how long results remain valid after being fetched
+         * @param unit the unit of the time to live
+         * @return this builder for fluent construction
+         * @see CachingProvider
+         */
+        public Builder cacheResults(int maxEntries, long timeToLive, TimeUnit unit) {
+            this.cacheMaxEntries = maxEntries;
+            this.cacheTimeToLive = timeToLive;
+            this.cacheTimeToLiveUnit = unit;
+            return this;
+        }
+
+        /**
+         * Answer a search term that extends a cached one, as happens when typing, by filtering the cached results
+         * locally rather than querying OS Open Names or OS Places again.  Only applies when results are cached.
+         *
+         * @return this builder for fluent construction
+         * @see #cacheResults(int, long, TimeUnit)
+         * @see CachingProvider.Builder#refinePrefixes(int)
+         */
+        public Builder refineCachedPrefixes() {
+            this.refineCachedPrefixes = true;
+            return this;
+        }
+
+        /**
+         * Share one request to OS Open Names or OS Places between identical searches made while it is in flight,
+         * e.g. many users searching for the same popular term at once.
+         *
+         * @return this builder for fluent construction
+         * @see CoalescingProvider
+         */
+        public Builder coalesceQueries() {
+            this.coalesceQueries = true;
+            return this;
+        }
+
+        /**
+         * Stop querying OS Open Names or OS Places for a while when most recent queries to it have failed or timed
+         * out, so that searches report it at once as failing with a
+         * {@link uk.os.search.android.providers.circuitbreaker.CircuitOpenException} rather than waiting on it.
+         *
+         * @param failureRateThreshold the share of recent queries, from 0 to 1, that must fail to open the circuit
+         * @param openDuration how long the provider is skipped before trying it again
+         * @param unit the unit of the open duration
+         * @return this builder for fluent construction
+         * @see CircuitBreakerProvider
+         */
+        public Builder useCircuitBreakers(double failureRateThreshold, long openDuration, TimeUnit unit) {
+            this.circuitFailureRate = failureRateThreshold;
+            this.circuitOpenDuration = openDuration;
+            this.circuitOpenDurationUnit = unit;
+            return this;
+        }
+
+        /**
+         * Retry failed queries to OS Open Names or OS Places after a jittered, exponential backoff, within a budget
+         * of one retry per ten queries.  Only applies with {@link #useCircuitBreakers(double, long, TimeUnit)}.
+         *
+         * @param maxRetries the maximum number of retries of each query
+         * @return this builder for fluent construction
+         * @see CircuitBreakerProvider.Builder#setRetries(int, long, long, TimeUnit)
+         */
+        public Builder retryFailedQueries(int maxRetries) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("max retries must not be negative");
+            }
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Remove results that an earlier provider has already given for the same place under a different id, e.g.
+         * a place found by both OS Open Names and OS Places: results with the same name, ignoring case, spacing and
+         * punctuation, whose points are within the tolerance of each other.
+         *
+         * @param toleranceMetres how far apart two results with the same name may be and still be the same place
+         * @return this builder for fluent construction
+         * @see SpatialDeduplicator
+         */
+        public Builder setSpatialDeduplication(double toleranceMetres) {
+            if (!(toleranceMetres > 0)) {
+                throw new IllegalArgumentException("tolerance must be positive");
+            }
+            this.deduplicationTolerance = toleranceMetres;
+            return this;
+        }
+
+        /**
+         * Providers are queried in parallel on this scheduler, apart from a {@link LocalProvider}, which answers on
+         * the subscribing thread.  The default is a shared, bounded pool; see {@link SearchSchedulers#getDefault()}.
+         * A provider's timeout starts when it runs, while the query timeout also covers any wait for a thread.
+         *
+         * @param scheduler the scheduler each provider's query is subscribed on
+         * @return this builder for fluent construction
+         */
+        public Builder setScheduler(Scheduler scheduler) {
+            if (scheduler == null) {
+                throw new IllegalArgumentException("scheduler is null");
+            }
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Query providers on an executor, e.g. an application's own pool or, on Java 21,
+         * {@code Executors.newVirtualThreadPerTaskExecutor()}.
+         *
+         * @param executor the executor each provider's query runs on
+         * @return this builder for fluent construction
+         * @see #setScheduler(Scheduler)
+         */
+        public Builder setExecutor(Executor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("executor is null");
+            }
+            return setScheduler(Schedulers.from(executor));
+        }
+
+        /**
+         * Each search term is classified before the providers are queried, and a {@link TypedProvider} is only
+         * queried for the types of search term it can answer, e.g. OS Open Names is not queried for a grid
+         * reference.  The default is {@link QueryClassifierImpl}.
+         *
+         * @param queryClassifier decides the types of each search term
+         * @return this builder for fluent construction
+         */
+        public Builder setQueryClassifier(QueryClassifier queryClassifier) {
+            if (queryClassifier == null) {
+                throw new IllegalArgumentException("query classifier is null");
+            }
+            this.queryClassifier = queryClassifier;
+            return this;
+        }
+
+        /**
+         * Tell metrics how long each provider takes to answer each query, how many results it gives, any error, and
+         * what caching, coalescing and circuit breaking did with the query, e.g. a {@link
+         * uk.os.search.metrics.HistogramSearchMetrics} to export.  The default is {@link SearchMetrics#NONE}.
+         *
+         * @param metrics told of each provider's response
+         * @return this builder for fluent construction
+         */
+        public Builder setMetrics(SearchMetrics metrics) {
+            if (metrics == null) {
+                throw new IllegalArgumentException("metrics is null");
+            }
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Score each result of a query, so that {@link SearchBundle#getRanked(int)} can merge the recents and every
+         * provider's results into the best few.  The default is {@link DefaultScorer}.
+         *
+         * @param scorer scores each result
+         * @return this builder for fluent construction
+         */
+        public Builder setScorer(Scorer scorer) {
+            if (scorer == null) {
+                throw new IllegalArgumentException("scorer is null");
+            }
+            this.scorer = scorer;
+            return this;
+        }
+
         public SearchManager build() {
             return new SearchManager(this);
         }
 
+        private List<Provider> decorate(List<Provider> providers) {
+            List<Provider> result = new ArrayList<>(providers.size());
+            for (Provider provider : providers) {
+                result.add(isRemote(provider) ? decorate(provider) : provider);
+            }
+            return result;
+        }
+
+        private Provider decorate(Provider provider) {
+            Provider result = provider;
+            if (circuitOpenDurationUnit != null) {
+                CircuitBreakerProvider.Builder circuitBreaker = new CircuitBreakerProvider.Builder(result)
+                        .setFailureRateThreshold(circuitFailureRate)
+                        .setOpenDuration(circuitOpenDuration, circuitOpenDurationUnit)
+                        .setMetrics(metrics);
+                if (maxRetries > 0) {
+                    circuitBreaker.setRetries(maxRetries, 100, 2000, TimeUnit.MILLISECONDS);
+                }
+                result = circuitBreaker.build();
+            }
+            if (coalesceQueries) {
+                result = new CoalescingProvider.Builder(result).setMetrics(metrics).build();
+            }
+            if (cacheTimeToLiveUnit != null) {
+                CachingProvider.Builder cache = new CachingProvider.Builder(result)
+                        .setMaxEntries(cacheMaxEntries)
+                        .setTimeToLive(cacheTimeToLive, cacheTimeToLiveUnit)
+                        .setMetrics(metrics);
+                if (refineCachedPrefixes) {
+                    cache.refinePrefixes(maxResultsOf(provider));
+                }
+                result = cache.build();
+            }
+            return result;
+        }
+
+        private static int maxResultsOf(Provider provider) {
+            return provider instanceof OpennamesProvider ? SearchApi.MAX_RESULTS : AddressesProvider.MAX_RESULTS;
+        }
+
+        private static boolean isRemote(Provider provider) {
+            return provider instanceof OpennamesProvider || provider instanceof AddressesProvider;
+        }
+
         private static Provider[] getDefaultProviders() {
             List<Provider> providers = new ArrayList<>();
             providers.add(new GridReferenceProvider());
             providers.add(new LatLonProvider());
             return providers.toArray(new Provider[providers.size()]);
         }
+
+        private static long toNanos(long timeout, TimeUnit unit) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("timeout must not be negative");
+            }
+            return unit.toNanos(timeout);
+        }
     }
 
+    private static final long NO_TIMEOUT = 0;
+
+    /**
+     * how many times {@code maxConcurrent} an ordered batch may run ahead of the earliest term not yet emitted
+     */
+    static final int ORDERED_WINDOW = 4;
+
     private final RecentsManager mRecentsManager;
     private final List<Provider> mProviders = new ArrayList<>();
+    private final long mProviderTimeoutNanos;
+    private final long mQueryTimeoutNanos;
+    private final Scheduler mScheduler;
+    private final QueryClassifier mQueryClassifier;
+    private final SearchMetrics mMetrics;
+    private final Scorer mScorer;
+    private final SpatialDeduplicator mDeduplicator;
+    private final String[] mSources;
 
     public SearchManager() {
         this(new Builder());
@@ -97,127 +402,476 @@ public class SearchManager {
 
     private SearchManager(Builder builder) {
         mRecentsManager = builder.recentsManager;
-        mProviders.addAll(builder.providers);
+        mProviders.addAll(builder.decorate(builder.providers));
+        mProviderTimeoutNanos = builder.providerTimeoutNanos;
+        mQueryTimeoutNanos = builder.queryTimeoutNanos;
+        mScheduler = builder.scheduler;
+        mQueryClassifier = builder.queryClassifier;
+        mMetrics = builder.metrics;
+        mScorer = builder.scorer;
+        mDeduplicator = builder.deduplicationTolerance > 0
+                ? new SpatialDeduplicator(builder.deduplicationTolerance) : null;
+        mSources = new String[mProviders.size()];
+        for (int i = 0; i < mSources.length; i++) {
+            mSources[i] = sourceOf(mProviders.get(i));
+        }
     }
 
     public final Observable<SearchBundle> query(final String searchTerm) {
+        return Observable.defer(new Func0<Observable<SearchBundle>>() {
+            @Override
+            public Observable<SearchBundle> call() {
+                final long startNanos = System.nanoTime();
+                final QueryTrace trace = new QueryTrace(mSources, startNanos);
+                final Ranking ranking = new Ranking(mScorer, searchTerm, mSources);
+                Set<QueryType> queryTypes = mQueryClassifier.classify(searchTerm);
 
-        List<Observable<ProviderResponse>> streams = new ArrayList<>();
+                List<Observable<ProviderResponse>> streams = new ArrayList<>();
 
-        for (final Provider p : mProviders) {
-            Observable<ProviderResponse> stream = p.query(searchTerm).map(new Func1<List<SearchResult>, ProviderResponse>() {
-                @Override
-                public ProviderResponse call(List<SearchResult> searchResults) {
-                    return new ProviderResponse(p.getClass().getSimpleName(), searchResults);
+                for (int i = 0; i < mProviders.size(); i++) {
+                    streams.add(queryProvider(mProviders.get(i), i, searchTerm, queryTypes, startNanos, trace));
                 }
-            }).onErrorReturn(new Func1<Throwable, ProviderResponse>() {
-                @Override
-                public ProviderResponse call(Throwable throwable) {
-                    return new ProviderResponse(p.getClass().getSimpleName(),
-                            throwable);
+
+                Observable<List<ProviderResponse>> zipped = Observable.zip(streams,
+                        new FuncN<List<ProviderResponse>>() {
+                    @Override
+                    public List<ProviderResponse> call(Object... args) {
+                        List<ProviderResponse> list = new ArrayList<>();
+                        for (Object o : args) {
+                            list.add((ProviderResponse)o);
+                        }
+                        return list;
+                    }
+                });
+                Observable<List<ProviderResponse>> allResults = deduplicate(zipped, trace);
+
+                boolean hasRecents = mRecentsManager != null;
+                if (!hasRecents) {
+                    return allResults.map(withoutRecents(trace, ranking));
+                } else {
+                    return allResults.flatMap(queryRecentsById(startNanos, trace), removeRecents(trace))
+                            .zipWith(queryRecents(searchTerm, startNanos, trace), mergeRecents(trace, ranking));
                 }
-            });
-            streams.add(stream);
-        }
+            }
+        });
+    }
 
-        Observable<List<ProviderResponse>> allResults = Observable.zip(streams, new FuncN<List<ProviderResponse>>() {
+    /**
+     * Query every provider and emit a {@link SearchBundle} each time a provider completes, rather than waiting for
+     * the slowest provider as {@link #query(String)} does.  Each bundle holds the responses received so far, in
+     * provider order, with recents de-duplication re-applied to that snapshot.  The last bundle emitted is equivalent
+     * to the single bundle emitted by {@link #query(String)}.
+     *
+     * @param searchTerm a user supplied description of a location
+     * @return an observable emitting one search bundle per completed provider
+     */
+    public final Observable<SearchBundle> queryProgressive(final String searchTerm) {
+        return Observable.defer(new Func0<Observable<SearchBundle>>() {
             @Override
-            public List<ProviderResponse> call(Object... args) {
-                List<ProviderResponse> list = new ArrayList<>();
-                for (Object o : args) {
-                    list.add((ProviderResponse)o);
+            public Observable<SearchBundle> call() {
+                final long startNanos = System.nanoTime();
+                final QueryTrace trace = new QueryTrace(mSources, startNanos);
+                final Ranking ranking = new Ranking(mScorer, searchTerm, mSources);
+                Set<QueryType> queryTypes = mQueryClassifier.classify(searchTerm);
+
+                List<Observable<ProviderResponse>> streams = new ArrayList<>();
+                for (int i = 0; i < mProviders.size(); i++) {
+                    streams.add(queryProvider(mProviders.get(i), i, searchTerm, queryTypes, startNanos, trace));
+                }
+                Observable<List<ProviderResponse>> snapshots = deduplicate(snapshots(streams), trace);
+
+                boolean hasRecents = mRecentsManager != null;
+                if (!hasRecents) {
+                    return snapshots.map(withoutRecents(trace, ranking));
                 }
-                return list;
+
+                // the local recents match does not depend on the providers so is only queried once
+                final Observable<ProviderResponse> localMatches = queryRecents(searchTerm, startNanos, trace).cache();
+                return snapshots.concatMap(new Func1<List<ProviderResponse>, Observable<SearchBundle>>() {
+                    @Override
+                    public Observable<SearchBundle> call(List<ProviderResponse> providerResponses) {
+                        return Observable.just(providerResponses)
+                                .flatMap(queryRecentsById(startNanos, trace), removeRecents(trace))
+                                .zipWith(localMatches, mergeRecents(trace, ranking));
+                    }
+                });
             }
         });
+    }
 
-        boolean hasRecents = mRecentsManager != null;
-        if (!hasRecents) {
-            return allResults.map(new Func1<List<ProviderResponse>, SearchBundle>() {
-                @Override
-                public SearchBundle call(List<ProviderResponse> providerResponses) {
-                    ProviderResponse recents = new ProviderResponse(Void.class.getName(),
-                            new ArrayList<SearchResult>());
-                    return new SearchBundle(recents, providerResponses);
-                }
-            });
-        } else {
-            return allResults.flatMap(new Func1<List<ProviderResponse>,
-                    Observable<ProviderResponse>>() {
-                @Override
-                public Observable<ProviderResponse> call(List<ProviderResponse> providerResponses) {
-                    // check search resultset for even more recents (not found by recents matcher)
-                    List<String> idsToCheck = new ArrayList<>();
-                    for (ProviderResponse providerResponse : providerResponses) {
-                        List<SearchResult> searchResults = providerResponse.getSearchResults();
-                        for (SearchResult result : searchResults) {
-                            String key = result.getId();
-                            idsToCheck.add(key);
-                        }
+    /**
+     * Query a batch of search terms, e.g. to geocode a file, with up to {@code maxConcurrent} terms in flight at
+     * once.  Terms are only taken from {@code searchTerms} as earlier ones complete, so a large batch is not read
+     * ahead.  Each search bundle is emitted as soon as its term completes, which may not be the order of the terms;
+     * use {@link IndexedSearchBundle#getIndex()} to match it to its term, or {@link #queryAllOrdered(Observable, int)}.
+     *
+     * @param searchTerms the batch of search terms
+     * @param maxConcurrent the maximum number of search terms queried at once
+     * @return an observable emitting one search bundle per search term
+     */
+    public final Observable<IndexedSearchBundle> queryAll(final Observable<String> searchTerms,
+                                                          final int maxConcurrent) {
+        if (searchTerms == null) {
+            throw new IllegalArgumentException("search terms is null");
+        }
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("max concurrent must be at least one");
+        }
+        return Observable.defer(new Func0<Observable<IndexedSearchBundle>>() {
+            @Override
+            public Observable<IndexedSearchBundle> call() {
+                final long[] next = {0};
+                return searchTerms.flatMap(new Func1<String, Observable<IndexedSearchBundle>>() {
+                    @Override
+                    public Observable<IndexedSearchBundle> call(final String searchTerm) {
+                        final long index = next[0]++;
+                        return query(searchTerm).map(new Func1<SearchBundle, IndexedSearchBundle>() {
+                            @Override
+                            public IndexedSearchBundle call(SearchBundle searchBundle) {
+                                return new IndexedSearchBundle(index, searchTerm, searchBundle);
+                            }
+                        });
                     }
+                }, maxConcurrent);
+            }
+        });
+    }
 
-                    final String sourceRecents = RecentsManager.class.getSimpleName();
-                    boolean hasIdsToCheck = idsToCheck.size() > 0;
-                    if (!hasIdsToCheck) {
-                        List<SearchResult> empty = Collections.emptyList();
-                        ProviderResponse emptyProviderResponse = new ProviderResponse(sourceRecents,
-                                empty);
-                        return Observable.just(emptyProviderResponse);
-                    } else {
-                        String[] ids = idsToCheck.toArray(new String[idsToCheck.size()]);
-                        return mRecentsManager.queryById(ids).map(new Func1<List<SearchResult>, ProviderResponse>() {
+    /**
+     * As {@link #queryAll(Observable, int)}, but search bundles are emitted in the order of their search terms.  A
+     * bundle that completes before an earlier one is held until the earlier one is emitted, so one slow term delays
+     * the rest of the output; {@link Builder#setQueryTimeout(long, TimeUnit)} bounds the delay.  No term is queried
+     * until the term four times {@code maxConcurrent} places before it has been emitted, so the
+     * bundles held behind a slow term are bounded rather than growing with the batch.
+     *
+     * @param searchTerms the batch of search terms
+     * @param maxConcurrent the maximum number of search terms queried at once
+     * @return an observable emitting one search bundle per search term, in the order of the search terms
+     */
+    public final Observable<IndexedSearchBundle> queryAllOrdered(final Observable<String> searchTerms,
+                                                                 final int maxConcurrent) {
+        if (searchTerms == null) {
+            throw new IllegalArgumentException("search terms is null");
+        }
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("max concurrent must be at least one");
+        }
+        return Observable.defer(new Func0<Observable<IndexedSearchBundle>>() {
+            @Override
+            public Observable<IndexedSearchBundle> call() {
+                final Map<Long, IndexedSearchBundle> held = new HashMap<>();
+                final long[] next = {0};
+                // one permit per term that may be queried: a window to start with, then one per bundle emitted
+                final PublishSubject<Integer> emitted = PublishSubject.create();
+                Observable<Integer> permits = Observable.range(0, ORDERED_WINDOW * maxConcurrent)
+                        .concatWith(emitted)
+                        .onBackpressureBuffer();
+                Observable<String> gated = searchTerms.zipWith(permits, new Func2<String, Integer, String>() {
+                    @Override
+                    public String call(String searchTerm, Integer permit) {
+                        return searchTerm;
+                    }
+                });
+                return queryAll(gated, maxConcurrent).concatMap(
+                        new Func1<IndexedSearchBundle, Observable<IndexedSearchBundle>>() {
                             @Override
-                            public ProviderResponse call(List<SearchResult> searchResults) {
-                                return new ProviderResponse(sourceRecents, searchResults);
+                            public Observable<IndexedSearchBundle> call(IndexedSearchBundle completed) {
+                                held.put(completed.getIndex(), completed);
+                                List<IndexedSearchBundle> ready = new ArrayList<>();
+                                IndexedSearchBundle bundle;
+                                while ((bundle = held.remove(next[0])) != null) {
+                                    ready.add(bundle);
+                                    next[0]++;
+                                }
+                                return Observable.from(ready);
                             }
-                        }).onErrorReturn(new Func1<Throwable, ProviderResponse>() {
+                        }).doOnNext(new Action1<IndexedSearchBundle>() {
                             @Override
-                            public ProviderResponse call(Throwable throwable) {
-                                return new ProviderResponse(sourceRecents, throwable);
+                            public void call(IndexedSearchBundle bundle) {
+                                emitted.onNext(0);
                             }
                         });
+            }
+        });
+    }
+
+    private Observable<ProviderResponse> queryProvider(final Provider p, final int index, final String searchTerm,
+                                                       Set<QueryType> queryTypes, final long startNanos,
+                                                       final QueryTrace trace) {
+        final String source = mSources[index];
+        if (!accepts(p, queryTypes)) {
+            return Observable.just(new ProviderResponse(source, new ArrayList<SearchResult>()));
+        }
+        final boolean local = ProviderDecorator.unwrap(p) instanceof LocalProvider;
+        return Observable.defer(new Func0<Observable<ProviderResponse>>() {
+            @Override
+            public Observable<ProviderResponse> call() {
+                final ProviderTimer timer = mMetrics == SearchMetrics.NONE ? null : new ProviderTimer(source);
+                // the provider's own timeout, and its latency, start when it runs, not while it waits for a thread
+                Observable<List<SearchResult>> query = Observable.defer(new Func0<Observable<List<SearchResult>>>() {
+                    @Override
+                    public Observable<List<SearchResult>> call() {
+                        if (timer != null) {
+                            timer.start();
+                        }
+                        return withTimeout(p.query(searchTerm), mProviderTimeoutNanos);
                     }
+                });
+                if (!local) {
+                    query = query.subscribeOn(mScheduler);
                 }
-            }, new Func2<List<ProviderResponse>, ProviderResponse, SearchBundle>() {
-                @Override
-                public SearchBundle call(List<ProviderResponse> providerResponses, ProviderResponse recentsResponse) {
-                    // essentially 'searchResponse.getSearchResults().removeAll(recents)'
-                    // only execute a side effect here to update stale references
-                    // TODO consider how best to update recents
-                    boolean hasRecents = recentsResponse.getSearchResults().size() > 0;
-                    if (hasRecents) {
-                        RecentUtils
-                                .removeRecentsFromSearchResults(recentsResponse.getSearchResults(),
-                                        providerResponses, mRecentsManager);
+                Observable<List<SearchResult>> results = withTimeout(query, remainingNanos(startNanos, NO_TIMEOUT));
+                final long providerStartNanos = trace.startProvider(index);
+                return results.map(new Func1<List<SearchResult>, ProviderResponse>() {
+                    @Override
+                    public ProviderResponse call(List<SearchResult> searchResults) {
+                        if (timer != null) {
+                            timer.finish(searchResults, null);
+                        }
+                        return new ProviderResponse(source, searchResults, null, providerStartNanos,
+                                trace.endProvider(index));
                     }
-                    return new SearchBundle(recentsResponse, providerResponses);
-                }
-            }).zipWith(mRecentsManager.query(searchTerm).map(new Func1<List<SearchResult>, ProviderResponse>() {
+                }).onErrorReturn(new Func1<Throwable, ProviderResponse>() {
+                    @Override
+                    public ProviderResponse call(Throwable throwable) {
+                        if (timer != null) {
+                            timer.finish(null, throwable);
+                        }
+                        return new ProviderResponse(source, Collections.<SearchResult>emptyList(), throwable,
+                                providerStartNanos, trace.endProvider(index));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @param streams provider responses in provider order
+     * @return the completed provider responses, in provider order, each time another provider completes.  Every
+     * snapshot holds its own copy of the search results as recents de-duplication modifies them.
+     */
+    private static Observable<List<ProviderResponse>> snapshots(List<Observable<ProviderResponse>> streams) {
+        List<Observable<IndexedResponse>> indexed = new ArrayList<>(streams.size());
+        for (int i = 0; i < streams.size(); i++) {
+            final int index = i;
+            indexed.add(streams.get(i).map(new Func1<ProviderResponse, IndexedResponse>() {
                 @Override
-                public ProviderResponse call(List<SearchResult> searchResults) {
-                    return new ProviderResponse(RecentsManager.class.getSimpleName(), searchResults);
+                public IndexedResponse call(ProviderResponse providerResponse) {
+                    return new IndexedResponse(index, providerResponse);
+                }
+            }));
+        }
+
+        final int size = streams.size();
+        return Observable.merge(indexed)
+                .scan(new ProviderResponse[size], new Func2<ProviderResponse[], IndexedResponse, ProviderResponse[]>() {
+                    @Override
+                    public ProviderResponse[] call(ProviderResponse[] completed, IndexedResponse latest) {
+                        ProviderResponse[] next = completed.clone();
+                        next[latest.index] = latest.response;
+                        return next;
+                    }
+                })
+                .skip(1)
+                .map(new Func1<ProviderResponse[], List<ProviderResponse>>() {
+                    @Override
+                    public List<ProviderResponse> call(ProviderResponse[] completed) {
+                        List<ProviderResponse> list = new ArrayList<>(completed.length);
+                        for (ProviderResponse response : completed) {
+                            if (response != null) {
+                                list.add(new ProviderResponse(response.getSource(),
+                                        new ArrayList<>(response.getSearchResults()), response.getError(),
+                                        response.getStartNanos(), response.getEndNanos()));
+                            }
+                        }
+                        return list;
+                    }
+                });
+    }
+
+    private Observable<List<ProviderResponse>> deduplicate(Observable<List<ProviderResponse>> providerResponses,
+                                                           final QueryTrace trace) {
+        if (mDeduplicator == null) {
+            return providerResponses;
+        }
+        return providerResponses.map(new Func1<List<ProviderResponse>, List<ProviderResponse>>() {
+            @Override
+            public List<ProviderResponse> call(List<ProviderResponse> responses) {
+                trace.startPhase(QueryTrace.Phase.DEDUPLICATE);
+                List<ProviderResponse> deduplicated = mDeduplicator.deduplicate(responses);
+                trace.endPhase(QueryTrace.Phase.DEDUPLICATE);
+                return deduplicated;
+            }
+        });
+    }
+
+    private Func1<List<ProviderResponse>, SearchBundle> withoutRecents(final QueryTrace trace,
+                                                                       final Ranking ranking) {
+        return new Func1<List<ProviderResponse>, SearchBundle>() {
+            @Override
+            public SearchBundle call(List<ProviderResponse> providerResponses) {
+                ProviderResponse recents = new ProviderResponse(Void.class.getName(),
+                        new ArrayList<SearchResult>());
+                trace.end();
+                return new SearchBundle(recents, providerResponses, trace.snapshot(), ranking);
+            }
+        };
+    }
+
+    private Func1<List<ProviderResponse>, Observable<ProviderResponse>> queryRecentsById(final long startNanos,
+                                                                                        final QueryTrace trace) {
+        return new Func1<List<ProviderResponse>, Observable<ProviderResponse>>() {
+            @Override
+            public Observable<ProviderResponse> call(List<ProviderResponse> providerResponses) {
+                trace.startPhase(QueryTrace.Phase.RECENTS_QUERY_BY_ID);
+                // check search resultset for even more recents (not found by recents matcher)
+                List<String> idsToCheck = new ArrayList<>();
+                for (ProviderResponse providerResponse : providerResponses) {
+                    List<SearchResult> searchResults = providerResponse.getSearchResults();
+                    for (SearchResult result : searchResults) {
+                        String key = result.getId();
+                        idsToCheck.add(key);
+                    }
                 }
-            }).onErrorReturn(new Func1<Throwable, ProviderResponse>() {
+
+                final String sourceRecents = RecentsManager.class.getSimpleName();
+                boolean hasIdsToCheck = idsToCheck.size() > 0;
+                if (!hasIdsToCheck) {
+                    List<SearchResult> empty = Collections.emptyList();
+                    ProviderResponse emptyProviderResponse = new ProviderResponse(sourceRecents,
+                            empty);
+                    trace.endPhase(QueryTrace.Phase.RECENTS_QUERY_BY_ID);
+                    return Observable.just(emptyProviderResponse);
+                } else {
+                    String[] ids = idsToCheck.toArray(new String[idsToCheck.size()]);
+                    Observable<List<SearchResult>> recents = withTimeout(mRecentsManager.queryById(ids),
+                            remainingNanos(startNanos, NO_TIMEOUT));
+                    return recents.map(new Func1<List<SearchResult>, ProviderResponse>() {
+                        @Override
+                        public ProviderResponse call(List<SearchResult> searchResults) {
+                            trace.endPhase(QueryTrace.Phase.RECENTS_QUERY_BY_ID);
+                            return new ProviderResponse(sourceRecents, searchResults);
+                        }
+                    }).onErrorReturn(new Func1<Throwable, ProviderResponse>() {
                         @Override
                         public ProviderResponse call(Throwable throwable) {
-                            return new ProviderResponse(RecentsManager.class.getSimpleName(), throwable);
+                            trace.endPhase(QueryTrace.Phase.RECENTS_QUERY_BY_ID);
+                            return new ProviderResponse(sourceRecents, throwable);
                         }
-                    }), new Func2<SearchBundle, ProviderResponse, SearchBundle>() {
-                @Override
-                public SearchBundle call(SearchBundle searchBundle, ProviderResponse localMatches) {
-                    if (localMatches.hasError()) {
-                        return new SearchBundle(localMatches, searchBundle.getRemainingResponses());
-                    } else {
-                        // TODO: handle recent scoring here for that perfect ordering ;)
-                        List<SearchResult> recentsPass2 = concateExcludeDuplicates(localMatches.getSearchResults(),
-                                searchBundle.getRecents());
-                        final String sourceRecents = RecentsManager.class.getSimpleName();
-                        return new SearchBundle(new ProviderResponse(sourceRecents, recentsPass2),
-                                searchBundle.getRemainingResponses());
-                    }
+                    });
+                }
+            }
+        };
+    }
+
+    private Func2<List<ProviderResponse>, ProviderResponse, SearchBundle> removeRecents(final QueryTrace trace) {
+        return new Func2<List<ProviderResponse>, ProviderResponse, SearchBundle>() {
+            @Override
+            public SearchBundle call(List<ProviderResponse> providerResponses, ProviderResponse recentsResponse) {
+                // essentially 'searchResponse.getSearchResults().removeAll(recents)'
+                // only execute a side effect here to update stale references
+                // TODO consider how best to update recents
+                boolean hasRecents = recentsResponse.getSearchResults().size() > 0;
+                trace.startPhase(QueryTrace.Phase.REMOVE_RECENTS);
+                if (hasRecents) {
+                    RecentUtils
+                            .removeRecentsFromSearchResults(recentsResponse.getSearchResults(),
+                                    providerResponses, mRecentsManager);
+                }
+                trace.endPhase(QueryTrace.Phase.REMOVE_RECENTS);
+                return new SearchBundle(recentsResponse, providerResponses, trace);
+            }
+        };
+    }
+
+    private Observable<ProviderResponse> queryRecents(String searchTerm, long startNanos, final QueryTrace trace) {
+        Observable<List<SearchResult>> recents = withTimeout(mRecentsManager.query(searchTerm),
+                remainingNanos(startNanos, NO_TIMEOUT));
+        return recents.doOnSubscribe(new Action0() {
+            @Override
+            public void call() {
+                trace.startPhase(QueryTrace.Phase.RECENTS_QUERY);
+            }
+        }).map(new Func1<List<SearchResult>, ProviderResponse>() {
+            @Override
+            public ProviderResponse call(List<SearchResult> searchResults) {
+                trace.endPhase(QueryTrace.Phase.RECENTS_QUERY);
+                return new ProviderResponse(RecentsManager.class.getSimpleName(), searchResults);
+            }
+        }).onErrorReturn(new Func1<Throwable, ProviderResponse>() {
+            @Override
+            public ProviderResponse call(Throwable throwable) {
+                trace.endPhase(QueryTrace.Phase.RECENTS_QUERY);
+                return new ProviderResponse(RecentsManager.class.getSimpleName(), throwable);
+            }
+        });
+    }
+
+    private Func2<SearchBundle, ProviderResponse, SearchBundle> mergeRecents(final QueryTrace trace,
+                                                                            final Ranking ranking) {
+        return new Func2<SearchBundle, ProviderResponse, SearchBundle>() {
+            @Override
+            public SearchBundle call(SearchBundle searchBundle, ProviderResponse localMatches) {
+                if (localMatches.hasError()) {
+                    trace.end();
+                    return new SearchBundle(localMatches, searchBundle.getRemainingResponses(), trace.snapshot(),
+                            ranking);
+                } else {
+                    // recents are scored alongside the provider results by SearchBundle#getRanked
+                    trace.startPhase(QueryTrace.Phase.MERGE_RECENTS);
+                    List<SearchResult> recentsPass2 = concateExcludeDuplicates(localMatches.getSearchResults(),
+                            searchBundle.getRecents());
+                    trace.endPhase(QueryTrace.Phase.MERGE_RECENTS);
+                    trace.end();
+                    final String sourceRecents = RecentsManager.class.getSimpleName();
+                    return new SearchBundle(new ProviderResponse(sourceRecents, recentsPass2),
+                            searchBundle.getRemainingResponses(), trace.snapshot(), ranking);
                 }
-            });
+            }
+        };
+    }
+
+    /**
+     * @return false if the provider, or the provider it decorates, only answers other types of search term
+     */
+    private static boolean accepts(Provider provider, Set<QueryType> queryTypes) {
+        Provider current = provider;
+        while (!(current instanceof TypedProvider)) {
+            if (!(current instanceof ProviderDecorator)) {
+                return true;
+            }
+            current = ((ProviderDecorator) current).getProvider();
+        }
+        Set<QueryType> accepted = ((TypedProvider) current).getQueryTypes();
+        return accepted == null || accepted.isEmpty() || queryTypes == null
+                || !Collections.disjoint(accepted, queryTypes);
+    }
+
+    private static String sourceOf(Provider provider) {
+        return ProviderDecorator.unwrap(provider).getClass().getSimpleName();
+    }
+
+    /**
+     * @param startNanos when the query started
+     * @param limitNanos the time limit of the stage about to start, or {@link #NO_TIMEOUT}
+     * @return the lesser of the stage limit and what remains of the query budget, or {@link #NO_TIMEOUT}
+     */
+    private long remainingNanos(long startNanos, long limitNanos) {
+        long remaining = limitNanos;
+        if (mQueryTimeoutNanos != NO_TIMEOUT) {
+            long budget = Math.max(1, mQueryTimeoutNanos - (System.nanoTime() - startNanos));
+            if (remaining == NO_TIMEOUT || budget < remaining) {
+                remaining = budget;
+            }
         }
+        return remaining;
+    }
+
+    private static <T> Observable<T> withTimeout(Observable<T> stream, long timeoutNanos) {
+        if (timeoutNanos == NO_TIMEOUT) {
+            return stream;
+        }
+        return stream.timeout(timeoutNanos, TimeUnit.NANOSECONDS);
     }
 
     private List<SearchResult> concateExcludeDuplicates(List<SearchResult> list1,
@@ -237,4 +891,52 @@ public class SearchManager {
         }
         return dest;
     }
+
+    private static final class IndexedResponse {
+        final int index;
+        final ProviderResponse response;
+
+        IndexedResponse(int index, ProviderResponse response) {
+            this.index = index;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Times one query to one provider, from when the provider starts to run rather than from when it was queued for a
+     * thread, as waiting for a thread measures the pool and not the provider.  The query is recorded as its provider
+     * response is made, before the response goes downstream, so a search bundle is never seen before the metrics of
+     * the providers in it.  Its responses are serialized, so only the start, made on the provider's thread, needs to
+     * be visible across threads.
+     */
+    private final class ProviderTimer {
+        private final String mSource;
+        private volatile long mStartNanos;
+        private volatile boolean mStarted;
+        private boolean mFinished;
+
+        ProviderTimer(String source) {
+            mSource = source;
+        }
+
+        void start() {
+            mStartNanos = System.nanoTime();
+            mStarted = true;
+        }
+
+        /**
+         * @param searchResults the provider's results, or null if it failed
+         * @param error why the provider failed, or null
+         */
+        void finish(List<SearchResult> searchResults, Throwable error) {
+            // a search bundle holds the first response of each provider, so only that one is recorded
+            if (mFinished) {
+                return;
+            }
+            mFinished = true;
+            // a query that timed out while it waited for a thread never ran, so took no time of the provider's
+            long elapsedNanos = mStarted ? System.nanoTime() - mStartNanos : 0;
+            mMetrics.onProviderQuery(mSource, elapsedNanos, searchResults == null ? 0 : searchResults.size(), error);
+        }
+    }
 }
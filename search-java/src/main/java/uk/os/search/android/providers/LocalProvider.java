@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers;
+
+/**
+ * A provider that answers from memory without blocking, e.g. by parsing the search term.
+ * {@link uk.os.search.SearchManager} queries it on the subscribing thread rather than moving it onto its scheduler,
+ * where it would wait behind remote queries for a thread.  Providers that do not implement this interface are
+ * queried on the scheduler.
+ */
+public interface LocalProvider extends Provider {
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers;
+
+/**
+ * A provider that adds behaviour, e.g. caching, in front of another provider.
+ */
+public abstract class ProviderDecorator implements Provider {
+
+    private final Provider mProvider;
+
+    protected ProviderDecorator(Provider provider) {
+        if (provider == null) {
+            throw new IllegalArgumentException("provider is null");
+        }
+        mProvider = provider;
+    }
+
+    /**
+     * @return the provider being decorated
+     */
+    public Provider getProvider() {
+        return mProvider;
+    }
+
+    /**
+     * @param provider a provider that may be decorated
+     * @return the innermost provider, i.e. the one actually answering queries
+     */
+    public static Provider unwrap(Provider provider) {
+        Provider result = provider;
+        while (result instanceof ProviderDecorator) {
+            result = ((ProviderDecorator) result).getProvider();
+        }
+        return result;
+    }
+}
@@ -26,6 +26,8 @@ public class ProviderResponse {
     private final String mSource;
     private final Throwable mThrowable;
     private final List<SearchResult> mSearchResults;
+    private final long mStartNanos;
+    private final long mEndNanos;
 
     public ProviderResponse(String source, List<SearchResult> searchResults) {
         this(source, searchResults, null);
@@ -36,12 +38,23 @@ public class ProviderResponse {
     }
 
     public ProviderResponse(String source, List<SearchResult> searchResults, Throwable throwable) {
+        this(source, searchResults, throwable, 0, 0);
+    }
+
+    /**
+     * @param startNanos the {@link System#nanoTime()} the provider was queried
+     * @param endNanos the {@link System#nanoTime()} the provider responded, failed or timed out
+     */
+    public ProviderResponse(String source, List<SearchResult> searchResults, Throwable throwable, long startNanos,
+                            long endNanos) {
         if (searchResults == null) {
             throw new IllegalArgumentException("search results is null");
         }
         mSource = source;
         mSearchResults = searchResults;
         mThrowable = throwable;
+        mStartNanos = startNanos;
+        mEndNanos = endNanos;
     }
 
     public Throwable getError() {
@@ -56,6 +69,21 @@ public class ProviderResponse {
         return mSource;
     }
 
+    /**
+     * @return the {@link System#nanoTime()} the provider was queried, or 0 if the response was not timed
+     */
+    public long getStartNanos() {
+        return mStartNanos;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} the provider responded, failed or timed out, or 0 if the response was
+     * not timed
+     */
+    public long getEndNanos() {
+        return mEndNanos;
+    }
+
     public boolean hasError() {
         return mThrowable != null;
     }
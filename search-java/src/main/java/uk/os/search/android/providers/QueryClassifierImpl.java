@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import uk.os.search.android.providers.addresses.GeoPattern;
+import uk.os.search.android.providers.bng.GridReferenceParser;
+
+/**
+ * Classifies search terms with the same checks the built-in providers make, e.g. a term is a
+ * {@link QueryType#POSTCODE} when {@link uk.os.search.android.providers.addresses.AddressesProvider} would query the
+ * OS Places postcode API with it.
+ */
+public class QueryClassifierImpl implements QueryClassifier {
+
+    @Override
+    public Set<QueryType> classify(String searchTerm) {
+        Set<QueryType> types = EnumSet.noneOf(QueryType.class);
+        // only a grid reference with figures or an unmistakable latitude and longitude rules out place names; bare
+        // grid letters, e.g. "st" or "su", and numbers, e.g. "10" or "10 2", are as likely the start of a name or
+        // address being typed
+        boolean exclusive = false;
+        if (GridReferenceParser.parse(searchTerm) != GridReferenceParser.INVALID) {
+            types.add(QueryType.GRID_REFERENCE);
+            exclusive = hasDigit(searchTerm);
+        }
+        if (uk.os.search.android.providers.latlon.GeoPattern.tryParseLatLon(searchTerm) != null) {
+            types.add(QueryType.LAT_LON);
+            exclusive = exclusive || hasCoordinateMarker(searchTerm);
+        }
+        if (GeoPattern.isUprnCandidate(searchTerm)) {
+            types.add(QueryType.UPRN);
+        }
+        if (!exclusive) {
+            types.add(QueryType.FREE_TEXT);
+        }
+        if (GeoPattern.isPostcodeCandidate(searchTerm)) {
+            types.add(QueryType.POSTCODE);
+        }
+        return types;
+    }
+
+    private static boolean hasDigit(String searchTerm) {
+        for (int i = 0; i < searchTerm.length(); i++) {
+            if (Character.isDigit(searchTerm.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a latitude and longitude has a decimal point, a degree, minute or second unit, a hemisphere or
+     * a sign, so is not merely two whole numbers
+     */
+    private static boolean hasCoordinateMarker(String searchTerm) {
+        for (int i = 0; i < searchTerm.length(); i++) {
+            char c = searchTerm.charAt(i);
+            if (Character.isLetter(c) || ".°:'′\"″+-".indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
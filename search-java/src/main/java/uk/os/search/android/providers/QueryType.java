@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers;
+
+/**
+ * The kinds of search term a provider may be able to answer, as decided by a {@link QueryClassifier}.  A term may be
+ * of more than one type, e.g. "NN16" is both a grid reference and a postcode district.
+ */
+public enum QueryType {
+
+    /**
+     * a British National Grid reference, e.g. SU 4005 1003
+     */
+    GRID_REFERENCE,
+
+    /**
+     * a latitude and longitude, e.g. 51.50722, -0.1275
+     */
+    LAT_LON,
+
+    /**
+     * a full or partial postcode, e.g. SO16 or SO16 0AS
+     */
+    POSTCODE,
+
+    /**
+     * a Unique Property Reference Number, e.g. 10012093013
+     */
+    UPRN,
+
+    /**
+     * anything that could be a place name or address, e.g. London Road Southampton, or a term still being typed
+     * that may become one, e.g. "st", "10" or "10 2"; only a grid reference with figures or a latitude and longitude
+     * with a decimal point, unit, hemisphere or sign is not
+     */
+    FREE_TEXT
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import uk.os.search.SearchResult;
+
+/**
+ * Converts API responses straight to a {@code List<SearchResult>} as they are read, without first building the
+ * response model: only the fields a search result needs are read and every other value is skipped.
+ *
+ * Other response types are left to the next converter, e.g. {@code GsonConverterFactory}.
+ */
+public abstract class SearchResultsConverterFactory extends Converter.Factory {
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        if (!isSearchResults(type)) {
+            return null;
+        }
+        return new Converter<ResponseBody, List<SearchResult>>() {
+            @Override
+            public List<SearchResult> convert(ResponseBody value) throws IOException {
+                JsonReader reader = new JsonReader(value.charStream());
+                try {
+                    return read(reader);
+                } finally {
+                    reader.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * @param reader a reader positioned at the start of the response
+     * @return the search results in the response
+     * @throws IOException if the response cannot be read
+     */
+    protected abstract List<SearchResult> read(JsonReader reader) throws IOException;
+
+    /**
+     * @return the next string or number as a string, or null for a JSON null
+     */
+    protected static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * @return the next number, or a string holding one, as a double; NaN for a JSON null or any other string
+     */
+    protected static double nextDouble(JsonReader reader) throws IOException {
+        String value = nextString(reader);
+        if (value == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static boolean isSearchResults(Type type) {
+        if (!(type instanceof ParameterizedType)) {
+            return false;
+        }
+        ParameterizedType parameterizedType = (ParameterizedType) type;
+        return parameterizedType.getRawType() == List.class &&
+                parameterizedType.getActualTypeArguments()[0] == SearchResult.class;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers;
+
+import java.util.Set;
+
+/**
+ * A provider that only answers some types of search term.  {@link uk.os.search.SearchManager} does not query it
+ * for any other type, reporting an empty response in its place.  Providers that do not implement this interface are
+ * queried for every search term.
+ */
+public interface TypedProvider extends Provider {
+
+    /**
+     * @return the types of search term this provider can answer; null or an empty set, as with no restriction, for
+     * every type
+     */
+    Set<QueryType> getQueryTypes();
+}
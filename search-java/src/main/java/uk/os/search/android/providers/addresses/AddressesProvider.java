@@ -16,25 +16,36 @@
 
 package uk.os.search.android.providers.addresses;
 
+import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
-import retrofit2.converter.gson.GsonConverterFactory;
 import rx.Observable;
+import rx.Scheduler;
 import rx.functions.Func1;
 import uk.os.search.SearchResult;
-import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.QueryType;
+import uk.os.search.android.providers.TypedProvider;
 import uk.os.search.android.providers.addresses.service.AddressApi;
 import uk.os.search.android.providers.addresses.service.ParamFormatting;
-import uk.os.search.android.providers.addresses.service.model.ServerResponse;
+import uk.os.search.android.providers.addresses.service.StreamingAddressApi;
+import uk.os.search.util.HttpClients;
+import uk.os.search.util.RateLimiter;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-public class AddressesProvider implements Provider {
+public class AddressesProvider implements TypedProvider {
 
-    private static final int PARAM_MAX_RESULTS = 25;
+    /**
+     * the maximum number of results requested from each OS Places API
+     */
+    public static final int MAX_RESULTS = 25;
+
+    private static final int PARAM_MAX_RESULTS = MAX_RESULTS;
     private static final int PARAM_RADIUS_METRES = 200;
     private static final String PARAM_SRS = "EPSG:4326";
     private static final String PARAM_OUTPUT_SRS = PARAM_SRS;
@@ -49,6 +60,9 @@ public class AddressesProvider implements Provider {
         private boolean mQueryNearest = false;
         private boolean mQueryUprn = true;
         private AddressApi mAddressApi;
+        private Scheduler mScheduler;
+        private RateLimiter mRateLimiter;
+        private OkHttpClient mHttpClient;
 
         public Builder(String sKeyOpenNames) {
             mKey = sKeyOpenNames;
@@ -93,14 +107,45 @@ public class AddressesProvider implements Provider {
             return this;
         }
 
+        /**
+         * @param scheduler the scheduler queries are subscribed on; by default they run on the subscribing thread,
+         *                  which for a {@link uk.os.search.SearchManager} is its own scheduler
+         * @return this builder
+         */
+        public Builder setScheduler(Scheduler scheduler) {
+            mScheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * @param rateLimiter limits the calls made to the APIs, e.g. {@link RateLimiter#forKey} to share it with the
+         *                    other providers using the same key; by default calls are not limited
+         * @return this builder
+         */
+        public Builder setRateLimiter(RateLimiter rateLimiter) {
+            mRateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * @param httpClient the client the API is called with; by default {@link HttpClients#getDefault()}, which
+         *                   is shared with the other providers.  Ignored when the API is set.
+         * @return this builder
+         */
+        public Builder setHttpClient(OkHttpClient httpClient) {
+            mHttpClient = httpClient;
+            return this;
+        }
+
         public AddressesProvider build() {
-            AddressApi addressApi = mAddressApi == null ? provideAddressSearchApi() : mAddressApi;
+            StreamingAddressApi addressApi = mAddressApi == null ? provideAddressSearchApi(mHttpClient)
+                    : Transform.toStreaming(mAddressApi);
             return new AddressesProvider(mKey, addressApi, mQueryBoundingBox, mQueryFind, mQueryNearest,
-                    mQueryPostcode, mQueryRadius, mQueryUprn);
+                    mQueryPostcode, mQueryRadius, mQueryUprn, mScheduler, mRateLimiter);
         }
     }
 
-    private final AddressApi mAddressApi;
+    private final StreamingAddressApi mAddressApi;
     private final String mKey;
     private final boolean mQueryPostcode;
     private final boolean mQueryUprn;
@@ -108,10 +153,16 @@ public class AddressesProvider implements Provider {
     private final boolean mQueryBoundingBox;
     private final boolean mQueryRadius;
     private final boolean mQueryNearest;
+    private final Scheduler mScheduler;
+    private final RateLimiter mRateLimiter;
+    private final Set<QueryType> mQueryTypes;
 
-    private AddressesProvider(String sKeyOpenNames, AddressApi addressApi, boolean queryBoundingBox, boolean queryFind,
-                             boolean queryNearest, boolean queryPostcode, boolean queryRadius, boolean queryUprn) {
+    private AddressesProvider(String sKeyOpenNames, StreamingAddressApi addressApi, boolean queryBoundingBox,
+                              boolean queryFind, boolean queryNearest, boolean queryPostcode, boolean queryRadius,
+                              boolean queryUprn, Scheduler scheduler, RateLimiter rateLimiter) {
         mKey = sKeyOpenNames;
+        mScheduler = scheduler;
+        mRateLimiter = rateLimiter;
         mAddressApi = addressApi;
 
         mQueryBoundingBox = queryBoundingBox;
@@ -120,55 +171,87 @@ public class AddressesProvider implements Provider {
         mQueryPostcode = queryPostcode;
         mQueryRadius = queryRadius;
         mQueryUprn = queryUprn;
+
+        Set<QueryType> queryTypes = EnumSet.noneOf(QueryType.class);
+        if (queryFind) {
+            queryTypes.add(QueryType.FREE_TEXT);
+        }
+        if (queryFind || queryPostcode) {
+            queryTypes.add(QueryType.POSTCODE);
+        }
+        if (queryFind || queryUprn) {
+            queryTypes.add(QueryType.UPRN);
+        }
+        mQueryTypes = Collections.unmodifiableSet(queryTypes);
+    }
+
+    /**
+     * @return the types of search term answered by the find, postcode and UPRN APIs this provider queries
+     */
+    @Override
+    public Set<QueryType> getQueryTypes() {
+        return mQueryTypes;
     }
 
     public Observable<List<SearchResult>> query(String searchTerm) {
-        List<Observable<ServerResponse>> responses = queryProviders(searchTerm);
-        return Transform.toSearchResults(responses).map(deduplicate()).defaultIfEmpty(new ArrayList<SearchResult>());
+        List<Observable<List<SearchResult>>> responses = queryProviders(searchTerm);
+        return subscribeOn(Transform.zip(responses).map(deduplicate())
+                .defaultIfEmpty(new ArrayList<SearchResult>()));
     }
 
     public Observable<List<SearchResult>> query(String searchTerm, double lat, double lon) {
-        List<Observable<ServerResponse>> responses = queryProviders(searchTerm);
+        List<Observable<List<SearchResult>>> responses = queryProviders(searchTerm);
         responses.addAll(queryProviders(lat, lon));
 
-        return Transform.toSearchResults(responses).map(deduplicate()).defaultIfEmpty(new ArrayList<SearchResult>());
+        return subscribeOn(Transform.zip(responses).map(deduplicate())
+                .defaultIfEmpty(new ArrayList<SearchResult>()));
     }
 
-    private List<Observable<ServerResponse>> queryProviders(String searchTerm) {
-        List<Observable<ServerResponse>> list = new ArrayList<>();
+    private Observable<List<SearchResult>> subscribeOn(Observable<List<SearchResult>> results) {
+        return mScheduler == null ? results : results.subscribeOn(mScheduler);
+    }
+
+    private List<Observable<List<SearchResult>>> queryProviders(String searchTerm) {
+        List<Observable<List<SearchResult>>> list = new ArrayList<>();
 
         if (mQueryFind) {
-            list.add(mAddressApi.find(mKey, searchTerm, PARAM_MAX_RESULTS, PARAM_OUTPUT_SRS));
+            list.add(limit(mAddressApi.find(mKey, searchTerm, PARAM_MAX_RESULTS, PARAM_OUTPUT_SRS)));
         }
         if (mQueryPostcode && GeoPattern.isPostcodeCandidate(searchTerm)) {
-            list.add(mAddressApi.postcode(mKey, searchTerm, PARAM_MAX_RESULTS, PARAM_OUTPUT_SRS));
+            list.add(limit(mAddressApi.postcode(mKey, searchTerm, PARAM_MAX_RESULTS, PARAM_OUTPUT_SRS)));
         }
         if (mQueryUprn && GeoPattern.isUprnCandidate(searchTerm)) {
-            list.add(mAddressApi.uprn(mKey, searchTerm, PARAM_OUTPUT_SRS));
+            list.add(limit(mAddressApi.uprn(mKey, searchTerm, PARAM_OUTPUT_SRS)));
         }
         return list;
     }
 
-    private List<Observable<ServerResponse>> queryProviders(double lat, double lon) {
-        List<Observable<ServerResponse>> list = new ArrayList<>();
+    private List<Observable<List<SearchResult>>> queryProviders(double lat, double lon) {
+        List<Observable<List<SearchResult>>> list = new ArrayList<>();
 
         if (mQueryNearest) {
-            list.add(mAddressApi.nearest(mKey, ParamFormatting.point(lat, lon), PARAM_SRS, PARAM_OUTPUT_SRS));
+            list.add(limit(mAddressApi.nearest(mKey, ParamFormatting.point(lat, lon), PARAM_SRS,
+                    PARAM_OUTPUT_SRS)));
         }
 
         if (mQueryBoundingBox) {
-            list.add(mAddressApi.bbox(mKey, ParamFormatting.bbox(lat - 0.001, lon - 0.001, lat + 0.001, lon + 0.001),
-                    PARAM_SRS, PARAM_OUTPUT_SRS));
+            list.add(limit(mAddressApi.bbox(mKey,
+                    ParamFormatting.bbox(lat - 0.001, lon - 0.001, lat + 0.001, lon + 0.001), PARAM_SRS,
+                    PARAM_OUTPUT_SRS)));
         }
 
         if (mQueryRadius) {
-            list.add(mAddressApi.radius(mKey, ParamFormatting.point(lat, lon), PARAM_SRS, PARAM_RADIUS_METRES,
-                    PARAM_OUTPUT_SRS));
+            list.add(limit(mAddressApi.radius(mKey, ParamFormatting.point(lat, lon), PARAM_SRS,
+                    PARAM_RADIUS_METRES, PARAM_OUTPUT_SRS)));
         }
 
         return list;
     }
 
+    private Observable<List<SearchResult>> limit(Observable<List<SearchResult>> call) {
+        return mRateLimiter == null ? call : mRateLimiter.limit(call);
+    }
+
     private Func1<List<SearchResult>, List<SearchResult>> deduplicate() {
         return new Func1<List<SearchResult>, List<SearchResult>>() {
             @Override
@@ -188,12 +271,13 @@ public class AddressesProvider implements Provider {
         };
     }
 
-    private static AddressApi provideAddressSearchApi() {
+    private static StreamingAddressApi provideAddressSearchApi(OkHttpClient httpClient) {
         Retrofit retrofit = new Retrofit.Builder()
                 .baseUrl("https://api.ordnancesurvey.co.uk/places/v1/")
-                .addConverterFactory(GsonConverterFactory.create())
+                .client(httpClient == null ? HttpClients.getDefault() : httpClient)
+                .addConverterFactory(PlacesConverterFactory.create())
                 .addCallAdapterFactory(RxJavaCallAdapterFactory.create())
                 .build();
-        return retrofit.create(AddressApi.class);
+        return retrofit.create(StreamingAddressApi.class);
     }
 }
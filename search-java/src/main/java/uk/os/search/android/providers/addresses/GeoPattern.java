@@ -18,7 +18,7 @@ package uk.os.search.android.providers.addresses;
 
 import java.util.regex.Pattern;
 
-final class GeoPattern {
+public final class GeoPattern {
 
     private GeoPattern() { }
 
@@ -42,9 +42,9 @@ final class GeoPattern {
 
     /**
      * @param query String to query
-     * @return true is the query should be sent to the postcode endpoint
+     * @return true is the query should be sent to the UPRN endpoint
      */
-    protected static boolean isUprnCandidate(String query) {
+    public static boolean isUprnCandidate(String query) {
         return UPRN_PATTERN.matcher(query).matches();
     }
 
@@ -52,7 +52,7 @@ final class GeoPattern {
      * @param query String to query
      * @return true is the query should be sent to the postcode endpoint
      */
-    protected static boolean isPostcodeCandidate(String query) {
+    public static boolean isPostcodeCandidate(String query) {
         return POSTCODE_PARTIAL_PATTERN.matcher(query).matches();
     }
 }
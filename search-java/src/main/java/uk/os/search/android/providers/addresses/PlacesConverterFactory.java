@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.addresses;
+
+import com.esri.core.geometry.SpatialReference;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.SearchResultsConverterFactory;
+
+/**
+ * Reads OS Places DPA responses straight into search results, in the same shape as {@link AddressesProvider} gives
+ * them but without building a {@link uk.os.search.android.providers.addresses.service.model.ServerResponse}.
+ *
+ * @see uk.os.search.android.providers.addresses.service.StreamingAddressApi
+ */
+public final class PlacesConverterFactory extends SearchResultsConverterFactory {
+
+    public static PlacesConverterFactory create() {
+        return new PlacesConverterFactory();
+    }
+
+    private PlacesConverterFactory() {
+    }
+
+    @Override
+    protected List<SearchResult> read(JsonReader reader) throws IOException {
+        SpatialReference spatialReference = null;
+        List<SearchResult> list = new ArrayList<>();
+        // addresses read before the header, which gives their spatial reference
+        List<Address> pending = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "header":
+                    spatialReference = Transform.parseSpatialReference(readOutputSrs(reader));
+                    break;
+                case "results":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Address address = readResult(reader);
+                        if (spatialReference != null) {
+                            list.add(address.toSearchResult(spatialReference));
+                        } else {
+                            if (pending == null) {
+                                pending = new ArrayList<>();
+                            }
+                            pending.add(address);
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (spatialReference == null) {
+            // as for a response without a header
+            Transform.parseSpatialReference(null);
+        }
+        if (pending != null) {
+            List<SearchResult> ordered = new ArrayList<>(pending.size() + list.size());
+            for (Address address : pending) {
+                ordered.add(address.toSearchResult(spatialReference));
+            }
+            ordered.addAll(list);
+            return ordered;
+        }
+        return list;
+    }
+
+    private static String readOutputSrs(JsonReader reader) throws IOException {
+        String outputSrs = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("output_srs".equals(reader.nextName())) {
+                outputSrs = nextString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return outputSrs;
+    }
+
+    private static Address readResult(JsonReader reader) throws IOException {
+        Address address = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("DPA".equals(reader.nextName())) {
+                address = readDpa(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (address == null) {
+            throw new IllegalArgumentException("no gazetteer data");
+        }
+        return address;
+    }
+
+    private static Address readDpa(JsonReader reader) throws IOException {
+        Address address = new Address();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "UPRN":
+                    address.mUprn = nextString(reader);
+                    break;
+                case "ADDRESS":
+                    address.mAddress = nextString(reader);
+                    break;
+                case "X_COORDINATE":
+                    address.mX = nextDouble(reader);
+                    break;
+                case "Y_COORDINATE":
+                    address.mY = nextDouble(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (Double.isNaN(address.mX) || Double.isNaN(address.mY)) {
+            throw new JsonParseException("no coordinates for " + address.mUprn);
+        }
+        return address;
+    }
+
+    private static final class Address {
+        String mUprn;
+        String mAddress;
+        double mX = Double.NaN;
+        double mY = Double.NaN;
+
+        SearchResult toSearchResult(SpatialReference spatialReference) {
+            return Transform.from(spatialReference, mUprn, mAddress, mX, mY);
+        }
+    }
+}
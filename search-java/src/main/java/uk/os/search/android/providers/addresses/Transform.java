@@ -23,6 +23,8 @@ import rx.Observable;
 import rx.functions.Func1;
 import rx.functions.FuncN;
 import uk.os.search.SearchResult;
+import uk.os.search.android.providers.addresses.service.AddressApi;
+import uk.os.search.android.providers.addresses.service.StreamingAddressApi;
 import uk.os.search.android.providers.addresses.service.model.Result;
 import uk.os.search.android.providers.addresses.service.model.ServerResponse;
 
@@ -33,6 +35,8 @@ import java.util.regex.Pattern;
 
 final class Transform {
 
+    private static final Pattern ADDRESS = Pattern.compile("((?:\\d*,[^,]*)|[^,]*),(.*)", Pattern.CASE_INSENSITIVE);
+
     protected static Observable<List<SearchResult>> toSearchResults(List<Observable<ServerResponse>> results) {
 
         // Transform list of ServerResponses to a list of SearchResults
@@ -41,9 +45,14 @@ final class Transform {
             Observable<List<SearchResult>> transformed = result.map(searchResultsFromServerResponse());
             transformedResults.add(transformed);
         }
+        return zip(transformedResults);
+    }
 
-        // Zip SearchResult lists
-        Observable<List<SearchResult>> zipped = Observable.zip(transformedResults, new FuncN<List<SearchResult>>() {
+    /**
+     * Zip SearchResult lists
+     */
+    static Observable<List<SearchResult>> zip(List<Observable<List<SearchResult>>> results) {
+        return Observable.zip(results, new FuncN<List<SearchResult>>() {
 
             @SuppressWarnings("unchecked")
             @Override
@@ -55,20 +64,27 @@ final class Transform {
                 return result;
             }
         });
-
-        return zipped;
     }
 
     private static SearchResult from(final SpatialReference spatialReference, final Result result) {
         if (result.getGazetteerEntry() == null) {
             throw new IllegalArgumentException("no gazetteer data");
         }
-        final String addressLine = result.getGazetteerEntry().getADDRESS();
+        Result.Dpa entry = result.getGazetteerEntry();
+        String address = entry.getADDRESS();
+        double x = Double.parseDouble(entry.getX_COORDINATE());
+        double y = Double.parseDouble(entry.getY_COORDINATE());
+        return from(spatialReference, entry.getUPRN(), address, x, y);
+    }
 
+    /**
+     * Build the search result for an address, named by its first part, e.g. "Ordnance Survey" or "4 Adanac Drive",
+     * with the rest of the address as context.
+     */
+    static SearchResult from(SpatialReference spatialReference, String id, String addressLine, double x, double y) {
         String name;
         String context;
-        Pattern pattern = Pattern.compile("((?:\\d*,[^,]*)|[^,]*),(.*)", Pattern.CASE_INSENSITIVE);
-        Matcher matcher = pattern.matcher(result.getGazetteerEntry().getADDRESS());
+        Matcher matcher = ADDRESS.matcher(addressLine);
         if (matcher.matches()) {
             name = matcher.group(1).replaceAll(",", "");
             context = matcher.group(2).trim();
@@ -79,15 +95,10 @@ final class Transform {
             context = addressLine.substring(Math.min(10, indexTerminate), indexTerminate);
         }
 
-        Result.Dpa entry = result.getGazetteerEntry();
-        String id = entry.getUPRN();
-        double x = Double.parseDouble(entry.getX_COORDINATE());
-        double y = Double.parseDouble(entry.getY_COORDINATE());
-
         return new SearchResult(id, name, context, new Point(x, y), new Envelope(), spatialReference);
     }
 
-    private static SpatialReference parseSpatialReference(String input) {
+    static SpatialReference parseSpatialReference(String input) {
         try {
             String wkid = input.toLowerCase().replace("epsg:", "");
             return SpatialReference.create(Integer.parseInt(wkid));
@@ -96,7 +107,7 @@ final class Transform {
         }
     }
 
-    private static Func1<ServerResponse, List<SearchResult>> searchResultsFromServerResponse() {
+    static Func1<ServerResponse, List<SearchResult>> searchResultsFromServerResponse() {
         return new Func1<ServerResponse, List<SearchResult>>() {
             @Override
             public List<SearchResult> call(ServerResponse serverResponse) {
@@ -115,4 +126,48 @@ final class Transform {
             }
         };
     }
+
+    /**
+     * Adapt an {@link AddressApi}, e.g. a stub, to give search results as the default streaming API does.
+     */
+    static StreamingAddressApi toStreaming(final AddressApi addressApi) {
+        return new StreamingAddressApi() {
+            @Override
+            public Observable<List<SearchResult>> find(String apiKey, String value, int maxResults,
+                                                       String outputSrs) {
+                return addressApi.find(apiKey, value, maxResults, outputSrs)
+                        .map(searchResultsFromServerResponse());
+            }
+
+            @Override
+            public Observable<List<SearchResult>> postcode(String apiKey, String value, int maxResults,
+                                                           String outputSrs) {
+                return addressApi.postcode(apiKey, value, maxResults, outputSrs)
+                        .map(searchResultsFromServerResponse());
+            }
+
+            @Override
+            public Observable<List<SearchResult>> bbox(String apiKey, String bbox, String srs, String outputSrs) {
+                return addressApi.bbox(apiKey, bbox, srs, outputSrs).map(searchResultsFromServerResponse());
+            }
+
+            @Override
+            public Observable<List<SearchResult>> uprn(String apiKey, String value, String outputSrs) {
+                return addressApi.uprn(apiKey, value, outputSrs).map(searchResultsFromServerResponse());
+            }
+
+            @Override
+            public Observable<List<SearchResult>> radius(String apiKey, String point, String srs, float radius,
+                                                         String outputSrs) {
+                return addressApi.radius(apiKey, point, srs, radius, outputSrs)
+                        .map(searchResultsFromServerResponse());
+            }
+
+            @Override
+            public Observable<List<SearchResult>> nearest(String apiKey, String point, String srs,
+                                                          String outputSrs) {
+                return addressApi.nearest(apiKey, point, srs, outputSrs).map(searchResultsFromServerResponse());
+            }
+        };
+    }
 }
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.autocomplete;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import rx.Observable;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.LocalProvider;
+import uk.os.search.android.providers.QueryType;
+import uk.os.search.android.providers.TypedProvider;
+import uk.os.search.util.TextUtil;
+
+/**
+ * Completes a partially typed name from a fixed set of search results, e.g. those of an
+ * {@link uk.os.search.android.providers.opennames.OfflineOpennamesProvider} or the recents store, returning the
+ * highest weighted names starting with the search term.
+ *
+ * The names are normalised and held in a path compressed trie laid out in arrays; each node covers a contiguous range
+ * of the sorted results and records the highest weight beneath it, so the top results are found best first without
+ * visiting every completion of a short prefix.  Equally weighted results are returned in name order.
+ */
+public class AutocompleteProvider implements TypedProvider, LocalProvider {
+
+    public static class Builder {
+
+        private final Iterable<SearchResult> mSearchResults;
+        private Func1<SearchResult, Integer> mWeight = NO_WEIGHT;
+        private int mMaxResults = 10;
+
+        /**
+         * @param searchResults the results to complete, which are read once by {@link #build()}
+         */
+        public Builder(Iterable<SearchResult> searchResults) {
+            if (searchResults == null) {
+                throw new IllegalArgumentException("search results are null");
+            }
+            mSearchResults = searchResults;
+        }
+
+        /**
+         * @param weight the weight of a result, e.g. derived from its feature type or population; higher weights are
+         *               returned first
+         * @return this builder
+         */
+        public Builder setWeight(Func1<SearchResult, Integer> weight) {
+            mWeight = weight;
+            return this;
+        }
+
+        /**
+         * @param maxResults the maximum number of completions returned for a query
+         * @return this builder
+         */
+        public Builder setMaxResults(int maxResults) {
+            if (maxResults < 1) {
+                throw new IllegalArgumentException("max results must be at least one");
+            }
+            mMaxResults = maxResults;
+            return this;
+        }
+
+        public AutocompleteProvider build() {
+            return new AutocompleteProvider(this);
+        }
+    }
+
+    private static final Func1<SearchResult, Integer> NO_WEIGHT = new Func1<SearchResult, Integer>() {
+        @Override
+        public Integer call(SearchResult searchResult) {
+            return 0;
+        }
+    };
+
+    private static final int ROOT = 0;
+
+    private static final Set<QueryType> QUERY_TYPES = Collections.unmodifiableSet(
+            EnumSet.of(QueryType.FREE_TEXT, QueryType.POSTCODE));
+
+    private final int mMaxResults;
+
+    // results sorted by normalised name
+    private final String[] mNames;
+    private final SearchResult[] mSearchResults;
+    private final int[] mWeights;
+
+    // trie nodes; the children of a node are adjacent and in name order
+    private int mNodeCount;
+    private final int[] mDepth;
+    private final int[] mStart;
+    private final int[] mEnd;
+    private final int[] mFirstChild;
+    private final int[] mChildCount;
+    private final int[] mMaxWeight;
+
+    private AutocompleteProvider(Builder builder) {
+        mMaxResults = builder.mMaxResults;
+
+        List<Completion> completions = new ArrayList<>();
+        for (SearchResult searchResult : builder.mSearchResults) {
+            Integer weight = builder.mWeight.call(searchResult);
+            completions.add(new Completion(TextUtil.normalise(searchResult.getName()), searchResult,
+                    weight == null ? 0 : weight));
+        }
+        Completion[] sorted = completions.toArray(new Completion[completions.size()]);
+        Arrays.sort(sorted, NAME_ORDER);
+
+        mNames = new String[sorted.length];
+        mSearchResults = new SearchResult[sorted.length];
+        mWeights = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            mNames[i] = sorted[i].mName;
+            mSearchResults[i] = sorted[i].mSearchResult;
+            mWeights[i] = sorted[i].mWeight;
+        }
+
+        // every node either ends a name or branches, so there are at most two nodes per name
+        int capacity = Math.max(1, 2 * sorted.length);
+        mDepth = new int[capacity];
+        mStart = new int[capacity];
+        mEnd = new int[capacity];
+        mFirstChild = new int[capacity];
+        mChildCount = new int[capacity];
+        mMaxWeight = new int[capacity];
+        build();
+    }
+
+    @Override
+    public Set<QueryType> getQueryTypes() {
+        return QUERY_TYPES;
+    }
+
+    @Override
+    public Observable<List<SearchResult>> query(final String searchTerm) {
+        return Observable.defer(new Func0<Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> call() {
+                return Observable.just(complete(searchTerm, mMaxResults));
+            }
+        });
+    }
+
+    /**
+     * @param prefix a partially typed name
+     * @param k the maximum number of completions
+     * @return the highest weighted results whose normalised name starts with the prefix
+     */
+    public List<SearchResult> complete(String prefix, int k) {
+        List<SearchResult> list = new ArrayList<>(Math.min(k, 16));
+        String term = TextUtil.normalise(prefix);
+        if (term.isEmpty() || mNames.length == 0) {
+            return list;
+        }
+
+        int node = find(term);
+        if (node < 0) {
+            return list;
+        }
+
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(16, BEST_FIRST);
+        queue.add(new Candidate(node, mMaxWeight[node], mStart[node], true));
+        while (!queue.isEmpty() && list.size() < k) {
+            Candidate candidate = queue.poll();
+            if (!candidate.mIsNode) {
+                list.add(mSearchResults[candidate.mIndex]);
+                continue;
+            }
+
+            int current = candidate.mIndex;
+            int depth = mDepth[current];
+            for (int i = mStart[current]; i < mEnd[current] && mNames[i].length() == depth; i++) {
+                queue.add(new Candidate(i, mWeights[i], i, false));
+            }
+            int firstChild = mFirstChild[current];
+            for (int child = firstChild; child < firstChild + mChildCount[current]; child++) {
+                queue.add(new Candidate(child, mMaxWeight[child], mStart[child], true));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return the number of results that can be completed
+     */
+    public int size() {
+        return mNames.length;
+    }
+
+    /**
+     * @return the highest node whose names all start with the term, or -1 if there is none
+     */
+    private int find(String term) {
+        int node = ROOT;
+        int matched = 0;
+        while (true) {
+            String name = mNames[mStart[node]];
+            int depth = Math.min(mDepth[node], term.length());
+            if (!name.regionMatches(matched, term, matched, depth - matched)) {
+                return -1;
+            }
+            if (term.length() <= mDepth[node]) {
+                return node;
+            }
+            matched = mDepth[node];
+            node = findChild(node, term.charAt(matched));
+            if (node < 0) {
+                return -1;
+            }
+        }
+    }
+
+    private int findChild(int node, char c) {
+        int depth = mDepth[node];
+        int low = mFirstChild[node];
+        int high = low + mChildCount[node] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char label = mNames[mStart[middle]].charAt(depth);
+            if (label < c) {
+                low = middle + 1;
+            } else if (label > c) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private void build() {
+        mNodeCount = 1;
+        mStart[ROOT] = 0;
+        mEnd[ROOT] = mNames.length;
+        if (mNames.length == 0) {
+            return;
+        }
+
+        // nodes are allocated when their parent is expanded, so expand in allocation order
+        for (int node = ROOT; node < mNodeCount; node++) {
+            int start = mStart[node];
+            int end = mEnd[node];
+            int depth = commonPrefix(mNames[start], mNames[end - 1]);
+            mDepth[node] = depth;
+
+            int maxWeight = Integer.MIN_VALUE;
+            int i = start;
+            for (; i < end && mNames[i].length() == depth; i++) {
+                maxWeight = Math.max(maxWeight, mWeights[i]);
+            }
+
+            mFirstChild[node] = mNodeCount;
+            while (i < end) {
+                char c = mNames[i].charAt(depth);
+                int childStart = i;
+                while (i < end && mNames[i].charAt(depth) == c) {
+                    i++;
+                }
+                int child = mNodeCount++;
+                mStart[child] = childStart;
+                mEnd[child] = i;
+            }
+            mChildCount[node] = mNodeCount - mFirstChild[node];
+            mMaxWeight[node] = maxWeight;
+        }
+
+        // children always follow their parent, so weights can be propagated upwards in reverse
+        for (int node = mNodeCount - 1; node >= ROOT; node--) {
+            for (int child = mFirstChild[node]; child < mFirstChild[node] + mChildCount[node]; child++) {
+                mMaxWeight[node] = Math.max(mMaxWeight[node], mMaxWeight[child]);
+            }
+        }
+    }
+
+    private static int commonPrefix(String lhs, String rhs) {
+        int length = Math.min(lhs.length(), rhs.length());
+        int i = 0;
+        while (i < length && lhs.charAt(i) == rhs.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static final Comparator<Completion> NAME_ORDER = new Comparator<Completion>() {
+        @Override
+        public int compare(Completion lhs, Completion rhs) {
+            return lhs.mName.compareTo(rhs.mName);
+        }
+    };
+
+    /**
+     * Highest weight first, then name order; a node is expanded before a result it contains is returned.
+     */
+    private static final Comparator<Candidate> BEST_FIRST = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate lhs, Candidate rhs) {
+            if (lhs.mWeight != rhs.mWeight) {
+                return lhs.mWeight > rhs.mWeight ? -1 : 1;
+            }
+            if (lhs.mFirstResult != rhs.mFirstResult) {
+                return lhs.mFirstResult < rhs.mFirstResult ? -1 : 1;
+            }
+            if (lhs.mIsNode != rhs.mIsNode) {
+                return lhs.mIsNode ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
+    private static final class Completion {
+        private final String mName;
+        private final SearchResult mSearchResult;
+        private final int mWeight;
+
+        private Completion(String name, SearchResult searchResult, int weight) {
+            mName = name;
+            mSearchResult = searchResult;
+            mWeight = weight;
+        }
+    }
+
+    private static final class Candidate {
+        private final int mIndex;
+        private final int mWeight;
+        private final int mFirstResult;
+        private final boolean mIsNode;
+
+        private Candidate(int index, int weight, int firstResult, boolean isNode) {
+            mIndex = index;
+            mWeight = weight;
+            mFirstResult = firstResult;
+            mIsNode = isNode;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.android.providers.bng;
+
+import com.esri.core.geometry.Point;
+
+/**
+ * Converts WGS84 (EPSG:4326) longitude and latitude to British National Grid (EPSG:27700) eastings and northings.
+ *
+ * The datum shift from WGS84 to OSGB36 is the seven parameter Helmert transformation published by Ordnance Survey,
+ * good to about 5 metres across Great Britain; enough to compare places, not to survey them (that needs OSTN15).
+ */
+public final class BritishNationalGrid {
+
+    // GRS80, as WGS84 to within a millimetre
+    private static final double WGS84_A = 6378137.000;
+    private static final double WGS84_B = 6356752.3141;
+
+    // Airy 1830, the ellipsoid of OSGB36
+    private static final double AIRY_A = 6377563.396;
+    private static final double AIRY_B = 6356256.909;
+
+    // Helmert transformation from WGS84 to OSGB36
+    private static final double TX = -446.448;
+    private static final double TY = 125.157;
+    private static final double TZ = -542.060;
+    private static final double SCALE = 1 + 20.4894e-6;
+    private static final double RX = Math.toRadians(-0.1502 / 3600);
+    private static final double RY = Math.toRadians(-0.2470 / 3600);
+    private static final double RZ = Math.toRadians(-0.8421 / 3600);
+
+    // the National Grid's transverse Mercator projection
+    private static final double F0 = 0.9996012717;
+    private static final double LAT0 = Math.toRadians(49);
+    private static final double LON0 = Math.toRadians(-2);
+    private static final double E0 = 400000;
+    private static final double N0 = -100000;
+
+    private BritishNationalGrid() {}
+
+    /**
+     * @param longitude WGS84 longitude in degrees
+     * @param latitude WGS84 latitude in degrees
+     * @return the British National Grid easting and northing, in metres
+     */
+    public static Point fromWgs84(double longitude, double latitude) {
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+
+        // to earth centred cartesian coordinates on the WGS84 ellipsoid
+        double e2 = 1 - (WGS84_B * WGS84_B) / (WGS84_A * WGS84_A);
+        double sinLat = Math.sin(lat);
+        double nu = WGS84_A / Math.sqrt(1 - e2 * sinLat * sinLat);
+        double x1 = nu * Math.cos(lat) * Math.cos(lon);
+        double y1 = nu * Math.cos(lat) * Math.sin(lon);
+        double z1 = (1 - e2) * nu * sinLat;
+
+        // shift to OSGB36
+        double x2 = TX + x1 * SCALE - y1 * RZ + z1 * RY;
+        double y2 = TY + x1 * RZ + y1 * SCALE - z1 * RX;
+        double z2 = TZ - x1 * RY + y1 * RX + z1 * SCALE;
+
+        // back to latitude and longitude on the Airy ellipsoid
+        double airyE2 = 1 - (AIRY_B * AIRY_B) / (AIRY_A * AIRY_A);
+        double p = Math.sqrt(x2 * x2 + y2 * y2);
+        double osgbLat = Math.atan2(z2, p * (1 - airyE2));
+        for (int i = 0; i < 10; i++) {
+            double sin = Math.sin(osgbLat);
+            double airyNu = AIRY_A / Math.sqrt(1 - airyE2 * sin * sin);
+            double next = Math.atan2(z2 + airyE2 * airyNu * sin, p);
+            if (Math.abs(next - osgbLat) < 1e-12) {
+                osgbLat = next;
+                break;
+            }
+            osgbLat = next;
+        }
+        double osgbLon = Math.atan2(y2, x2);
+
+        return fromOsgb36Radians(osgbLat, osgbLon);
+    }
+
+    /**
+     * @param latitude OSGB36 latitude in degrees
+     * @param longitude OSGB36 longitude in degrees
+     * @return the British National Grid easting and northing, in metres
+     */
+    static Point fromOsgb36(double latitude, double longitude) {
+        return fromOsgb36Radians(Math.toRadians(latitude), Math.toRadians(longitude));
+    }
+
+    /**
+     * The transverse Mercator projection as set out in Ordnance Survey's "A guide to coordinate systems in Great
+     * Britain", annexe C.
+     */
+    private static Point fromOsgb36Radians(double lat, double lon) {
+        double a = AIRY_A;
+        double b = AIRY_B;
+        double e2 = 1 - (b * b) / (a * a);
+        double n = (a - b) / (a + b);
+        double n2 = n * n;
+        double n3 = n2 * n;
+
+        double sinLat = Math.sin(lat);
+        double cosLat = Math.cos(lat);
+        double tanLat = Math.tan(lat);
+        double tan2 = tanLat * tanLat;
+        double tan4 = tan2 * tan2;
+        double cos3 = cosLat * cosLat * cosLat;
+        double cos5 = cos3 * cosLat * cosLat;
+
+        double v = 1 - e2 * sinLat * sinLat;
+        double nu = a * F0 / Math.sqrt(v);
+        double rho = a * F0 * (1 - e2) / Math.pow(v, 1.5);
+        double eta2 = nu / rho - 1;
+
+        double dLat = lat - LAT0;
+        double sLat = lat + LAT0;
+        double m = b * F0 * ((1 + n + 5.0 / 4 * n2 + 5.0 / 4 * n3) * dLat
+                - (3 * n + 3 * n2 + 21.0 / 8 * n3) * Math.sin(dLat) * Math.cos(sLat)
+                + (15.0 / 8 * n2 + 15.0 / 8 * n3) * Math.sin(2 * dLat) * Math.cos(2 * sLat)
+                - 35.0 / 24 * n3 * Math.sin(3 * dLat) * Math.cos(3 * sLat));
+
+        double i = m + N0;
+        double ii = nu / 2 * sinLat * cosLat;
+        double iii = nu / 24 * sinLat * cos3 * (5 - tan2 + 9 * eta2);
+        double iiiA = nu / 720 * sinLat * cos5 * (61 - 58 * tan2 + tan4);
+        double iv = nu * cosLat;
+        double vv = nu / 6 * cos3 * (nu / rho - tan2);
+        double vi = nu / 120 * cos5 * (5 - 18 * tan2 + tan4 + 14 * eta2 - 58 * tan2 * eta2);
+
+        double dLon = lon - LON0;
+        double dLon2 = dLon * dLon;
+        double northing = i + ii * dLon2 + iii * dLon2 * dLon2 + iiiA * dLon2 * dLon2 * dLon2;
+        double easting = E0 + iv * dLon + vv * dLon2 * dLon + vi * dLon2 * dLon2 * dLon;
+        return new Point(easting, northing);
+    }
+}
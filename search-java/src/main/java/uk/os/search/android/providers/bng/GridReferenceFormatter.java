@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.bng;
+
+/**
+ * Formats British National Grid (EPSG:27700) coordinates as grid references straight into a caller supplied
+ * {@link StringBuilder} or {@code char[]}, for labelling many features without creating intermediate strings.
+ *
+ * Output follows {@link GeoPattern#toGridReference(int, int)} when condensed, e.g. "SU41" or "SU 4005 1003", and
+ * {@link GeoPattern#toGridReference(int, int, int)} when given a number of digits, e.g. "SU 40052 10037".
+ */
+public final class GridReferenceFormatter {
+
+    /**
+     * the longest grid reference written, e.g. "SU 40052 10037"
+     */
+    public static final int MAX_LENGTH = 14;
+
+    private static final int MAX_DIGITS = 5;
+
+    private static final String[] NATGRID_LETTERS = {"VWXYZ", "QRSTU", "LMNOP", "FGHJK", "ABCDE"};
+
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000};
+
+    private GridReferenceFormatter() {}
+
+    /**
+     * Append the most condensed grid reference for a point, trailing zeros being removed from both the easting and
+     * northing figures.
+     *
+     * @param easting the x cartesian coordinate in British National Grid
+     * @param northing the y cartesian coordinate in British National Grid
+     * @param out the builder appended to
+     * @return false, and nothing appended, if the point is not on the grid
+     */
+    public static boolean format(int easting, int northing, StringBuilder out) {
+        int digits = condensedDigits(easting, northing);
+        return append(easting, northing, digits, digits > 2, out);
+    }
+
+    /**
+     * Append a grid reference with a fixed number of digits for each of the easting and northing, e.g. two digits
+     * gives "SU 40 10".
+     *
+     * @param easting the x cartesian coordinate in British National Grid
+     * @param northing the y cartesian coordinate in British National Grid
+     * @param digits from zero, for the 100km square letters only, to five; more than five is treated as five
+     * @param out the builder appended to
+     * @return false, and nothing appended, if the point is not on the grid
+     */
+    public static boolean format(int easting, int northing, int digits, StringBuilder out) {
+        int figures = checkDigits(digits);
+        return append(easting, northing, figures, figures > 0, out);
+    }
+
+    /**
+     * The condensed grid reference for a point, as {@link #format(int, int, StringBuilder)}.
+     *
+     * @param easting the x cartesian coordinate in British National Grid
+     * @param northing the y cartesian coordinate in British National Grid
+     * @param out the array written to, with at least {@link #MAX_LENGTH} characters from the offset
+     * @param offset the index of the first character written
+     * @return the number of characters written, or -1 if the point is not on the grid
+     */
+    public static int format(int easting, int northing, char[] out, int offset) {
+        int digits = condensedDigits(easting, northing);
+        return write(easting, northing, digits, digits > 2, out, offset);
+    }
+
+    /**
+     * The grid reference for a point with a fixed number of digits, as
+     * {@link #format(int, int, int, StringBuilder)}.
+     *
+     * @param easting the x cartesian coordinate in British National Grid
+     * @param northing the y cartesian coordinate in British National Grid
+     * @param digits from zero to five; more than five is treated as five
+     * @param out the array written to, with at least {@link #MAX_LENGTH} characters from the offset
+     * @param offset the index of the first character written
+     * @return the number of characters written, or -1 if the point is not on the grid
+     */
+    public static int format(int easting, int northing, int digits, char[] out, int offset) {
+        int figures = checkDigits(digits);
+        return write(easting, northing, figures, figures > 0, out, offset);
+    }
+
+    /**
+     * Format the condensed grid reference of each point, sharing one buffer between them.
+     *
+     * @param eastings the x cartesian coordinates in British National Grid
+     * @param northings the y cartesian coordinates, in the same order as the eastings
+     * @return the grid references, null for any point that is not on the grid
+     */
+    public static String[] formatAll(int[] eastings, int[] northings) {
+        checkLengths(eastings, northings);
+        String[] references = new String[eastings.length];
+        char[] buffer = new char[MAX_LENGTH];
+        for (int i = 0; i < references.length; i++) {
+            int length = format(eastings[i], northings[i], buffer, 0);
+            references[i] = length < 0 ? null : new String(buffer, 0, length);
+        }
+        return references;
+    }
+
+    /**
+     * Format the grid reference of each point with a fixed number of digits, sharing one buffer between them.
+     *
+     * @param eastings the x cartesian coordinates in British National Grid
+     * @param northings the y cartesian coordinates, in the same order as the eastings
+     * @param digits from zero to five; more than five is treated as five
+     * @return the grid references, null for any point that is not on the grid
+     */
+    public static String[] formatAll(int[] eastings, int[] northings, int digits) {
+        checkLengths(eastings, northings);
+        String[] references = new String[eastings.length];
+        char[] buffer = new char[MAX_LENGTH];
+        for (int i = 0; i < references.length; i++) {
+            int length = format(eastings[i], northings[i], digits, buffer, 0);
+            references[i] = length < 0 ? null : new String(buffer, 0, length);
+        }
+        return references;
+    }
+
+    /**
+     * Append a grid reference with the given number of digits, spacing the figures apart from the letters and each
+     * other when asked to.
+     */
+    static boolean append(int easting, int northing, int digits, boolean spaced, StringBuilder out) {
+        if (!isOnGrid(easting, northing)) {
+            return false;
+        }
+        out.append(firstLetter(easting, northing)).append(secondLetter(easting, northing));
+        if (spaced) {
+            out.append(' ');
+        }
+        appendFigures(easting % 100000, digits, out);
+        if (spaced) {
+            out.append(' ');
+        }
+        appendFigures(northing % 100000, digits, out);
+        return true;
+    }
+
+    private static int write(int easting, int northing, int digits, boolean spaced, char[] out, int offset) {
+        if (!isOnGrid(easting, northing)) {
+            return -1;
+        }
+        int position = offset;
+        out[position++] = firstLetter(easting, northing);
+        out[position++] = secondLetter(easting, northing);
+        if (spaced) {
+            out[position++] = ' ';
+        }
+        position = writeFigures(easting % 100000, digits, out, position);
+        if (spaced) {
+            out[position++] = ' ';
+        }
+        position = writeFigures(northing % 100000, digits, out, position);
+        return position - offset;
+    }
+
+    private static void appendFigures(int metres, int digits, StringBuilder out) {
+        for (int i = 0, divisor = 10000; i < digits; i++, divisor /= 10) {
+            out.append((char) ('0' + metres / divisor % 10));
+        }
+    }
+
+    private static int writeFigures(int metres, int digits, char[] out, int position) {
+        for (int i = 0, divisor = 10000; i < digits; i++, divisor /= 10) {
+            out[position++] = (char) ('0' + metres / divisor % 10);
+        }
+        return position;
+    }
+
+    /**
+     * @return the fewest digits that describe the point exactly, zeros common to the end of both the easting and
+     * northing figures being removed
+     */
+    private static int condensedDigits(int easting, int northing) {
+        int digits = MAX_DIGITS;
+        while (digits > 0) {
+            int divisor = POWERS_OF_TEN[MAX_DIGITS - digits + 1];
+            if (easting % divisor != 0 || northing % divisor != 0) {
+                break;
+            }
+            digits--;
+        }
+        return digits;
+    }
+
+    /**
+     * @return true if the point lies within the 500km squares lettered S, T, N, O, H and J, and their neighbours
+     */
+    private static boolean isOnGrid(int easting, int northing) {
+        return easting >= 0 && northing >= 0 && easting / 500000 + 2 <= 4 && northing / 500000 + 1 <= 4;
+    }
+
+    // the 500km square
+    private static char firstLetter(int easting, int northing) {
+        return NATGRID_LETTERS[northing / 500000 + 1].charAt(easting / 500000 + 2);
+    }
+
+    // the 100km square within it
+    private static char secondLetter(int easting, int northing) {
+        return NATGRID_LETTERS[northing % 500000 / 100000].charAt(easting % 500000 / 100000);
+    }
+
+    private static int checkDigits(int digits) {
+        if (digits < 0) {
+            throw new IllegalArgumentException("digits must not be negative");
+        }
+        return Math.min(digits, MAX_DIGITS);
+    }
+
+    private static void checkLengths(int[] eastings, int[] northings) {
+        if (eastings.length != northings.length) {
+            throw new IllegalArgumentException("there must be a northing for every easting");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.bng;
+
+/**
+ * Parses British National Grid references in a single pass over the characters, without regular expressions or
+ * intermediate strings, as it runs on every keystroke of a search.
+ *
+ * A parsed reference is packed into a {@code long}, read with {@link #easting(long)}, {@link #northing(long)} and
+ * {@link #digits(long)}, so that no object is created for the many search terms that are not grid references.
+ */
+public final class GridReferenceParser {
+
+    /**
+     * returned by {@link #parse(CharSequence)} when the text is not a grid reference
+     */
+    public static final long INVALID = -1L;
+
+    private static final int MAX_FIGURES = 10;
+
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000};
+
+    private GridReferenceParser() {}
+
+    /**
+     * Parse two grid letters followed by an even number of figures, up to ten, e.g. "SU", "SU41", "TL 032 386" or
+     * "SU 40052 10037".  Case and whitespace are ignored.
+     *
+     * @param text a user supplied British National Grid reference
+     * @return the packed reference, or {@link #INVALID}
+     */
+    public static long parse(CharSequence text) {
+        int first = -1;
+        int second = -1;
+        int figures = 0;
+        long value = 0;
+
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (isWhitespace(c)) {
+                continue;
+            }
+            if (c >= '0' && c <= '9') {
+                if (second < 0 || figures == MAX_FIGURES) {
+                    return INVALID;
+                }
+                value = value * 10 + (c - '0');
+                figures++;
+                continue;
+            }
+            int letter = letterIndex(c);
+            if (letter < 0 || figures > 0 || second >= 0) {
+                return INVALID;
+            }
+            if (first < 0) {
+                first = letter;
+            } else {
+                second = letter;
+            }
+        }
+        if (second < 0 || (figures & 1) != 0) {
+            return INVALID;
+        }
+
+        // convert grid letters into 100km-square indexes from false origin (grid square SV)
+        int squareEasting = ((first - 2) % 5) * 5 + (second % 5);
+        int squareNorthing = (19 - (first / 5) * 5) - (second / 5);
+        if (squareEasting < 0 || squareEasting > 6 || squareNorthing < 0 || squareNorthing > 12) {
+            return INVALID;
+        }
+
+        int digits = figures / 2;
+        int scale = POWERS_OF_TEN[digits];
+        // normalise to the 1m grid, at the south west corner of the square the figures describe
+        int precision = POWERS_OF_TEN[5 - digits];
+        int easting = (squareEasting * scale + (int) (value / scale)) * precision;
+        int northing = (squareNorthing * scale + (int) (value % scale)) * precision;
+        return pack(easting, northing, digits);
+    }
+
+    /**
+     * @param reference a reference returned by {@link #parse(CharSequence)}
+     * @return the easting of the south west corner of the square, in metres
+     */
+    public static int easting(long reference) {
+        return (int) (reference >>> 32);
+    }
+
+    /**
+     * @param reference a reference returned by {@link #parse(CharSequence)}
+     * @return the northing of the south west corner of the square, in metres
+     */
+    public static int northing(long reference) {
+        return (int) (reference >>> 4) & 0xfffffff;
+    }
+
+    /**
+     * @param reference a reference returned by {@link #parse(CharSequence)}
+     * @return the number of figures given for each of the easting and northing, from zero to five
+     */
+    public static int digits(long reference) {
+        return (int) reference & 0xf;
+    }
+
+    /**
+     * @param reference a reference returned by {@link #parse(CharSequence)}
+     * @return the length of a side of the square, in metres, from 100000 for zero digits down to 1 for five
+     */
+    public static int precision(long reference) {
+        return POWERS_OF_TEN[5 - digits(reference)];
+    }
+
+    static long pack(int easting, int northing, int digits) {
+        return ((long) easting << 32) | ((long) northing << 4) | digits;
+    }
+
+    /**
+     * @return the position of the letter in the grid alphabet, A to Z without I, or -1 if it is not a grid letter
+     */
+    private static int letterIndex(char c) {
+        if (c >= 'a' && c <= 'z') {
+            c -= 'a' - 'A';
+        }
+        if (c < 'A' || c > 'Z' || c == 'I') {
+            return -1;
+        }
+        return c < 'I' ? c - 'A' : c - 'A' - 1;
+    }
+
+    // the characters matched by \s
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -17,14 +17,28 @@
 package uk.os.search.android.providers.bng;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import rx.Observable;
 import rx.Subscriber;
 import uk.os.search.SearchResult;
-import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.LocalProvider;
+import uk.os.search.android.providers.QueryType;
+import uk.os.search.android.providers.TypedProvider;
+
+public class GridReferenceProvider implements TypedProvider, LocalProvider {
+
+    private static final Set<QueryType> QUERY_TYPES = Collections.unmodifiableSet(
+            EnumSet.of(QueryType.GRID_REFERENCE));
+
+    @Override
+    public Set<QueryType> getQueryTypes() {
+        return QUERY_TYPES;
+    }
 
-public class GridReferenceProvider implements Provider {
     @Override
     public Observable<List<SearchResult>> query(final String searchTerm) {
         return Observable.create(new Observable.OnSubscribe<List<SearchResult>>() {
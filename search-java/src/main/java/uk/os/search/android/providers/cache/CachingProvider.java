@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.ProviderDecorator;
+import uk.os.search.metrics.SearchMetrics;
+import uk.os.search.util.TextUtil;
+
+/**
+ * Caches the results of another provider by normalised search term, so that repeated searches do not go back to a
+ * remote API.
+ *
+ * Entries expire after a time to live and the least recently used entry is evicted once the cache is full.  Errors
+ * are never cached.
+ *
+ * When prefix refinement is enabled, a search term that extends a cached term, e.g. "southamp" after "southam", is
+ * answered by filtering the cached results locally, provided they are complete, i.e. fewer than the maximum number
+ * of results the provider returns.  Truncated result sets, or a local filter that matches nothing, fall back to the
+ * decorated provider.
+ */
+public class CachingProvider extends ProviderDecorator {
+
+    public static class Builder {
+
+        private final Provider mProvider;
+        private int mMaxEntries = 256;
+        private long mTimeToLiveMillis = TimeUnit.MINUTES.toMillis(5);
+        private Scheduler mScheduler = Schedulers.immediate();
+        private int mRefineBelow = NO_REFINEMENT;
+        private SearchMetrics mMetrics = SearchMetrics.NONE;
+
+        /**
+         * @param provider the provider whose results are to be cached
+         */
+        public Builder(Provider provider) {
+            mProvider = provider;
+        }
+
+        /**
+         * @param maxEntries the maximum number of search terms to hold before evicting the least recently used
+         * @return this builder
+         */
+        public Builder setMaxEntries(int maxEntries) {
+            if (maxEntries < 1) {
+                throw new IllegalArgumentException("max entries must be at least one");
+            }
+            mMaxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * @param timeToLive how long results remain valid after being fetched
+         * @param unit the unit of the time to live
+         * @return this builder
+         */
+        public Builder setTimeToLive(long timeToLive, TimeUnit unit) {
+            if (timeToLive < 1) {
+                throw new IllegalArgumentException("time to live must be positive");
+            }
+            mTimeToLiveMillis = unit.toMillis(timeToLive);
+            return this;
+        }
+
+        /**
+         * @param scheduler the scheduler whose clock is used to expire entries
+         * @return this builder
+         */
+        public Builder setScheduler(Scheduler scheduler) {
+            mScheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Answer longer search terms from the complete results of a cached prefix.
+         *
+         * @param maxResults the maximum number of results the decorated provider returns; a cached result set of
+         *                   this size is assumed to be truncated
+         * @return this builder
+         */
+        public Builder refinePrefixes(int maxResults) {
+            if (maxResults < 1) {
+                throw new IllegalArgumentException("max results must be at least one");
+            }
+            mRefineBelow = maxResults;
+            return this;
+        }
+
+        /**
+         * @param metrics told the outcome of each query; by default {@link SearchMetrics#NONE}
+         * @return this builder
+         */
+        public Builder setMetrics(SearchMetrics metrics) {
+            if (metrics == null) {
+                throw new IllegalArgumentException("metrics is null");
+            }
+            mMetrics = metrics;
+            return this;
+        }
+
+        public CachingProvider build() {
+            return new CachingProvider(this);
+        }
+    }
+
+    private static final int NO_REFINEMENT = 0;
+
+    private final long mTimeToLiveMillis;
+    private final Scheduler mScheduler;
+    private final int mRefineBelow;
+    private final Map<String, CacheEntry> mEntries;
+    private final SearchMetrics mMetrics;
+    private final String mSource;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mPrefixHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+
+    private CachingProvider(Builder builder) {
+        super(builder.mProvider);
+        mTimeToLiveMillis = builder.mTimeToLiveMillis;
+        mScheduler = builder.mScheduler;
+        mRefineBelow = builder.mRefineBelow;
+        mMetrics = builder.mMetrics;
+        mSource = ProviderDecorator.unwrap(builder.mProvider).getClass().getSimpleName();
+
+        final int maxEntries = builder.mMaxEntries;
+        mEntries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                boolean full = size() > maxEntries;
+                if (full) {
+                    mEvictions.incrementAndGet();
+                }
+                return full;
+            }
+        };
+    }
+
+    @Override
+    public Observable<List<SearchResult>> query(final String searchTerm) {
+        return Observable.defer(new Func0<Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> call() {
+                final String key = TextUtil.normalise(searchTerm);
+
+                List<SearchResult> cached = get(key);
+                if (cached != null) {
+                    mHits.incrementAndGet();
+                    mMetrics.onOutcome(mSource, SearchMetrics.Outcome.CACHE_HIT);
+                    return Observable.just(cached);
+                }
+
+                CacheEntry refined = refine(key);
+                if (refined != null) {
+                    mPrefixHits.incrementAndGet();
+                    mMetrics.onOutcome(mSource, SearchMetrics.Outcome.CACHE_PREFIX_HIT);
+                    put(key, refined);
+                    return Observable.<List<SearchResult>>just(new ArrayList<>(refined.mSearchResults));
+                }
+
+                mMisses.incrementAndGet();
+                mMetrics.onOutcome(mSource, SearchMetrics.Outcome.CACHE_MISS);
+                return getProvider().query(searchTerm).doOnNext(new Action1<List<SearchResult>>() {
+                    @Override
+                    public void call(List<SearchResult> searchResults) {
+                        put(key, searchResults);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the number of queries answered from the cache
+     */
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    /**
+     * @return the number of queries answered by filtering the cached results of a shorter search term
+     */
+    public long getPrefixHitCount() {
+        return mPrefixHits.get();
+    }
+
+    /**
+     * @return the number of queries passed on to the decorated provider
+     */
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    /**
+     * @return the number of entries removed to make room for newer ones
+     */
+    public long getEvictionCount() {
+        return mEvictions.get();
+    }
+
+    /**
+     * @return the number of search terms currently cached, including any that have expired but not been removed
+     */
+    public int size() {
+        synchronized (mEntries) {
+            return mEntries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (mEntries) {
+            mEntries.clear();
+        }
+    }
+
+    /**
+     * @return a copy of the cached results, as callers are free to modify them, or null when absent or expired
+     */
+    private List<SearchResult> get(String key) {
+        synchronized (mEntries) {
+            CacheEntry entry = mEntries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (mScheduler.now() >= entry.mExpiresAt) {
+                mEntries.remove(key);
+                return null;
+            }
+            return new ArrayList<>(entry.mSearchResults);
+        }
+    }
+
+    /**
+     * @param key a normalised search term that is not cached
+     * @return the results of the longest complete cached prefix of the key that match the key, expiring with the
+     * prefix's results as they come from the same query, or null if there are none
+     */
+    private CacheEntry refine(String key) {
+        if (mRefineBelow == NO_REFINEMENT) {
+            return null;
+        }
+
+        CacheEntry prefix = null;
+        synchronized (mEntries) {
+            long now = mScheduler.now();
+            for (int end = key.length() - 1; end > 0 && prefix == null; end--) {
+                CacheEntry entry = mEntries.get(key.substring(0, end));
+                if (entry != null && entry.mComplete && now < entry.mExpiresAt) {
+                    prefix = entry;
+                }
+            }
+        }
+        if (prefix == null) {
+            return null;
+        }
+
+        String[] tokens = key.split("[ ,]+");
+        List<SearchResult> matches = new ArrayList<>();
+        for (SearchResult candidate : prefix.mSearchResults) {
+            if (matches(candidate, tokens)) {
+                matches.add(candidate);
+            }
+        }
+        // a subset of complete results is itself complete
+        return matches.isEmpty() ? null : new CacheEntry(matches, prefix.mExpiresAt, true);
+    }
+
+    private static boolean matches(SearchResult searchResult, String[] tokens) {
+        String text = (searchResult.getName() + " " + searchResult.getContext()).toLowerCase(Locale.ENGLISH);
+        for (String token : tokens) {
+            if (!text.contains(token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void put(String key, List<SearchResult> searchResults) {
+        boolean complete = mRefineBelow != NO_REFINEMENT && searchResults.size() < mRefineBelow;
+        put(key, new CacheEntry(new ArrayList<>(searchResults), mScheduler.now() + mTimeToLiveMillis, complete));
+    }
+
+    private void put(String key, CacheEntry entry) {
+        synchronized (mEntries) {
+            mEntries.put(key, entry);
+        }
+    }
+
+    private static final class CacheEntry {
+        private final List<SearchResult> mSearchResults;
+        private final long mExpiresAt;
+        private final boolean mComplete;
+
+        private CacheEntry(List<SearchResult> searchResults, long expiresAt, boolean complete) {
+            mSearchResults = searchResults;
+            mExpiresAt = expiresAt;
+            mComplete = complete;
+        }
+    }
+}
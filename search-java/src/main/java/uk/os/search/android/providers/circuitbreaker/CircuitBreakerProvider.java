@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.circuitbreaker;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.ProviderDecorator;
+import uk.os.search.metrics.SearchMetrics;
+
+/**
+ * Stops querying another provider while it is failing, so that searches are answered without waiting on it.
+ *
+ * The circuit is closed to begin with and every query is passed on.  Once at least the minimum number of the last
+ * queries have completed and the share of them that failed, or took longer than the slow call threshold, reaches the
+ * failure rate threshold, the circuit opens: queries fail at once with a {@link CircuitOpenException} for the open
+ * duration.  The circuit is then half open, letting a few trial queries through; if they all succeed it closes again,
+ * otherwise it reopens.
+ *
+ * Failed queries may be retried after an exponential backoff with full jitter.  Retries are paid for from a budget
+ * that each first attempt adds a fraction of a retry to, so a failing provider sees at most that fraction more
+ * queries rather than a multiple of them.
+ */
+public class CircuitBreakerProvider extends ProviderDecorator {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public static class Builder {
+
+        private final Provider mProvider;
+        private double mFailureRateThreshold = 0.5;
+        private long mSlowCallMillis = NO_LIMIT;
+        private int mWindowSize = 20;
+        private int mMinimumCalls = 10;
+        private long mOpenMillis = TimeUnit.SECONDS.toMillis(30);
+        private int mHalfOpenCalls = 1;
+        private int mMaxRetries = 0;
+        private long mBackoffMillis = 100;
+        private long mMaxBackoffMillis = TimeUnit.SECONDS.toMillis(2);
+        private double mRetryRatio = 0.1;
+        private int mMaxRetryBudget = 10;
+        private Scheduler mScheduler = Schedulers.computation();
+        private SearchMetrics mMetrics = SearchMetrics.NONE;
+
+        /**
+         * @param provider the provider to protect
+         */
+        public Builder(Provider provider) {
+            mProvider = provider;
+        }
+
+        /**
+         * @param failureRateThreshold the share of recent queries, from 0 to 1, that must fail to open the circuit
+         * @return this builder
+         */
+        public Builder setFailureRateThreshold(double failureRateThreshold) {
+            if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)) {
+                throw new IllegalArgumentException("failure rate threshold must be above 0 and at most 1");
+            }
+            mFailureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * @param slowCall queries that take longer than this count as failures, even if they succeed; by default
+         *                 only errors count
+         * @param unit the unit of the threshold
+         * @return this builder
+         */
+        public Builder setSlowCallThreshold(long slowCall, TimeUnit unit) {
+            if (slowCall < 1) {
+                throw new IllegalArgumentException("slow call threshold must be positive");
+            }
+            mSlowCallMillis = unit.toMillis(slowCall);
+            return this;
+        }
+
+        /**
+         * @param windowSize the number of most recent queries the failure rate is measured over
+         * @param minimumCalls the number of queries that must have completed before the circuit can open
+         * @return this builder
+         */
+        public Builder setWindow(int windowSize, int minimumCalls) {
+            if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+                throw new IllegalArgumentException("minimum calls must be between one and the window size");
+            }
+            mWindowSize = windowSize;
+            mMinimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * @param open how long the circuit stays open before letting trial queries through
+         * @param unit the unit of the duration
+         * @return this builder
+         */
+        public Builder setOpenDuration(long open, TimeUnit unit) {
+            if (open < 1) {
+                throw new IllegalArgumentException("open duration must be positive");
+            }
+            mOpenMillis = unit.toMillis(open);
+            return this;
+        }
+
+        /**
+         * @param halfOpenCalls the number of trial queries that must succeed to close the circuit again
+         * @return this builder
+         */
+        public Builder setHalfOpenCalls(int halfOpenCalls) {
+            if (halfOpenCalls < 1) {
+                throw new IllegalArgumentException("half open calls must be at least one");
+            }
+            mHalfOpenCalls = halfOpenCalls;
+            return this;
+        }
+
+        /**
+         * Retry failed queries, waiting a random time up to {@code backoff * 2^retry}, capped at {@code maxBackoff}.
+         *
+         * @param maxRetries the maximum number of retries of each query; by default queries are not retried
+         * @param backoff the backoff of the first retry
+         * @param maxBackoff the largest backoff
+         * @param unit the unit of the backoffs
+         * @return this builder
+         */
+        public Builder setRetries(int maxRetries, long backoff, long maxBackoff, TimeUnit unit) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("max retries must not be negative");
+            }
+            if (backoff < 0 || maxBackoff < backoff) {
+                throw new IllegalArgumentException("backoff must be between zero and the max backoff");
+            }
+            mMaxRetries = maxRetries;
+            mBackoffMillis = unit.toMillis(backoff);
+            mMaxBackoffMillis = unit.toMillis(maxBackoff);
+            return this;
+        }
+
+        /**
+         * @param retryRatio the fraction of a retry each query adds to the budget, i.e. the most extra load retries
+         *                   may add; 0.1 by default
+         * @param maxRetryBudget the most retries the budget can save up for a burst of failures; 10 by default
+         * @return this builder
+         */
+        public Builder setRetryBudget(double retryRatio, int maxRetryBudget) {
+            if (retryRatio < 0 || maxRetryBudget < 0) {
+                throw new IllegalArgumentException("retry budget must not be negative");
+            }
+            mRetryRatio = retryRatio;
+            mMaxRetryBudget = maxRetryBudget;
+            return this;
+        }
+
+        /**
+         * @param scheduler the scheduler that keeps time and waits out retry backoffs; the default is
+         *                  {@link Schedulers#computation()}
+         * @return this builder
+         */
+        public Builder setScheduler(Scheduler scheduler) {
+            if (scheduler == null) {
+                throw new IllegalArgumentException("scheduler is null");
+            }
+            mScheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * @param metrics told the outcome of each query; by default {@link SearchMetrics#NONE}
+         * @return this builder
+         */
+        public Builder setMetrics(SearchMetrics metrics) {
+            if (metrics == null) {
+                throw new IllegalArgumentException("metrics is null");
+            }
+            mMetrics = metrics;
+            return this;
+        }
+
+        public CircuitBreakerProvider build() {
+            return new CircuitBreakerProvider(this);
+        }
+    }
+
+    private static final long NO_LIMIT = 0;
+
+    private final double mFailureRateThreshold;
+    private final long mSlowCallMillis;
+    private final int mMinimumCalls;
+    private final long mOpenMillis;
+    private final int mHalfOpenCalls;
+    private final int mMaxRetries;
+    private final long mBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final double mRetryRatio;
+    private final int mMaxRetryBudget;
+    private final Scheduler mScheduler;
+    private final String mSource;
+    private final SearchMetrics mMetrics;
+    private final Random mRandom = new Random();
+
+    // guarded by this
+    private State mState = State.CLOSED;
+    private long mGeneration;
+    private long mStateSince;
+    private final boolean[] mWindow;
+    private int mWindowCount;
+    private int mWindowNext;
+    private int mWindowFailures;
+    private int mHalfOpenStarted;
+    private int mHalfOpenSucceeded;
+    private double mRetryBudget;
+
+    private final AtomicLong mRejected = new AtomicLong();
+    private final AtomicLong mRetries = new AtomicLong();
+
+    private CircuitBreakerProvider(Builder builder) {
+        super(builder.mProvider);
+        mFailureRateThreshold = builder.mFailureRateThreshold;
+        mSlowCallMillis = builder.mSlowCallMillis;
+        mMinimumCalls = builder.mMinimumCalls;
+        mOpenMillis = builder.mOpenMillis;
+        mHalfOpenCalls = builder.mHalfOpenCalls;
+        mMaxRetries = builder.mMaxRetries;
+        mBackoffMillis = builder.mBackoffMillis;
+        mMaxBackoffMillis = builder.mMaxBackoffMillis;
+        mRetryRatio = builder.mRetryRatio;
+        mMaxRetryBudget = builder.mMaxRetryBudget;
+        mScheduler = builder.mScheduler;
+        mMetrics = builder.mMetrics;
+        mWindow = new boolean[builder.mWindowSize];
+        mSource = ProviderDecorator.unwrap(builder.mProvider).getClass().getSimpleName();
+    }
+
+    @Override
+    public Observable<List<SearchResult>> query(final String searchTerm) {
+        return Observable.defer(new Func0<Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> call() {
+                synchronized (CircuitBreakerProvider.this) {
+                    mRetryBudget = Math.min(mMaxRetryBudget, mRetryBudget + mRetryRatio);
+                }
+                return attempt(searchTerm, 0);
+            }
+        });
+    }
+
+    /**
+     * @return the state of the circuit
+     */
+    public synchronized State getState() {
+        return currentState(mScheduler.now());
+    }
+
+    /**
+     * @return the number of queries failed at once because the circuit was open
+     */
+    public long getRejectedCount() {
+        return mRejected.get();
+    }
+
+    /**
+     * @return the number of failed queries retried
+     */
+    public long getRetryCount() {
+        return mRetries.get();
+    }
+
+    private Observable<List<SearchResult>> attempt(final String searchTerm, final int retry) {
+        return call(searchTerm).onErrorResumeNext(new Func1<Throwable, Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> call(Throwable throwable) {
+                if (retry >= mMaxRetries || throwable instanceof CircuitOpenException || !withdrawRetry()) {
+                    return Observable.error(throwable);
+                }
+                mRetries.incrementAndGet();
+                mMetrics.onOutcome(mSource, SearchMetrics.Outcome.RETRIED);
+                return Observable.timer(backoffMillis(retry), TimeUnit.MILLISECONDS, mScheduler)
+                        .concatMap(new Func1<Long, Observable<List<SearchResult>>>() {
+                            @Override
+                            public Observable<List<SearchResult>> call(Long ignored) {
+                                return attempt(searchTerm, retry + 1);
+                            }
+                        });
+            }
+        });
+    }
+
+    private Observable<List<SearchResult>> call(final String searchTerm) {
+        return Observable.defer(new Func0<Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> call() {
+                final long generation = tryAcquire();
+                if (generation < 0) {
+                    mRejected.incrementAndGet();
+                    mMetrics.onOutcome(mSource, SearchMetrics.Outcome.CIRCUIT_REJECTED);
+                    return Observable.error(new CircuitOpenException(mSource));
+                }
+
+                final long startedAt = mScheduler.now();
+                final AtomicBoolean recorded = new AtomicBoolean();
+                return getProvider().query(searchTerm)
+                        .doOnError(new Action1<Throwable>() {
+                            @Override
+                            public void call(Throwable throwable) {
+                                if (recorded.compareAndSet(false, true)) {
+                                    record(generation, false);
+                                }
+                            }
+                        })
+                        .doOnCompleted(new Action0() {
+                            @Override
+                            public void call() {
+                                if (recorded.compareAndSet(false, true)) {
+                                    record(generation, !isSlow(startedAt));
+                                }
+                            }
+                        })
+                        .doOnUnsubscribe(new Action0() {
+                            @Override
+                            public void call() {
+                                // abandoned before completing, e.g. by a timeout
+                                if (recorded.compareAndSet(false, true)) {
+                                    record(generation, false);
+                                }
+                            }
+                        });
+            }
+        });
+    }
+
+    private boolean isSlow(long startedAt) {
+        return mSlowCallMillis != NO_LIMIT && mScheduler.now() - startedAt > mSlowCallMillis;
+    }
+
+    /**
+     * @return the generation of the circuit the query runs in, or -1 if the query may not run
+     */
+    private synchronized long tryAcquire() {
+        switch (currentState(mScheduler.now())) {
+            case CLOSED:
+                return mGeneration;
+            case HALF_OPEN:
+                if (mHalfOpenStarted < mHalfOpenCalls) {
+                    mHalfOpenStarted++;
+                    return mGeneration;
+                }
+                return -1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Move an open circuit to half open once the open duration has passed.
+     */
+    private State currentState(long now) {
+        if (mState == State.OPEN && now - mStateSince >= mOpenMillis) {
+            transition(State.HALF_OPEN, now);
+        }
+        return mState;
+    }
+
+    private void record(long generation, boolean success) {
+        if (update(generation, success)) {
+            mMetrics.onOutcome(mSource, SearchMetrics.Outcome.CIRCUIT_OPENED);
+        }
+    }
+
+    /**
+     * @return true if the outcome opened the circuit
+     */
+    private synchronized boolean update(long generation, boolean success) {
+        if (generation != mGeneration) {
+            // started before the circuit last changed state
+            return false;
+        }
+        long now = mScheduler.now();
+        if (mState == State.HALF_OPEN) {
+            if (!success) {
+                transition(State.OPEN, now);
+                return true;
+            }
+            if (++mHalfOpenSucceeded >= mHalfOpenCalls) {
+                transition(State.CLOSED, now);
+            }
+            return false;
+        }
+        if (mState != State.CLOSED) {
+            return false;
+        }
+
+        if (mWindowCount == mWindow.length) {
+            if (!mWindow[mWindowNext]) {
+                mWindowFailures--;
+            }
+        } else {
+            mWindowCount++;
+        }
+        mWindow[mWindowNext] = success;
+        if (!success) {
+            mWindowFailures++;
+        }
+        mWindowNext = (mWindowNext + 1) % mWindow.length;
+
+        if (mWindowCount >= mMinimumCalls && mWindowFailures >= mFailureRateThreshold * mWindowCount) {
+            transition(State.OPEN, now);
+            return true;
+        }
+        return false;
+    }
+
+    private void transition(State state, long now) {
+        mState = state;
+        mGeneration++;
+        mStateSince = now;
+        mHalfOpenStarted = 0;
+        mHalfOpenSucceeded = 0;
+        mWindowCount = 0;
+        mWindowNext = 0;
+        mWindowFailures = 0;
+    }
+
+    private synchronized boolean withdrawRetry() {
+        if (mRetryBudget < 1) {
+            return false;
+        }
+        mRetryBudget -= 1;
+        return true;
+    }
+
+    /**
+     * @return a random backoff up to the exponential backoff of the retry, i.e. full jitter
+     */
+    private long backoffMillis(int retry) {
+        long ceiling = mBackoffMillis << Math.min(retry, 30);
+        if (ceiling > mMaxBackoffMillis || ceiling < 0) {
+            ceiling = mMaxBackoffMillis;
+        }
+        return (long) (mRandom.nextDouble() * (ceiling + 1));
+    }
+}
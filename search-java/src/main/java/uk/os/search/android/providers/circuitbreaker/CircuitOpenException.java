@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.circuitbreaker;
+
+/**
+ * Reported in place of a provider's response while its circuit is open, i.e. it is not queried because it has been
+ * failing.
+ */
+public class CircuitOpenException extends Exception {
+
+    private static final long serialVersionUID = 8190754217650186621L;
+
+    public CircuitOpenException(String source) {
+        super("circuit open: " + source);
+    }
+}
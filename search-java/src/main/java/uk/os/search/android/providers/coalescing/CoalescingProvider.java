@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.coalescing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.ProviderDecorator;
+import uk.os.search.metrics.SearchMetrics;
+import uk.os.search.util.TextUtil;
+
+/**
+ * Shares one query to another provider between all the identical queries made while it is in flight, so that many
+ * users searching for the same term at once cost one request to a remote API.
+ *
+ * Search terms are identical when they normalise to the same text.  Queries made after the shared query has
+ * completed, or after every query sharing it has unsubscribed, start a new one; use a
+ * {@link uk.os.search.android.providers.cache.CachingProvider} around this provider to reuse completed results.
+ * Each query receives its own copy of the results, as callers are free to modify them.
+ */
+public class CoalescingProvider extends ProviderDecorator {
+
+    public static class Builder {
+
+        private final Provider mProvider;
+        private SearchMetrics mMetrics = SearchMetrics.NONE;
+
+        /**
+         * @param provider the provider whose queries are to be shared
+         */
+        public Builder(Provider provider) {
+            mProvider = provider;
+        }
+
+        /**
+         * @param metrics told the outcome of each query; by default {@link SearchMetrics#NONE}
+         * @return this builder
+         */
+        public Builder setMetrics(SearchMetrics metrics) {
+            if (metrics == null) {
+                throw new IllegalArgumentException("metrics is null");
+            }
+            mMetrics = metrics;
+            return this;
+        }
+
+        public CoalescingProvider build() {
+            return new CoalescingProvider(this);
+        }
+    }
+
+    private static final Func1<List<SearchResult>, List<SearchResult>> COPY =
+            new Func1<List<SearchResult>, List<SearchResult>>() {
+                @Override
+                public List<SearchResult> call(List<SearchResult> searchResults) {
+                    return new ArrayList<>(searchResults);
+                }
+            };
+
+    // guarded by itself
+    private final Map<String, Observable<List<SearchResult>>> mInFlight = new HashMap<>();
+
+    private final SearchMetrics mMetrics;
+    private final String mSource;
+
+    private final AtomicLong mJoins = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    private CoalescingProvider(Builder builder) {
+        super(builder.mProvider);
+        mMetrics = builder.mMetrics;
+        mSource = ProviderDecorator.unwrap(builder.mProvider).getClass().getSimpleName();
+    }
+
+    @Override
+    public Observable<List<SearchResult>> query(final String searchTerm) {
+        return Observable.defer(new Func0<Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> call() {
+                String key = TextUtil.normalise(searchTerm);
+                Observable<List<SearchResult>> shared;
+                boolean joined;
+                synchronized (mInFlight) {
+                    shared = mInFlight.get(key);
+                    joined = shared != null;
+                    if (!joined) {
+                        shared = share(key, searchTerm);
+                        mInFlight.put(key, shared);
+                    }
+                }
+                if (joined) {
+                    mJoins.incrementAndGet();
+                    mMetrics.onOutcome(mSource, SearchMetrics.Outcome.COALESCED);
+                } else {
+                    mMisses.incrementAndGet();
+                }
+                return shared.map(COPY);
+            }
+        });
+    }
+
+    /**
+     * @return the number of queries that joined one already in flight
+     */
+    public long getJoinCount() {
+        return mJoins.get();
+    }
+
+    /**
+     * @return the number of queries passed on to the decorated provider
+     */
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    /**
+     * @return the number of distinct search terms currently in flight
+     */
+    public int size() {
+        synchronized (mInFlight) {
+            return mInFlight.size();
+        }
+    }
+
+    /**
+     * @return a query that starts on its first subscription, replays its results to later ones and stops once
+     * every subscriber has unsubscribed
+     */
+    private Observable<List<SearchResult>> share(final String key, String searchTerm) {
+        final AtomicReference<Observable<List<SearchResult>>> shared = new AtomicReference<>();
+        Action0 remove = new Action0() {
+            @Override
+            public void call() {
+                synchronized (mInFlight) {
+                    // a later query may already have replaced this one
+                    if (mInFlight.get(key) == shared.get()) {
+                        mInFlight.remove(key);
+                    }
+                }
+            }
+        };
+        shared.set(getProvider().query(searchTerm)
+                .doOnTerminate(remove)
+                .doOnUnsubscribe(remove)
+                .replay()
+                .refCount());
+        return shared.get();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.latlon;
+
+/**
+ * Reads decimal, degrees minutes and degrees minutes seconds coordinates in a single pass over the characters, e.g.
+ * "51.50722", "51°30.433'N", "51° 30' 26.0\" N" or "51:30:26.0".
+ *
+ * Input that is not a coordinate is reported by returning {@link Double#NaN} rather than throwing, as most search
+ * terms are place names and exceptions are costly to create.  Only the characters up to the first that cannot be part
+ * of a coordinate are read.
+ */
+final class CoordinateLexer {
+
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+    private static final int MAX_DIGITS = 18;
+
+    private final CharSequence mText;
+    private final int mEnd;
+    private int mPosition;
+    private boolean mInteger;
+
+    CoordinateLexer(CharSequence text) {
+        mText = text;
+        mEnd = text.length();
+    }
+
+    /**
+     * @return true if the first non-whitespace character could start a coordinate, so that search terms that cannot
+     * be coordinates are rejected before a lexer is created
+     */
+    static boolean mayStartCoordinate(CharSequence text) {
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (!isWhitespace(c)) {
+                return isDigit(c) || c == '-' || c == '+' || c == '.';
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the next latitude in degrees, or NaN if there is not one.  The range is not checked.
+     */
+    double latitude() {
+        return coordinate('N', 'S');
+    }
+
+    /**
+     * @return the next longitude in degrees, or NaN if there is not one.  The range is not checked.
+     */
+    double longitude() {
+        return coordinate('E', 'W');
+    }
+
+    /**
+     * Skip the comma and/or whitespace between a latitude and longitude.
+     *
+     * @return false if there was no separator
+     */
+    boolean separator() {
+        int start = mPosition;
+        mPosition = nextNonWhitespace(mPosition);
+        if (charAt(mPosition) == ',') {
+            mPosition = nextNonWhitespace(mPosition + 1);
+        }
+        return mPosition > start;
+    }
+
+    /**
+     * @return true if only whitespace remains
+     */
+    boolean atEnd() {
+        return nextNonWhitespace(mPosition) == mEnd;
+    }
+
+    private double coordinate(char positive, char negative) {
+        mPosition = nextNonWhitespace(mPosition);
+        char sign = charAt(mPosition);
+        boolean signed = sign == '-' || sign == '+';
+        if (signed) {
+            mPosition++;
+        }
+
+        double degrees = 0;
+        double scale = 1;
+        int components = 0;
+        char unit = 0;
+        boolean degreeSymbol = false;
+        while (components < 3) {
+            if (components > 0) {
+                // a further component must follow an integer, and directly follow a colon
+                int next = unit == ':' ? mPosition : nextNonWhitespace(mPosition);
+                if (!mInteger || !startsNumber(next)) {
+                    break;
+                }
+                mPosition = next;
+            }
+            double component = number();
+            if (Double.isNaN(component) || (components > 0 && component >= 60)) {
+                return Double.NaN;
+            }
+            degrees += component / scale;
+            scale *= 60;
+            components++;
+
+            int unitAt = nextNonWhitespace(mPosition);
+            char c = charAt(unitAt);
+            if (!isUnit(components, c)) {
+                unit = 0;
+                break;
+            }
+            unit = c;
+            degreeSymbol |= c == '°';
+            mPosition = unitAt + 1;
+        }
+
+        if (components == 3 && unit == ':' && mInteger && isDigit(charAt(mPosition))) {
+            // seconds written as 26:0 rather than 26.0
+            degrees += fraction() / 3600;
+            unit = 0;
+        }
+
+        boolean southOrWest = sign == '-';
+        int hemisphereAt = nextNonWhitespace(mPosition);
+        char hemisphere = Character.toUpperCase(charAt(hemisphereAt));
+        boolean hasHemisphere = unit != 0 && unit != ':' && (hemisphere == positive || hemisphere == negative);
+        if (hasHemisphere) {
+            if (signed) {
+                return Double.NaN;
+            }
+            southOrWest = hemisphere == negative;
+            mPosition = hemisphereAt + 1;
+        } else if (degreeSymbol) {
+            // a degree symbol must be followed by the hemisphere, e.g. 51.5°N
+            return Double.NaN;
+        }
+        return southOrWest ? -degrees : degrees;
+    }
+
+    /**
+     * @return the unsigned decimal number at the current position, or NaN if there is not one
+     */
+    private double number() {
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        for (; mPosition < mEnd; mPosition++) {
+            char c = mText.charAt(mPosition);
+            if (isDigit(c)) {
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if (point) {
+                        fractionDigits++;
+                    }
+                } else if (!point) {
+                    return Double.NaN;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        mInteger = !point;
+        return digits == 0 ? Double.NaN : mantissa / POWERS_OF_TEN[fractionDigits];
+    }
+
+    /**
+     * @return the digits at the current position, read as a decimal fraction
+     */
+    private double fraction() {
+        long mantissa = 0;
+        int digits = 0;
+        for (; mPosition < mEnd && isDigit(mText.charAt(mPosition)); mPosition++) {
+            if (digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + (mText.charAt(mPosition) - '0');
+                digits++;
+            }
+        }
+        return mantissa / POWERS_OF_TEN[digits];
+    }
+
+    private boolean startsNumber(int position) {
+        char c = charAt(position);
+        return isDigit(c) || (c == '.' && isDigit(charAt(position + 1)));
+    }
+
+    /**
+     * @return the units that may follow the degrees, minutes or seconds
+     */
+    private static boolean isUnit(int components, char c) {
+        switch (components) {
+            case 1:
+                return c == '°' || c == ':';
+            case 2:
+                return c == '\'' || c == '′' || c == ':';
+            default:
+                return c == '"' || c == '″' || c == ':';
+        }
+    }
+
+    private int nextNonWhitespace(int position) {
+        while (position < mEnd && isWhitespace(mText.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private char charAt(int position) {
+        return position < mEnd ? mText.charAt(position) : 0;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // as String.trim
+    private static boolean isWhitespace(char c) {
+        return c <= ' ';
+    }
+}
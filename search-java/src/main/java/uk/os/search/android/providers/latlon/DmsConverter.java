@@ -18,7 +18,6 @@ package uk.os.search.android.providers.latlon;
 
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
-import java.util.StringTokenizer;
 
 /**
  * Adapted from:
@@ -75,14 +74,11 @@ public final class DmsConverter {
      */
     public final static double getLatitude(String coordinate) {
         throwIfEmptyOrNull(coordinate);
-        if (coordinate.contains("°")) {
-            String last = coordinate.substring(coordinate.length() - 1);
-            if (!(last.equalsIgnoreCase("S") || last.equalsIgnoreCase("N"))) {
-                throw new IllegalArgumentException("unsupported latitude format:" + coordinate);
-            }
+        CoordinateLexer lexer = new CoordinateLexer(coordinate);
+        double result = lexer.latitude();
+        if (Double.isNaN(result) || !lexer.atEnd()) {
+            throw new IllegalArgumentException("unsupported latitude format:" + coordinate);
         }
-
-        double result = convert(coordinate);
         if (!isValidLatitude(result)) {
             throw new IllegalArgumentException("out of range -90 to 90.  Input: " +
                     coordinate);
@@ -132,14 +128,11 @@ public final class DmsConverter {
      */
     public final static double getLongitude(String coordinate) {
         throwIfEmptyOrNull(coordinate);
-        if (coordinate.contains("°")) {
-            String last = coordinate.substring(coordinate.length() - 1);
-            if (!(last.equalsIgnoreCase("W") || last.equalsIgnoreCase("E"))) {
-                throw new IllegalArgumentException("unsupported longitude format:" + coordinate);
-            }
+        CoordinateLexer lexer = new CoordinateLexer(coordinate);
+        double result = lexer.longitude();
+        if (Double.isNaN(result) || !lexer.atEnd()) {
+            throw new IllegalArgumentException("unsupported longitude format:" + coordinate);
         }
-
-        double result = convert(coordinate);
         if (!isValidLongitude(result)) {
             throw new IllegalArgumentException("out of range -180 to 180.  Input: " +
                     coordinate);
@@ -220,89 +213,11 @@ public final class DmsConverter {
         return sb.toString();
     }
 
-    /**
-     * Converts a String in one of the formats described by
-     * FORMAT_DEGREES, FORMAT_MINUTES, or FORMAT_SECONDS into a
-     * double.
-     *
-     * @throws NullPointerException if coordinate is null
-     * @throws IllegalArgumentException if the coordinate is not
-     * in one of the valid formats.
-     * @param coordinate string DMS value to parse
-     * @return the decimal degree representation
-     */
-    private static double convert(String coordinate) {
-        if (!coordinate.isEmpty()) {
-            coordinate = coordinate.replaceAll(" ", "");
-            String last = coordinate.substring(coordinate.length() - 1);
-            String value = coordinate.replaceFirst("([°'\"][NESWnesw])$", "");
-            coordinate = value.replaceAll("[°']", ":");
-            if (last.equalsIgnoreCase("W") || last.equalsIgnoreCase("S")) {
-                coordinate = "-" + coordinate;
-            }
-        }
-
-        boolean negative = false;
-        if (coordinate.charAt(0) == '-') {
-            coordinate = coordinate.substring(1);
-            negative = true;
-        }
-
-        StringTokenizer st = new StringTokenizer(coordinate, ":");
-        // Note: if not empty cannot be <1
-        int tokens = st.countTokens();
-        try {
-            String degrees = st.nextToken();
-            double val;
-            if (tokens == 1) {
-                val = Double.parseDouble(degrees);
-                return negative ? -val : val;
-            }
-
-            String minutes = st.nextToken();
-            int deg = Integer.parseInt(degrees);
-            double min;
-            double sec = 0.0;
-
-            if (st.hasMoreTokens()) {
-                min = Integer.parseInt(minutes);
-                String seconds = st.nextToken();
-                sec = Double.parseDouble(seconds);
-            } else {
-                min = Double.parseDouble(minutes);
-            }
-
-            boolean isNegative180 = negative && (deg == 180) &&
-                    (min == 0) && (sec == 0);
-
-            // ORIGINAL: deg must be in [0, 179] except for the case of -180 degrees
-            // if ((deg < 0.0) || (deg > 179 && !isNegative180)) {
-            // NEW:
-            if ((deg < 0.0) || (deg > 180 && !isNegative180)) {
-                throw new IllegalArgumentException("coordinate=" + coordinate);
-            }
-            if (min < 0 || min > 59) {
-                throw new IllegalArgumentException("coordinate=" +
-                        coordinate);
-            }
-            if (sec < 0 || sec > 59) {
-                throw new IllegalArgumentException("coordinate=" +
-                        coordinate);
-            }
-
-            val = deg * 3600.0 + min * 60.0 + sec;
-            val /= 3600.0;
-            return negative ? -val : val;
-        } catch (NumberFormatException nfe) {
-            throw new IllegalArgumentException("coordinate=" + coordinate);
-        }
-    }
-
-    private static boolean isValidLatitude(double latitude) {
+    static boolean isValidLatitude(double latitude) {
         return -90 <= latitude && latitude <= 90 ? true : false;
     }
 
-    private static boolean isValidLongitude(double longitude) {
+    static boolean isValidLongitude(double longitude) {
         return -180 <= longitude && longitude <= 180 ? true : false;
     }
 
@@ -18,31 +18,48 @@ package uk.os.search.android.providers.latlon;
 
 import com.esri.core.geometry.Point;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 public class GeoPattern {
 
     private GeoPattern() {}
 
+    /**
+     * @param searchTerm a latitude and longitude, separated by a comma and/or whitespace, each in decimal or degrees
+     *                   minutes seconds form, e.g. "51.50722, -0.1275" or "51°30'26.0\"N 0°07'39.0\"W"
+     * @return the point, with the longitude as x and latitude as y
+     * @throws IllegalArgumentException if the search term is null or is not a latitude and longitude
+     */
     public static Point parseLatLon(String searchTerm) {
         if (searchTerm == null) {
             throw new IllegalArgumentException("null search term!");
         }
-        // a fairly lazy initial regex to have a punt - input might be decimal or DMS (using degrees symbol or colon)
-        Pattern pattern = Pattern.compile("^([°( ?)|\"( ?)|'( ?)|\\w|.|:|-]*)[, ]+([°( ?)|\"( ?)|'( ?)|\\w|.|:|-]*)$");
-        Matcher matcher = pattern.matcher(searchTerm.trim());
-        if (matcher.matches()) {
-            String possiblelatitude = matcher.group(1);
-            String possibleLongitude = matcher.group(2);
-            try {
-                double latitude = DmsConverter.getLatitude(possiblelatitude);
-                double longitude = DmsConverter.getLongitude(possibleLongitude);
-                return new Point(longitude, latitude);
-            } catch (Exception garbageInput) {
-            }
+        Point point = tryParseLatLon(searchTerm);
+        if (point == null) {
+            throw new IllegalArgumentException("unsupported latitude / longitude format:" + searchTerm);
+        }
+        return point;
+    }
+
+    /**
+     * As {@link #parseLatLon(String)}, without the cost of an exception for the many search terms that are not
+     * coordinates.
+     *
+     * @param searchTerm a latitude and longitude
+     * @return the point, or null if the search term is null or is not a latitude and longitude
+     */
+    public static Point tryParseLatLon(String searchTerm) {
+        if (searchTerm == null || !CoordinateLexer.mayStartCoordinate(searchTerm)) {
+            return null;
+        }
+        CoordinateLexer lexer = new CoordinateLexer(searchTerm);
+        double latitude = lexer.latitude();
+        if (!DmsConverter.isValidLatitude(latitude) || !lexer.separator()) {
+            return null;
+        }
+        double longitude = lexer.longitude();
+        if (!DmsConverter.isValidLongitude(longitude) || !lexer.atEnd()) {
+            return null;
         }
-        throw new IllegalArgumentException("unsupported latitude / longitude format:" + searchTerm);
+        return new Point(longitude, latitude);
     }
 }
 
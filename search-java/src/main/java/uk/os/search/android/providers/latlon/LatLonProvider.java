@@ -21,14 +21,27 @@ import com.esri.core.geometry.Point;
 import com.esri.core.geometry.SpatialReference;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import rx.Observable;
 import rx.Subscriber;
 import uk.os.search.SearchResult;
-import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.LocalProvider;
+import uk.os.search.android.providers.QueryType;
+import uk.os.search.android.providers.TypedProvider;
+
+public class LatLonProvider implements TypedProvider, LocalProvider {
+
+    private static final Set<QueryType> QUERY_TYPES = Collections.unmodifiableSet(EnumSet.of(QueryType.LAT_LON));
+
+    @Override
+    public Set<QueryType> getQueryTypes() {
+        return QUERY_TYPES;
+    }
 
-public class LatLonProvider implements Provider{
     @Override
     public Observable<List<SearchResult>> query(final String searchTerm) {
         return Observable.create(new Observable.OnSubscribe<List<SearchResult>>() {
@@ -37,15 +50,15 @@ public class LatLonProvider implements Provider{
                 try {
                     List<SearchResult> result = new ArrayList<>();
 
-                    try {
-                        Point ref = GeoPattern.parseLatLon(searchTerm);
+                    Point ref = GeoPattern.tryParseLatLon(searchTerm);
+                    if (ref != null) {
                         String id = String.format("lat: %s lon: %s", ref.getY(), ref.getX());
                         String name = DmsConverter.getLatitude(ref.getY(), DmsConverter.FORMAT_SECONDS) + " " +
                                 DmsConverter.getLongitude(ref.getX(), DmsConverter.FORMAT_SECONDS);
                         String context = String.format("%.6f", ref.getY()) + ", " + String.format("%.6f", ref.getX());
                         result.add(new LatLonResult(id, name, context, new Point(ref.getX(), ref.getY()),
                                 new Envelope(), SpatialReference.create(4326)));
-                    } catch (IllegalArgumentException ignore) {};
+                    }
 
                     if (!subscriber.isUnsubscribed()) {
                         subscriber.onNext(result);
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.opennames;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import uk.os.search.util.TextUtil;
+
+/**
+ * Builds the index used by {@link OfflineOpennamesProvider} from the OS Open Names CSV download.
+ *
+ * The download is split into one CSV file per 100km grid square, without a header row; each file is added in turn
+ * and the index is written on {@link #close()}.  Each gazetteer entry is stored once with its context pre-formatted,
+ * followed by the sorted, normalised names (NAME1 and, where present, NAME2) pointing back to their entry.
+ *
+ * @see <a href="https://www.ordnancesurvey.co.uk/business-and-government/products/os-open-names.html">https://www.ordnancesurvey.co.uk/business-and-government/products/os-open-names.html</a>
+ */
+public final class OfflineOpennamesIndexer implements Closeable {
+
+    static final int MAGIC = 0x4f534e31;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 20;
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // OS Open Names CSV columns
+    private static final int ID = 0;
+    private static final int NAME1 = 2;
+    private static final int NAME2 = 4;
+    private static final int GEOMETRY_X = 8;
+    private static final int GEOMETRY_Y = 9;
+    private static final int MBR_XMIN = 12;
+    private static final int MBR_YMIN = 13;
+    private static final int MBR_XMAX = 14;
+    private static final int MBR_YMAX = 15;
+    private static final int POSTCODE_DISTRICT = 16;
+    private static final int POPULATED_PLACE = 18;
+    private static final int DISTRICT_BOROUGH = 21;
+    private static final int COUNTY_UNITARY = 24;
+    private static final int REGION = 27;
+    private static final int COUNTRY = 29;
+    private static final int COLUMNS = 34;
+
+    private final File mIndex;
+    private final DataOutputStream mOut;
+    private final List<Key> mKeys = new ArrayList<>();
+    private int mRecordCount;
+    private boolean mClosed;
+
+    /**
+     * @param index the index file to create, replacing any existing file
+     * @throws IOException if the file cannot be created
+     */
+    public OfflineOpennamesIndexer(File index) throws IOException {
+        mIndex = index;
+        mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index), 1 << 16));
+        mOut.write(new byte[HEADER_SIZE]);
+    }
+
+    /**
+     * @param csv one file of the OS Open Names CSV download
+     * @return this indexer
+     * @throws IOException if the file cannot be read or the index written
+     */
+    public OfflineOpennamesIndexer add(File csv) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(csv), UTF_8);
+        try {
+            return add(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @param csv OS Open Names CSV content; a header row, if present, is skipped
+     * @return this indexer
+     * @throws IOException if the content cannot be read or the index written
+     */
+    public OfflineOpennamesIndexer add(Reader csv) throws IOException {
+        BufferedReader reader = new BufferedReader(csv);
+        String[] fields = new String[COLUMNS];
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int count = split(line, fields);
+            if (count < COLUMNS || "ID".equals(fields[ID])) {
+                continue;
+            }
+            addEntry(fields);
+        }
+        return this;
+    }
+
+    /**
+     * Write the name index and finish the file.
+     *
+     * @throws IOException if the index cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        int tableOffset;
+        try {
+            Collections.sort(mKeys, KEY_ORDER);
+
+            int[] keyOffsets = new int[mKeys.size()];
+            for (int i = 0; i < mKeys.size(); i++) {
+                Key key = mKeys.get(i);
+                keyOffsets[i] = offset();
+                mOut.writeShort(key.mBytes.length);
+                mOut.write(key.mBytes);
+                mOut.writeInt(key.mRecordOffset);
+            }
+
+            tableOffset = offset();
+            for (int keyOffset : keyOffsets) {
+                mOut.writeInt(keyOffset);
+            }
+            offset();
+        } finally {
+            mOut.close();
+        }
+
+        RandomAccessFile file = new RandomAccessFile(mIndex, "rw");
+        try {
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeInt(mRecordCount);
+            file.writeInt(mKeys.size());
+            file.writeInt(tableOffset);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void addEntry(String[] fields) throws IOException {
+        int recordOffset = offset();
+
+        String context = OpennamesProvider.getContext(fields[DISTRICT_BOROUGH], fields[POPULATED_PLACE],
+                fields[COUNTY_UNITARY], fields[REGION], fields[COUNTRY], fields[POSTCODE_DISTRICT]);
+        writeString(fields[ID]);
+        writeString(fields[NAME1]);
+        writeString(context);
+        mOut.writeDouble(Double.parseDouble(fields[GEOMETRY_X]));
+        mOut.writeDouble(Double.parseDouble(fields[GEOMETRY_Y]));
+
+        boolean hasBoundingBox = isValidDouble(fields[MBR_XMIN]) && isValidDouble(fields[MBR_YMIN]) &&
+                isValidDouble(fields[MBR_XMAX]) && isValidDouble(fields[MBR_YMAX]);
+        mOut.writeBoolean(hasBoundingBox);
+        if (hasBoundingBox) {
+            mOut.writeDouble(Double.parseDouble(fields[MBR_XMIN]));
+            mOut.writeDouble(Double.parseDouble(fields[MBR_YMIN]));
+            mOut.writeDouble(Double.parseDouble(fields[MBR_XMAX]));
+            mOut.writeDouble(Double.parseDouble(fields[MBR_YMAX]));
+        }
+        mRecordCount++;
+
+        addKey(fields[NAME1], recordOffset);
+        if (fields[NAME2] != null && !fields[NAME2].equals(fields[NAME1])) {
+            addKey(fields[NAME2], recordOffset);
+        }
+    }
+
+    private static boolean isValidDouble(String s) {
+        if (s == null) {
+            return false;
+        }
+        try {
+            Double.parseDouble(s);
+            return true;
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+    }
+
+    private void addKey(String name, int recordOffset) {
+        if (name != null) {
+            mKeys.add(new Key(TextUtil.normalise(name).getBytes(UTF_8), recordOffset));
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(UTF_8);
+        if (bytes.length > 0xffff) {
+            throw new IOException("value too long: " + value);
+        }
+        mOut.writeShort(bytes.length);
+        mOut.write(bytes);
+    }
+
+    /**
+     * @return the current position in the index, which must remain addressable by a memory mapped buffer
+     */
+    private int offset() throws IOException {
+        int size = mOut.size();
+        if (size == Integer.MAX_VALUE) {
+            throw new IOException("index exceeds 2GB");
+        }
+        return size;
+    }
+
+    /**
+     * Split a CSV line, honouring double quoted values.  Empty values are returned as null.
+     *
+     * @return the number of fields found, which may exceed the length of the array
+     */
+    static int split(String line, String[] fields) {
+        int count = 0;
+        int i = 0;
+        int length = line.length();
+        StringBuilder sb = new StringBuilder();
+        while (i <= length) {
+            sb.setLength(0);
+            if (i < length && line.charAt(i) == '"') {
+                i++;
+                while (i < length) {
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < length && line.charAt(i) == '"') {
+                            sb.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        sb.append(c);
+                    }
+                }
+                while (i < length && line.charAt(i) != ',') {
+                    i++;
+                }
+            } else {
+                while (i < length && line.charAt(i) != ',') {
+                    sb.append(line.charAt(i++));
+                }
+            }
+            if (count < fields.length) {
+                fields[count] = sb.length() == 0 ? null : sb.toString();
+            }
+            count++;
+            i++;
+        }
+        return count;
+    }
+
+    private static final Comparator<Key> KEY_ORDER = new Comparator<Key>() {
+        @Override
+        public int compare(Key lhs, Key rhs) {
+            return compareBytes(lhs.mBytes, rhs.mBytes);
+        }
+    };
+
+    /**
+     * Unsigned lexicographic order of UTF-8 bytes, which matches the code point order of the names.
+     */
+    static int compareBytes(byte[] lhs, byte[] rhs) {
+        int length = Math.min(lhs.length, rhs.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (lhs[i] & 0xff) - (rhs[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return lhs.length - rhs.length;
+    }
+
+    private static final class Key {
+        private final byte[] mBytes;
+        private final int mRecordOffset;
+
+        private Key(byte[] bytes, int recordOffset) {
+            mBytes = bytes;
+            mRecordOffset = recordOffset;
+        }
+    }
+
+    /**
+     * Build an index from the command line, e.g.
+     * {@code java uk.os.search.android.providers.opennames.OfflineOpennamesIndexer opennames.idx DATA/*.csv}
+     *
+     * @param args the index file followed by the CSV files to add
+     * @throws IOException if the index cannot be built
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: OfflineOpennamesIndexer <index> <csv>...");
+            System.exit(1);
+        }
+        OfflineOpennamesIndexer indexer = new OfflineOpennamesIndexer(new File(args[0]));
+        try {
+            for (int i = 1; i < args.length; i++) {
+                indexer.add(new File(args[i]));
+            }
+        } finally {
+            indexer.close();
+        }
+    }
+}
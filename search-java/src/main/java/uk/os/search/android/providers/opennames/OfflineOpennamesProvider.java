@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.opennames;
+
+import com.esri.core.geometry.Envelope;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func0;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.QueryType;
+import uk.os.search.android.providers.TypedProvider;
+import uk.os.search.android.providers.opennames.service.SearchApi;
+import uk.os.search.util.TextUtil;
+
+/**
+ * Searches a local copy of OS Open Names, built with {@link OfflineOpennamesIndexer}, instead of the OS Open Names
+ * API.
+ *
+ * The index is memory mapped rather than loaded, so opening it is quick and the heap used does not grow with the size
+ * of the dataset.  Names are matched by prefix, e.g. "southam" finds Southam and Southampton; any text after the first
+ * comma must appear in the context of a result, e.g. "southampton, so14".  Results have the same shape as those of
+ * {@link OpennamesProvider}.
+ */
+public class OfflineOpennamesProvider implements TypedProvider {
+
+    public static class Builder {
+
+        private final File mIndex;
+        private int mMaxResults = SearchApi.MAX_RESULTS;
+        private Scheduler mScheduler;
+
+        /**
+         * @param index an index built with {@link OfflineOpennamesIndexer}
+         */
+        public Builder(File index) {
+            mIndex = index;
+        }
+
+        /**
+         * @param maxResults the maximum number of results returned for a query
+         * @return this builder
+         */
+        public Builder setMaxResults(int maxResults) {
+            if (maxResults < 1) {
+                throw new IllegalArgumentException("max results must be at least one");
+            }
+            mMaxResults = maxResults;
+            return this;
+        }
+
+        /**
+         * @param scheduler the scheduler queries are subscribed on, as reading the index may wait on disk; by default
+         *                  they run on the subscribing thread, which for a {@link uk.os.search.SearchManager} is its
+         *                  own scheduler
+         * @return this builder
+         */
+        public Builder setScheduler(Scheduler scheduler) {
+            mScheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * @return the provider
+         * @throws IOException if the index cannot be read or is not an OS Open Names index
+         */
+        public OfflineOpennamesProvider build() throws IOException {
+            return new OfflineOpennamesProvider(map(mIndex), mMaxResults, mScheduler);
+        }
+    }
+
+    private static final SpatialReference BRITISH_NATIONAL_GRID = SpatialReference.create(27700);
+    private static final Set<QueryType> QUERY_TYPES = Collections.unmodifiableSet(
+            EnumSet.of(QueryType.FREE_TEXT, QueryType.POSTCODE));
+
+    private final ByteBuffer mIndex;
+    private final int mMaxResults;
+    private final int mKeyCount;
+    private final int mTableOffset;
+    private final Scheduler mScheduler;
+
+    private OfflineOpennamesProvider(ByteBuffer index, int maxResults, Scheduler scheduler) throws IOException {
+        if (index.capacity() < OfflineOpennamesIndexer.HEADER_SIZE ||
+                index.getInt(0) != OfflineOpennamesIndexer.MAGIC) {
+            throw new IOException("not an OS Open Names index");
+        }
+        if (index.getInt(4) != OfflineOpennamesIndexer.VERSION) {
+            throw new IOException("unsupported index version " + index.getInt(4));
+        }
+        mIndex = index;
+        mMaxResults = maxResults;
+        mKeyCount = index.getInt(12);
+        mTableOffset = index.getInt(16);
+        mScheduler = scheduler;
+    }
+
+    @Override
+    public Set<QueryType> getQueryTypes() {
+        return QUERY_TYPES;
+    }
+
+    @Override
+    public Observable<List<SearchResult>> query(final String searchTerm) {
+        Observable<List<SearchResult>> results = Observable.defer(new Func0<Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> call() {
+                try {
+                    return Observable.just(search(searchTerm));
+                } catch (RuntimeException e) {
+                    return Observable.error(e);
+                }
+            }
+        });
+        return mScheduler == null ? results : results.subscribeOn(mScheduler);
+    }
+
+    /**
+     * @return the number of gazetteer entries in the index
+     */
+    public int size() {
+        return mIndex.getInt(8);
+    }
+
+    /**
+     * Read every gazetteer entry in the index, e.g. to build an
+     * {@link uk.os.search.android.providers.autocomplete.AutocompleteProvider}.
+     *
+     * @return the entries in the order they were indexed
+     */
+    public Iterable<SearchResult> entries() {
+        return new Iterable<SearchResult>() {
+            @Override
+            public Iterator<SearchResult> iterator() {
+                return new Iterator<SearchResult>() {
+                    private final int[] mPosition = {OfflineOpennamesIndexer.HEADER_SIZE};
+                    private int mRemaining = size();
+
+                    @Override
+                    public boolean hasNext() {
+                        return mRemaining > 0;
+                    }
+
+                    @Override
+                    public SearchResult next() {
+                        if (mRemaining == 0) {
+                            throw new NoSuchElementException();
+                        }
+                        mRemaining--;
+                        return readRecord(mPosition);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    private List<SearchResult> search(String searchTerm) {
+        String term = TextUtil.normalise(searchTerm);
+        String name = term;
+        String[] contextTokens = new String[0];
+        int comma = term.indexOf(',');
+        if (comma >= 0) {
+            name = term.substring(0, comma).trim();
+            String context = term.substring(comma + 1).trim();
+            if (!context.isEmpty()) {
+                contextTokens = context.split("[ ,]+");
+            }
+        }
+
+        List<SearchResult> list = new ArrayList<>();
+        if (name.isEmpty()) {
+            return list;
+        }
+
+        byte[] prefix = name.getBytes(OfflineOpennamesIndexer.UTF_8);
+        Set<Integer> seen = new HashSet<>();
+        for (int i = lowerBound(prefix); i < mKeyCount && list.size() < mMaxResults; i++) {
+            int keyOffset = keyOffset(i);
+            if (!startsWith(keyOffset, prefix)) {
+                break;
+            }
+            int recordOffset = mIndex.getInt(keyOffset + 2 + keyLength(keyOffset));
+            if (!seen.add(recordOffset)) {
+                continue;
+            }
+            // only the context is read to filter, so keys that do not match build no search result
+            if (contextMatches(recordOffset, contextTokens)) {
+                list.add(readRecord(recordOffset));
+            }
+        }
+        return OpennamesProvider.markDuplicates(list);
+    }
+
+    /**
+     * @return the index of the first key that is not less than the prefix
+     */
+    private int lowerBound(byte[] prefix) {
+        int low = 0;
+        int high = mKeyCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(keyOffset(middle), prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int keyOffset(int i) {
+        return mIndex.getInt(mTableOffset + 4 * i);
+    }
+
+    private int keyLength(int keyOffset) {
+        return mIndex.getShort(keyOffset) & 0xffff;
+    }
+
+    private int compare(int keyOffset, byte[] bytes) {
+        int keyLength = keyLength(keyOffset);
+        int length = Math.min(keyLength, bytes.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (mIndex.get(keyOffset + 2 + i) & 0xff) - (bytes[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return keyLength - bytes.length;
+    }
+
+    private boolean startsWith(int keyOffset, byte[] prefix) {
+        if (keyLength(keyOffset) < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (mIndex.get(keyOffset + 2 + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private SearchResult readRecord(int offset) {
+        return readRecord(new int[]{offset});
+    }
+
+    private SearchResult readRecord(int[] position) {
+        String id = readString(position);
+        String name = readString(position);
+        String context = readString(position);
+        double x = readDouble(position);
+        double y = readDouble(position);
+
+        Envelope envelope = null;
+        boolean hasBoundingBox = mIndex.get(position[0]++) != 0;
+        if (hasBoundingBox) {
+            double minx = readDouble(position);
+            double miny = readDouble(position);
+            double maxx = readDouble(position);
+            double maxy = readDouble(position);
+            envelope = new Envelope(minx, miny, maxx, maxy);
+        }
+        return new SearchResult(id, name, context, new Point(x, y), envelope, BRITISH_NATIONAL_GRID);
+    }
+
+    // absolute reads only, so that queries can run concurrently against the shared buffer
+    private String readString(int[] position) {
+        int length = mIndex.getShort(position[0]) & 0xffff;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mIndex.get(position[0] + 2 + i);
+        }
+        position[0] += 2 + length;
+        return new String(bytes, OfflineOpennamesIndexer.UTF_8);
+    }
+
+    private void skipString(int[] position) {
+        position[0] += 2 + (mIndex.getShort(position[0]) & 0xffff);
+    }
+
+    private double readDouble(int[] position) {
+        double value = mIndex.getDouble(position[0]);
+        position[0] += 8;
+        return value;
+    }
+
+    private boolean contextMatches(int recordOffset, String[] contextTokens) {
+        if (contextTokens.length == 0) {
+            return true;
+        }
+        int[] position = {recordOffset};
+        skipString(position); // id
+        skipString(position); // name
+        String context = readString(position).toLowerCase(Locale.ENGLISH);
+        for (String token : contextTokens) {
+            if (!context.contains(token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer map(File index) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(index, "r");
+        try {
+            // the mapping remains valid once the file is closed
+            FileChannel channel = file.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.opennames;
+
+import com.esri.core.geometry.Envelope;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.SearchResultsConverterFactory;
+
+/**
+ * Reads OS Open Names find responses straight into search results, in the same shape as {@link OpennamesProvider}
+ * gives them but without building a {@link uk.os.search.android.providers.opennames.service.model.ServerResponse}.
+ * Duplicate names are not marked.
+ *
+ * @see uk.os.search.android.providers.opennames.service.StreamingSearchApi
+ */
+public final class OpennamesConverterFactory extends SearchResultsConverterFactory {
+
+    private static final SpatialReference BRITISH_NATIONAL_GRID = SpatialReference.create(27700);
+
+    public static OpennamesConverterFactory create() {
+        return new OpennamesConverterFactory();
+    }
+
+    private OpennamesConverterFactory() {
+    }
+
+    @Override
+    protected List<SearchResult> read(JsonReader reader) throws IOException {
+        List<SearchResult> list = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("results".equals(reader.nextName())) {
+                readResults(reader, list);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return list;
+    }
+
+    private static void readResults(JsonReader reader, List<SearchResult> list) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            SearchResult searchResult = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("GAZETTEER_ENTRY".equals(reader.nextName())) {
+                    searchResult = readGazetteerEntry(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (searchResult == null) {
+                throw new JsonParseException("no gazetteer entry");
+            }
+            list.add(searchResult);
+        }
+        reader.endArray();
+    }
+
+    private static SearchResult readGazetteerEntry(JsonReader reader) throws IOException {
+        String id = null;
+        String name = null;
+        String districtBorough = null;
+        String populatedPlace = null;
+        String countyUnitary = null;
+        String region = null;
+        String country = null;
+        String postcodeDistrict = null;
+        double x = Double.NaN;
+        double y = Double.NaN;
+        double minx = Double.NaN;
+        double miny = Double.NaN;
+        double maxx = Double.NaN;
+        double maxy = Double.NaN;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "ID":
+                    id = nextString(reader);
+                    break;
+                case "NAME1":
+                    name = nextString(reader);
+                    break;
+                case "GEOMETRY_X":
+                    x = nextDouble(reader);
+                    break;
+                case "GEOMETRY_Y":
+                    y = nextDouble(reader);
+                    break;
+                case "MBR_XMIN":
+                    minx = nextDouble(reader);
+                    break;
+                case "MBR_YMIN":
+                    miny = nextDouble(reader);
+                    break;
+                case "MBR_XMAX":
+                    maxx = nextDouble(reader);
+                    break;
+                case "MBR_YMAX":
+                    maxy = nextDouble(reader);
+                    break;
+                case "DISTRICT_BOROUGH":
+                    districtBorough = nextString(reader);
+                    break;
+                case "POPULATED_PLACE":
+                    populatedPlace = nextString(reader);
+                    break;
+                case "COUNTY_UNITARY":
+                    countyUnitary = nextString(reader);
+                    break;
+                case "REGION":
+                    region = nextString(reader);
+                    break;
+                case "COUNTRY":
+                    country = nextString(reader);
+                    break;
+                case "POSTCODE_DISTRICT":
+                    postcodeDistrict = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            throw new JsonParseException("no geometry for " + id);
+        }
+
+        Envelope envelope = null;
+        if (!Double.isNaN(minx) && !Double.isNaN(miny) && !Double.isNaN(maxx) && !Double.isNaN(maxy)) {
+            envelope = new Envelope(minx, miny, maxx, maxy);
+        }
+
+        String context = OpennamesProvider.getContext(districtBorough, populatedPlace, countyUnitary, region, country,
+                postcodeDistrict);
+        return new SearchResult(id, name, context, new Point(x, y), envelope, BRITISH_NATIONAL_GRID);
+    }
+}
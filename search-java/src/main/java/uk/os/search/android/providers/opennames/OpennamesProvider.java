@@ -19,29 +19,43 @@ package uk.os.search.android.providers.opennames;
 import com.esri.core.geometry.Envelope;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.esri.core.geometry.Point;
 import com.esri.core.geometry.SpatialReference;
+import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
-import retrofit2.converter.gson.GsonConverterFactory;
 import rx.Observable;
+import rx.Scheduler;
 import rx.functions.Func1;
 import uk.os.search.SearchResult;
-import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.QueryType;
+import uk.os.search.android.providers.TypedProvider;
 import uk.os.search.android.providers.opennames.service.SearchApi;
+import uk.os.search.android.providers.opennames.service.StreamingSearchApi;
 import uk.os.search.android.providers.opennames.service.model.Result;
 import uk.os.search.android.providers.opennames.service.model.ServerResponse;
+import uk.os.search.util.HttpClients;
+import uk.os.search.util.RateLimiter;
 
-public class OpennamesProvider implements Provider {
+public class OpennamesProvider implements TypedProvider {
+
+    private static final Set<QueryType> QUERY_TYPES = Collections.unmodifiableSet(
+            EnumSet.of(QueryType.FREE_TEXT, QueryType.POSTCODE));
 
     public static class Builder {
 
         private String mKey;
         private SearchApi mSearchApi;
+        private Scheduler mScheduler;
+        private RateLimiter mRateLimiter;
+        private OkHttpClient mHttpClient;
 
         public Builder(String key) {
             mKey = key;
@@ -52,32 +66,71 @@ public class OpennamesProvider implements Provider {
             return this;
         }
 
+        /**
+         * @param scheduler the scheduler queries are subscribed on; by default they run on the subscribing thread,
+         *                  which for a {@link uk.os.search.SearchManager} is its own scheduler
+         * @return this builder
+         */
+        public Builder setScheduler(Scheduler scheduler) {
+            mScheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * @param rateLimiter limits the calls made to the API, e.g. {@link RateLimiter#forKey} to share it with the
+         *                    other providers using the same key; by default calls are not limited
+         * @return this builder
+         */
+        public Builder setRateLimiter(RateLimiter rateLimiter) {
+            mRateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * @param httpClient the client the API is called with; by default {@link HttpClients#getDefault()}, which
+         *                   is shared with the other providers.  Ignored when the API is set.
+         * @return this builder
+         */
+        public Builder setHttpClient(OkHttpClient httpClient) {
+            mHttpClient = httpClient;
+            return this;
+        }
+
         public OpennamesProvider build() {
-            return new OpennamesProvider(mKey, mSearchApi == null ? provideSearchApi() : mSearchApi);
+            StreamingSearchApi searchApi = mSearchApi == null ? provideSearchApi(mHttpClient) : toStreaming(mSearchApi);
+            return new OpennamesProvider(mKey, searchApi, mScheduler, mRateLimiter);
         }
     }
 
     private final String mKey;
-    private final SearchApi mSearchApi;
+    private final StreamingSearchApi mSearchApi;
+    private final Scheduler mScheduler;
+    private final RateLimiter mRateLimiter;
 
-    private OpennamesProvider(String key, SearchApi searchApi) {
+    private OpennamesProvider(String key, StreamingSearchApi searchApi, Scheduler scheduler,
+                              RateLimiter rateLimiter) {
         mKey = key;
         mSearchApi = searchApi;
+        mScheduler = scheduler;
+        mRateLimiter = rateLimiter;
+    }
+
+    @Override
+    public Set<QueryType> getQueryTypes() {
+        return QUERY_TYPES;
     }
 
     public Observable<List<SearchResult>> query(String searchTerm) {
-        return mSearchApi.search(mKey, searchTerm).map(new Func1<ServerResponse, List<SearchResult>>() {
+        Observable<List<SearchResult>> response = mSearchApi.search(mKey, searchTerm);
+        if (mRateLimiter != null) {
+            response = mRateLimiter.limit(response);
+        }
+        if (mScheduler != null) {
+            response = response.subscribeOn(mScheduler);
+        }
+        return response.map(new Func1<List<SearchResult>, List<SearchResult>>() {
             @Override
-            public List<SearchResult> call(ServerResponse serverResponse) {
-                int capacity = serverResponse.getResults().size();
-                List<SearchResult> list = new ArrayList<>(capacity);
-
-                List<Result> results = serverResponse.getResults();
-                for (Result result : results) {
-                    SearchResult searchResult = from(result);
-                    list.add(searchResult);
-                }
-
+            public List<SearchResult> call(List<SearchResult> list) {
                 // TODO: consider - this should probably be the last operation as we probably
                 // TODO: do not want the recent value duplicated.  This is closer to formatting.
                 return markDuplicates(list);
@@ -85,7 +138,29 @@ public class OpennamesProvider implements Provider {
         });
     }
 
-    private SearchResult from(Result result) {
+    /**
+     * Adapt a {@link SearchApi}, e.g. a stub, to give search results as the default streaming API does.
+     */
+    private static StreamingSearchApi toStreaming(final SearchApi searchApi) {
+        return new StreamingSearchApi() {
+            @Override
+            public Observable<List<SearchResult>> search(String apiKey, String value) {
+                return searchApi.search(apiKey, value).map(new Func1<ServerResponse, List<SearchResult>>() {
+                    @Override
+                    public List<SearchResult> call(ServerResponse serverResponse) {
+                        List<Result> results = serverResponse.getResults();
+                        List<SearchResult> list = new ArrayList<>(results.size());
+                        for (Result result : results) {
+                            list.add(from(result));
+                        }
+                        return list;
+                    }
+                });
+            }
+        };
+    }
+
+    static SearchResult from(Result result) {
         Result.GazetteerEntry entry = result.getGazetteerEntry();
 
         String id = entry.getID();
@@ -108,31 +183,37 @@ public class OpennamesProvider implements Provider {
                 SpatialReference.create(27700));
     }
 
-    private String getContext(Result.GazetteerEntry entry) {
+    private static String getContext(Result.GazetteerEntry entry) {
+        return getContext(entry.getDISTRICT_BOROUGH(), entry.getPOPULATED_PLACE(), entry.getCOUNTY_UNITARY(),
+                entry.getREGION(), entry.getCOUNTRY(), entry.getPOSTCODE_DISTRICT());
+    }
+
+    /**
+     * Format the context of a gazetteer entry, e.g. "Southampton, South East, England, SO14".  Any value may be null.
+     */
+    static String getContext(String districtBorough, String populatedPlace, String countyUnitary, String region,
+                             String country, String postcodeDistrict) {
         List<String> contextArray = new ArrayList<>();
 
-        String districtBorough = entry.getDISTRICT_BOROUGH();
         if (districtBorough != null) {
-            districtBorough = districtBorough.replaceFirst("City and County of the City of London", "London");
+            districtBorough = replaceFirst(districtBorough, "City and County of the City of London", "London");
             contextArray.add(districtBorough);
         }
 
-        String populatedPlace = entry.getPOPULATED_PLACE();
         if (populatedPlace != null) {
-            populatedPlace = populatedPlace.replaceFirst("City of", "");
+            populatedPlace = replaceFirst(populatedPlace, "City of", "");
             contextArray.add(populatedPlace);
         }
 
-        String countyUnitary = entry.getCOUNTY_UNITARY();
         if (countyUnitary != null) {
-            countyUnitary = countyUnitary.replaceFirst("Greater London", "London");
-            countyUnitary = countyUnitary.replaceFirst("City of ","");
+            countyUnitary = replaceFirst(countyUnitary, "Greater London", "London");
+            countyUnitary = replaceFirst(countyUnitary, "City of ", "");
             contextArray.add(countyUnitary);
         }
 
-        contextArray.add(entry.getREGION());
-        contextArray.add(entry.getCOUNTRY());
-        contextArray.add(entry.getPOSTCODE_DISTRICT());
+        contextArray.add(region);
+        contextArray.add(country);
+        contextArray.add(postcodeDistrict);
 
         String previousAcceptable = "";
         StringBuilder sb = new StringBuilder();
@@ -150,7 +231,18 @@ public class OpennamesProvider implements Provider {
         return sb.toString();
     }
 
-    private List<SearchResult> markDuplicates(List<SearchResult> results) {
+    /**
+     * As {@link String#replaceFirst(String, String)} for a literal target, without compiling a pattern.
+     */
+    private static String replaceFirst(String value, String target, String replacement) {
+        int index = value.indexOf(target);
+        if (index < 0) {
+            return value;
+        }
+        return value.substring(0, index) + replacement + value.substring(index + target.length());
+    }
+
+    static List<SearchResult> markDuplicates(List<SearchResult> results) {
         Map<String, SearchResult> map = new HashMap<>();
         Map<String, Integer> counter = new HashMap<>();
 
@@ -178,12 +270,13 @@ public class OpennamesProvider implements Provider {
         return betterList;
     }
 
-    private static SearchApi provideSearchApi() {
+    private static StreamingSearchApi provideSearchApi(OkHttpClient httpClient) {
         Retrofit retrofit = new Retrofit.Builder()
                 .baseUrl("https://api.ordnancesurvey.co.uk/opennames/v1/")
-                .addConverterFactory(GsonConverterFactory.create())
+                .client(httpClient == null ? HttpClients.getDefault() : httpClient)
+                .addConverterFactory(OpennamesConverterFactory.create())
                 .addCallAdapterFactory(RxJavaCallAdapterFactory.create())
                 .build();
-        return retrofit.create(SearchApi.class);
+        return retrofit.create(StreamingSearchApi.class);
     }
 }
@@ -23,7 +23,12 @@ import uk.os.search.android.providers.opennames.service.model.ServerResponse;
 
 public interface SearchApi {
 
-    @GET("find?maxresults=25")
+    /**
+     * the maximum number of results requested from the find API
+     */
+    int MAX_RESULTS = 25;
+
+    @GET("find?maxresults=" + MAX_RESULTS)
     Observable<ServerResponse> search(@Query("key") String apiKey, @Query("query") String value);
 
     
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.opennames.service;
+
+import java.util.List;
+
+import retrofit2.http.GET;
+import retrofit2.http.Query;
+import rx.Observable;
+import uk.os.search.SearchResult;
+
+/**
+ * The OS Open Names find API as {@link SearchApi}, with responses read straight into search results by an
+ * {@link uk.os.search.android.providers.opennames.OpennamesConverterFactory}.
+ */
+public interface StreamingSearchApi {
+
+    @GET("find?maxresults=" + SearchApi.MAX_RESULTS)
+    Observable<List<SearchResult>> search(@Query("key") String apiKey, @Query("query") String value);
+}
@@ -16,62 +16,70 @@
 
 package uk.os.search.android.providers.recents;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
-import java.util.Map;
 
 import rx.Observable;
+import rx.Scheduler;
 import rx.Subscriber;
 import rx.functions.Func1;
-import rx.schedulers.Schedulers;
 import rx.subjects.AsyncSubject;
 import uk.os.search.SearchResult;
 import uk.os.search.android.providers.Provider;
+import uk.os.search.util.SearchSchedulers;
 
 /**
  * In-memory RecentsManager
  *
  * Mostly useful for demos, testing etc. as a better recents might use a persistent storage
+ *
+ * Saving and evicting recents are constant time and queries are answered from a trigram index, so one instance can
+ * hold tens of thousands of recents and be shared between threads; see {@link RecentsStore}.
  */
 public class RecentsManagerImpl implements Provider, RecentsManager {
 
-    private Map<String, SearchResult> mIndex = Collections.synchronizedMap(new HashMap<String, SearchResult>());
-    private List<SearchResult> mSearchResults = Collections.synchronizedList(new ArrayList<SearchResult>());
+    private static final int DEFAULT_MAX_RECENTS = 100;
 
-    @Override
-    public Observable<List<SearchResult>> last(int maxResults) {
-        synchronized (mSearchResults) {
-            // Note: sublist is only a view and therefore must be copied out.
-            // http://stackoverflow.com/questions/27925960/concurrent-modification-exception-for-this-code-block-help-please
-            final List<SearchResult> results = new ArrayList<>(mSearchResults.subList(0,
-                    Math.min(mSearchResults.size(), maxResults - 1)));
-            Collections.reverse(results);
-            return Observable.just(results);
+    private final RecentsStore mRecents;
+    private final Scheduler mScheduler;
+
+    public RecentsManagerImpl() {
+        this(DEFAULT_MAX_RECENTS);
+    }
+
+    /**
+     * @param maxRecents the number of recents to keep before discarding the least recent
+     */
+    public RecentsManagerImpl(int maxRecents) {
+        this(maxRecents, SearchSchedulers.getDefault());
+    }
+
+    /**
+     * @param maxRecents the number of recents to keep before discarding the least recent
+     * @param scheduler the scheduler that queries and saves run on, e.g. {@link rx.schedulers.Schedulers#immediate()}
+     *                  to run them on the subscribing thread
+     */
+    public RecentsManagerImpl(int maxRecents, Scheduler scheduler) {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("scheduler is null");
         }
+        mRecents = new RecentsStore(maxRecents);
+        mScheduler = scheduler;
     }
 
     @Override
-    public Observable<List<SearchResult>> query(String searchTerm) {
-        final String term = sanitised(searchTerm);
+    public Observable<List<SearchResult>> last(int maxResults) {
+        return Observable.just(mRecents.last(maxResults));
+    }
 
+    @Override
+    public Observable<List<SearchResult>> query(final String searchTerm) {
         return Observable.create(new Observable.OnSubscribe<List<SearchResult>>() {
             @Override
             public void call(Subscriber<? super List<SearchResult>> subscriber) {
                 try {
-                    List<SearchResult> results = new ArrayList<>();
-                    synchronized (mSearchResults) {
-                        for (SearchResult result : mSearchResults) {
-                            String lower = sanitised(result.getName() + " " + result.getContext());
-                            if (lower.contains(term)) {
-                                results.add(result);
-                            }
-                        }
-                    }
+                    List<SearchResult> results = mRecents.query(searchTerm);
                     if (!subscriber.isUnsubscribed()) {
-                        Collections.reverse(results);
                         subscriber.onNext(results);
                     }
                     if (!subscriber.isUnsubscribed()) {
@@ -89,7 +97,7 @@ public class RecentsManagerImpl implements Provider, RecentsManager {
                 return Collections.emptyList();
             }
         })
-        .subscribeOn(Schedulers.newThread());
+        .subscribeOn(mScheduler);
     }
 
     @Override
@@ -98,14 +106,7 @@ public class RecentsManagerImpl implements Provider, RecentsManager {
             @Override
             public void call(Subscriber<? super List<SearchResult>> subscriber) {
                 try {
-                    List<SearchResult> results = new ArrayList<>();
-                    synchronized (mSearchResults) {
-                        for (String id : ids) {
-                            if (mIndex.containsKey(id)) {
-                                results.add(mIndex.get(id));
-                            }
-                        }
-                    }
+                    List<SearchResult> results = mRecents.get(ids);
                     if (!subscriber.isUnsubscribed()) {
                         subscriber.onNext(results);
 
@@ -117,7 +118,7 @@ public class RecentsManagerImpl implements Provider, RecentsManager {
                     subscriber.onError(e);
                 }
             }
-        }).subscribeOn(Schedulers.newThread());
+        }).subscribeOn(mScheduler);
     }
 
     @Override
@@ -127,26 +128,7 @@ public class RecentsManagerImpl implements Provider, RecentsManager {
             @Override
             public void call(Subscriber<? super Void> subscriber) {
                 try {
-                    synchronized (mSearchResults) {
-                        String key = searchResult.getId();
-                        boolean alreadyThere = mIndex.containsKey(searchResult.getId());
-
-                        if (alreadyThere) {
-                            // remove it to fudge ordering in this demo
-                            SearchResult existing = mIndex.get(key);
-                            mSearchResults.remove(existing);
-                            mIndex.remove(key);
-                        }
-
-                        mSearchResults.add(searchResult);
-                        mIndex.put(searchResult.getId(), searchResult);
-                        if (mSearchResults.size() > 100) {
-                            SearchResult oldest = mSearchResults.get(0);
-                            String oldestKey = oldest.getId();
-                            mSearchResults.remove(oldest);
-                            mIndex.remove(oldestKey);
-                        }
-                    }
+                    mRecents.save(searchResult);
 
                     if (!subscriber.isUnsubscribed()) {
                         subscriber.onCompleted();
@@ -157,7 +139,7 @@ public class RecentsManagerImpl implements Provider, RecentsManager {
                     }
                 }
             }
-        }).subscribeOn(Schedulers.newThread())
+        }).subscribeOn(mScheduler)
         .subscribe(subject);
         return subject;
     }
@@ -169,17 +151,7 @@ public class RecentsManagerImpl implements Provider, RecentsManager {
             @Override
             public void call(Subscriber<? super Void> subscriber) {
                 try {
-                    synchronized (mSearchResults) {
-                        for (int i = 0; i < mSearchResults.size(); i++) {
-                            SearchResult searchResult = mSearchResults.get(i);
-                            String id = searchResult.getId() != null ? searchResult.getId() : "";
-                            String latestId = latest.getId() != null ? latest.getId() : "";
-                            if (id.equals(latestId)) {
-                                mSearchResults.set(i, latest);
-                                break;
-                            }
-                        }
-                    }
+                    mRecents.update(latest);
                     if (!subscriber.isUnsubscribed()) {
                         subscriber.onCompleted();
                     }
@@ -190,12 +162,8 @@ public class RecentsManagerImpl implements Provider, RecentsManager {
                 }
             }
         })
-        .subscribeOn(Schedulers.newThread())
+        .subscribeOn(mScheduler)
         .subscribe(subject);
         return subject;
     }
-
-    private String sanitised(String string) {
-        return string.toLowerCase(Locale.getDefault());
-    }
 }
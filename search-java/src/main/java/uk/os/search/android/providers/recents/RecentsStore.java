@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.recents;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import uk.os.search.SearchResult;
+
+/**
+ * The recents held by {@link RecentsManagerImpl}: a least recently used list of search results, indexed by id and
+ * by the trigrams (three character substrings) of their lower cased name and context.
+ *
+ * The list is linked through the entries themselves, so saving, promoting and evicting a recent are constant time
+ * whatever the size of the store.  Reads share a lock and see a consistent snapshot; writes are exclusive but only
+ * hold the lock for the constant time update plus re-indexing the text of the one recent involved.
+ */
+final class RecentsStore {
+
+    private static final int GRAM = 3;
+
+    private final int mMaxRecents;
+    private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+    private final Map<String, Recent> mIndex = new HashMap<>();
+    private final Map<Long, Set<Recent>> mTrigrams = new HashMap<>();
+
+    // most recent at the head, least recent at the tail
+    private Recent mHead;
+    private Recent mTail;
+    private long mSequence;
+
+    RecentsStore(int maxRecents) {
+        if (maxRecents < 1) {
+            throw new IllegalArgumentException("max recents must be at least one");
+        }
+        mMaxRecents = maxRecents;
+    }
+
+    /**
+     * Add a search result as the most recent, replacing any with the same id and evicting the least recent once full.
+     */
+    void save(SearchResult searchResult) {
+        mLock.writeLock().lock();
+        try {
+            Recent recent = mIndex.get(searchResult.getId());
+            if (recent != null) {
+                unlink(recent);
+                unindex(recent);
+                recent.set(searchResult, sanitised(textOf(searchResult)));
+            } else {
+                recent = new Recent(searchResult, sanitised(textOf(searchResult)));
+                mIndex.put(searchResult.getId(), recent);
+            }
+            recent.mSequence = mSequence++;
+            index(recent);
+            linkFirst(recent);
+
+            if (mIndex.size() > mMaxRecents) {
+                Recent eldest = mTail;
+                unlink(eldest);
+                unindex(eldest);
+                mIndex.remove(eldest.mSearchResult.getId());
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replace the search result with the same id, keeping its place in the recents.
+     *
+     * @return whether there was a search result to replace
+     */
+    boolean update(SearchResult latest) {
+        mLock.writeLock().lock();
+        try {
+            Recent recent = mIndex.get(latest.getId());
+            if (recent == null) {
+                return false;
+            }
+            unindex(recent);
+            recent.set(latest, sanitised(textOf(latest)));
+            index(recent);
+            return true;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the search results with the given ids, in the order of the ids, skipping any not held
+     */
+    List<SearchResult> get(String... ids) {
+        List<SearchResult> results = new ArrayList<>(ids.length);
+        mLock.readLock().lock();
+        try {
+            for (String id : ids) {
+                Recent recent = mIndex.get(id);
+                if (recent != null) {
+                    results.add(recent.mSearchResult);
+                }
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
+        return results;
+    }
+
+    /**
+     * @return up to maxResults search results, most recent first
+     */
+    List<SearchResult> last(int maxResults) {
+        List<SearchResult> results = new ArrayList<>();
+        mLock.readLock().lock();
+        try {
+            for (Recent recent = mHead; recent != null && results.size() < maxResults; recent = recent.mNext) {
+                results.add(recent.mSearchResult);
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
+        return results;
+    }
+
+    /**
+     * @param searchTerm text to find within the name and context of the recents, ignoring case
+     * @return the matching search results, most recent first
+     */
+    List<SearchResult> query(String searchTerm) {
+        String term = sanitised(searchTerm);
+        mLock.readLock().lock();
+        try {
+            return term.length() < GRAM ? scan(term) : lookup(term);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        mLock.readLock().lock();
+        try {
+            return mIndex.size();
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Check every recent, most recent first, for terms too short to have a trigram.
+     */
+    private List<SearchResult> scan(String term) {
+        List<SearchResult> results = new ArrayList<>();
+        for (Recent recent = mHead; recent != null; recent = recent.mNext) {
+            if (recent.mText.contains(term)) {
+                results.add(recent.mSearchResult);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Check only the recents containing the term's rarest trigram; sharing every trigram does not make the term a
+     * substring, so each candidate is still verified.
+     */
+    private List<SearchResult> lookup(String term) {
+        Set<Recent> candidates = null;
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            Set<Recent> posting = mTrigrams.get(trigram(term, i));
+            if (posting == null) {
+                return new ArrayList<>();
+            }
+            if (candidates == null || posting.size() < candidates.size()) {
+                candidates = posting;
+            }
+        }
+
+        List<Recent> matches = new ArrayList<>();
+        for (Recent recent : candidates) {
+            if (recent.mText.contains(term)) {
+                matches.add(recent);
+            }
+        }
+        Collections.sort(matches, MOST_RECENT_FIRST);
+
+        List<SearchResult> results = new ArrayList<>(matches.size());
+        for (Recent recent : matches) {
+            results.add(recent.mSearchResult);
+        }
+        return results;
+    }
+
+    private void linkFirst(Recent recent) {
+        recent.mPrevious = null;
+        recent.mNext = mHead;
+        if (mHead != null) {
+            mHead.mPrevious = recent;
+        }
+        mHead = recent;
+        if (mTail == null) {
+            mTail = recent;
+        }
+    }
+
+    private void unlink(Recent recent) {
+        if (recent.mPrevious != null) {
+            recent.mPrevious.mNext = recent.mNext;
+        } else {
+            mHead = recent.mNext;
+        }
+        if (recent.mNext != null) {
+            recent.mNext.mPrevious = recent.mPrevious;
+        } else {
+            mTail = recent.mPrevious;
+        }
+        recent.mPrevious = null;
+        recent.mNext = null;
+    }
+
+    private void index(Recent recent) {
+        String text = recent.mText;
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            Long trigram = trigram(text, i);
+            Set<Recent> posting = mTrigrams.get(trigram);
+            if (posting == null) {
+                posting = new HashSet<>();
+                mTrigrams.put(trigram, posting);
+            }
+            posting.add(recent);
+        }
+    }
+
+    private void unindex(Recent recent) {
+        String text = recent.mText;
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            Long trigram = trigram(text, i);
+            Set<Recent> posting = mTrigrams.get(trigram);
+            if (posting != null) {
+                posting.remove(recent);
+                if (posting.isEmpty()) {
+                    mTrigrams.remove(trigram);
+                }
+            }
+        }
+    }
+
+    private static long trigram(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    private static String textOf(SearchResult searchResult) {
+        return searchResult.getName() + " " + searchResult.getContext();
+    }
+
+    private static String sanitised(String string) {
+        return string.toLowerCase(Locale.getDefault());
+    }
+
+    private static final Comparator<Recent> MOST_RECENT_FIRST = new Comparator<Recent>() {
+        @Override
+        public int compare(Recent lhs, Recent rhs) {
+            return lhs.mSequence > rhs.mSequence ? -1 : (lhs.mSequence == rhs.mSequence ? 0 : 1);
+        }
+    };
+
+    /**
+     * A recent search result with its lower cased name and context, as matched by queries, and its place in the list.
+     * Identity equality, so it can be held in the trigram postings while its search result changes.
+     */
+    private static final class Recent {
+        private SearchResult mSearchResult;
+        private String mText;
+        private long mSequence;
+        private Recent mPrevious;
+        private Recent mNext;
+
+        private Recent(SearchResult searchResult, String text) {
+            set(searchResult, text);
+        }
+
+        private void set(SearchResult searchResult, String text) {
+            mSearchResult = searchResult;
+            mText = text;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.dedup;
+
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.ProviderResponse;
+import uk.os.search.android.providers.bng.BritishNationalGrid;
+import uk.os.search.util.TextUtil;
+
+/**
+ * Removes results that another provider, or an earlier result of the same provider, has already given under a
+ * different id: e.g. a place found by both OS Open Names and OS Places.  Two results are the same place when their
+ * names match, ignoring case, spacing and punctuation, and their points are within a tolerance of each other once
+ * both are in British National Grid.  The first is kept, so results are kept in provider priority order.
+ *
+ * Points are hashed into a grid of cells as wide as the tolerance, so each result is only compared with the results
+ * in its own and the eight neighbouring cells, rather than with every other result.  Results without a point, or in a
+ * spatial reference other than British National Grid (EPSG:27700) or WGS84 (EPSG:4326), are always kept.
+ */
+public final class SpatialDeduplicator {
+
+    private static final int BRITISH_NATIONAL_GRID = 27700;
+    private static final int WGS84 = 4326;
+
+    private final double mTolerance;
+
+    /**
+     * @param toleranceMetres how far apart two results with the same name may be and still be the same place
+     */
+    public SpatialDeduplicator(double toleranceMetres) {
+        if (!(toleranceMetres > 0)) {
+            throw new IllegalArgumentException("tolerance must be positive");
+        }
+        mTolerance = toleranceMetres;
+    }
+
+    /**
+     * @param providerResponses the responses of the providers, in priority order
+     * @return the responses without duplicates; a response that lost no results is returned as it was
+     */
+    public List<ProviderResponse> deduplicate(List<ProviderResponse> providerResponses) {
+        Map<Long, List<Located>> cells = new HashMap<>();
+        List<ProviderResponse> result = new ArrayList<>(providerResponses.size());
+        for (ProviderResponse providerResponse : providerResponses) {
+            List<SearchResult> searchResults = providerResponse.getSearchResults();
+            List<SearchResult> kept = null;
+            for (int i = 0; i < searchResults.size(); i++) {
+                SearchResult searchResult = searchResults.get(i);
+                boolean duplicate = isDuplicate(cells, searchResult);
+                if (duplicate && kept == null) {
+                    // only copy a response that has a duplicate to remove
+                    kept = new ArrayList<>(searchResults.subList(0, i));
+                } else if (!duplicate && kept != null) {
+                    kept.add(searchResult);
+                }
+            }
+            result.add(kept == null ? providerResponse : new ProviderResponse(providerResponse.getSource(), kept,
+                    providerResponse.getError(), providerResponse.getStartNanos(), providerResponse.getEndNanos()));
+        }
+        return result;
+    }
+
+    /**
+     * @return true if a result with the same name is near, otherwise false having added the result to its cell
+     */
+    private boolean isDuplicate(Map<Long, List<Located>> cells, SearchResult searchResult) {
+        Point point = toBritishNationalGrid(searchResult);
+        if (point == null || searchResult.getName() == null) {
+            return false;
+        }
+        Located located = new Located(name(searchResult.getName()), point.getX(), point.getY());
+        long column = (long) Math.floor(located.mX / mTolerance);
+        long row = (long) Math.floor(located.mY / mTolerance);
+        double tolerance2 = mTolerance * mTolerance;
+        for (long c = column - 1; c <= column + 1; c++) {
+            for (long r = row - 1; r <= row + 1; r++) {
+                List<Located> cell = cells.get(cell(c, r));
+                if (cell != null) {
+                    for (Located other : cell) {
+                        double dx = other.mX - located.mX;
+                        double dy = other.mY - located.mY;
+                        if (dx * dx + dy * dy <= tolerance2 && other.mName.equals(located.mName)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        Long key = cell(column, row);
+        List<Located> cell = cells.get(key);
+        if (cell == null) {
+            cell = new ArrayList<>(2);
+            cells.put(key, cell);
+        }
+        cell.add(located);
+        return false;
+    }
+
+    /**
+     * @return the result's point in British National Grid, or null if it cannot be compared
+     */
+    static Point toBritishNationalGrid(SearchResult searchResult) {
+        Point point = searchResult.getPoint();
+        SpatialReference spatialReference = searchResult.getSpatialReference();
+        if (point == null || point.isEmpty() || spatialReference == null) {
+            return null;
+        }
+        double x = point.getX();
+        double y = point.getY();
+        switch (spatialReference.getID()) {
+            case BRITISH_NATIONAL_GRID:
+                return point;
+            case WGS84:
+                if (Math.abs(x) <= 180 && Math.abs(y) <= 90) {
+                    return BritishNationalGrid.fromWgs84(x, y);
+                }
+                // OS Places gives grid coordinates whatever output_srs is asked for
+                return point;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the name lower cased, without apostrophes and with runs of spaces and punctuation reduced to a single
+     * space
+     */
+    static String name(String name) {
+        String normalised = TextUtil.normalise(name);
+        StringBuilder sb = new StringBuilder(normalised.length());
+        boolean separator = false;
+        for (int i = 0; i < normalised.length(); i++) {
+            char c = normalised.charAt(i);
+            if (c == '\'' || c == '\u2019') {
+                // "St Mary's" is "St Marys"
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (separator && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(c);
+                separator = false;
+            } else {
+                separator = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Long cell(long column, long row) {
+        return (column << 32) ^ (row & 0xffffffffL);
+    }
+
+    private static final class Located {
+        final String mName;
+        final double mX;
+        final double mY;
+
+        Located(String name, double x, double y) {
+            mName = name;
+            mX = x;
+            mY = y;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts values in buckets of logarithmically increasing width, as an HDR histogram does, so that any percentile can
+ * be read to within about 1.5% of the value from a fixed, small array rather than by keeping every value.
+ *
+ * Values below 128 are counted exactly; above that each power of two is split into 64 buckets.  Values above the
+ * highest trackable value are counted as the highest trackable value.  Recording is lock free and thread safe.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+
+    private final long mHighestTrackableValue;
+    private final AtomicLongArray mCounts;
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * @param highestTrackableValue the highest value to tell apart from higher ones
+     */
+    public Histogram(long highestTrackableValue) {
+        if (highestTrackableValue < 1) {
+            throw new IllegalArgumentException("highest trackable value must be positive");
+        }
+        mHighestTrackableValue = highestTrackableValue;
+        mCounts = new AtomicLongArray(indexOf(highestTrackableValue) + 1);
+    }
+
+    /**
+     * @param value the value to count; negative values are counted as zero
+     */
+    public void record(long value) {
+        long clamped = Math.min(Math.max(0, value), mHighestTrackableValue);
+        mCounts.incrementAndGet(indexOf(clamped));
+        mCount.incrementAndGet();
+        mTotal.addAndGet(clamped);
+        long max = mMax.get();
+        while (clamped > max && !mMax.compareAndSet(max, clamped)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if none have been
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * @return the mean of the values recorded, or 0 if none have been
+     */
+    public double getMean() {
+        long count = mCount.get();
+        return count == 0 ? 0 : (double) mTotal.get() / count;
+    }
+
+    /**
+     * @param percentile from 0 to 100, e.g. 99 for the 99th percentile
+     * @return the highest value in the bucket of the value at the percentile, at most the largest value recorded, or
+     * 0 if none have been
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < mCounts.length(); i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps {@link SearchMetrics} in memory, per provider, to be read by an application's own exporter: histograms of
+ * latencies in microseconds and of result counts, errors counted by type, and outcomes counted.
+ */
+public class HistogramSearchMetrics implements SearchMetrics {
+
+    /**
+     * The metrics of one provider.
+     */
+    public static final class ProviderMetrics {
+        private final Histogram mLatencyMicros = new Histogram(MAX_LATENCY_MICROS);
+        private final Histogram mResultCounts = new Histogram(MAX_RESULT_COUNT);
+        private final ConcurrentMap<String, AtomicLong> mErrors = new ConcurrentHashMap<>();
+        private final AtomicLongArray mOutcomes = new AtomicLongArray(Outcome.values().length);
+
+        /**
+         * @return the microseconds from the provider starting to run to its results or failure
+         */
+        public Histogram getLatencyMicros() {
+            return mLatencyMicros;
+        }
+
+        /**
+         * @return the number of results of each query
+         */
+        public Histogram getResultCounts() {
+            return mResultCounts;
+        }
+
+        /**
+         * @return the number of queries that failed, by the simple name of the error's class
+         */
+        public Map<String, Long> getErrorCounts() {
+            Map<String, Long> errors = new HashMap<>();
+            for (Map.Entry<String, AtomicLong> entry : mErrors.entrySet()) {
+                errors.put(entry.getKey(), entry.getValue().get());
+            }
+            return errors;
+        }
+
+        /**
+         * @param outcome an outcome
+         * @return the number of queries with the outcome
+         */
+        public long getOutcomeCount(Outcome outcome) {
+            return mOutcomes.get(outcome.ordinal());
+        }
+
+        private void recordError(Throwable error) {
+            String type = error.getClass().getSimpleName();
+            AtomicLong count = mErrors.get(type);
+            if (count == null) {
+                AtomicLong created = new AtomicLong();
+                count = mErrors.putIfAbsent(type, created);
+                if (count == null) {
+                    count = created;
+                }
+            }
+            count.incrementAndGet();
+        }
+    }
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final long MAX_RESULT_COUNT = 10000;
+
+    private final ConcurrentMap<String, ProviderMetrics> mProviders = new ConcurrentHashMap<>();
+
+    @Override
+    public void onProviderQuery(String source, long latencyNanos, int resultCount, Throwable error) {
+        ProviderMetrics metrics = metricsOf(source);
+        metrics.mLatencyMicros.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        metrics.mResultCounts.record(resultCount);
+        if (error != null) {
+            metrics.recordError(error);
+        }
+    }
+
+    @Override
+    public void onOutcome(String source, Outcome outcome) {
+        metricsOf(source).mOutcomes.incrementAndGet(outcome.ordinal());
+    }
+
+    /**
+     * @return the names of the providers with metrics, in order
+     */
+    public Set<String> getSources() {
+        return new TreeSet<>(mProviders.keySet());
+    }
+
+    /**
+     * @param source the name of a provider
+     * @return the metrics of the provider, or null if it has none
+     */
+    public ProviderMetrics getMetrics(String source) {
+        return mProviders.get(source);
+    }
+
+    private ProviderMetrics metricsOf(String source) {
+        ProviderMetrics metrics = mProviders.get(source);
+        if (metrics == null) {
+            ProviderMetrics created = new ProviderMetrics();
+            metrics = mProviders.putIfAbsent(source, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.metrics;
+
+/**
+ * Told how each provider answers each query, so that slow or failing providers can be told apart.
+ *
+ * Calls are made on the threads the providers run on, possibly at once, so implementations must be thread safe and
+ * should return quickly.
+ *
+ * @see uk.os.search.SearchManager.Builder#setMetrics(SearchMetrics)
+ */
+public interface SearchMetrics {
+
+    /**
+     * What a provider decorator did with a query, besides passing it on.
+     */
+    enum Outcome {
+        /** answered from the cache */
+        CACHE_HIT,
+        /** answered by filtering the cached results of a shorter search term */
+        CACHE_PREFIX_HIT,
+        /** not cached, so passed on */
+        CACHE_MISS,
+        /** joined an identical query already in flight */
+        COALESCED,
+        /** failed at once as the circuit was open */
+        CIRCUIT_REJECTED,
+        /** opened the circuit */
+        CIRCUIT_OPENED,
+        /** retried after failing */
+        RETRIED
+    }
+
+    /**
+     * Records nothing.
+     */
+    SearchMetrics NONE = new SearchMetrics() {
+        @Override
+        public void onProviderQuery(String source, long latencyNanos, int resultCount, Throwable error) {
+        }
+
+        @Override
+        public void onOutcome(String source, Outcome outcome) {
+        }
+    };
+
+    /**
+     * A provider answered, failed or timed out.
+     *
+     * @param source the name of the provider, as in {@link uk.os.search.android.providers.ProviderResponse}
+     * @param latencyNanos the time from the provider starting to run, not from it being queued for a thread, to its
+     *                     response, i.e. its results or failure; 0 if the query timed out before the provider ran
+     * @param resultCount the number of results
+     * @param error the error, e.g. a {@link java.util.concurrent.TimeoutException}, or null if it completed
+     */
+    void onProviderQuery(String source, long latencyNanos, int resultCount, Throwable error);
+
+    /**
+     * A provider decorator, e.g. a {@link uk.os.search.android.providers.cache.CachingProvider}, handled a query.
+     *
+     * @param source the name of the decorated provider
+     * @param outcome what the decorator did
+     */
+    void onOutcome(String source, Outcome outcome);
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.ranking;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.os.search.SearchResult;
+import uk.os.search.util.TextUtil;
+
+/**
+ * Scores a result as a weighted sum of:
+ *
+ * <ul>
+ * <li>match - 1 if its name is the search term, 0.8 if its name starts with it, otherwise 0.6 times the share of
+ * the search term's words that start a word of its name or context</li>
+ * <li>priority - {@code 1 / (1 + priority)}, favouring the search manager's first providers</li>
+ * <li>position - {@code 1 / (1 + position)}, keeping each provider's own ordering</li>
+ * <li>recency - {@code 1 / (1 + recency)} for a recent search, otherwise 0</li>
+ * </ul>
+ *
+ * plus a fixed weight for its source, e.g. to favour addresses over place names.
+ */
+public final class DefaultScorer implements Scorer {
+
+    public static final class Builder {
+
+        private double mMatchWeight = 1;
+        private double mPriorityWeight = 0.25;
+        private double mPositionWeight = 0.25;
+        private double mRecencyWeight = 0.5;
+        private final Map<String, Double> mSourceWeights = new HashMap<>();
+
+        /**
+         * @param matchWeight the weight of how well the result's name and context match the search term; 1 by
+         *                    default
+         * @return this builder
+         */
+        public Builder setMatchWeight(double matchWeight) {
+            mMatchWeight = matchWeight;
+            return this;
+        }
+
+        /**
+         * @param priorityWeight the weight of the provider's position among the providers; 0.25 by default
+         * @return this builder
+         */
+        public Builder setPriorityWeight(double priorityWeight) {
+            mPriorityWeight = priorityWeight;
+            return this;
+        }
+
+        /**
+         * @param positionWeight the weight of the result's position among its provider's results; 0.25 by default
+         * @return this builder
+         */
+        public Builder setPositionWeight(double positionWeight) {
+            mPositionWeight = positionWeight;
+            return this;
+        }
+
+        /**
+         * @param recencyWeight the weight of how recently a recent search was made; 0.5 by default
+         * @return this builder
+         */
+        public Builder setRecencyWeight(double recencyWeight) {
+            mRecencyWeight = recencyWeight;
+            return this;
+        }
+
+        /**
+         * @param source a provider's simple class name, e.g. {@code AddressesProvider}
+         * @param weight added to the score of every result from the provider; 0 by default
+         * @return this builder
+         */
+        public Builder setSourceWeight(String source, double weight) {
+            if (source == null) {
+                throw new IllegalArgumentException("source is null");
+            }
+            mSourceWeights.put(source, weight);
+            return this;
+        }
+
+        public DefaultScorer build() {
+            return new DefaultScorer(this);
+        }
+    }
+
+    private final double mMatchWeight;
+    private final double mPriorityWeight;
+    private final double mPositionWeight;
+    private final double mRecencyWeight;
+    private final Map<String, Double> mSourceWeights;
+
+    private DefaultScorer(Builder builder) {
+        mMatchWeight = builder.mMatchWeight;
+        mPriorityWeight = builder.mPriorityWeight;
+        mPositionWeight = builder.mPositionWeight;
+        mRecencyWeight = builder.mRecencyWeight;
+        mSourceWeights = new HashMap<>(builder.mSourceWeights);
+    }
+
+    @Override
+    public double score(String searchTerm, String[] searchWords, SearchResult searchResult, String source,
+                        int priority, int position, int recency) {
+        double score = mMatchWeight * match(searchTerm, searchWords, searchResult)
+                + mPriorityWeight / (1 + priority)
+                + mPositionWeight / (1 + position);
+        if (recency != NOT_RECENT) {
+            score += mRecencyWeight / (1 + recency);
+        }
+        Double sourceWeight = mSourceWeights.get(source);
+        if (sourceWeight != null) {
+            score += sourceWeight;
+        }
+        return score;
+    }
+
+    /**
+     * @param searchTerm a normalised search term
+     * @param searchWords the words of the search term
+     * @return between 0 for no match and 1 for a result named by the search term
+     */
+    static double match(String searchTerm, String[] searchWords, SearchResult searchResult) {
+        if (searchTerm.isEmpty() || searchResult.getName() == null) {
+            return 0;
+        }
+        String name = TextUtil.normalise(searchResult.getName());
+        if (name.equals(searchTerm)) {
+            return 1;
+        }
+        if (name.startsWith(searchTerm)) {
+            return 0.8;
+        }
+
+        // words of the search term that start a word of the name or context, e.g. "london rd southampton"
+        String context = searchResult.getContext();
+        String words = (context == null ? name : name + ' ' + TextUtil.normalise(context)).replace(',', ' ');
+        int matched = 0;
+        for (String word : searchWords) {
+            if (startsWord(words, word)) {
+                matched++;
+            }
+        }
+        return searchWords.length == 0 ? 0 : 0.6 * matched / searchWords.length;
+    }
+
+    private static boolean startsWord(String words, String word) {
+        for (int i = words.indexOf(word); i >= 0; i = words.indexOf(word, i + 1)) {
+            if (i == 0 || words.charAt(i - 1) == ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.ranking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.regex.Pattern;
+
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.ProviderResponse;
+import uk.os.search.util.TextUtil;
+
+/**
+ * Merges the recent searches and the results of every provider for one search term into its best {@code k}
+ * results.
+ *
+ * Every result is scored once and only the best {@code k} so far are kept, in a heap, so ranking {@code n} results
+ * takes {@code O(n log k)} time and {@code O(k)} space: the result lists are neither sorted nor copied.
+ */
+public final class Ranking {
+
+    /**
+     * Best last, so the heap's head is the result to evict; of equal scores the one met first ranks first.
+     */
+    private static final Comparator<Scored> WORST_FIRST = new Comparator<Scored>() {
+        @Override
+        public int compare(Scored lhs, Scored rhs) {
+            int byScore = Double.compare(lhs.mScore, rhs.mScore);
+            return byScore != 0 ? byScore : Long.compare(rhs.mSequence, lhs.mSequence);
+        }
+    };
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[\\s,]+");
+
+    private final Scorer mScorer;
+    private final String mSearchTerm;
+    private final String[] mSearchWords;
+    private final List<String> mSources;
+
+    /**
+     * @param scorer scores each result
+     * @param searchTerm the search term the results answer
+     * @param sources the source of each provider, in priority order
+     */
+    public Ranking(Scorer scorer, String searchTerm, String... sources) {
+        if (scorer == null) {
+            throw new IllegalArgumentException("scorer is null");
+        }
+        if (searchTerm == null) {
+            throw new IllegalArgumentException("search term is null");
+        }
+        mScorer = scorer;
+        mSearchTerm = TextUtil.normalise(searchTerm);
+        mSearchWords = words(mSearchTerm);
+        mSources = Arrays.asList(sources);
+    }
+
+    /**
+     * @param k the most results to return
+     * @param recents the recent searches matched, most recent first
+     * @param remaining the responses of the providers
+     * @return the best {@code k} results, best first
+     */
+    public List<SearchResult> top(int k, ProviderResponse recents, List<ProviderResponse> remaining) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least one");
+        }
+        List<SearchResult> recentResults = recents.getSearchResults();
+        // holds at most k results, or every result when there are fewer; k may be Integer.MAX_VALUE
+        int total = recentResults.size();
+        for (ProviderResponse providerResponse : remaining) {
+            total += providerResponse.getSearchResults().size();
+        }
+        PriorityQueue<Scored> heap = new PriorityQueue<>(Math.max(1, Math.min(k, total)), WORST_FIRST);
+        long sequence = 0;
+
+        for (int i = 0; i < recentResults.size(); i++) {
+            SearchResult searchResult = recentResults.get(i);
+            double score = mScorer.score(mSearchTerm, mSearchWords, searchResult, recents.getSource(), 0, i, i);
+            offer(heap, k, searchResult, score, sequence++);
+        }
+        for (ProviderResponse providerResponse : remaining) {
+            String source = providerResponse.getSource();
+            int priority = mSources.indexOf(source);
+            if (priority < 0) {
+                priority = mSources.size();
+            }
+            List<SearchResult> searchResults = providerResponse.getSearchResults();
+            for (int i = 0; i < searchResults.size(); i++) {
+                SearchResult searchResult = searchResults.get(i);
+                double score = mScorer.score(mSearchTerm, mSearchWords, searchResult, source, priority, i,
+                        Scorer.NOT_RECENT);
+                offer(heap, k, searchResult, score, sequence++);
+            }
+        }
+
+        SearchResult[] ranked = new SearchResult[heap.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = heap.poll().mSearchResult;
+        }
+        return new ArrayList<>(Arrays.asList(ranked));
+    }
+
+    /**
+     * @param searchTerm a normalised search term
+     * @return its words, e.g. "london", "rd" and "southampton" for "london rd, southampton"
+     */
+    static String[] words(String searchTerm) {
+        List<String> words = new ArrayList<>();
+        for (String word : WORD_SEPARATOR.split(searchTerm)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    private static void offer(PriorityQueue<Scored> heap, int k, SearchResult searchResult, double score,
+                              long sequence) {
+        if (heap.size() < k) {
+            heap.add(new Scored(searchResult, score, sequence));
+        } else if (score > heap.peek().mScore) {
+            // as results are offered in order, a later result with an equal score never displaces an earlier one
+            heap.poll();
+            heap.add(new Scored(searchResult, score, sequence));
+        }
+    }
+
+    private static final class Scored {
+        final SearchResult mSearchResult;
+        final double mScore;
+        final long mSequence;
+
+        Scored(SearchResult searchResult, double score, long sequence) {
+            mSearchResult = searchResult;
+            mScore = score;
+            mSequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.ranking;
+
+import uk.os.search.SearchResult;
+
+/**
+ * Scores how well a search result answers a search term, so that the results of every provider and the recent
+ * searches can be merged into one ranking.
+ *
+ * Calls are made on whichever thread asks a bundle for its ranking, possibly at once, so implementations must be
+ * thread safe.
+ *
+ * @see uk.os.search.SearchBundle#getRanked(int)
+ * @see uk.os.search.SearchManager.Builder#setScorer(Scorer)
+ */
+public interface Scorer {
+
+    /**
+     * The recency of a result that is not a recent search.
+     */
+    int NOT_RECENT = -1;
+
+    /**
+     * @param searchTerm the search term, normalised by {@link uk.os.search.util.TextUtil#normalise(String)}
+     * @param searchWords the words of the search term, split once for all the results scored
+     * @param searchResult the result to score
+     * @param source the provider that found the result, e.g. {@code OpennamesProvider}, which stands in for the type
+     *               of feature; {@code RecentsManager} for a recent search
+     * @param priority the position of the provider among the search manager's providers, 0 for the first; recent
+     *                 searches have priority 0
+     * @param position the position of the result among its provider's results, 0 for the first
+     * @param recency 0 for the most recent of the recent searches matched, 1 for the next and so on, or
+     *                {@link #NOT_RECENT}
+     * @return the score; higher scores rank first
+     */
+    double score(String searchTerm, String[] searchWords, SearchResult searchResult, String source, int priority,
+                 int position, int recency);
+}
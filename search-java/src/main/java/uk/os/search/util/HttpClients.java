@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.util;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * The HTTP client used for the OS Open Names and OS Places APIs unless another is supplied.
+ */
+public final class HttpClients {
+
+    private HttpClients() {}
+
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final int MAX_REQUESTS = 64;
+    private static final int MAX_REQUESTS_PER_HOST = 16;
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long READ_TIMEOUT_SECONDS = 20;
+    private static final long WRITE_TIMEOUT_SECONDS = 10;
+
+    private static final class Holder {
+        private static final OkHttpClient DEFAULT = newBuilder().build();
+    }
+
+    /**
+     * A client shared by every provider, so that they reuse its pooled connections to api.ordnancesurvey.co.uk
+     * rather than each paying for its own TLS handshakes.  Responses are gzip compressed, which OkHttp asks for and
+     * decompresses transparently.
+     *
+     * @return the default HTTP client
+     */
+    public static OkHttpClient getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    /**
+     * Use {@code getDefault().newBuilder()} instead to change settings while still sharing the default client's
+     * connection pool and dispatcher.
+     *
+     * @return a builder of a client with its own connection pool of up to 16 idle connections kept alive for five
+     * minutes, up to 16 asynchronous requests per host, HTTP/2 where the server supports it, and 10 second connect
+     * and write, and 20 second read, timeouts
+     */
+    public static OkHttpClient.Builder newBuilder() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true);
+    }
+}
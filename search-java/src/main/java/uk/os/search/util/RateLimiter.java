@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Limits the calls made to an API, e.g. under one API key, to a steady rate with bursts, and to a maximum number in
+ * flight at once.
+ *
+ * A call is an observable that makes its request when subscribed, as Retrofit's are.  {@link #limit(Observable)}
+ * holds back the subscription until a permit is free, queueing calls in the order they were subscribed, so excess
+ * calls wait rather than being sent and refused by the API.  Unsubscribing from a queued call removes it from the
+ * queue.  A call that had to wait is started on the scheduler, never on the thread of the call whose completion
+ * freed its permit, so a long queue of synchronous calls neither nests one call inside another nor delays the result
+ * of the call that completed.
+ */
+public final class RateLimiter {
+
+    public static final class Builder {
+
+        private final double mPermitsPerSecond;
+        private int mBurst;
+        private int mMaxInFlight = Integer.MAX_VALUE;
+        private Scheduler mScheduler = Schedulers.io();
+
+        /**
+         * @param permitsPerSecond the steady rate at which calls may start
+         */
+        public Builder(double permitsPerSecond) {
+            if (!(permitsPerSecond > 0)) {
+                throw new IllegalArgumentException("permits per second must be positive");
+            }
+            mPermitsPerSecond = permitsPerSecond;
+            mBurst = (int) Math.max(1, Math.ceil(permitsPerSecond));
+        }
+
+        /**
+         * @param burst the number of calls that may start at once after a quiet period; by default a second's worth
+         * @return this builder
+         */
+        public Builder setBurst(int burst) {
+            if (burst < 1) {
+                throw new IllegalArgumentException("burst must be at least one");
+            }
+            mBurst = burst;
+            return this;
+        }
+
+        /**
+         * @param maxInFlight the maximum number of calls started but not yet completed; by default there is no limit
+         * @return this builder
+         */
+        public Builder setMaxInFlight(int maxInFlight) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("max in flight must be at least one");
+            }
+            mMaxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * @param scheduler the scheduler that keeps time and starts calls that had to wait for a permit; as calls may
+         *                  block, e.g. synchronous Retrofit calls, the default is {@link Schedulers#io()}
+         * @return this builder
+         */
+        public Builder setScheduler(Scheduler scheduler) {
+            if (scheduler == null) {
+                throw new IllegalArgumentException("scheduler is null");
+            }
+            mScheduler = scheduler;
+            return this;
+        }
+
+        public RateLimiter build() {
+            return new RateLimiter(mPermitsPerSecond, mBurst, mMaxInFlight, mScheduler);
+        }
+    }
+
+    private static final ConcurrentMap<String, RateLimiter> SHARED = new ConcurrentHashMap<>();
+
+    private final double mPermitsPerMilli;
+    private final int mBurst;
+    private final int mMaxInFlight;
+    private final Scheduler mScheduler;
+
+    // guarded by this
+    private final Deque<Pending<?>> mQueue = new ArrayDeque<>();
+    private double mTokens;
+    private long mRefilledMillis;
+    private int mInFlight;
+    private boolean mDrainScheduled;
+    private long mPermitsGranted;
+    private long mTotalWaitMillis;
+    private long mMaxWaitMillis;
+
+    private RateLimiter(double permitsPerSecond, int burst, int maxInFlight, Scheduler scheduler) {
+        mPermitsPerMilli = permitsPerSecond / 1000;
+        mBurst = burst;
+        mMaxInFlight = maxInFlight;
+        mScheduler = scheduler;
+        mTokens = burst;
+        mRefilledMillis = scheduler.now();
+    }
+
+    /**
+     * Share one rate limiter between the providers using an API key, as the API limits each key.
+     *
+     * @param apiKey the API key
+     * @param builder builds the rate limiter if there is not one for the key already
+     * @return the rate limiter for the key
+     */
+    public static RateLimiter forKey(String apiKey, Builder builder) {
+        if (apiKey == null) {
+            throw new IllegalArgumentException("api key is null");
+        }
+        RateLimiter rateLimiter = SHARED.get(apiKey);
+        if (rateLimiter == null) {
+            RateLimiter built = builder.build();
+            rateLimiter = SHARED.putIfAbsent(apiKey, built);
+            if (rateLimiter == null) {
+                rateLimiter = built;
+            }
+        }
+        return rateLimiter;
+    }
+
+    /**
+     * @param call an observable that makes its request when subscribed
+     * @return the call, subscribed once a permit is free
+     */
+    public <T> Observable<T> limit(final Observable<T> call) {
+        return Observable.create(new Observable.OnSubscribe<T>() {
+            @Override
+            public void call(final Subscriber<? super T> subscriber) {
+                final Pending<T> pending = new Pending<T>(call, subscriber, mScheduler.now());
+                subscriber.add(Subscriptions.create(new Action0() {
+                    @Override
+                    public void call() {
+                        cancel(pending);
+                    }
+                }));
+                // only a call that need not wait starts on the subscribing thread; one granted from behind others
+                // belongs to another subscriber, so is started on the scheduler
+                boolean granted;
+                synchronized (RateLimiter.this) {
+                    long now = mScheduler.now();
+                    refill(now);
+                    granted = mQueue.isEmpty() && mInFlight < mMaxInFlight && mTokens >= 1;
+                    if (granted) {
+                        grant(pending, now);
+                    } else {
+                        mQueue.add(pending);
+                    }
+                }
+                if (granted) {
+                    pending.start();
+                } else {
+                    drain();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the number of calls waiting for a permit
+     */
+    public synchronized int getQueueDepth() {
+        return mQueue.size();
+    }
+
+    /**
+     * @return the number of calls started but not yet completed
+     */
+    public synchronized int getInFlight() {
+        return mInFlight;
+    }
+
+    /**
+     * @return the number of calls started
+     */
+    public synchronized long getPermitsGranted() {
+        return mPermitsGranted;
+    }
+
+    /**
+     * @param unit the unit of the result
+     * @return the time calls spent waiting for a permit, in total
+     */
+    public synchronized long getTotalWait(TimeUnit unit) {
+        return unit.convert(mTotalWaitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param unit the unit of the result
+     * @return the longest time a call has waited for a permit
+     */
+    public synchronized long getMaxWait(TimeUnit unit) {
+        return unit.convert(mMaxWaitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void drain() {
+        List<Pending<?>> ready = new ArrayList<>();
+        long delayMillis = -1;
+        synchronized (this) {
+            long now = mScheduler.now();
+            refill(now);
+            while (!mQueue.isEmpty() && mInFlight < mMaxInFlight && mTokens >= 1) {
+                Pending<?> pending = mQueue.poll();
+                grant(pending, now);
+                ready.add(pending);
+            }
+            // a call completing frees a slot in flight, so only waiting on tokens needs a timer
+            if (!mQueue.isEmpty() && mInFlight < mMaxInFlight && !mDrainScheduled) {
+                mDrainScheduled = true;
+                delayMillis = Math.max(1, (long) Math.ceil((1 - mTokens) / mPermitsPerMilli));
+            }
+        }
+
+        for (final Pending<?> pending : ready) {
+            final Scheduler.Worker starter = mScheduler.createWorker();
+            starter.schedule(new Action0() {
+                @Override
+                public void call() {
+                    try {
+                        pending.start();
+                    } finally {
+                        starter.unsubscribe();
+                    }
+                }
+            });
+        }
+        if (delayMillis >= 0) {
+            final Scheduler.Worker worker = mScheduler.createWorker();
+            worker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    synchronized (RateLimiter.this) {
+                        mDrainScheduled = false;
+                    }
+                    worker.unsubscribe();
+                    drain();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // guarded by this
+    private void grant(Pending<?> pending, long now) {
+        mTokens -= 1;
+        mInFlight++;
+        mPermitsGranted++;
+        long waitMillis = now - pending.mQueuedMillis;
+        mTotalWaitMillis += waitMillis;
+        mMaxWaitMillis = Math.max(mMaxWaitMillis, waitMillis);
+    }
+
+    private void refill(long now) {
+        if (now > mRefilledMillis) {
+            mTokens = Math.min(mBurst, mTokens + (now - mRefilledMillis) * mPermitsPerMilli);
+            mRefilledMillis = now;
+        }
+    }
+
+    private void cancel(Pending<?> pending) {
+        synchronized (this) {
+            mQueue.remove(pending);
+        }
+    }
+
+    private void release() {
+        synchronized (this) {
+            mInFlight--;
+        }
+        drain();
+    }
+
+    private final class Pending<T> {
+        private final Observable<T> mCall;
+        private final Subscriber<? super T> mSubscriber;
+        private final long mQueuedMillis;
+        private final AtomicBoolean mReleased = new AtomicBoolean();
+
+        Pending(Observable<T> call, Subscriber<? super T> subscriber, long queuedMillis) {
+            mCall = call;
+            mSubscriber = subscriber;
+            mQueuedMillis = queuedMillis;
+        }
+
+        void start() {
+            Action0 release = new Action0() {
+                @Override
+                public void call() {
+                    if (mReleased.compareAndSet(false, true)) {
+                        release();
+                    }
+                }
+            };
+            if (mSubscriber.isUnsubscribed()) {
+                release.call();
+                return;
+            }
+            mSubscriber.add(Subscriptions.create(release));
+            mCall.doOnTerminate(release).unsafeSubscribe(mSubscriber);
+        }
+    }
+}
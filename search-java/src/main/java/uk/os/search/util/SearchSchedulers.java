@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * The scheduler used for searches unless another is supplied.
+ */
+public final class SearchSchedulers {
+
+    private SearchSchedulers() {}
+
+    private static final class Holder {
+        private static final Scheduler DEFAULT = Schedulers.from(newExecutor(
+                Math.max(4, 2 * Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * A shared, bounded pool of daemon threads.  Threads are reused between searches, unlike
+     * {@link Schedulers#newThread()}, and exit after a minute without work.  Further work queues rather than adding
+     * threads, unlike {@link Schedulers#io()}.
+     *
+     * @return the default search scheduler
+     */
+    public static Scheduler getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    /**
+     * @param threads the maximum number of threads
+     * @return a new executor of daemon threads that exit after a minute without work
+     */
+    private static Executor newExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "search-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
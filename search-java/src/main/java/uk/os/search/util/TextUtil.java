@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.util;
+
+import java.util.Locale;
+
+public final class TextUtil {
+
+    private TextUtil() {}
+
+    /**
+     * Normalise text so that searches ignore case and spacing, e.g. " London  ROAD" becomes "london road".
+     *
+     * @param text user supplied or feature text
+     * @return the text trimmed, lower cased and with runs of whitespace reduced to a single space
+     */
+    public static String normalise(String text) {
+        String lower = text.trim().toLowerCase(Locale.ENGLISH);
+        StringBuilder sb = null;
+        boolean whitespace = false;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            boolean isWhitespace = Character.isWhitespace(c);
+            if (sb == null && isWhitespace && (c != ' ' || whitespace)) {
+                // only copy when the text actually needs changing
+                sb = new StringBuilder(lower.length());
+                sb.append(lower, 0, i);
+            }
+            if (sb != null) {
+                if (isWhitespace) {
+                    if (!whitespace) {
+                        sb.append(' ');
+                    }
+                } else {
+                    sb.append(c);
+                }
+            }
+            whitespace = isWhitespace;
+        }
+        return sb == null ? lower : sb.toString();
+    }
+}
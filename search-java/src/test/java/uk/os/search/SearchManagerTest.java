@@ -24,20 +24,43 @@ import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import rx.Observable;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
 import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.ProviderResponse;
+import uk.os.search.android.providers.QueryClassifier;
+import uk.os.search.android.providers.QueryType;
+import uk.os.search.android.providers.TypedProvider;
 import uk.os.search.android.providers.bng.GridReferenceProvider;
 import uk.os.search.android.providers.latlon.LatLonProvider;
 import uk.os.search.android.providers.opennames.OpennamesProvider;
 import uk.os.search.android.providers.recents.RecentsManager;
+import uk.os.search.ranking.Scorer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class SearchManagerTest {
@@ -240,6 +263,621 @@ public class SearchManagerTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void shouldEmitBundleForEachCompletedProviderWhenProgressive() {
+        LatLonProvider latLonProvider = Mockito.mock(LatLonProvider.class);
+        when(latLonProvider.query(Query.input)).then(Query.Database.HasData.response);
+
+        OpennamesProvider opennamesProvider = Mockito.mock(OpennamesProvider.class);
+        when(opennamesProvider.query(Query.input)).then(Query2.Database.HasData.response);
+
+        // providers complete in order on the subscribing thread
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(latLonProvider, opennamesProvider)
+                .setScheduler(Schedulers.immediate())
+                .build();
+        List<SearchBundle> searchBundles = searchManager.queryProgressive(Query.input).toList().toBlocking().single();
+
+        assertEquals(2, searchBundles.size());
+        assertEquals(1, searchBundles.get(0).getRemaining().size());
+        assertEquals(Query.Database.HasData.name, searchBundles.get(0).getRemaining().get(0).getName());
+
+        List<SearchResult> last = searchBundles.get(1).getRemaining();
+        assertEquals(2, last.size());
+        assertEquals(Query.Database.HasData.name, last.get(0).getName());
+        assertEquals(Query2.Database.HasData.name, last.get(1).getName());
+    }
+
+    @Test
+    public void shouldKeepTraceOfEarlierProgressiveBundle() {
+        LatLonProvider latLonProvider = Mockito.mock(LatLonProvider.class);
+        when(latLonProvider.query(Query.input)).then(Query.Database.HasData.response);
+
+        OpennamesProvider opennamesProvider = Mockito.mock(OpennamesProvider.class);
+        when(opennamesProvider.query(Query.input)).then(Query2.Database.HasData.response);
+
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(latLonProvider, opennamesProvider)
+                .setScheduler(Schedulers.immediate())
+                .build();
+        List<SearchBundle> searchBundles = searchManager.queryProgressive(Query.input).toList().toBlocking().single();
+
+        // read after the query completed
+        QueryTrace first = searchBundles.get(0).getTrace();
+        QueryTrace last = searchBundles.get(1).getTrace();
+        assertTrue(first.getProviderEndNanos(0) != QueryTrace.NOT_RECORDED);
+        assertEquals(QueryTrace.NOT_RECORDED, first.getProviderStartNanos(1));
+        assertEquals(QueryTrace.NOT_RECORDED, first.getProviderEndNanos(1));
+        assertTrue(last.getProviderEndNanos(1) != QueryTrace.NOT_RECORDED);
+        assertTrue(first.getEndNanos() <= last.getProviderStartNanos(1));
+        assertTrue(last.getEndNanos() >= last.getProviderEndNanos(1));
+    }
+
+    @Test
+    public void shouldFilterRecentsFromEachProgressiveBundle() {
+        RecentsManager recentsManager = Mockito.mock(RecentsManager.class);
+        when(recentsManager.query(Query.input)).then(Query.Database.HasData.response);
+        when(recentsManager.queryById(Query.Database.HasData.id)).then(Query.Database.HasData.response);
+        when(recentsManager.queryById(Query.Database.HasData.id, Query2.Database.HasData.id))
+                .then(Query.Database.HasData.response);
+
+        LatLonProvider latLonProvider = Mockito.mock(LatLonProvider.class);
+        when(latLonProvider.query(Query.input)).then(Query.Database.HasData.response);
+
+        OpennamesProvider opennamesProvider = Mockito.mock(OpennamesProvider.class);
+        when(opennamesProvider.query(Query.input)).then(Query2.Database.HasData.response);
+
+        SearchManager searchManager = new SearchManager.Builder()
+                .setRecentsManager(recentsManager)
+                .setProviders(latLonProvider, opennamesProvider)
+                .setScheduler(Schedulers.immediate())
+                .build();
+        List<SearchBundle> searchBundles = searchManager.queryProgressive(Query.input).toList().toBlocking().single();
+
+        assertEquals(2, searchBundles.size());
+        for (SearchBundle searchBundle : searchBundles) {
+            assertEquals(1, searchBundle.getRecents().size());
+            assertEquals(Query.Database.HasData.name, searchBundle.getRecents().get(0).getName());
+            assertFalse(searchBundle.getRemaining().contains(Query.Database.HasData.searchResult));
+        }
+        assertEquals(0, searchBundles.get(0).getRemaining().size());
+        assertEquals(1, searchBundles.get(1).getRemaining().size());
+        assertEquals(Query2.Database.HasData.name, searchBundles.get(1).getRemaining().get(0).getName());
+    }
+
+    @Test
+    public void shouldReportTimeoutWhenProviderMissesDeadline() {
+        LatLonProvider latLonProvider = Mockito.mock(LatLonProvider.class);
+        when(latLonProvider.query(Query.input)).then(Query.Database.HasData.response);
+
+        OpennamesProvider opennamesProvider = Mockito.mock(OpennamesProvider.class);
+        when(opennamesProvider.query(Query.input)).then(Hung.response);
+
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(latLonProvider, opennamesProvider)
+                .setProviderTimeout(50, TimeUnit.MILLISECONDS)
+                .build();
+        SearchBundle searchBundle = searchManager.query(Query.input).toBlocking().single();
+
+        assertEquals(1, searchBundle.getErrors().size());
+        assertTrue(searchBundle.getErrors().get(0) instanceof TimeoutException);
+        assertEquals(1, searchBundle.getRemaining().size());
+        assertEquals(Query.Database.HasData.name, searchBundle.getRemaining().get(0).getName());
+    }
+
+    @Test
+    public void shouldEmitBundleWhenQueryDeadlineExpires() {
+        RecentsManager recentsManager = Mockito.mock(RecentsManager.class);
+        when(recentsManager.query(anyString())).then(Hung.response);
+        when(recentsManager.queryById(anyString())).then(Hung.response);
+
+        LatLonProvider latLonProvider = Mockito.mock(LatLonProvider.class);
+        when(latLonProvider.query(Query.input)).then(Query.Database.HasData.response);
+
+        SearchManager searchManager = new SearchManager.Builder()
+                .setRecentsManager(recentsManager)
+                .setProviders(latLonProvider)
+                .setProviderTimeout(10, TimeUnit.SECONDS)
+                .setQueryTimeout(100, TimeUnit.MILLISECONDS)
+                .build();
+        long start = System.nanoTime();
+        SearchBundle searchBundle = searchManager.query(Query.input).toBlocking().single();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis < 5000);
+        assertTrue(searchBundle.getErrors().get(0) instanceof TimeoutException);
+        assertEquals(0, searchBundle.getRecents().size());
+        assertEquals(1, searchBundle.getRemaining().size());
+    }
+
+    @Test
+    public void shouldQueryProvidersInParallelOnExecutor() {
+        // each provider waits for the other, so they only complete if queried at the same time
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        Answer<Observable<List<SearchResult>>> rendezvous = new Answer<Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> answer(InvocationOnMock invocation) throws Throwable {
+                return Observable.defer(new Func0<Observable<List<SearchResult>>>() {
+                    @Override
+                    public Observable<List<SearchResult>> call() {
+                        threads.add(Thread.currentThread().getName());
+                        bothStarted.countDown();
+                        try {
+                            bothStarted.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            return Observable.error(e);
+                        }
+                        return Observable.<List<SearchResult>>just(new ArrayList<SearchResult>());
+                    }
+                });
+            }
+        };
+        Provider first = Mockito.mock(Provider.class);
+        when(first.query(anyString())).then(rendezvous);
+        Provider second = Mockito.mock(Provider.class);
+        when(second.query(anyString())).then(rendezvous);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "test-executor");
+            }
+        });
+        try {
+            SearchManager searchManager = new SearchManager.Builder()
+                    .setProviders(first, second)
+                    .setExecutor(executor)
+                    .setProviderTimeout(2, TimeUnit.SECONDS)
+                    .build();
+            SearchBundle searchBundle = searchManager.query(Query.input).toBlocking().single();
+
+            assertTrue(searchBundle.getErrors().isEmpty());
+            assertEquals(Arrays.asList("test-executor", "test-executor"), threads);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldStartProviderTimeoutWhenProviderRuns() {
+        // one thread, so the second provider waits for the first before it runs
+        Provider slow = Mockito.mock(Provider.class);
+        when(slow.query(anyString())).then(new Answer<Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> answer(InvocationOnMock invocation) throws Throwable {
+                return Observable.defer(new Func0<Observable<List<SearchResult>>>() {
+                    @Override
+                    public Observable<List<SearchResult>> call() {
+                        try {
+                            Thread.sleep(300);
+                        } catch (InterruptedException e) {
+                            return Observable.error(e);
+                        }
+                        return Observable.<List<SearchResult>>just(new ArrayList<SearchResult>());
+                    }
+                });
+            }
+        });
+        Provider fast = Mockito.mock(Provider.class);
+        when(fast.query(anyString())).then(Query.Database.HasData.response);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            SearchManager searchManager = new SearchManager.Builder()
+                    .setProviders(slow, fast)
+                    .setExecutor(executor)
+                    .setProviderTimeout(1, TimeUnit.SECONDS)
+                    .build();
+            SearchBundle searchBundle = searchManager.query(Query.input).toBlocking().single();
+
+            assertTrue(searchBundle.getErrors().isEmpty());
+            assertEquals(1, searchBundle.getRemaining().size());
+
+            searchManager = new SearchManager.Builder()
+                    .setProviders(slow, fast)
+                    .setExecutor(executor)
+                    .setProviderTimeout(200, TimeUnit.MILLISECONDS)
+                    .build();
+            searchBundle = searchManager.query(Query.input).toBlocking().single();
+
+            // only the slow provider ran for longer than its timeout; the fast one merely waited for the thread
+            assertEquals(1, searchBundle.getErrors().size());
+            assertTrue(searchBundle.getErrors().get(0) instanceof TimeoutException);
+            assertEquals(1, searchBundle.getRemaining().size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldQueryLocalProvidersOnTheSubscribingThread() {
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        LatLonProvider latLonProvider = Mockito.mock(LatLonProvider.class);
+        when(latLonProvider.query(anyString())).then(new Answer<Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> answer(InvocationOnMock invocation) throws Throwable {
+                return Observable.defer(new Func0<Observable<List<SearchResult>>>() {
+                    @Override
+                    public Observable<List<SearchResult>> call() {
+                        threads.add(Thread.currentThread().getName());
+                        return Observable.<List<SearchResult>>just(new ArrayList<SearchResult>());
+                    }
+                });
+            }
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "test-executor");
+            }
+        });
+        try {
+            new SearchManager.Builder()
+                    .setProviders(latLonProvider)
+                    .setExecutor(executor)
+                    .build()
+                    .query(Query.input).toBlocking().single();
+
+            assertEquals(Collections.singletonList(Thread.currentThread().getName()), threads);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNullScheduler() {
+        new SearchManager.Builder().setScheduler(null);
+    }
+
+    @Test
+    public void shouldOnlyQueryProvidersThatAnswerTheQueryType() {
+        TypedProvider names = Mockito.mock(TypedProvider.class);
+        when(names.getQueryTypes()).thenReturn(EnumSet.of(QueryType.FREE_TEXT, QueryType.POSTCODE));
+        when(names.query(anyString())).then(Query2.Database.HasData.response);
+        Provider untyped = Mockito.mock(Provider.class);
+        when(untyped.query(anyString())).then(Query.Database.HasData.response);
+
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(new GridReferenceProvider(), names, untyped)
+                .setScheduler(Schedulers.immediate())
+                .build();
+        SearchBundle searchBundle = searchManager.query("SU 4005 1003").toBlocking().single();
+
+        verify(names, never()).query(anyString());
+        verify(untyped).query("SU 4005 1003");
+        assertEquals(3, searchBundle.getRemainingResponses().size());
+        assertEquals(0, searchBundle.getRemainingResponses().get(1).getSearchResults().size());
+        assertFalse(searchBundle.getRemainingResponses().get(1).hasError());
+        assertEquals(2, searchBundle.getRemaining().size());
+
+        searchManager.query(Query2.input).toBlocking().single();
+        verify(names).query(Query2.input);
+    }
+
+    @Test
+    public void shouldRouteWithSuppliedClassifier() {
+        TypedProvider uprns = Mockito.mock(TypedProvider.class);
+        when(uprns.getQueryTypes()).thenReturn(EnumSet.of(QueryType.UPRN));
+        when(uprns.query(anyString())).then(Query.Database.HasData.response);
+
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(uprns)
+                .setScheduler(Schedulers.immediate())
+                .setQueryClassifier(new QueryClassifier() {
+                    @Override
+                    public Set<QueryType> classify(String searchTerm) {
+                        return EnumSet.of(QueryType.UPRN);
+                    }
+                })
+                .build();
+
+        assertEquals(1, searchManager.query("London").toBlocking().single().getRemaining().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNullQueryClassifier() {
+        new SearchManager.Builder().setQueryClassifier(null);
+    }
+
+    @Test
+    public void shouldQueryEveryTermOfABatch() {
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).then(Query.Database.HasData.response);
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(provider)
+                .setScheduler(Schedulers.immediate())
+                .build();
+
+        List<IndexedSearchBundle> bundles = searchManager.queryAll(Observable.just("a", "b", "c"), 2)
+                .toList().toBlocking().single();
+
+        assertEquals(3, bundles.size());
+        for (IndexedSearchBundle bundle : bundles) {
+            assertEquals("abc".substring((int) bundle.getIndex(), (int) bundle.getIndex() + 1),
+                    bundle.getSearchTerm());
+            assertEquals(1, bundle.getSearchBundle().getRemaining().size());
+        }
+    }
+
+    @Test
+    public void shouldLimitConcurrentTermsOfABatch() {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).then(new Answer<Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> answer(InvocationOnMock invocation) throws Throwable {
+                return Observable.defer(new Func0<Observable<List<SearchResult>>>() {
+                    @Override
+                    public Observable<List<SearchResult>> call() {
+                        int current = inFlight.incrementAndGet();
+                        int max;
+                        while ((max = maxInFlight.get()) < current && !maxInFlight.compareAndSet(max, current)) {
+                            // retry
+                        }
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            return Observable.error(e);
+                        }
+                        inFlight.decrementAndGet();
+                        return Observable.<List<SearchResult>>just(new ArrayList<SearchResult>());
+                    }
+                });
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            SearchManager searchManager = new SearchManager.Builder()
+                    .setProviders(provider)
+                    .setExecutor(executor)
+                    .build();
+
+            int count = searchManager.queryAll(Observable.range(0, 12).map(new Func1<Integer, String>() {
+                @Override
+                public String call(Integer i) {
+                    return "term " + i;
+                }
+            }), 3).count().toBlocking().single();
+
+            assertEquals(12, count);
+            assertTrue(maxInFlight.get() <= 3);
+            assertTrue(maxInFlight.get() > 1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldEmitBatchInTermOrderWhenOrdered() {
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).then(new Answer<Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> answer(InvocationOnMock invocation) throws Throwable {
+                Observable<List<SearchResult>> results = Observable.<List<SearchResult>>just(
+                        new ArrayList<SearchResult>());
+                return "slow".equals(invocation.getArguments()[0]) ? results.delay(200, TimeUnit.MILLISECONDS)
+                        : results;
+            }
+        });
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(provider)
+                .setScheduler(Schedulers.immediate())
+                .build();
+        Observable<String> searchTerms = Observable.just("slow", "fast", "faster");
+
+        List<IndexedSearchBundle> unordered = searchManager.queryAll(searchTerms, 3).toList().toBlocking().single();
+        assertEquals(0, unordered.get(2).getIndex());
+        assertEquals("slow", unordered.get(2).getSearchTerm());
+
+        List<IndexedSearchBundle> ordered = searchManager.queryAllOrdered(searchTerms, 3)
+                .toList().toBlocking().single();
+        assertEquals(3, ordered.size());
+        for (int i = 0; i < ordered.size(); i++) {
+            assertEquals(i, ordered.get(i).getIndex());
+        }
+        assertEquals("slow", ordered.get(0).getSearchTerm());
+    }
+
+    @Test
+    public void shouldBoundTermsQueriedBehindASlowTermWhenOrdered() {
+        final PublishSubject<List<SearchResult>> slow = PublishSubject.create();
+        final AtomicInteger queried = new AtomicInteger();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).then(new Answer<Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> answer(InvocationOnMock invocation) throws Throwable {
+                queried.incrementAndGet();
+                return "term 0".equals(invocation.getArguments()[0]) ? slow
+                        : Observable.<List<SearchResult>>just(new ArrayList<SearchResult>());
+            }
+        });
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(provider)
+                .setScheduler(Schedulers.immediate())
+                .build();
+        TestSubscriber<IndexedSearchBundle> subscriber = new TestSubscriber<>();
+
+        searchManager.queryAllOrdered(Observable.range(0, 100).map(new Func1<Integer, String>() {
+            @Override
+            public String call(Integer i) {
+                return "term " + i;
+            }
+        }), 2).subscribe(subscriber);
+
+        // the slow term and the completed ones held behind it fill the window, so no more are queried
+        assertEquals(SearchManager.ORDERED_WINDOW * 2, queried.get());
+        subscriber.assertNoValues();
+
+        slow.onNext(new ArrayList<SearchResult>());
+        slow.onCompleted();
+
+        subscriber.assertCompleted();
+        assertEquals(100, queried.get());
+        List<IndexedSearchBundle> ordered = subscriber.getOnNextEvents();
+        assertEquals(100, ordered.size());
+        for (int i = 0; i < ordered.size(); i++) {
+            assertEquals(i, ordered.get(i).getIndex());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectBatchWithoutConcurrency() {
+        new SearchManager().queryAll(Observable.just("London"), 0);
+    }
+
+
+    @Test
+    public void shouldTraceProvidersAndRecentsPhases() {
+        RecentsManager recentsManager = Mockito.mock(RecentsManager.class);
+        when(recentsManager.query(Query.input)).then(Query.Database.HasData.response);
+        when(recentsManager.queryById(Query.Database.HasData.id)).then(Query.Database.HasData.response);
+
+        LatLonProvider latLonProvider = Mockito.mock(LatLonProvider.class);
+        when(latLonProvider.query(Query.input)).then(Query.Database.HasData.response);
+        GridReferenceProvider gridReferenceProvider = Mockito.mock(GridReferenceProvider.class);
+        when(gridReferenceProvider.getQueryTypes()).thenReturn(EnumSet.of(QueryType.GRID_REFERENCE));
+
+        SearchManager searchManager = new SearchManager.Builder()
+                .setRecentsManager(recentsManager)
+                .setProviders(latLonProvider, gridReferenceProvider)
+                .setQueryClassifier(new QueryClassifier() {
+                    @Override
+                    public Set<QueryType> classify(String searchTerm) {
+                        return EnumSet.of(QueryType.LAT_LON);
+                    }
+                })
+                .build();
+        SearchBundle searchBundle = searchManager.query(Query.input).toBlocking().single();
+
+        QueryTrace trace = searchBundle.getTrace();
+        assertEquals(2, trace.getProviderCount());
+        assertEquals(latLonProvider.getClass().getSimpleName(), trace.getProviderSource(0));
+        assertTrue(trace.getProviderStartNanos(0) >= trace.getStartNanos());
+        assertTrue(trace.getProviderEndNanos(0) >= trace.getProviderStartNanos(0));
+        // the grid reference provider does not answer lat/lon so is not queried
+        assertEquals(QueryTrace.NOT_RECORDED, trace.getProviderStartNanos(1));
+        for (QueryTrace.Phase phase : QueryTrace.Phase.values()) {
+            if (phase == QueryTrace.Phase.DEDUPLICATE) {
+                // not asked for
+                assertEquals(QueryTrace.NOT_RECORDED, trace.getStartNanos(phase));
+                continue;
+            }
+            assertTrue(phase.name(), trace.getStartNanos(phase) != QueryTrace.NOT_RECORDED);
+            assertTrue(phase.name(), trace.getEndNanos(phase) >= trace.getStartNanos(phase));
+        }
+        assertTrue(trace.getEndNanos() >= trace.getEndNanos(QueryTrace.Phase.MERGE_RECENTS));
+        assertTrue(trace.toString().contains("MERGE_RECENTS"));
+    }
+
+    @Test
+    public void shouldTimeEachProviderResponse() {
+        LatLonProvider latLonProvider = Mockito.mock(LatLonProvider.class);
+        when(latLonProvider.query(anyString())).thenReturn(Observable.<List<SearchResult>>error(
+                new IllegalStateException("offline")));
+
+        SearchBundle searchBundle = new SearchManager.Builder()
+                .setProviders(latLonProvider)
+                .build()
+                .queryProgressive(Query.input).toBlocking().last();
+
+        ProviderResponse response = searchBundle.getRemainingResponses().get(0);
+        assertTrue(response.hasError());
+        assertEquals(searchBundle.getTrace().getProviderStartNanos(0), response.getStartNanos());
+        assertEquals(searchBundle.getTrace().getProviderEndNanos(0), response.getEndNanos());
+        assertEquals(QueryTrace.NOT_RECORDED, searchBundle.getTrace().getStartNanos(QueryTrace.Phase.RECENTS_QUERY));
+    }
+
+    @Test
+    public void shouldRankBestMatchAcrossProviders() {
+        LatLonProvider first = Mockito.mock(LatLonProvider.class);
+        when(first.query(anyString())).then(Query.Database.HasData.response);
+        GridReferenceProvider second = Mockito.mock(GridReferenceProvider.class);
+        when(second.query(anyString())).then(Query2.Database.HasData.response);
+
+        SearchBundle searchBundle = new SearchManager.Builder()
+                .setProviders(first, second)
+                .build()
+                .query(Query2.input).toBlocking().single();
+
+        assertEquals(Query.Database.HasData.searchResult, searchBundle.getRemaining().get(0));
+        assertEquals(Collections.singletonList(Query2.Database.HasData.searchResult), searchBundle.getRanked(1));
+        assertEquals(2, searchBundle.getRanked(10).size());
+    }
+
+    @Test
+    public void shouldRankWithScorer() {
+        LatLonProvider first = Mockito.mock(LatLonProvider.class);
+        when(first.query(anyString())).then(Query.Database.HasData.response);
+        GridReferenceProvider second = Mockito.mock(GridReferenceProvider.class);
+        when(second.query(anyString())).then(Query2.Database.HasData.response);
+        Scorer byPriority = new Scorer() {
+            @Override
+            public double score(String searchTerm, String[] searchWords, SearchResult searchResult, String source,
+                                int priority, int position, int recency) {
+                return -priority;
+            }
+        };
+
+        SearchBundle searchBundle = new SearchManager.Builder()
+                .setProviders(first, second)
+                .setScorer(byPriority)
+                .build()
+                .query(Query2.input).toBlocking().single();
+
+        assertEquals(Collections.singletonList(Query.Database.HasData.searchResult), searchBundle.getRanked(1));
+    }
+
+    @Test
+    public void shouldKeepProviderOrderWhenBundleNotRanked() {
+        SearchBundle searchBundle = new SearchBundle(
+                new ProviderResponse("recents", Collections.singletonList(Query.Database.HasData.searchResult)),
+                Collections.singletonList(new ProviderResponse("provider",
+                        Collections.singletonList(Query2.Database.HasData.searchResult))));
+
+        assertEquals(Collections.singletonList(Query.Database.HasData.searchResult), searchBundle.getRanked(1));
+        assertEquals(Arrays.asList(Query.Database.HasData.searchResult, Query2.Database.HasData.searchResult),
+                searchBundle.getRanked(5));
+    }
+
+    @Test
+    public void shouldRemoveSamePlaceFromLaterProviders() {
+        final SearchResult place = new SearchResult("1", "Southampton", "", new Point(442000, 112000), null,
+                SpatialReference.create(27700));
+        final SearchResult address = new SearchResult("2", "SOUTHAMPTON", "", new Point(442020, 112020), null,
+                SpatialReference.create(27700));
+        LatLonProvider first = Mockito.mock(LatLonProvider.class);
+        when(first.query(anyString())).thenReturn(Observable.<List<SearchResult>>just(
+                new ArrayList<>(Collections.singletonList(place))));
+        GridReferenceProvider second = Mockito.mock(GridReferenceProvider.class);
+        when(second.query(anyString())).thenReturn(Observable.<List<SearchResult>>just(
+                new ArrayList<>(Collections.singletonList(address))));
+
+        SearchBundle searchBundle = new SearchManager.Builder()
+                .setProviders(first, second)
+                .setSpatialDeduplication(50)
+                .build()
+                .query("Southampton").toBlocking().single();
+
+        assertEquals(Collections.singletonList(place), searchBundle.getRemaining());
+        assertTrue(searchBundle.getTrace().getEndNanos(QueryTrace.Phase.DEDUPLICATE) != QueryTrace.NOT_RECORDED);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativeTimeout() {
+        new SearchManager.Builder().setProviderTimeout(-1, TimeUnit.SECONDS);
+    }
+
+    private static class Hung {
+        final static Answer<Observable<List<SearchResult>>> response = new Answer<Observable<List<SearchResult>>>() {
+            @Override
+            public Observable<List<SearchResult>> answer(InvocationOnMock invocation) throws Throwable {
+                return Observable.never();
+            }
+        };
+    }
+
     private static class Query {
         final static String input = "51.50722, -0.1275";
 
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import uk.os.search.android.providers.addresses.AddressesProvider;
+import uk.os.search.android.providers.opennames.OpennamesProvider;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueryClassifierImplTest {
+
+    private final QueryClassifier mClassifier = new QueryClassifierImpl();
+
+    @Test
+    public void shouldClassifyGridReferences() {
+        assertEquals(EnumSet.of(QueryType.GRID_REFERENCE), mClassifier.classify("SU 4005 1003"));
+        assertEquals(EnumSet.of(QueryType.GRID_REFERENCE), mClassifier.classify("TL032386"));
+    }
+
+    @Test
+    public void shouldClassifyLatLons() {
+        assertEquals(EnumSet.of(QueryType.LAT_LON), mClassifier.classify("51.50722, -0.1275"));
+        assertEquals(EnumSet.of(QueryType.LAT_LON), mClassifier.classify("51°30'26.0\"N 0°07'39.0\"W"));
+    }
+
+    @Test
+    public void shouldKeepFreeTextForTwoWholeNumbers() {
+        // as likely the start of an address, e.g. 10 2nd Avenue, as a latitude and longitude
+        assertEquals(EnumSet.of(QueryType.LAT_LON, QueryType.FREE_TEXT), mClassifier.classify("10 2"));
+        assertEquals(EnumSet.of(QueryType.LAT_LON, QueryType.FREE_TEXT), mClassifier.classify("51, 1"));
+        assertEquals(EnumSet.of(QueryType.LAT_LON), mClassifier.classify("51 -1"));
+        assertEquals(EnumSet.of(QueryType.LAT_LON), mClassifier.classify("51.5 1"));
+    }
+
+    @Test
+    public void shouldClassifyPostcodes() {
+        assertEquals(EnumSet.of(QueryType.FREE_TEXT, QueryType.POSTCODE), mClassifier.classify("SO16 0AS"));
+        assertEquals(EnumSet.of(QueryType.FREE_TEXT, QueryType.POSTCODE), mClassifier.classify("RG1"));
+    }
+
+    @Test
+    public void shouldClassifyUprns() {
+        assertEquals(EnumSet.of(QueryType.UPRN, QueryType.FREE_TEXT), mClassifier.classify("10012093013"));
+        // or the start of an address, e.g. 10 Downing Street
+        assertEquals(EnumSet.of(QueryType.UPRN, QueryType.FREE_TEXT), mClassifier.classify("10"));
+    }
+
+    @Test
+    public void shouldKeepFreeTextForGridLettersWithoutFigures() {
+        // 100km grid squares that start many place names
+        assertEquals(EnumSet.of(QueryType.GRID_REFERENCE, QueryType.FREE_TEXT), mClassifier.classify("st"));
+        assertEquals(EnumSet.of(QueryType.GRID_REFERENCE, QueryType.FREE_TEXT), mClassifier.classify("so"));
+        assertEquals(EnumSet.of(QueryType.GRID_REFERENCE, QueryType.FREE_TEXT), mClassifier.classify("Su"));
+    }
+
+    @Test
+    public void shouldClassifyFreeText() {
+        assertEquals(EnumSet.of(QueryType.FREE_TEXT), mClassifier.classify("London Road Southampton"));
+        assertEquals(EnumSet.of(QueryType.FREE_TEXT), mClassifier.classify(""));
+    }
+
+    @Test
+    public void shouldKeepEveryTypeOfAmbiguousTerms() {
+        // a 10km grid square and a Kettering postcode district
+        assertEquals(EnumSet.of(QueryType.GRID_REFERENCE, QueryType.POSTCODE), mClassifier.classify("NN16"));
+    }
+
+    @Test
+    public void shouldDeclareTypesOfRemoteProviders() {
+        assertEquals(EnumSet.of(QueryType.FREE_TEXT, QueryType.POSTCODE),
+                new OpennamesProvider.Builder("key").build().getQueryTypes());
+        assertEquals(EnumSet.of(QueryType.FREE_TEXT, QueryType.POSTCODE, QueryType.UPRN),
+                new AddressesProvider.Builder("key").build().getQueryTypes());
+        assertEquals(EnumSet.of(QueryType.POSTCODE),
+                new AddressesProvider.Builder("key").queryFind(false).queryUprn(false).build().getQueryTypes());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.addresses;
+
+import com.google.gson.Gson;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+import retrofit2.Converter;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.addresses.service.StreamingAddressApi;
+import uk.os.search.android.providers.addresses.service.model.ServerResponse;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PlacesConverterFactoryTest {
+
+    private static final String HEADER = "\"header\":{\"query\":\"bbox=50.92,-1.40,50.93,-1.39\",\"offset\":0,"
+            + "\"maxresults\":3,\"output_srs\":\"EPSG:4326\"}";
+    private static final String RESULTS = "\"results\":[{\"DPA\":{\"UPRN\":\"200010019924\","
+            + "\"ADDRESS\":\"ORDNANCE SURVEY, 4, ADANAC DRIVE, NURSLING, SOUTHAMPTON, SO16 0AS\","
+            + "\"BUILDING_NUMBER\":\"4\",\"X_COORDINATE\":-1.399057,\"Y_COORDINATE\":51.633281,"
+            + "\"LOCAL_CUSTODIAN_CODE\":1760,\"MATCH\":0.6}},"
+            + "{\"DPA\":{\"UPRN\":\"200010019925\",\"ADDRESS\":\"4, ADANAC DRIVE, NURSLING, SOUTHAMPTON, SO16 0AS\","
+            + "\"X_COORDINATE\":\"-1.399058\",\"Y_COORDINATE\":\"51.633282\",\"ORGANISATION_NAME\":null}}]";
+
+    @Test
+    public void shouldReadTheSameResultsAsTheResponseModel() throws IOException {
+        String json = "{" + HEADER + "," + RESULTS + "}";
+        List<SearchResult> expected = Transform.searchResultsFromServerResponse()
+                .call(new Gson().fromJson(json, ServerResponse.class));
+
+        List<SearchResult> actual = convert(json);
+
+        assertEquals(2, actual.size());
+        assertEquals(expected, actual);
+        assertEquals("ORDNANCE SURVEY", actual.get(0).getName());
+        assertEquals("4 ADANAC DRIVE", actual.get(1).getName());
+        assertEquals("NURSLING, SOUTHAMPTON, SO16 0AS", actual.get(1).getContext());
+        assertEquals(4326, actual.get(1).getSpatialReference().getID());
+    }
+
+    @Test
+    public void shouldReadResultsBeforeTheHeader() throws IOException {
+        List<SearchResult> expected = convert("{" + HEADER + "," + RESULTS + "}");
+        assertEquals(expected, convert("{" + RESULTS + "," + HEADER + "}"));
+    }
+
+    @Test
+    public void shouldReadResponseWithoutResults() throws IOException {
+        assertTrue(convert("{" + HEADER + "}").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowExceptionForInvalidSrid() throws IOException {
+        convert("{\"header\":{\"output_srs\":\"invalid:4326\"}," + RESULTS + "}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowExceptionWithoutDpa() throws IOException {
+        convert("{" + HEADER + ",\"results\":[{\"LPI\":{\"UPRN\":\"200010019924\"}}]}");
+    }
+
+    @Test
+    public void shouldLeaveOtherTypesToTheNextConverter() {
+        assertNull(PlacesConverterFactory.create().responseBodyConverter(ServerResponse.class,
+                new Annotation[0], null));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<SearchResult> convert(String json) throws IOException {
+        Converter<ResponseBody, ?> converter = PlacesConverterFactory.create()
+                .responseBodyConverter(searchResultsType(), new Annotation[0], null);
+        return (List<SearchResult>) converter.convert(
+                ResponseBody.create(MediaType.parse("application/json"), json));
+    }
+
+    private static Type searchResultsType() {
+        try {
+            Type observable = StreamingAddressApi.class.getMethod("uprn", String.class, String.class, String.class)
+                    .getGenericReturnType();
+            return ((ParameterizedType) observable).getActualTypeArguments()[0];
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.autocomplete;
+
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import org.junit.Test;
+import rx.functions.Func1;
+import uk.os.search.SearchResult;
+import uk.os.search.util.TextUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AutocompleteProviderTest {
+
+    private static final Map<String, Integer> POPULATION = new HashMap<>();
+    static {
+        POPULATION.put("Southampton", 253651);
+        POPULATION.put("Southam", 6567);
+        POPULATION.put("Southall", 69857);
+        POPULATION.put("Southwold", 1098);
+        POPULATION.put("South Shields", 75337);
+        POPULATION.put("Sheffield", 518090);
+    }
+
+    private static final Func1<SearchResult, Integer> BY_POPULATION = new Func1<SearchResult, Integer>() {
+        @Override
+        public Integer call(SearchResult searchResult) {
+            return POPULATION.get(searchResult.getName());
+        }
+    };
+
+    @Test
+    public void shouldCompleteByWeight() {
+        AutocompleteProvider provider = new AutocompleteProvider.Builder(places(POPULATION.keySet()))
+                .setWeight(BY_POPULATION)
+                .build();
+
+        List<SearchResult> results = provider.query("sou").toBlocking().single();
+
+        assertEquals(names("Southampton", "South Shields", "Southall", "Southam", "Southwold"), namesOf(results));
+    }
+
+    @Test
+    public void shouldReturnTopK() {
+        AutocompleteProvider provider = new AutocompleteProvider.Builder(places(POPULATION.keySet()))
+                .setWeight(BY_POPULATION)
+                .setMaxResults(2)
+                .build();
+
+        assertEquals(names("Sheffield", "Southampton"), namesOf(provider.query("s").toBlocking().single()));
+        assertEquals(names("Southampton"), namesOf(provider.complete("sou", 1)));
+    }
+
+    @Test
+    public void shouldCompleteInNameOrderWithoutWeights() {
+        AutocompleteProvider provider = new AutocompleteProvider.Builder(places(POPULATION.keySet())).build();
+
+        assertEquals(names("South Shields", "Southall", "Southam", "Southampton", "Southwold"),
+                namesOf(provider.query("SOUTH").toBlocking().single()));
+    }
+
+    @Test
+    public void shouldNormalisePrefix() {
+        AutocompleteProvider provider = new AutocompleteProvider.Builder(places(POPULATION.keySet())).build();
+
+        assertEquals(names("South Shields"), namesOf(provider.query("  south   s").toBlocking().single()));
+        assertEquals(names("Southampton"), namesOf(provider.query("SouthAmpton").toBlocking().single()));
+    }
+
+    @Test
+    public void shouldReturnNothingWhenNoNameMatches() {
+        AutocompleteProvider provider = new AutocompleteProvider.Builder(places(POPULATION.keySet())).build();
+
+        assertTrue(provider.query("southamptons").toBlocking().single().isEmpty());
+        assertTrue(provider.query("x").toBlocking().single().isEmpty());
+        assertTrue(provider.query("").toBlocking().single().isEmpty());
+    }
+
+    @Test
+    public void shouldHandleEmptyAndSingleEntryIndexes() {
+        AutocompleteProvider empty = new AutocompleteProvider.Builder(new ArrayList<SearchResult>()).build();
+        assertTrue(empty.query("a").toBlocking().single().isEmpty());
+
+        AutocompleteProvider single = new AutocompleteProvider.Builder(places(names("Southam"))).build();
+        assertEquals(1, single.query("s").toBlocking().single().size());
+        assertEquals(1, single.query("southam").toBlocking().single().size());
+        assertTrue(single.query("southampton").toBlocking().single().isEmpty());
+    }
+
+    @Test
+    public void shouldKeepResultsWithTheSameName() {
+        AutocompleteProvider provider = new AutocompleteProvider.Builder(places(names("High Street", "High Street",
+                "High Street East"))).build();
+
+        assertEquals(3, provider.query("high street").toBlocking().single().size());
+        assertEquals(3, provider.size());
+    }
+
+    @Test
+    public void shouldAgreeWithScanningEveryName() {
+        Random random = new Random(42);
+        List<String> names = new ArrayList<>();
+        final Map<String, Integer> weights = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                name.append("abc ".charAt(random.nextInt(4)));
+            }
+            String unique = TextUtil.normalise(name.toString()) + i;
+            names.add(unique);
+            weights.put(unique, random.nextInt(50));
+        }
+        Func1<SearchResult, Integer> weight = new Func1<SearchResult, Integer>() {
+            @Override
+            public Integer call(SearchResult searchResult) {
+                return weights.get(searchResult.getName());
+            }
+        };
+        AutocompleteProvider provider = new AutocompleteProvider.Builder(places(names)).setWeight(weight).build();
+
+        for (String prefix : names("a", "ab", "b c", "cc", "abc a", "c1", "ba2")) {
+            List<SearchResult> expected = scan(names, weights, prefix, 7);
+            assertEquals(prefix, namesOf(expected), namesOf(provider.complete(prefix, 7)));
+        }
+    }
+
+    private static List<SearchResult> scan(List<String> names, final Map<String, Integer> weights, String prefix,
+                                           int k) {
+        List<String> matches = new ArrayList<>();
+        for (String name : names) {
+            if (name.startsWith(prefix)) {
+                matches.add(name);
+            }
+        }
+        Collections.sort(matches, new Comparator<String>() {
+            @Override
+            public int compare(String lhs, String rhs) {
+                int difference = weights.get(rhs) - weights.get(lhs);
+                return difference != 0 ? difference : lhs.compareTo(rhs);
+            }
+        });
+        return places(matches.subList(0, Math.min(k, matches.size())));
+    }
+
+    private static List<SearchResult> places(Iterable<String> names) {
+        List<SearchResult> list = new ArrayList<>();
+        for (String name : names) {
+            list.add(new SearchResult(name, name, "", new Point(0, 0), null, SpatialReference.create(27700)));
+        }
+        return list;
+    }
+
+    private static List<String> names(String... names) {
+        return Arrays.asList(names);
+    }
+
+    private static List<String> namesOf(List<SearchResult> results) {
+        List<String> names = new ArrayList<>();
+        for (SearchResult result : results) {
+            names.add(result.getName());
+        }
+        return names;
+    }
+}
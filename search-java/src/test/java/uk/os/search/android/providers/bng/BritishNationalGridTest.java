@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.android.providers.bng;
+
+import com.esri.core.geometry.Point;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BritishNationalGridTest {
+
+    @Test
+    public void shouldProjectOrdnanceSurveyWorkedExample() {
+        // "A guide to coordinate systems in Great Britain", annexe C
+        double latitude = 52 + 39 / 60.0 + 27.2531 / 3600;
+        double longitude = 1 + 43 / 60.0 + 4.5177 / 3600;
+
+        Point point = BritishNationalGrid.fromOsgb36(latitude, longitude);
+
+        assertEquals(651409.903, point.getX(), 0.001);
+        assertEquals(313177.270, point.getY(), 0.001);
+    }
+
+    @Test
+    public void shouldConvertWgs84() {
+        // the Royal Observatory, Greenwich: 51°28'40.1"N 0°0'5.3"W, in the 100 metre square TQ 388 773
+        Point point = BritishNationalGrid.fromWgs84(-(5.3 / 3600), 51 + 28 / 60.0 + 40.1 / 3600);
+
+        assertEquals(538850, point.getX(), 50);
+        assertEquals(177350, point.getY(), 50);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.bng;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class GridReferenceFormatterTest {
+
+    @Test
+    public void shouldCondense() {
+        assertCondensed("SU", 400000, 100000);
+        assertCondensed("SU41", 440000, 110000);
+        assertCondensed("SU4315", 443000, 115000);
+        assertCondensed("TL 032 386", 503200, 238600);
+        assertCondensed("SU 4005 1003", 440050, 110030);
+        assertCondensed("SU 40052 10037", 440052, 110037);
+        assertCondensed("SV01", 0, 10000);
+    }
+
+    @Test
+    public void shouldFormatFixedDigits() {
+        assertFixed("SU", 440052, 110037, 0);
+        assertFixed("SU 4 1", 440052, 110037, 1);
+        assertFixed("SU 4005 1003", 440052, 110037, 4);
+        assertFixed("SU 40000 10000", 440000, 110000, 5);
+        assertFixed("SU 40052 10037", 440052, 110037, 10);
+    }
+
+    @Test
+    public void shouldAppendToExistingContent() {
+        StringBuilder label = new StringBuilder("Summit: ");
+        GridReferenceFormatter.format(443000, 115000, label);
+        assertEquals("Summit: SU4315", label.toString());
+    }
+
+    @Test
+    public void shouldWriteAtOffset() {
+        char[] buffer = new char[4 + GridReferenceFormatter.MAX_LENGTH];
+        Arrays.fill(buffer, '.');
+
+        int length = GridReferenceFormatter.format(440052, 110037, buffer, 4);
+
+        assertEquals(14, length);
+        assertEquals("....SU 40052 10037", new String(buffer));
+    }
+
+    @Test
+    public void shouldRejectPointsOffTheGrid() {
+        StringBuilder out = new StringBuilder();
+        assertFalse(GridReferenceFormatter.format(-1, 100000, out));
+        assertFalse(GridReferenceFormatter.format(1500000, 100000, 5, out));
+        assertEquals(0, out.length());
+        assertEquals(-1, GridReferenceFormatter.format(100000, 2000000, new char[GridReferenceFormatter.MAX_LENGTH], 0));
+        assertNull(GeoPattern.toGridReference(100000, 2000000));
+    }
+
+    @Test
+    public void shouldFormatAll() {
+        int[] eastings = {400000, 443000, -5, 440052};
+        int[] northings = {100000, 115000, 0, 110037};
+
+        assertEquals(Arrays.asList("SU", "SU4315", null, "SU 40052 10037"),
+                Arrays.asList(GridReferenceFormatter.formatAll(eastings, northings)));
+        assertEquals(Arrays.asList("SU 00 00", "SU 43 15", null, "SU 40 10"),
+                Arrays.asList(GridReferenceFormatter.formatAll(eastings, northings, 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMismatchedArrays() {
+        GridReferenceFormatter.formatAll(new int[2], new int[3]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativeDigits() {
+        GridReferenceFormatter.format(440052, 110037, -1, new StringBuilder());
+    }
+
+    @Test
+    public void shouldRoundTripThroughTheParser() {
+        Random random = new Random(27700);
+        char[] buffer = new char[GridReferenceFormatter.MAX_LENGTH];
+        for (int i = 0; i < 1000; i++) {
+            int easting = random.nextInt(700000);
+            int northing = random.nextInt(1300000);
+            int length = GridReferenceFormatter.format(easting, northing, buffer, 0);
+
+            long reference = GridReferenceParser.parse(new String(buffer, 0, length));
+            assertEquals(easting, GridReferenceParser.easting(reference));
+            assertEquals(northing, GridReferenceParser.northing(reference));
+        }
+    }
+
+    private static void assertCondensed(String expected, int easting, int northing) {
+        StringBuilder out = new StringBuilder();
+        GridReferenceFormatter.format(easting, northing, out);
+        assertEquals(expected, out.toString());
+
+        char[] buffer = new char[GridReferenceFormatter.MAX_LENGTH];
+        assertEquals(expected, new String(buffer, 0, GridReferenceFormatter.format(easting, northing, buffer, 0)));
+    }
+
+    private static void assertFixed(String expected, int easting, int northing, int digits) {
+        StringBuilder out = new StringBuilder();
+        GridReferenceFormatter.format(easting, northing, digits, out);
+        assertEquals(expected, out.toString());
+
+        char[] buffer = new char[GridReferenceFormatter.MAX_LENGTH];
+        assertEquals(expected,
+                new String(buffer, 0, GridReferenceFormatter.format(easting, northing, digits, buffer, 0)));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.bng;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class GridReferenceParserTest {
+
+    @Test
+    public void shouldParseEveryPrecision() {
+        assertReference(400000, 100000, 0, "SU");
+        assertReference(440000, 110000, 1, "SU41");
+        assertReference(443000, 115000, 2, "SU 4315");
+        assertReference(503200, 238600, 3, "TL 032 386");
+        assertReference(440050, 110030, 4, "SU 4005 1003");
+        assertReference(440052, 110037, 5, "SU 40052 10037");
+    }
+
+    @Test
+    public void shouldIgnoreCaseAndWhitespace() {
+        assertReference(503200, 238600, 3, "tl032386");
+        assertReference(503200, 238600, 3, " T L\t03 2386\n");
+    }
+
+    @Test
+    public void shouldReportPrecision() {
+        assertEquals(100000, GridReferenceParser.precision(GridReferenceParser.parse("SU")));
+        assertEquals(1000, GridReferenceParser.precision(GridReferenceParser.parse("SU4315")));
+        assertEquals(1, GridReferenceParser.precision(GridReferenceParser.parse("SU4005210037")));
+    }
+
+    @Test
+    public void shouldParseTheCornersOfTheGrid() {
+        assertReference(0, 0, 5, "SV0000000000");
+        assertReference(499999, 1299999, 5, "HP 99999 99999");
+    }
+
+    @Test
+    public void shouldRejectNonGridReferences() {
+        for (String text : new String[]{"", "S", "SU4", "SU 40 1", "SU 400551 10055", "SU4315X", "4315SU", "S4U315",
+                "SUU4315", "SI4315", "AA", "ZZ", "SU-4315", "Southampton", "SU 4315"}) {
+            assertEquals(text, GridReferenceParser.INVALID, GridReferenceParser.parse(text));
+        }
+    }
+
+    @Test
+    public void shouldRoundTripThroughTheFormatter() {
+        Random random = new Random(27700);
+        for (int i = 0; i < 1000; i++) {
+            int easting = random.nextInt(700000);
+            int northing = random.nextInt(1300000);
+            String text = GeoPattern.toGridReference(easting, northing, 5);
+
+            assertReference(easting, northing, 5, text);
+            assertEquals(text.replace(" ", ""), GeoPattern.parseGridReference(text).getName().replace(" ", ""));
+        }
+    }
+
+    private static void assertReference(int easting, int northing, int digits, String text) {
+        long reference = GridReferenceParser.parse(text);
+        assertEquals(text, easting, GridReferenceParser.easting(reference));
+        assertEquals(text, northing, GridReferenceParser.northing(reference));
+        assertEquals(text, digits, GridReferenceParser.digits(reference));
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.cache;
+
+import com.esri.core.geometry.Envelope;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import rx.Observable;
+import rx.schedulers.TestScheduler;
+import uk.os.search.SearchManager;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.ProviderDecorator;
+import uk.os.search.android.providers.opennames.OpennamesProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingProviderTest {
+
+    private static final SearchResult SOUTHAMPTON = new SearchResult("osgb4000000074564391", "Southampton",
+            "Southampton, South East, England, SO14", new Point(442295, 111865), new Envelope(),
+            SpatialReference.create(27700));
+
+    private static final SearchResult SOUTHAM = new SearchResult("osgb4000000074559925", "Southam",
+            "Stratford-on-Avon, Warwickshire, West Midlands, England, CV47", new Point(441735, 261877),
+            new Envelope(), SpatialReference.create(27700));
+
+    @Test
+    public void shouldAnswerRepeatedQueryFromCache() {
+        Provider provider = mockProvider();
+        CachingProvider cachingProvider = new CachingProvider.Builder(provider).build();
+
+        assertEquals(1, cachingProvider.query("Southampton").toBlocking().single().size());
+        assertEquals(1, cachingProvider.query("Southampton").toBlocking().single().size());
+
+        verify(provider, times(1)).query(anyString());
+        assertEquals(1, cachingProvider.getHitCount());
+        assertEquals(1, cachingProvider.getMissCount());
+    }
+
+    @Test
+    public void shouldNormaliseSearchTerm() {
+        Provider provider = mockProvider();
+        CachingProvider cachingProvider = new CachingProvider.Builder(provider).build();
+
+        cachingProvider.query("London  Road").toBlocking().single();
+        cachingProvider.query(" london road ").toBlocking().single();
+        cachingProvider.query("LONDON\tROAD").toBlocking().single();
+
+        verify(provider, times(1)).query(anyString());
+        assertEquals(2, cachingProvider.getHitCount());
+    }
+
+    @Test
+    public void shouldExpireEntriesAfterTimeToLive() {
+        TestScheduler scheduler = new TestScheduler();
+        Provider provider = mockProvider();
+        CachingProvider cachingProvider = new CachingProvider.Builder(provider)
+                .setTimeToLive(1, TimeUnit.MINUTES)
+                .setScheduler(scheduler)
+                .build();
+
+        cachingProvider.query("SU4315").toBlocking().single();
+        scheduler.advanceTimeBy(59, TimeUnit.SECONDS);
+        cachingProvider.query("SU4315").toBlocking().single();
+        verify(provider, times(1)).query(anyString());
+
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        cachingProvider.query("SU4315").toBlocking().single();
+        verify(provider, times(2)).query(anyString());
+        assertEquals(1, cachingProvider.getHitCount());
+        assertEquals(2, cachingProvider.getMissCount());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+        Provider provider = mockProvider();
+        CachingProvider cachingProvider = new CachingProvider.Builder(provider).setMaxEntries(2).build();
+
+        cachingProvider.query("a").toBlocking().single();
+        cachingProvider.query("b").toBlocking().single();
+        cachingProvider.query("a").toBlocking().single();
+        cachingProvider.query("c").toBlocking().single();
+
+        assertEquals(2, cachingProvider.size());
+        assertEquals(1, cachingProvider.getEvictionCount());
+
+        // "b" was least recently used so was evicted, "a" remains
+        cachingProvider.query("a").toBlocking().single();
+        verify(provider, times(3)).query(anyString());
+        cachingProvider.query("b").toBlocking().single();
+        verify(provider, times(4)).query(anyString());
+    }
+
+    @Test
+    public void shouldNotCacheErrors() {
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(Observable.<List<SearchResult>>error(
+                new IllegalStateException("offline")));
+        CachingProvider cachingProvider = new CachingProvider.Builder(provider).build();
+
+        cachingProvider.query("Southampton").onErrorResumeNext(Observable.<List<SearchResult>>empty())
+                .toBlocking().firstOrDefault(null);
+        cachingProvider.query("Southampton").onErrorResumeNext(Observable.<List<SearchResult>>empty())
+                .toBlocking().firstOrDefault(null);
+
+        verify(provider, times(2)).query(anyString());
+        assertEquals(0, cachingProvider.size());
+    }
+
+    @Test
+    public void shouldProtectCachedResultsFromModification() {
+        Provider provider = mockProvider();
+        CachingProvider cachingProvider = new CachingProvider.Builder(provider).build();
+
+        cachingProvider.query("Southampton").toBlocking().single().clear();
+        List<SearchResult> cached = cachingProvider.query("Southampton").toBlocking().single();
+        cached.clear();
+
+        assertEquals(1, cachingProvider.query("Southampton").toBlocking().single().size());
+    }
+
+    @Test
+    public void shouldCacheRemoteProvidersWhenConfiguredOnSearchManager() {
+        OpennamesProvider opennamesProvider = Mockito.mock(OpennamesProvider.class);
+        when(opennamesProvider.query(anyString())).then(RESPONSE);
+
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(new ArrayList<Provider>(Arrays.<Provider>asList(opennamesProvider)))
+                .cacheResults(100, 5, TimeUnit.MINUTES)
+                .build();
+
+        searchManager.query("Southampton").toBlocking().single();
+        assertEquals(1, searchManager.query("Southampton").toBlocking().single().getRemaining().size());
+        verify(opennamesProvider, times(1)).query(anyString());
+    }
+
+    @Test
+    public void shouldRefineCompleteResultsOfCachedPrefix() {
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query("southam")).thenReturn(just(SOUTHAMPTON, SOUTHAM));
+        CachingProvider cachingProvider = new CachingProvider.Builder(provider).refinePrefixes(25).build();
+
+        assertEquals(2, cachingProvider.query("southam").toBlocking().single().size());
+        List<SearchResult> refined = cachingProvider.query("Southamp").toBlocking().single();
+        assertEquals(1, refined.size());
+        assertEquals(SOUTHAMPTON, refined.get(0));
+
+        // the refined results are cached too
+        assertEquals(1, cachingProvider.query("southampton").toBlocking().single().size());
+        assertEquals(1, cachingProvider.query("southampton, south east").toBlocking().single().size());
+
+        verify(provider, times(1)).query(anyString());
+        assertEquals(3, cachingProvider.getPrefixHitCount());
+        assertEquals(1, cachingProvider.getMissCount());
+    }
+
+    @Test
+    public void shouldExpireRefinedResultsWithTheirPrefix() {
+        TestScheduler scheduler = new TestScheduler();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(just(SOUTHAMPTON, SOUTHAM));
+        CachingProvider cachingProvider = new CachingProvider.Builder(provider)
+                .refinePrefixes(25)
+                .setTimeToLive(1, TimeUnit.MINUTES)
+                .setScheduler(scheduler)
+                .build();
+
+        cachingProvider.query("southam").toBlocking().single();
+        scheduler.advanceTimeBy(50, TimeUnit.SECONDS);
+        cachingProvider.query("southamp").toBlocking().single();
+        scheduler.advanceTimeBy(20, TimeUnit.SECONDS);
+        cachingProvider.query("southampt").toBlocking().single();
+
+        // every result came from the first query, which is more than a minute old
+        verify(provider, times(2)).query(anyString());
+        assertEquals(1, cachingProvider.getPrefixHitCount());
+    }
+
+    @Test
+    public void shouldQueryProviderWhenCachedPrefixTruncated() {
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(just(SOUTHAMPTON, SOUTHAM));
+        CachingProvider cachingProvider = new CachingProvider.Builder(provider).refinePrefixes(2).build();
+
+        cachingProvider.query("southam").toBlocking().single();
+        cachingProvider.query("southamp").toBlocking().single();
+
+        verify(provider, times(2)).query(anyString());
+        assertEquals(0, cachingProvider.getPrefixHitCount());
+    }
+
+    @Test
+    public void shouldQueryProviderWhenNothingMatchesLocally() {
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(just(SOUTHAMPTON));
+        CachingProvider cachingProvider = new CachingProvider.Builder(provider).refinePrefixes(25).build();
+
+        cachingProvider.query("south").toBlocking().single();
+        cachingProvider.query("southw").toBlocking().single();
+
+        verify(provider, times(2)).query(anyString());
+    }
+
+    @Test
+    public void shouldNotRefineWhenNotEnabled() {
+        Provider provider = mockProvider();
+        CachingProvider cachingProvider = new CachingProvider.Builder(provider).build();
+
+        cachingProvider.query("southam").toBlocking().single();
+        cachingProvider.query("southamp").toBlocking().single();
+
+        verify(provider, times(2)).query(anyString());
+    }
+
+    @Test
+    public void shouldUnwrapDecoratedProvider() {
+        Provider provider = mockProvider();
+        CachingProvider cachingProvider = new CachingProvider.Builder(provider).build();
+        assertSame(provider, ProviderDecorator.unwrap(cachingProvider));
+        assertSame(provider, cachingProvider.getProvider());
+    }
+
+    private static Observable<List<SearchResult>> just(SearchResult... searchResults) {
+        return Observable.<List<SearchResult>>just(new ArrayList<>(Arrays.asList(searchResults)));
+    }
+
+    private static Provider mockProvider() {
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).then(RESPONSE);
+        return provider;
+    }
+
+    private static final Answer<Observable<List<SearchResult>>> RESPONSE = new Answer<Observable<List<SearchResult>>>() {
+        @Override
+        public Observable<List<SearchResult>> answer(InvocationOnMock invocation) throws Throwable {
+            List<SearchResult> result = new ArrayList<>(Arrays.asList(SOUTHAMPTON));
+            return Observable.just(result);
+        }
+    };
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.circuitbreaker;
+
+import com.esri.core.geometry.Envelope;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import uk.os.search.SearchBundle;
+import uk.os.search.SearchManager;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.ProviderDecorator;
+import uk.os.search.android.providers.opennames.OpennamesProvider;
+import uk.os.search.metrics.HistogramSearchMetrics;
+import uk.os.search.metrics.SearchMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CircuitBreakerProviderTest {
+
+    private static final SearchResult SOUTHAMPTON = new SearchResult("osgb4000000074564391", "Southampton",
+            "Southampton, South East, England, SO14", new Point(442295, 111865), new Envelope(),
+            SpatialReference.create(27700));
+
+    @Test
+    public void shouldOpenWhenFailureRateReached() {
+        TestScheduler scheduler = new TestScheduler();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(ok()).thenReturn(ok()).thenReturn(failure())
+                .thenReturn(failure());
+        HistogramSearchMetrics metrics = new HistogramSearchMetrics();
+        CircuitBreakerProvider circuitBreaker = new CircuitBreakerProvider.Builder(provider)
+                .setWindow(4, 4)
+                .setScheduler(scheduler)
+                .setMetrics(metrics)
+                .build();
+
+        for (int i = 0; i < 4; i++) {
+            query(circuitBreaker);
+        }
+        assertEquals(CircuitBreakerProvider.State.OPEN, circuitBreaker.getState());
+
+        assertTrue(query(circuitBreaker).getOnErrorEvents().get(0) instanceof CircuitOpenException);
+        verify(provider, times(4)).query(anyString());
+        assertEquals(1, circuitBreaker.getRejectedCount());
+
+        HistogramSearchMetrics.ProviderMetrics providerMetrics = metrics.getMetrics(
+                provider.getClass().getSimpleName());
+        assertEquals(1, providerMetrics.getOutcomeCount(SearchMetrics.Outcome.CIRCUIT_OPENED));
+        assertEquals(1, providerMetrics.getOutcomeCount(SearchMetrics.Outcome.CIRCUIT_REJECTED));
+    }
+
+    @Test
+    public void shouldStayClosedUntilMinimumCallsComplete() {
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(failure());
+        CircuitBreakerProvider circuitBreaker = new CircuitBreakerProvider.Builder(provider)
+                .setWindow(10, 4)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            query(circuitBreaker);
+        }
+        assertEquals(CircuitBreakerProvider.State.CLOSED, circuitBreaker.getState());
+
+        query(circuitBreaker);
+        assertEquals(CircuitBreakerProvider.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void shouldCloseWhenTrialQueriesSucceed() {
+        TestScheduler scheduler = new TestScheduler();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(failure()).thenReturn(ok());
+        CircuitBreakerProvider circuitBreaker = new CircuitBreakerProvider.Builder(provider)
+                .setWindow(1, 1)
+                .setOpenDuration(30, TimeUnit.SECONDS)
+                .setHalfOpenCalls(2)
+                .setScheduler(scheduler)
+                .build();
+
+        query(circuitBreaker);
+        scheduler.advanceTimeBy(29, TimeUnit.SECONDS);
+        assertEquals(CircuitBreakerProvider.State.OPEN, circuitBreaker.getState());
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertEquals(CircuitBreakerProvider.State.HALF_OPEN, circuitBreaker.getState());
+
+        query(circuitBreaker).assertNoErrors();
+        assertEquals(CircuitBreakerProvider.State.HALF_OPEN, circuitBreaker.getState());
+        query(circuitBreaker).assertNoErrors();
+        assertEquals(CircuitBreakerProvider.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void shouldReopenWhenTrialQueryFails() {
+        TestScheduler scheduler = new TestScheduler();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(failure());
+        CircuitBreakerProvider circuitBreaker = new CircuitBreakerProvider.Builder(provider)
+                .setWindow(1, 1)
+                .setOpenDuration(30, TimeUnit.SECONDS)
+                .setScheduler(scheduler)
+                .build();
+
+        query(circuitBreaker);
+        scheduler.advanceTimeBy(30, TimeUnit.SECONDS);
+        query(circuitBreaker);
+        assertEquals(CircuitBreakerProvider.State.OPEN, circuitBreaker.getState());
+
+        // open for the full duration again
+        scheduler.advanceTimeBy(29, TimeUnit.SECONDS);
+        assertEquals(CircuitBreakerProvider.State.OPEN, circuitBreaker.getState());
+        verify(provider, times(2)).query(anyString());
+    }
+
+    @Test
+    public void shouldCountSlowQueriesAsFailures() {
+        TestScheduler scheduler = new TestScheduler();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(ok().delay(2, TimeUnit.SECONDS, scheduler));
+        CircuitBreakerProvider circuitBreaker = new CircuitBreakerProvider.Builder(provider)
+                .setWindow(1, 1)
+                .setSlowCallThreshold(1, TimeUnit.SECONDS)
+                .setScheduler(scheduler)
+                .build();
+
+        TestSubscriber<List<SearchResult>> subscriber = query(circuitBreaker);
+        scheduler.advanceTimeBy(2, TimeUnit.SECONDS);
+
+        subscriber.assertValueCount(1);
+        assertEquals(CircuitBreakerProvider.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void shouldCountAbandonedQueriesAsFailures() {
+        TestScheduler scheduler = new TestScheduler();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(Observable.<List<SearchResult>>never());
+        CircuitBreakerProvider circuitBreaker = new CircuitBreakerProvider.Builder(provider)
+                .setWindow(1, 1)
+                .setScheduler(scheduler)
+                .build();
+
+        query(circuitBreaker).unsubscribe();
+
+        assertEquals(CircuitBreakerProvider.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void shouldRetryAfterBackoff() {
+        TestScheduler scheduler = new TestScheduler();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(failure()).thenReturn(ok());
+        CircuitBreakerProvider circuitBreaker = new CircuitBreakerProvider.Builder(provider)
+                .setRetries(2, 100, 1000, TimeUnit.MILLISECONDS)
+                .setRetryBudget(1, 10)
+                .setScheduler(scheduler)
+                .build();
+
+        TestSubscriber<List<SearchResult>> subscriber = query(circuitBreaker);
+        subscriber.assertNoValues();
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        subscriber.assertNoErrors();
+        subscriber.assertValueCount(1);
+        verify(provider, times(2)).query(anyString());
+        assertEquals(1, circuitBreaker.getRetryCount());
+    }
+
+    @Test
+    public void shouldNotRetryBeyondBudget() {
+        TestScheduler scheduler = new TestScheduler();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(failure());
+        CircuitBreakerProvider circuitBreaker = new CircuitBreakerProvider.Builder(provider)
+                .setRetries(3, 100, 1000, TimeUnit.MILLISECONDS)
+                .setRetryBudget(0.5, 10)
+                .setScheduler(scheduler)
+                .build();
+
+        // the first query saves half a retry, the second a whole one
+        query(circuitBreaker).assertError(IllegalStateException.class);
+        TestSubscriber<List<SearchResult>> subscriber = query(circuitBreaker);
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+
+        subscriber.assertError(IllegalStateException.class);
+        verify(provider, times(3)).query(anyString());
+        assertEquals(1, circuitBreaker.getRetryCount());
+    }
+
+    @Test
+    public void shouldReportOpenCircuitWhenConfiguredOnSearchManager() {
+        OpennamesProvider opennamesProvider = Mockito.mock(OpennamesProvider.class);
+        when(opennamesProvider.query(anyString())).then(FAILURE);
+
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(new ArrayList<Provider>(Arrays.<Provider>asList(opennamesProvider)))
+                .useCircuitBreakers(0.5, 1, TimeUnit.MINUTES)
+                .build();
+
+        for (int i = 0; i < 10; i++) {
+            searchManager.query("Southampton").toBlocking().single();
+        }
+        SearchBundle searchBundle = searchManager.query("Southampton").toBlocking().single();
+
+        assertTrue(searchBundle.getErrors().get(0) instanceof CircuitOpenException);
+        verify(opennamesProvider, times(10)).query(anyString());
+    }
+
+    @Test
+    public void shouldUnwrapDecoratedProvider() {
+        Provider provider = Mockito.mock(Provider.class);
+        CircuitBreakerProvider circuitBreaker = new CircuitBreakerProvider.Builder(provider).build();
+        assertSame(provider, ProviderDecorator.unwrap(circuitBreaker));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectFailureRateAboveOne() {
+        new CircuitBreakerProvider.Builder(Mockito.mock(Provider.class)).setFailureRateThreshold(1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMinimumCallsAboveWindowSize() {
+        new CircuitBreakerProvider.Builder(Mockito.mock(Provider.class)).setWindow(5, 6);
+    }
+
+    private static TestSubscriber<List<SearchResult>> query(Provider provider) {
+        TestSubscriber<List<SearchResult>> subscriber = new TestSubscriber<>();
+        provider.query("Southampton").subscribe(subscriber);
+        return subscriber;
+    }
+
+    private static Observable<List<SearchResult>> ok() {
+        return Observable.<List<SearchResult>>just(new ArrayList<>(Arrays.asList(SOUTHAMPTON)));
+    }
+
+    private static Observable<List<SearchResult>> failure() {
+        return Observable.error(new IllegalStateException("offline"));
+    }
+
+    private static final Answer<Observable<List<SearchResult>>> FAILURE = new Answer<Observable<List<SearchResult>>>() {
+        @Override
+        public Observable<List<SearchResult>> answer(InvocationOnMock invocation) throws Throwable {
+            return failure();
+        }
+    };
+}
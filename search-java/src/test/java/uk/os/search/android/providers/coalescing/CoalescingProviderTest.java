@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.coalescing;
+
+import com.esri.core.geometry.Envelope;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import org.junit.Test;
+import org.mockito.Mockito;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import uk.os.search.SearchBundle;
+import uk.os.search.SearchManager;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.ProviderDecorator;
+import uk.os.search.android.providers.cache.CachingProvider;
+import uk.os.search.android.providers.opennames.OpennamesProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CoalescingProviderTest {
+
+    private static final SearchResult SOUTHAMPTON = new SearchResult("osgb4000000074564391", "Southampton",
+            "Southampton, South East, England, SO14", new Point(442295, 111865), new Envelope(),
+            SpatialReference.create(27700));
+
+    @Test
+    public void shouldShareQueryInFlight() {
+        PublishSubject<List<SearchResult>> response = PublishSubject.create();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(response);
+        CoalescingProvider coalescingProvider = new CoalescingProvider.Builder(provider).build();
+
+        TestSubscriber<List<SearchResult>> first = query(coalescingProvider, "Southampton");
+        TestSubscriber<List<SearchResult>> second = query(coalescingProvider, " southampton ");
+        complete(response);
+
+        first.assertValueCount(1);
+        second.assertValueCount(1);
+        verify(provider, times(1)).query(anyString());
+        assertEquals(1, coalescingProvider.getMissCount());
+        assertEquals(1, coalescingProvider.getJoinCount());
+    }
+
+    @Test
+    public void shouldGiveEachQueryItsOwnResults() {
+        PublishSubject<List<SearchResult>> response = PublishSubject.create();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(response);
+        CoalescingProvider coalescingProvider = new CoalescingProvider.Builder(provider).build();
+
+        TestSubscriber<List<SearchResult>> first = query(coalescingProvider, "Southampton");
+        TestSubscriber<List<SearchResult>> second = query(coalescingProvider, "Southampton");
+        complete(response);
+
+        List<SearchResult> firstResults = first.getOnNextEvents().get(0);
+        assertNotSame(firstResults, second.getOnNextEvents().get(0));
+        firstResults.clear();
+        assertEquals(1, second.getOnNextEvents().get(0).size());
+    }
+
+    @Test
+    public void shouldNotShareDifferentSearchTerms() {
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(Observable.<List<SearchResult>>never());
+        CoalescingProvider coalescingProvider = new CoalescingProvider.Builder(provider).build();
+
+        query(coalescingProvider, "Southampton");
+        query(coalescingProvider, "Southam");
+
+        verify(provider, times(2)).query(anyString());
+        assertEquals(2, coalescingProvider.size());
+        assertEquals(0, coalescingProvider.getJoinCount());
+    }
+
+    @Test
+    public void shouldQueryAgainOnceCompleted() {
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(just(SOUTHAMPTON));
+        CoalescingProvider coalescingProvider = new CoalescingProvider.Builder(provider).build();
+
+        query(coalescingProvider, "Southampton").assertValueCount(1);
+        query(coalescingProvider, "Southampton").assertValueCount(1);
+
+        verify(provider, times(2)).query(anyString());
+        assertEquals(0, coalescingProvider.size());
+    }
+
+    @Test
+    public void shouldShareErrors() {
+        PublishSubject<List<SearchResult>> response = PublishSubject.create();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(response);
+        CoalescingProvider coalescingProvider = new CoalescingProvider.Builder(provider).build();
+
+        TestSubscriber<List<SearchResult>> first = query(coalescingProvider, "Southampton");
+        TestSubscriber<List<SearchResult>> second = query(coalescingProvider, "Southampton");
+        response.onError(new IllegalStateException("offline"));
+
+        first.assertError(IllegalStateException.class);
+        second.assertError(IllegalStateException.class);
+        verify(provider, times(1)).query(anyString());
+        assertEquals(0, coalescingProvider.size());
+    }
+
+    @Test
+    public void shouldKeepQueryInFlightUntilEveryQueryUnsubscribes() {
+        PublishSubject<List<SearchResult>> response = PublishSubject.create();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(response);
+        CoalescingProvider coalescingProvider = new CoalescingProvider.Builder(provider).build();
+
+        TestSubscriber<List<SearchResult>> first = query(coalescingProvider, "Southampton");
+        TestSubscriber<List<SearchResult>> second = query(coalescingProvider, "Southampton");
+
+        first.unsubscribe();
+        assertEquals(1, coalescingProvider.size());
+        complete(response);
+        second.assertValueCount(1);
+
+        TestSubscriber<List<SearchResult>> third = query(coalescingProvider, "Southampton");
+        third.unsubscribe();
+        assertEquals(0, coalescingProvider.size());
+        verify(provider, times(2)).query(anyString());
+    }
+
+    @Test
+    public void shouldReportCacheHitsAndJoinsSeparately() {
+        PublishSubject<List<SearchResult>> response = PublishSubject.create();
+        Provider provider = Mockito.mock(Provider.class);
+        when(provider.query(anyString())).thenReturn(response);
+        CoalescingProvider coalescingProvider = new CoalescingProvider.Builder(provider).build();
+        CachingProvider cachingProvider = new CachingProvider.Builder(coalescingProvider).build();
+
+        query(cachingProvider, "Southampton");
+        query(cachingProvider, "Southampton");
+        complete(response);
+        query(cachingProvider, "Southampton").assertValueCount(1);
+
+        verify(provider, times(1)).query(anyString());
+        assertEquals(1, coalescingProvider.getJoinCount());
+        assertEquals(1, cachingProvider.getHitCount());
+        assertEquals(2, cachingProvider.getMissCount());
+    }
+
+    @Test
+    public void shouldCoalesceRemoteProvidersWhenConfiguredOnSearchManager() {
+        PublishSubject<List<SearchResult>> response = PublishSubject.create();
+        OpennamesProvider opennamesProvider = Mockito.mock(OpennamesProvider.class);
+        when(opennamesProvider.query(anyString())).thenReturn(response);
+
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(new ArrayList<Provider>(Arrays.<Provider>asList(opennamesProvider)))
+                .setScheduler(Schedulers.immediate())
+                .coalesceQueries()
+                .build();
+
+        TestSubscriber<SearchBundle> first = new TestSubscriber<>();
+        TestSubscriber<SearchBundle> second = new TestSubscriber<>();
+        searchManager.query("Southampton").subscribe(first);
+        searchManager.query("Southampton").subscribe(second);
+        complete(response);
+
+        first.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        second.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        assertEquals(1, first.getOnNextEvents().get(0).getRemaining().size());
+        assertEquals(1, second.getOnNextEvents().get(0).getRemaining().size());
+        verify(opennamesProvider, times(1)).query(anyString());
+    }
+
+    @Test
+    public void shouldUnwrapDecoratedProvider() {
+        Provider provider = Mockito.mock(Provider.class);
+        CoalescingProvider coalescingProvider = new CoalescingProvider.Builder(provider).build();
+        assertSame(provider, ProviderDecorator.unwrap(coalescingProvider));
+    }
+
+    private static TestSubscriber<List<SearchResult>> query(Provider provider, String searchTerm) {
+        TestSubscriber<List<SearchResult>> subscriber = new TestSubscriber<>();
+        provider.query(searchTerm).subscribe(subscriber);
+        return subscriber;
+    }
+
+    private static void complete(PublishSubject<List<SearchResult>> response) {
+        response.onNext(new ArrayList<>(Arrays.asList(SOUTHAMPTON)));
+        response.onCompleted();
+    }
+
+    private static Observable<List<SearchResult>> just(SearchResult... searchResults) {
+        return Observable.<List<SearchResult>>just(new ArrayList<>(Arrays.asList(searchResults)));
+    }
+}
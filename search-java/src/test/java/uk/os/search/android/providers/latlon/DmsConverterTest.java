@@ -291,6 +291,22 @@ public class DmsConverterTest {
         }
     }
 
+    @Test
+    public void shouldAcceptSecondsUpToSixty() {
+        assertEquals(0.016666, DmsConverter.getLatitude("0°00'59.99\"N"), DELTA);
+        assertEquals(0.999999, DmsConverter.getLatitude("0°59.9999'N"), DELTA);
+    }
+
+    @Test
+    public void shouldRejectTrailingGarbage() {
+        for (String coordinate : new String[]{"51.5x", "51°30'26.0\"Nx", "51:30:26.0:0:0", "51 30", ".", "-"}) {
+            try {
+                DmsConverter.getLatitude(coordinate);
+                fail("should not convert " + coordinate);
+            } catch (IllegalArgumentException ignore) {}
+        }
+    }
+
     private void fromD(String latitude, String longitude, double latitudeExpected,
                        double longitudeExpected) {
         fromDms(latitude, longitude, latitudeExpected, longitudeExpected);
@@ -22,6 +22,7 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 public class GeoPatternTest {
@@ -119,6 +120,29 @@ public class GeoPatternTest {
         check(51.50722, -0.1275, " 51.50722°N, 0.1275°W ");
     }
 
+    @Test
+    public void shouldSplitSpacedDmsWithoutComma() {
+        check(51.50722, -0.1275, "51° 30' 26.0\"N 0° 07' 39.0\"W");
+        check(51.50722, -0.1275, "51° 30' 26.0\" N 0° 07' 39.0\" W");
+        check(51.50722, -0.1275, "51°30′26.0″N 0°07′39.0″W");
+    }
+
+    @Test
+    public void shouldReturnNullForNonCoordinates() {
+        for (String query : new String[]{null, "", "   ", "Southampton", "SU 4315", "10 Downing Street",
+                "1 North Road", "51.5", "51.5,", "51.5, -0.12, 3", "51.5 -0.12 garbage", "51.5°, -0.12°",
+                "-51°30'N, 0°07'W", "51.5.1, 0", "51°30.5'20\"N, 0°7'W", "51°30'N0°07'W", "1e1, 2"}) {
+            assertNull(query, GeoPattern.tryParseLatLon(query));
+        }
+    }
+
+    @Test
+    public void shouldReturnPointWithoutThrowing() {
+        Point point = GeoPattern.tryParseLatLon("51.50722, -0.1275");
+        assertEquals(51.50722, point.getY(), 0.0001);
+        assertEquals(-0.1275, point.getX(), 0.0001);
+    }
+
     private void check(double latitude, double longitude, String query) {
         Point result = GeoPattern.parseLatLon(query);
         assertNotNull(result);
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.opennames;
+
+import com.google.gson.Gson;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import rx.Observable;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.opennames.service.SearchApi;
+import uk.os.search.android.providers.opennames.service.model.ServerResponse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+
+public class OfflineOpennamesProviderTest {
+
+    private static final String HEADER = "ID,NAMES_URI,NAME1,NAME1_LANG,NAME2,NAME2_LANG,TYPE,LOCAL_TYPE,GEOMETRY_X," +
+            "GEOMETRY_Y,MOST_DETAIL_VIEW_RES,LEAST_DETAIL_VIEW_RES,MBR_XMIN,MBR_YMIN,MBR_XMAX,MBR_YMAX," +
+            "POSTCODE_DISTRICT,POSTCODE_DISTRICT_URI,POPULATED_PLACE,POPULATED_PLACE_URI,POPULATED_PLACE_TYPE," +
+            "DISTRICT_BOROUGH,DISTRICT_BOROUGH_URI,DISTRICT_BOROUGH_TYPE,COUNTY_UNITARY,COUNTY_UNITARY_URI," +
+            "COUNTY_UNITARY_TYPE,REGION,REGION_URI,COUNTRY,COUNTRY_URI,RELATED_SPATIAL_OBJECT,SAME_AS_DBPEDIA," +
+            "SAME_AS_GEONAMES";
+
+    private static final String SOUTHAMPTON = row("osgb4000000074564391", "Southampton", "", "populatedPlace",
+            "City", "442295", "111865", "437500", "106000", "447000", "119000", "SO14", "", "", "Southampton",
+            "South East", "England");
+    private static final String SOUTHAM = row("osgb4000000074559925", "Southam", "", "populatedPlace", "Town",
+            "441735", "261877", "440000", "260000", "443000", "263000", "CV47", "", "Stratford-on-Avon",
+            "Warwickshire", "West Midlands", "England");
+    private static final String CARDIFF = row("osgb4000000074813508", "Cardiff", "Caerdydd", "populatedPlace",
+            "City", "318250", "176250", "313000", "172000", "323000", "182000", "CF10", "", "", "Cardiff", "Wales",
+            "Wales");
+    private static final String LONDON_ROAD_1 = row("osgb4000000017990393", "London Road", "", "transportNetwork",
+            "Named Road", "442100", "112800", "", "", "", "", "SO15", "Southampton", "", "Southampton",
+            "South East", "England");
+    private static final String LONDON_ROAD_2 = row("osgb4000000017990394", "London Road", "", "transportNetwork",
+            "Named Road", "442150", "112900", "", "", "", "", "SO15", "Southampton", "", "Southampton",
+            "South East", "England");
+    private static final String QUOTED = row("osgb4000000074571291", "\"Bristol, City of\"", "", "populatedPlace",
+            "City", "358870", "173010", "", "", "", "", "BS1", "", "", "\"Bristol, City of\"", "South West",
+            "England");
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldReturnSameResultsAsOnlineProvider() throws IOException {
+        String json = "{\"results\":[{\"GAZETTEER_ENTRY\":{\"ID\":\"osgb4000000074564391\",\"NAME1\":\"Southampton\"," +
+                "\"TYPE\":\"populatedPlace\",\"LOCAL_TYPE\":\"City\",\"GEOMETRY_X\":442295.0,\"GEOMETRY_Y\":111865.0," +
+                "\"MBR_XMIN\":437500.0,\"MBR_YMIN\":106000.0,\"MBR_XMAX\":447000.0,\"MBR_YMAX\":119000.0," +
+                "\"POSTCODE_DISTRICT\":\"SO14\",\"COUNTY_UNITARY\":\"Southampton\",\"REGION\":\"South East\"," +
+                "\"COUNTRY\":\"England\"}}]}";
+        SearchApi searchApi = Mockito.mock(SearchApi.class);
+        when(searchApi.search(anyString(), anyString())).thenReturn(
+                Observable.just(new Gson().fromJson(json, ServerResponse.class)));
+        List<SearchResult> online = new OpennamesProvider.Builder("key").setSearchApi(searchApi).build()
+                .query("Southampton").toBlocking().single();
+
+        List<SearchResult> offline = provider(SOUTHAMPTON).query("Southampton").toBlocking().single();
+
+        assertEquals(online, offline);
+        assertEquals("Southampton, South East, England, SO14", offline.get(0).getContext());
+        assertEquals(27700, offline.get(0).getSpatialReference().getID());
+    }
+
+    @Test
+    public void shouldMatchNamesByPrefix() throws IOException {
+        List<SearchResult> results = provider(SOUTHAMPTON, SOUTHAM, CARDIFF).query("  SOUTHAM ").toBlocking().single();
+
+        assertEquals(2, results.size());
+        assertEquals("Southam", results.get(0).getName());
+        assertEquals("Southampton", results.get(1).getName());
+    }
+
+    @Test
+    public void shouldFilterByContextAfterComma() throws IOException {
+        List<SearchResult> results = provider(SOUTHAMPTON, SOUTHAM).query("southam, warwickshire").toBlocking()
+                .single();
+
+        assertEquals(1, results.size());
+        assertEquals("Southam", results.get(0).getName());
+    }
+
+    @Test
+    public void shouldMatchAlternativeName() throws IOException {
+        List<SearchResult> results = provider(SOUTHAMPTON, CARDIFF).query("Caerdydd").toBlocking().single();
+
+        assertEquals(1, results.size());
+        assertEquals("Cardiff", results.get(0).getName());
+    }
+
+    @Test
+    public void shouldMarkDuplicatesAndOmitMissingBoundingBox() throws IOException {
+        List<SearchResult> results = provider(LONDON_ROAD_1, LONDON_ROAD_2).query("london road").toBlocking()
+                .single();
+
+        assertEquals(2, results.size());
+        assertEquals("London Road", results.get(0).getName());
+        assertEquals("London Road (1)", results.get(1).getName());
+        assertNull(results.get(0).getEnvelope());
+    }
+
+    @Test
+    public void shouldReadQuotedFields() throws IOException {
+        List<SearchResult> results = provider(QUOTED).query("bristol").toBlocking().single();
+
+        assertEquals(1, results.size());
+        assertEquals("Bristol, City of", results.get(0).getName());
+        assertEquals("Bristol, City of, South West, England, BS1", results.get(0).getContext());
+    }
+
+    @Test
+    public void shouldLimitResults() throws IOException {
+        File index = index(SOUTHAMPTON, SOUTHAM);
+        OfflineOpennamesProvider provider = new OfflineOpennamesProvider.Builder(index).setMaxResults(1).build();
+
+        assertEquals(1, provider.query("south").toBlocking().single().size());
+        assertEquals(2, provider.size());
+    }
+
+    @Test
+    public void shouldReturnNothingForUnknownOrEmptyName() throws IOException {
+        OfflineOpennamesProvider provider = provider(SOUTHAMPTON, SOUTHAM);
+
+        assertTrue(provider.query("zzz").toBlocking().single().isEmpty());
+        assertTrue(provider.query("").toBlocking().single().isEmpty());
+        assertTrue(provider.query("a").toBlocking().single().isEmpty());
+    }
+
+    @Test
+    public void shouldReadEveryEntry() throws IOException {
+        List<SearchResult> entries = new ArrayList<>();
+        for (SearchResult entry : provider(SOUTHAMPTON, CARDIFF, LONDON_ROAD_1).entries()) {
+            entries.add(entry);
+        }
+
+        assertEquals(3, entries.size());
+        assertEquals("Southampton", entries.get(0).getName());
+        assertEquals("Cardiff", entries.get(1).getName());
+        assertEquals("London Road", entries.get(2).getName());
+        assertNull(entries.get(2).getEnvelope());
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectFileThatIsNotAnIndex() throws IOException {
+        File file = mFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(HEADER.getBytes("UTF-8"));
+        out.close();
+
+        new OfflineOpennamesProvider.Builder(file).build();
+    }
+
+    private OfflineOpennamesProvider provider(String... rows) throws IOException {
+        return new OfflineOpennamesProvider.Builder(index(rows)).build();
+    }
+
+    private File index(String... rows) throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER).append('\n');
+        for (String row : rows) {
+            csv.append(row).append('\n');
+        }
+        File index = mFolder.newFile();
+        OfflineOpennamesIndexer indexer = new OfflineOpennamesIndexer(index);
+        indexer.add(new StringReader(csv.toString()));
+        indexer.close();
+        return index;
+    }
+
+    private static String row(String id, String name1, String name2, String type, String localType, String x,
+                              String y, String xmin, String ymin, String xmax, String ymax, String postcodeDistrict,
+                              String populatedPlace, String districtBorough, String countyUnitary, String region,
+                              String country) {
+        String[] fields = new String[34];
+        fields[0] = id;
+        fields[2] = name1;
+        fields[4] = name2;
+        fields[6] = type;
+        fields[7] = localType;
+        fields[8] = x;
+        fields[9] = y;
+        fields[12] = xmin;
+        fields[13] = ymin;
+        fields[14] = xmax;
+        fields[15] = ymax;
+        fields[16] = postcodeDistrict;
+        fields[18] = populatedPlace;
+        fields[21] = districtBorough;
+        fields[24] = countyUnitary;
+        fields[27] = region;
+        fields[29] = country;
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            if (fields[i] != null) {
+                sb.append(fields[i]);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.opennames;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+import org.mockito.Mockito;
+import retrofit2.Converter;
+import rx.Observable;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.opennames.service.SearchApi;
+import uk.os.search.android.providers.opennames.service.StreamingSearchApi;
+import uk.os.search.android.providers.opennames.service.model.ServerResponse;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.when;
+
+public class OpennamesConverterFactoryTest {
+
+    private static final String RESPONSE = "{\"header\":{\"query\":\"bournemouth\",\"maxresults\":25,\"offset\":0},"
+            + "\"results\":[{\"GAZETTEER_ENTRY\":{\"ID\":\"osgb4000000074338692\",\"NAME1\":\"Bournemouth\","
+            + "\"TYPE\":\"populatedPlace\",\"GEOMETRY_X\":408801.0,\"GEOMETRY_Y\":91268.0,"
+            + "\"MOST_DETAIL_VIEW_RES\":91000,\"MBR_XMIN\":404489.873,\"MBR_YMIN\":90021.151,"
+            + "\"MBR_XMAX\":418425.568,\"MBR_YMAX\":97885.19,\"POSTCODE_DISTRICT\":\"BH1\","
+            + "\"COUNTY_UNITARY\":\"Bournemouth\",\"REGION\":\"South West\",\"COUNTRY\":\"England\"}},"
+            + "{\"GAZETTEER_ENTRY\":{\"ID\":\"osgb4000000009438220\",\"NAME1\":\"High Street\","
+            + "\"GEOMETRY_X\":\"453500.0\",\"GEOMETRY_Y\":\"153500.0\",\"MBR_XMIN\":null,"
+            + "\"DISTRICT_BOROUGH\":\"City and County of the City of London\",\"POPULATED_PLACE\":null,"
+            + "\"COUNTY_UNITARY\":\"Greater London\",\"REGION\":\"London\",\"COUNTRY\":\"England\","
+            + "\"POSTCODE_DISTRICT\":\"EC2V\",\"SAME_AS_GEONAMES\":{\"ignored\":[1,2,3]}}}]}";
+
+    @Test
+    public void shouldReadTheSameResultsAsTheResponseModel() throws IOException {
+        SearchApi searchApi = Mockito.mock(SearchApi.class);
+        when(searchApi.search(anyString(), anyString())).thenReturn(
+                Observable.just(new Gson().fromJson(RESPONSE, ServerResponse.class)));
+        List<SearchResult> expected = new OpennamesProvider.Builder("key").setSearchApi(searchApi).build()
+                .query("bournemouth").toBlocking().single();
+
+        List<SearchResult> actual = convert(RESPONSE);
+
+        assertEquals(2, actual.size());
+        assertEquals(expected, actual);
+        assertEquals("Bournemouth, South West, England, BH1", actual.get(0).getContext());
+        assertEquals(418425.568, actual.get(0).getEnvelope().getXMax(), 0);
+        assertNull(actual.get(1).getEnvelope());
+        assertEquals("London, England, EC2V", actual.get(1).getContext());
+        assertEquals(27700, actual.get(1).getSpatialReference().getID());
+    }
+
+    @Test
+    public void shouldReadResponseWithoutResults() throws IOException {
+        assertTrue(convert("{\"header\":{\"totalresults\":0}}").isEmpty());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void shouldRejectEntryWithoutGeometry() throws IOException {
+        convert("{\"results\":[{\"GAZETTEER_ENTRY\":{\"ID\":\"1\",\"NAME1\":\"Nowhere\"}}]}");
+    }
+
+    @Test
+    public void shouldLeaveOtherTypesToTheNextConverter() {
+        assertNull(OpennamesConverterFactory.create().responseBodyConverter(ServerResponse.class,
+                new Annotation[0], null));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<SearchResult> convert(String json) throws IOException {
+        Converter<ResponseBody, ?> converter = OpennamesConverterFactory.create()
+                .responseBodyConverter(searchResultsType(), new Annotation[0], null);
+        return (List<SearchResult>) converter.convert(
+                ResponseBody.create(MediaType.parse("application/json"), json));
+    }
+
+    private static Type searchResultsType() {
+        try {
+            Type observable = StreamingSearchApi.class.getMethod("search", String.class, String.class)
+                    .getGenericReturnType();
+            return ((ParameterizedType) observable).getActualTypeArguments()[0];
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
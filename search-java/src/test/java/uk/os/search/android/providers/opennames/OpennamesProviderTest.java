@@ -21,9 +21,12 @@ import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import rx.Observable;
+import rx.schedulers.Schedulers;
 import uk.os.search.android.providers.opennames.service.SearchApi;
 import uk.os.search.android.providers.opennames.service.model.ServerResponse;
+import uk.os.search.util.RateLimiter;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.*;
 
 public class OpennamesProviderTest {
@@ -49,4 +52,18 @@ public class OpennamesProviderTest {
         opennamesProvider.query(EMPTY).toBlocking().first();
         verify(searchApi, times(1)).search(API_KEY, EMPTY);
     }
+
+    @Test
+    public void shouldLimitCallsToTheApi() {
+        SearchApi searchApi = Mockito.mock(SearchApi.class);
+        when(searchApi.search(anyString(), anyString())).thenReturn(Observable.just(new ServerResponse()));
+        RateLimiter rateLimiter = new RateLimiter.Builder(1).setScheduler(Schedulers.immediate()).build();
+
+        OpennamesProvider opennamesProvider = new OpennamesProvider.Builder(API_KEY).setSearchApi(searchApi)
+                .setRateLimiter(rateLimiter).build();
+        opennamesProvider.query(LONDON).toBlocking().first();
+
+        assertEquals(1, rateLimiter.getPermitsGranted());
+        assertEquals(0, rateLimiter.getInFlight());
+    }
 }
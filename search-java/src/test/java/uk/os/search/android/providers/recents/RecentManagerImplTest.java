@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
 import uk.os.search.SearchResult;
 
 import static org.junit.Assert.assertEquals;
@@ -115,6 +116,87 @@ public class RecentManagerImplTest {
         assertEquals("Applewood", result.get(3).getName());
     }
 
+    @Test
+    public void shouldQueryNameAndContextMostRecentFirst() throws Exception {
+        RecentsManager recentsManager = getRecentsManagerWithResults();
+
+        List<SearchResult> results = recentsManager.query("WOOD").toBlocking().first();
+        assertEquals(4, results.size());
+        assertEquals("Darkwood", results.get(0).getName());
+        assertEquals("Applewood", results.get(3).getName());
+
+        // spans the name and context
+        assertEquals(1, recentsManager.query("cobwood cob").toBlocking().first().size());
+        assertEquals(0, recentsManager.query("woodwood").toBlocking().first().size());
+        assertEquals(0, recentsManager.query("wood x").toBlocking().first().size());
+    }
+
+    @Test
+    public void shouldQueryTermsShorterThanTrigram() throws Exception {
+        RecentsManager recentsManager = getRecentsManagerWithResults();
+
+        assertEquals(4, recentsManager.query("").toBlocking().first().size());
+        List<SearchResult> results = recentsManager.query("ob").toBlocking().first();
+        assertEquals(1, results.size());
+        assertEquals("Cobwood", results.get(0).getName());
+    }
+
+    @Test
+    public void shouldReindexUpdatedRecent() throws Exception {
+        RecentsManager recentsManager = getRecentsManagerWithResults();
+
+        SearchResult renamed = new SearchResult("b", "Blackheath", "Blackheath Town", new Point(20000, 20000), null,
+                SpatialReference.create(27700));
+        TestSubscriber<Void> testSubscriber = new TestSubscriber<>();
+        recentsManager.updateRecent(renamed).subscribe(testSubscriber);
+        testSubscriber.awaitTerminalEvent(3, TimeUnit.SECONDS);
+
+        assertEquals(0, recentsManager.query("blackwood").toBlocking().first().size());
+        assertEquals(1, recentsManager.query("heath").toBlocking().first().size());
+        assertEquals("Blackheath", recentsManager.queryById("b").toBlocking().first().get(0).getName());
+
+        // an update keeps the recent's place
+        List<SearchResult> results = recentsManager.query("town").toBlocking().first();
+        assertEquals("Blackheath", results.get(2).getName());
+    }
+
+    @Test
+    public void shouldRemoveEvictedRecentsFromIndex() throws Exception {
+        RecentsManager recentsManager = new RecentsManagerImpl(2);
+        save(createSearchResult("Applewood", 10000), recentsManager);
+        save(createSearchResult("Blackwood", 20000), recentsManager);
+        save(createSearchResult("Cobwood", 30000), recentsManager);
+
+        assertEquals(0, recentsManager.query("applewood").toBlocking().first().size());
+        assertEquals(2, recentsManager.query("wood").toBlocking().first().size());
+        assertEquals(0, recentsManager.queryById("a").toBlocking().first().size());
+    }
+
+    @Test
+    public void shouldQueryLargeStore() throws Exception {
+        RecentsManager recentsManager = new RecentsManagerImpl(20000);
+        for (int i = 0; i < 20000; i++) {
+            SearchResult searchResult = new SearchResult("id" + i, "High Street " + i, "Town " + (i % 100),
+                    new Point(i, i), null, SpatialReference.create(27700));
+            recentsManager.saveRecent(searchResult).toBlocking().lastOrDefault(null);
+        }
+
+        List<SearchResult> results = recentsManager.query("high street 1999").toBlocking().first();
+        assertEquals(11, results.size());
+        assertEquals("High Street 19999", results.get(0).getName());
+        assertEquals(200, recentsManager.query("town 42").toBlocking().first().size());
+    }
+
+    @Test
+    public void shouldRunOnSuppliedScheduler() {
+        RecentsManager recentsManager = new RecentsManagerImpl(10, Schedulers.immediate());
+        recentsManager.saveRecent(createSearchResult("Applewood", 10000));
+
+        // immediate, so saved without waiting
+        assertEquals(1, recentsManager.last(10).toBlocking().first().size());
+        assertEquals(1, recentsManager.query("apple").toBlocking().first().size());
+    }
+
     private SearchResult createSearchResult(String name, double position) {
         Envelope envelope = new Envelope(position - 500, position - 500, position + 500, position + 500);
         return new SearchResult(name.toLowerCase().substring(0, 1),
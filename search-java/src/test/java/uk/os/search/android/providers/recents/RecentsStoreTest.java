@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.recents;
+
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import org.junit.Test;
+import uk.os.search.SearchResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecentsStoreTest {
+
+    @Test
+    public void shouldPromoteSavedRecentToFront() {
+        RecentsStore store = new RecentsStore(10);
+        store.save(place("a", "Applewood"));
+        store.save(place("b", "Blackwood"));
+        store.save(place("c", "Cobwood"));
+        store.save(place("a", "Applewood"));
+
+        assertEquals(names("Applewood", "Cobwood", "Blackwood"), namesOf(store.last(10)));
+        assertEquals(names("Applewood", "Cobwood", "Blackwood"), namesOf(store.query("wood")));
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    public void shouldEvictLeastRecent() {
+        RecentsStore store = new RecentsStore(2);
+        store.save(place("a", "Applewood"));
+        store.save(place("b", "Blackwood"));
+        store.save(place("a", "Applewood"));
+        store.save(place("c", "Cobwood"));
+
+        assertEquals(names("Cobwood", "Applewood"), namesOf(store.last(10)));
+        assertTrue(store.get("b").isEmpty());
+        assertTrue(store.query("black").isEmpty());
+    }
+
+    @Test
+    public void shouldReturnMostRecentWhenLimited() {
+        RecentsStore store = new RecentsStore(100);
+        for (int i = 0; i < 50; i++) {
+            store.save(place("id" + i, "Place " + i));
+        }
+
+        assertEquals(names("Place 49", "Place 48", "Place 47"), namesOf(store.last(3)));
+    }
+
+    @Test
+    public void shouldReindexSavedRecentWithChangedName() {
+        RecentsStore store = new RecentsStore(10);
+        store.save(place("a", "Applewood"));
+        store.save(place("a", "Ashwood"));
+
+        assertTrue(store.query("apple").isEmpty());
+        assertEquals(names("Ashwood"), namesOf(store.query("ashw")));
+    }
+
+    @Test
+    public void shouldStayConsistentUnderConcurrentUse() throws Exception {
+        final RecentsStore store = new RecentsStore(500);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    for (int i = 0; i < 2000; i++) {
+                        if (thread % 2 == 0) {
+                            store.save(place("id" + (i % 700), "Place " + i));
+                        } else {
+                            List<SearchResult> last = store.last(20);
+                            assertTrue(last.size() <= 20);
+                            store.query("place 1");
+                            store.get("id" + i);
+                        }
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(500, store.size());
+        assertEquals(500, store.last(1000).size());
+        assertEquals(500, store.query("place").size());
+    }
+
+    private static SearchResult place(String id, String name) {
+        return new SearchResult(id, name, name + " Town", new Point(0, 0), null, SpatialReference.create(27700));
+    }
+
+    private static List<String> names(String... names) {
+        List<String> list = new ArrayList<>();
+        for (String name : names) {
+            list.add(name);
+        }
+        return list;
+    }
+
+    private static List<String> namesOf(List<SearchResult> results) {
+        List<String> names = new ArrayList<>();
+        for (SearchResult result : results) {
+            names.add(result.getName());
+        }
+        return names;
+    }
+}
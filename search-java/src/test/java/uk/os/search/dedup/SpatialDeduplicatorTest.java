@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.dedup;
+
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import org.junit.Test;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.ProviderResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SpatialDeduplicatorTest {
+
+    private static final SpatialReference BRITISH_NATIONAL_GRID = SpatialReference.create(27700);
+    private static final SpatialReference WGS84 = SpatialReference.create(4326);
+
+    @Test
+    public void shouldRemoveSamePlaceFromLaterProvider() {
+        SearchResult openNames = result("osgb4000000074338692", "Southampton", 442000, 112000, BRITISH_NATIONAL_GRID);
+        SearchResult places = result("1234", "SOUTHAMPTON", 442030, 112040, BRITISH_NATIONAL_GRID);
+        SearchResult elsewhere = result("5678", "Southampton", 442500, 112000, BRITISH_NATIONAL_GRID);
+
+        List<ProviderResponse> deduplicated = new SpatialDeduplicator(100).deduplicate(Arrays.asList(
+                response("OpennamesProvider", openNames), response("AddressesProvider", places, elsewhere)));
+
+        assertEquals(Arrays.asList(openNames), deduplicated.get(0).getSearchResults());
+        assertEquals(Arrays.asList(elsewhere), deduplicated.get(1).getSearchResults());
+        assertEquals("AddressesProvider", deduplicated.get(1).getSource());
+    }
+
+    @Test
+    public void shouldKeepNearbyPlacesWithOtherNames() {
+        SearchResult street = result("1", "High Street", 442000, 112000, BRITISH_NATIONAL_GRID);
+        SearchResult church = result("2", "St Mary's Church", 442010, 112010, BRITISH_NATIONAL_GRID);
+
+        List<ProviderResponse> responses = Arrays.asList(response("A", street), response("B", church));
+        List<ProviderResponse> deduplicated = new SpatialDeduplicator(100).deduplicate(responses);
+
+        assertSame(responses.get(0), deduplicated.get(0));
+        assertSame(responses.get(1), deduplicated.get(1));
+    }
+
+    @Test
+    public void shouldCompareWgs84WithBritishNationalGrid() {
+        // the Royal Observatory, Greenwich
+        SearchResult grid = result("1", "Royal Observatory", 538885, 177322, BRITISH_NATIONAL_GRID);
+        SearchResult wgs84 = result("2", "Royal-Observatory", -0.001472, 51.477806, WGS84);
+
+        List<ProviderResponse> deduplicated = new SpatialDeduplicator(25).deduplicate(Arrays.asList(
+                response("A", grid), response("B", wgs84)));
+
+        assertEquals(0, deduplicated.get(1).getSearchResults().size());
+    }
+
+    @Test
+    public void shouldFindDuplicatesAcrossCellBoundaries() {
+        SearchResult west = result("1", "Bournemouth", 408799, 91268, BRITISH_NATIONAL_GRID);
+        SearchResult east = result("2", "Bournemouth", 408801, 91268, BRITISH_NATIONAL_GRID);
+
+        List<ProviderResponse> deduplicated = new SpatialDeduplicator(100).deduplicate(Arrays.asList(
+                response("A", west, east)));
+
+        assertEquals(Arrays.asList(west), deduplicated.get(0).getSearchResults());
+    }
+
+    @Test
+    public void shouldKeepResultsInOtherSpatialReferences() {
+        SearchResult first = result("1", "Southampton", 442000, 112000, SpatialReference.create(3857));
+        SearchResult second = result("2", "Southampton", 442000, 112000, SpatialReference.create(3857));
+
+        List<ProviderResponse> deduplicated = new SpatialDeduplicator(100).deduplicate(Arrays.asList(
+                response("A", first, second)));
+
+        assertEquals(2, deduplicated.get(0).getSearchResults().size());
+    }
+
+    @Test
+    public void shouldNormaliseNames() {
+        assertEquals("st marys church", SpatialDeduplicator.name("  ST. MARY'S  Church,"));
+        assertEquals("10 downing street", SpatialDeduplicator.name("10, Downing Street"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRefuseToleranceThatIsNotPositive() {
+        new SpatialDeduplicator(0);
+    }
+
+    private static SearchResult result(String id, String name, double x, double y,
+                                       SpatialReference spatialReference) {
+        return new SearchResult(id, name, "", new Point(x, y), null, spatialReference);
+    }
+
+    private static ProviderResponse response(String source, SearchResult... searchResults) {
+        return new ProviderResponse(source, new ArrayList<>(Arrays.asList(searchResults)));
+    }
+}
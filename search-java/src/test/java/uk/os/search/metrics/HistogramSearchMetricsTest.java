@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.metrics;
+
+import com.esri.core.geometry.Envelope;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import org.junit.Test;
+import org.mockito.Mockito;
+import rx.Observable;
+import rx.functions.Func0;
+import uk.os.search.SearchManager;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.addresses.AddressesProvider;
+import uk.os.search.android.providers.opennames.OpennamesProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+
+public class HistogramSearchMetricsTest {
+
+    private static final SearchResult SOUTHAMPTON = new SearchResult("osgb4000000074564391", "Southampton",
+            "Southampton, South East, England, SO14", new Point(442295, 111865), new Envelope(),
+            SpatialReference.create(27700));
+
+    @Test
+    public void shouldRecordEachProvidersResponse() {
+        OpennamesProvider opennamesProvider = Mockito.mock(OpennamesProvider.class);
+        when(opennamesProvider.query(anyString())).thenReturn(Observable.<List<SearchResult>>just(
+                new ArrayList<>(Arrays.asList(SOUTHAMPTON))));
+        AddressesProvider addressesProvider = Mockito.mock(AddressesProvider.class);
+        when(addressesProvider.query(anyString())).thenReturn(Observable.<List<SearchResult>>error(
+                new IllegalStateException("offline")));
+        HistogramSearchMetrics metrics = new HistogramSearchMetrics();
+
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(Arrays.<Provider>asList(opennamesProvider, addressesProvider))
+                .setMetrics(metrics)
+                .build();
+        searchManager.query("Southampton").toBlocking().single();
+        searchManager.query("Southampton").toBlocking().single();
+
+        HistogramSearchMetrics.ProviderMetrics opennames = metrics.getMetrics(
+                opennamesProvider.getClass().getSimpleName());
+        assertEquals(2, opennames.getLatencyMicros().getCount());
+        assertEquals(1, opennames.getResultCounts().getValueAtPercentile(100));
+        assertTrue(opennames.getErrorCounts().isEmpty());
+
+        HistogramSearchMetrics.ProviderMetrics addresses = metrics.getMetrics(
+                addressesProvider.getClass().getSimpleName());
+        assertEquals(2, addresses.getLatencyMicros().getCount());
+        assertEquals(Collections.singletonMap("IllegalStateException", 2L), addresses.getErrorCounts());
+    }
+
+    @Test
+    public void shouldRecordTimeoutAsError() {
+        OpennamesProvider opennamesProvider = Mockito.mock(OpennamesProvider.class);
+        when(opennamesProvider.query(anyString())).thenReturn(Observable.<List<SearchResult>>never());
+        HistogramSearchMetrics metrics = new HistogramSearchMetrics();
+
+        new SearchManager.Builder()
+                .setProviders(Arrays.<Provider>asList(opennamesProvider))
+                .setProviderTimeout(10, TimeUnit.MILLISECONDS)
+                .setMetrics(metrics)
+                .build()
+                .query("Southampton").toBlocking().single();
+
+        HistogramSearchMetrics.ProviderMetrics opennames = metrics.getMetrics(
+                opennamesProvider.getClass().getSimpleName());
+        assertEquals(Long.valueOf(1), opennames.getErrorCounts().get(TimeoutException.class.getSimpleName()));
+        assertTrue(opennames.getLatencyMicros().getMax() >= TimeUnit.MILLISECONDS.toMicros(10));
+    }
+
+    @Test
+    public void shouldNotCountTimeWaitingForAThread() {
+        OpennamesProvider opennamesProvider = Mockito.mock(OpennamesProvider.class);
+        when(opennamesProvider.query(anyString())).thenReturn(Observable.defer(
+                new Func0<Observable<List<SearchResult>>>() {
+                    @Override
+                    public Observable<List<SearchResult>> call() {
+                        try {
+                            Thread.sleep(300);
+                        } catch (InterruptedException e) {
+                            return Observable.error(e);
+                        }
+                        return Observable.<List<SearchResult>>just(new ArrayList<SearchResult>());
+                    }
+                }));
+        AddressesProvider addressesProvider = Mockito.mock(AddressesProvider.class);
+        when(addressesProvider.query(anyString())).thenReturn(Observable.<List<SearchResult>>just(
+                new ArrayList<SearchResult>()));
+        HistogramSearchMetrics metrics = new HistogramSearchMetrics();
+        // one thread, so OS Places waits for OS Open Names before it runs
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            new SearchManager.Builder()
+                    .setProviders(Arrays.<Provider>asList(opennamesProvider, addressesProvider))
+                    .setExecutor(executor)
+                    .setMetrics(metrics)
+                    .build()
+                    .query("Southampton").toBlocking().single();
+        } finally {
+            executor.shutdown();
+        }
+
+        HistogramSearchMetrics.ProviderMetrics opennames = metrics.getMetrics(
+                opennamesProvider.getClass().getSimpleName());
+        assertTrue(opennames.getLatencyMicros().getMax() >= TimeUnit.MILLISECONDS.toMicros(300));
+        HistogramSearchMetrics.ProviderMetrics addresses = metrics.getMetrics(
+                addressesProvider.getClass().getSimpleName());
+        assertTrue(addresses.getLatencyMicros().getMax() < TimeUnit.MILLISECONDS.toMicros(300));
+    }
+
+    @Test
+    public void shouldRecordDecoratorOutcomes() {
+        OpennamesProvider opennamesProvider = Mockito.mock(OpennamesProvider.class);
+        when(opennamesProvider.query(anyString())).thenReturn(Observable.<List<SearchResult>>just(
+                new ArrayList<>(Arrays.asList(SOUTHAMPTON))));
+        HistogramSearchMetrics metrics = new HistogramSearchMetrics();
+
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(Arrays.<Provider>asList(opennamesProvider))
+                .cacheResults(10, 1, TimeUnit.MINUTES)
+                .setMetrics(metrics)
+                .build();
+        searchManager.query("Southampton").toBlocking().single();
+        searchManager.query("Southampton").toBlocking().single();
+
+        HistogramSearchMetrics.ProviderMetrics opennames = metrics.getMetrics(
+                opennamesProvider.getClass().getSimpleName());
+        assertEquals(1, opennames.getOutcomeCount(SearchMetrics.Outcome.CACHE_MISS));
+        assertEquals(1, opennames.getOutcomeCount(SearchMetrics.Outcome.CACHE_HIT));
+        assertEquals(0, opennames.getOutcomeCount(SearchMetrics.Outcome.COALESCED));
+    }
+
+    @Test
+    public void shouldHaveNoMetricsForUnknownProvider() {
+        HistogramSearchMetrics metrics = new HistogramSearchMetrics();
+        metrics.onOutcome("OpennamesProvider", SearchMetrics.Outcome.CIRCUIT_OPENED);
+
+        assertNull(metrics.getMetrics("AddressesProvider"));
+        assertEquals(Collections.singleton("OpennamesProvider"), metrics.getSources());
+    }
+}
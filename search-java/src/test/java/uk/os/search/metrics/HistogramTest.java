@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void shouldCountSmallValuesExactly() {
+        Histogram histogram = new Histogram(1000);
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(50.5, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void shouldReadLargeValuesWithinTwoPercent() {
+        Histogram histogram = new Histogram(100000000);
+        for (long value = 1000; value <= 100000000; value *= 10) {
+            histogram.record(value);
+        }
+
+        for (int i = 1; i <= 6; i++) {
+            long expected = (long) Math.pow(10, i + 2);
+            long actual = histogram.getValueAtPercentile(100.0 * i / 6);
+            assertTrue(actual + " not near " + expected, Math.abs(actual - expected) <= expected / 50);
+        }
+        assertEquals(100000000, histogram.getMax());
+    }
+
+    @Test
+    public void shouldClampValuesOutOfRange() {
+        Histogram histogram = new Histogram(1000);
+        histogram.record(-5);
+        histogram.record(5000);
+
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+        assertEquals(1000, histogram.getMax());
+    }
+
+    @Test
+    public void shouldReadZeroWhenEmpty() {
+        Histogram histogram = new Histogram(1000);
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectPercentileAboveHundred() {
+        new Histogram(1000).getValueAtPercentile(101);
+    }
+}
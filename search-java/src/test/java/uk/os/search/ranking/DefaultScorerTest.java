@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.ranking;
+
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import org.junit.Test;
+import uk.os.search.SearchResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultScorerTest {
+
+    private static final SpatialReference BRITISH_NATIONAL_GRID = SpatialReference.create(27700);
+
+    @Test
+    public void shouldMatchNameBeforePrefixBeforeWords() {
+        assertEquals(1, match("southampton", result("Southampton", "South East")), 0);
+        assertEquals(0.8, match("south", result("Southampton", "South East")), 0);
+        assertEquals(0.6, match("london road, southampton",
+                result("London Road", "Southampton, South East, England, SO15")), 0.001);
+        assertEquals(0.4, match("london road, bournemouth",
+                result("London Road", "Southampton, South East, England, SO15")), 0.001);
+        assertEquals(0, match("edinburgh", result("London Road", "Southampton")), 0);
+    }
+
+    @Test
+    public void shouldFavourRecentAndEarlierResults() {
+        DefaultScorer scorer = new DefaultScorer.Builder().build();
+        SearchResult searchResult = result("Southampton", "South East");
+        String[] words = {"southampton"};
+
+        double first = scorer.score("southampton", words, searchResult, "OpennamesProvider", 0, 0, Scorer.NOT_RECENT);
+        double recent = scorer.score("southampton", words, searchResult, "RecentsManager", 0, 0, 0);
+        double lowerPriority = scorer.score("southampton", words, searchResult, "OpennamesProvider", 1, 0,
+                Scorer.NOT_RECENT);
+        double lowerPosition = scorer.score("southampton", words, searchResult, "OpennamesProvider", 0, 3,
+                Scorer.NOT_RECENT);
+
+        assertTrue(recent > first);
+        assertTrue(first > lowerPriority);
+        assertTrue(first > lowerPosition);
+    }
+
+    @Test
+    public void shouldWeightBySource() {
+        DefaultScorer scorer = new DefaultScorer.Builder()
+                .setMatchWeight(0)
+                .setPriorityWeight(0)
+                .setPositionWeight(0)
+                .setSourceWeight("AddressesProvider", 2)
+                .build();
+        SearchResult searchResult = result("10 Downing Street", "London");
+        String[] words = {"downing"};
+
+        assertEquals(2, scorer.score("downing", words, searchResult, "AddressesProvider", 0, 0, Scorer.NOT_RECENT),
+                0);
+        assertEquals(0, scorer.score("downing", words, searchResult, "OpennamesProvider", 0, 0, Scorer.NOT_RECENT),
+                0);
+    }
+
+    @Test
+    public void shouldOnlyMatchWordsFromTheirStart() {
+        assertEquals(0.3, match("road ampton", result("London Road", "Southampton")), 0.001);
+    }
+
+    private static double match(String searchTerm, SearchResult searchResult) {
+        return DefaultScorer.match(searchTerm, Ranking.words(searchTerm), searchResult);
+    }
+
+    private static SearchResult result(String name, String context) {
+        return new SearchResult(name, name, context, new Point(0, 0), null, BRITISH_NATIONAL_GRID);
+    }
+}
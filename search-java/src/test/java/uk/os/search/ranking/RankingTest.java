@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.ranking;
+
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import org.junit.Test;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.ProviderResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RankingTest {
+
+    private static final SpatialReference BRITISH_NATIONAL_GRID = SpatialReference.create(27700);
+
+    /**
+     * Scores a result by the number in its name.
+     */
+    private static final Scorer BY_NAME = new Scorer() {
+        @Override
+        public double score(String searchTerm, String[] searchWords, SearchResult searchResult, String source,
+                            int priority, int position, int recency) {
+            return Double.parseDouble(searchResult.getName());
+        }
+    };
+
+    @Test
+    public void shouldKeepBestKAcrossProviders() {
+        Ranking ranking = new Ranking(BY_NAME, "anything", "A", "B");
+        List<ProviderResponse> remaining = Arrays.asList(response("A", 3, 9, 1, 7), response("B", 8, 2, 6));
+
+        List<SearchResult> top = ranking.top(3, response("RecentsManager", 5), remaining);
+
+        assertEquals(Arrays.asList("9", "8", "7"), names(top));
+    }
+
+    @Test
+    public void shouldReturnEveryResultWhenFewerThanK() {
+        Ranking ranking = new Ranking(BY_NAME, "anything", "A");
+
+        List<SearchResult> top = ranking.top(10, response("RecentsManager", 2),
+                Collections.singletonList(response("A", 1, 3)));
+
+        assertEquals(Arrays.asList("3", "2", "1"), names(top));
+    }
+
+    @Test
+    public void shouldSizeHeapByResultsForHugeK() {
+        Ranking ranking = new Ranking(BY_NAME, "anything", "A");
+
+        List<SearchResult> top = ranking.top(Integer.MAX_VALUE, response("RecentsManager", 2),
+                Collections.singletonList(response("A", 1, 3)));
+
+        assertEquals(Arrays.asList("3", "2", "1"), names(top));
+    }
+
+    @Test
+    public void shouldRankNoResultsForHugeK() {
+        Ranking ranking = new Ranking(BY_NAME, "anything", "A");
+
+        List<SearchResult> top = ranking.top(Integer.MAX_VALUE, response("RecentsManager"),
+                Collections.<ProviderResponse>emptyList());
+
+        assertEquals(Collections.<String>emptyList(), names(top));
+    }
+
+    @Test
+    public void shouldRankEqualScoresInTheOrderMet() {
+        Scorer same = new Scorer() {
+            @Override
+            public double score(String searchTerm, String[] searchWords, SearchResult searchResult, String source,
+                                int priority, int position, int recency) {
+                return 1;
+            }
+        };
+        Ranking ranking = new Ranking(same, "anything", "A", "B");
+
+        List<SearchResult> top = ranking.top(3, response("RecentsManager", 1),
+                Arrays.asList(response("A", 2, 3), response("B", 4)));
+
+        assertEquals(Arrays.asList("1", "2", "3"), names(top));
+    }
+
+    @Test
+    public void shouldGiveScorerPriorityPositionAndRecency() {
+        final List<String> calls = new ArrayList<>();
+        Scorer recording = new Scorer() {
+            @Override
+            public double score(String searchTerm, String[] searchWords, SearchResult searchResult, String source,
+                                int priority, int position, int recency) {
+                calls.add(searchTerm + " " + Arrays.toString(searchWords) + " " + source + " " + priority + " "
+                        + position + " " + recency);
+                return 0;
+            }
+        };
+        Ranking ranking = new Ranking(recording, " London  ROAD", "A", "B");
+
+        ranking.top(1, response("RecentsManager", 1, 2), Arrays.asList(response("B", 3), response("C", 4)));
+
+        assertEquals(Arrays.asList(
+                "london road [london, road] RecentsManager 0 0 0",
+                "london road [london, road] RecentsManager 0 1 1",
+                "london road [london, road] B 1 0 -1",
+                "london road [london, road] C 2 0 -1"), calls);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRefuseKBelowOne() {
+        new Ranking(BY_NAME, "anything").top(0, response("RecentsManager"),
+                Collections.<ProviderResponse>emptyList());
+    }
+
+    private static ProviderResponse response(String source, int... names) {
+        List<SearchResult> searchResults = new ArrayList<>();
+        for (int name : names) {
+            searchResults.add(new SearchResult(String.valueOf(name), String.valueOf(name), "", new Point(0, 0), null,
+                    BRITISH_NATIONAL_GRID));
+        }
+        return new ProviderResponse(source, searchResults);
+    }
+
+    private static List<String> names(List<SearchResult> searchResults) {
+        List<String> names = new ArrayList<>();
+        for (SearchResult searchResult : searchResults) {
+            names.add(searchResult.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.util;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HttpClientsTest {
+
+    @Test
+    public void shouldShareDefaultClient() {
+        assertSame(HttpClients.getDefault(), HttpClients.getDefault());
+    }
+
+    @Test
+    public void shouldPoolConnectionsAndPreferHttp2() {
+        OkHttpClient client = HttpClients.getDefault();
+
+        assertEquals(16, client.dispatcher().getMaxRequestsPerHost());
+        assertEquals(64, client.dispatcher().getMaxRequests());
+        assertEquals(Protocol.HTTP_2, client.protocols().get(0));
+        assertTrue(client.protocols().contains(Protocol.HTTP_1_1));
+        assertEquals(10000, client.connectTimeoutMillis());
+        assertEquals(20000, client.readTimeoutMillis());
+        assertEquals(10000, client.writeTimeoutMillis());
+    }
+
+    @Test
+    public void shouldNotShareNewClientsPool() {
+        OkHttpClient client = HttpClients.newBuilder().build();
+
+        assertNotSame(HttpClients.getDefault().connectionPool(), client.connectionPool());
+        assertSame(HttpClients.getDefault().connectionPool(),
+                HttpClients.getDefault().newBuilder().build().connectionPool());
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.util;
+
+import org.junit.Test;
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    private final TestScheduler mScheduler = new TestScheduler();
+
+    @Test
+    public void shouldStartABurstThenOneCallPerToken() {
+        RateLimiter rateLimiter = new RateLimiter.Builder(10).setBurst(2).setScheduler(mScheduler).build();
+        AtomicInteger started = new AtomicInteger();
+
+        for (int i = 0; i < 4; i++) {
+            rateLimiter.limit(counted(started)).subscribe();
+        }
+        assertEquals(2, started.get());
+        assertEquals(2, rateLimiter.getQueueDepth());
+
+        mScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        assertEquals(3, started.get());
+
+        mScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        assertEquals(4, started.get());
+        assertEquals(0, rateLimiter.getQueueDepth());
+        assertEquals(4, rateLimiter.getPermitsGranted());
+        assertEquals(300, rateLimiter.getTotalWait(TimeUnit.MILLISECONDS));
+        assertEquals(200, rateLimiter.getMaxWait(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldNotStartAnotherSubscribersCallOnTheSubscribingThread() {
+        final RateLimiter rateLimiter = new RateLimiter.Builder(10).setBurst(1).setScheduler(mScheduler).build();
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger startedWhenSubscribed = new AtomicInteger(-1);
+        rateLimiter.limit(counted(started)).subscribe();
+        // subscribes a third call as the second one's permit falls due, before the timer has granted it
+        mScheduler.createWorker().schedule(new Action0() {
+            @Override
+            public void call() {
+                rateLimiter.limit(counted(started)).subscribe();
+                startedWhenSubscribed.set(started.get());
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+        rateLimiter.limit(counted(started)).subscribe();
+        assertEquals(1, started.get());
+
+        mScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, startedWhenSubscribed.get());
+        assertEquals(2, started.get());
+        assertEquals(1, rateLimiter.getQueueDepth());
+    }
+
+    @Test
+    public void shouldWaitForACallInFlightToComplete() {
+        RateLimiter rateLimiter = new RateLimiter.Builder(1000).setMaxInFlight(1).setScheduler(mScheduler).build();
+        PublishSubject<String> first = PublishSubject.create();
+        TestSubscriber<String> firstSubscriber = new TestSubscriber<>();
+        TestSubscriber<String> secondSubscriber = new TestSubscriber<>();
+
+        rateLimiter.limit(first).subscribe(firstSubscriber);
+        rateLimiter.limit(Observable.just("second")).subscribe(secondSubscriber);
+        assertTrue(first.hasObservers());
+        assertEquals(1, rateLimiter.getInFlight());
+        assertEquals(1, rateLimiter.getQueueDepth());
+        secondSubscriber.assertNoValues();
+
+        first.onNext("first");
+        first.onCompleted();
+
+        firstSubscriber.assertValue("first");
+        firstSubscriber.assertCompleted();
+        secondSubscriber.assertNoValues();
+
+        mScheduler.triggerActions();
+        secondSubscriber.assertValue("second");
+        secondSubscriber.assertCompleted();
+        assertEquals(0, rateLimiter.getInFlight());
+    }
+
+    @Test
+    public void shouldReleaseACallUnsubscribedInFlight() {
+        RateLimiter rateLimiter = new RateLimiter.Builder(1000).setMaxInFlight(1).setScheduler(mScheduler).build();
+        Subscription subscription = rateLimiter.limit(PublishSubject.<String>create()).subscribe();
+        TestSubscriber<String> next = new TestSubscriber<>();
+        rateLimiter.limit(Observable.just("next")).subscribe(next);
+        next.assertNoValues();
+
+        subscription.unsubscribe();
+        mScheduler.triggerActions();
+
+        next.assertValue("next");
+    }
+
+    @Test
+    public void shouldStartALongQueueOfSynchronousCallsWithoutNesting() {
+        RateLimiter rateLimiter = new RateLimiter.Builder(1000).setBurst(10000).setMaxInFlight(1)
+                .setScheduler(mScheduler).build();
+        PublishSubject<String> first = PublishSubject.create();
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger startedWhenFirstCompleted = new AtomicInteger(-1);
+        rateLimiter.limit(first).subscribe(new TestSubscriber<String>() {
+            @Override
+            public void onCompleted() {
+                startedWhenFirstCompleted.set(started.get());
+            }
+        });
+        List<TestSubscriber<String>> queued = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            TestSubscriber<String> subscriber = new TestSubscriber<>();
+            rateLimiter.limit(counted(started)).subscribe(subscriber);
+            queued.add(subscriber);
+        }
+        assertEquals(5000, rateLimiter.getQueueDepth());
+
+        first.onCompleted();
+        assertEquals(0, startedWhenFirstCompleted.get());
+
+        mScheduler.triggerActions();
+        assertEquals(5000, started.get());
+        for (TestSubscriber<String> subscriber : queued) {
+            subscriber.assertValue("result");
+            subscriber.assertCompleted();
+        }
+        assertEquals(0, rateLimiter.getInFlight());
+    }
+
+    @Test
+    public void shouldDropACallUnsubscribedWhileQueued() {
+        RateLimiter rateLimiter = new RateLimiter.Builder(1).setScheduler(mScheduler).build();
+        AtomicInteger started = new AtomicInteger();
+        rateLimiter.limit(counted(started)).subscribe();
+        Subscription queued = rateLimiter.limit(counted(started)).subscribe();
+        assertEquals(1, rateLimiter.getQueueDepth());
+
+        queued.unsubscribe();
+        mScheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+        assertEquals(0, rateLimiter.getQueueDepth());
+        assertEquals(1, started.get());
+        assertFalse(rateLimiter.getPermitsGranted() > 1);
+    }
+
+    @Test
+    public void shouldShareOneRateLimiterPerKey() {
+        RateLimiter.Builder builder = new RateLimiter.Builder(5);
+        RateLimiter first = RateLimiter.forKey("RateLimiterTest", builder);
+        assertSame(first, RateLimiter.forKey("RateLimiterTest", builder));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectZeroRate() {
+        new RateLimiter.Builder(0);
+    }
+
+    private static Observable<String> counted(final AtomicInteger started) {
+        return Observable.defer(new Func0<Observable<String>>() {
+            @Override
+            public Observable<String> call() {
+                started.incrementAndGet();
+                return Observable.just("result");
+            }
+        });
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Recorded API responses, as used by the integration tests.
+ */
+public final class Fixtures {
+
+    public static final String OPENNAMES = "opennames_canned.json";
+    public static final String PLACES = "boundingbox_canned.json";
+
+    private Fixtures() {}
+
+    /**
+     * @param resource the name of a recorded response
+     * @param type the model the response is parsed into
+     * @return the parsed response
+     */
+    public static <T> T load(String resource, Class<T> type) {
+        Reader reader = open(resource);
+        try {
+            return new Gson().fromJson(reader, type);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * @param resource the name of a recorded response
+     * @return the response as it was sent
+     */
+    public static String read(String resource) {
+        Reader reader = open(resource);
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[8192];
+            for (int count; (count = reader.read(buffer)) != -1; ) {
+                sb.append(buffer, 0, count);
+            }
+            return sb.toString();
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot read fixture " + resource, e);
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static Reader open(String resource) {
+        InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalStateException("missing fixture " + resource);
+        }
+        return new InputStreamReader(in, Charset.forName("UTF-8"));
+    }
+
+    private static void close(Reader reader) {
+        try {
+            reader.close();
+        } catch (IOException ignore) { /* ignore */ }
+    }
+}
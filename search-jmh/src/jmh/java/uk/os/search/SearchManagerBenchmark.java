@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.schedulers.Schedulers;
+import uk.os.search.android.providers.Provider;
+import uk.os.search.android.providers.addresses.AddressesProvider;
+import uk.os.search.android.providers.addresses.service.AddressApi;
+import uk.os.search.android.providers.bng.GridReferenceProvider;
+import uk.os.search.android.providers.latlon.LatLonProvider;
+import uk.os.search.android.providers.opennames.OpennamesProvider;
+import uk.os.search.android.providers.opennames.service.SearchApi;
+import uk.os.search.android.providers.recents.RecentsManagerImpl;
+
+/**
+ * The cost of orchestrating a query across every built-in provider, with the remote providers answering immediately
+ * from recorded responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchManagerBenchmark {
+
+    /**
+     * whether providers run on the subscribing thread or the default pool
+     */
+    @Param({"immediate", "default"})
+    public String mScheduler;
+
+    @Param({"false", "true"})
+    public boolean mRecents;
+
+    private SearchManager mSearchManager;
+
+    @Setup
+    public void setUp() {
+        final uk.os.search.android.providers.opennames.service.model.ServerResponse names =
+                Fixtures.load(Fixtures.OPENNAMES,
+                        uk.os.search.android.providers.opennames.service.model.ServerResponse.class);
+        SearchApi searchApi = new SearchApi() {
+            @Override
+            public Observable<uk.os.search.android.providers.opennames.service.model.ServerResponse> search(
+                    String apiKey, String value) {
+                return Observable.just(names);
+            }
+        };
+
+        List<Provider> providers = new ArrayList<>(Arrays.<Provider>asList(new GridReferenceProvider(),
+                new LatLonProvider(),
+                new OpennamesProvider.Builder("benchmark").setSearchApi(searchApi).build(),
+                new AddressesProvider.Builder("benchmark").setAddressApi(new RecordedAddressApi()).build()));
+
+        SearchManager.Builder builder = new SearchManager.Builder().setProviders(providers);
+        if ("immediate".equals(mScheduler)) {
+            builder.setScheduler(Schedulers.immediate());
+        }
+        if (mRecents) {
+            RecentsManagerImpl recentsManager = new RecentsManagerImpl(100, Schedulers.immediate());
+            List<SearchResult> searchResults = builder.build().query("bournemouth").toBlocking().single()
+                    .getRemaining();
+            for (int i = 0; i < searchResults.size(); i += 2) {
+                recentsManager.saveRecent(searchResults.get(i)).toBlocking().firstOrDefault(null);
+            }
+            builder.setRecentsManager(recentsManager);
+        }
+        mSearchManager = builder.build();
+    }
+
+    @Benchmark
+    public SearchBundle query() {
+        return mSearchManager.query("bournemouth").toBlocking().single();
+    }
+
+    private static final class RecordedAddressApi implements AddressApi {
+
+        private final uk.os.search.android.providers.addresses.service.model.ServerResponse mResponse =
+                Fixtures.load(Fixtures.PLACES, uk.os.search.android.providers.addresses.service.model.ServerResponse.class);
+
+        private Observable<uk.os.search.android.providers.addresses.service.model.ServerResponse> response() {
+            return Observable.just(mResponse);
+        }
+
+        @Override
+        public Observable<uk.os.search.android.providers.addresses.service.model.ServerResponse> find(
+                String apiKey, String value, int maxResults, String outputSrs) {
+            return response();
+        }
+
+        @Override
+        public Observable<uk.os.search.android.providers.addresses.service.model.ServerResponse> postcode(
+                String apiKey, String value, int maxResults, String outputSrs) {
+            return response();
+        }
+
+        @Override
+        public Observable<uk.os.search.android.providers.addresses.service.model.ServerResponse> bbox(
+                String apiKey, String bbox, String srs, String outputSrs) {
+            return response();
+        }
+
+        @Override
+        public Observable<uk.os.search.android.providers.addresses.service.model.ServerResponse> uprn(
+                String apiKey, String value, String outputSrs) {
+            return response();
+        }
+
+        @Override
+        public Observable<uk.os.search.android.providers.addresses.service.model.ServerResponse> radius(
+                String apiKey, String point, String srs, float radius, String outputSrs) {
+            return response();
+        }
+
+        @Override
+        public Observable<uk.os.search.android.providers.addresses.service.model.ServerResponse> nearest(
+                String apiKey, String point, String srs, String outputSrs) {
+            return response();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.android.providers.addresses;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.converter.gson.GsonConverterFactory;
+import rx.functions.Func1;
+import uk.os.search.Fixtures;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.addresses.service.StreamingAddressApi;
+import uk.os.search.android.providers.addresses.service.model.ServerResponse;
+
+/**
+ * Reading a recorded OS Places response into search results through the Gson response model, as with
+ * {@code GsonConverterFactory}, against reading it straight into search results with
+ * {@link PlacesConverterFactory}.  Compare the allocation reported by the gc profiler as well as the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlacesConverterBenchmark {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private byte[] mBody;
+    private Converter<ResponseBody, ?> mModelConverter;
+    private Func1<ServerResponse, List<SearchResult>> mTransform;
+    private Converter<ResponseBody, ?> mStreamingConverter;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        mBody = Fixtures.read(Fixtures.PLACES).getBytes(Charset.forName("UTF-8"));
+        mModelConverter = GsonConverterFactory.create()
+                .responseBodyConverter(ServerResponse.class, new Annotation[0], null);
+        mTransform = Transform.searchResultsFromServerResponse();
+
+        Type observable = StreamingAddressApi.class.getMethod("uprn", String.class, String.class, String.class)
+                .getGenericReturnType();
+        Type searchResults = ((ParameterizedType) observable).getActualTypeArguments()[0];
+        mStreamingConverter = PlacesConverterFactory.create()
+                .responseBodyConverter(searchResults, new Annotation[0], null);
+    }
+
+    @Benchmark
+    public List<SearchResult> gsonModel() throws IOException {
+        return mTransform.call((ServerResponse) mModelConverter.convert(ResponseBody.create(JSON, mBody)));
+    }
+
+    @Benchmark
+    public Object streaming() throws IOException {
+        return mStreamingConverter.convert(ResponseBody.create(JSON, mBody));
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.addresses;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.functions.Func1;
+import uk.os.search.Fixtures;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.addresses.service.model.ServerResponse;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransformBenchmark {
+
+    private ServerResponse mServerResponse;
+    private Func1<ServerResponse, List<SearchResult>> mTransform;
+
+    @Setup
+    public void setUp() {
+        mServerResponse = Fixtures.load(Fixtures.PLACES, ServerResponse.class);
+        mTransform = Transform.searchResultsFromServerResponse();
+    }
+
+    @Benchmark
+    public List<SearchResult> searchResultsFromServerResponse() {
+        return mTransform.call(mServerResponse);
+    }
+}
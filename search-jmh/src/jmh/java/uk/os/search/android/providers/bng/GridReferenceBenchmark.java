@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.bng;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GridReferenceBenchmark {
+
+    /**
+     * grid references of varying precision and spacing, and a search term that is not a grid reference
+     */
+    @Param({"SU4315", "SU 43712 15524", "NN1665071250", "Southampton"})
+    public String mSearchTerm;
+
+    @Benchmark
+    public OsGridReference parseGridReference() {
+        return GeoPattern.parseGridReference(mSearchTerm);
+    }
+
+    /**
+     * the single pass parser alone, without creating the search result
+     */
+    @Benchmark
+    public long parse() {
+        return GridReferenceParser.parse(mSearchTerm);
+    }
+
+    /**
+     * the regular expression based parser, for comparison
+     */
+    @Benchmark
+    public OsGridReference parseGridReferenceRegex() {
+        return RegexGridReferenceParser.parseGridReference(mSearchTerm);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.bng;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Labelling a batch of map features with condensed grid references.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GridReferenceFormatterBenchmark {
+
+    private static final int POINTS = 1000;
+
+    private final int[] mEastings = new int[POINTS];
+    private final int[] mNorthings = new int[POINTS];
+    private final StringBuilder mBuilder = new StringBuilder();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(27700);
+        for (int i = 0; i < POINTS; i++) {
+            // a mix of precisions, as map features have
+            int precision = (int) Math.pow(10, random.nextInt(5));
+            mEastings[i] = random.nextInt(700000) / precision * precision;
+            mNorthings[i] = random.nextInt(1300000) / precision * precision;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void toGridReference(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; i++) {
+            blackhole.consume(GeoPattern.toGridReference(mEastings[i], mNorthings[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public int formatIntoBuilder() {
+        mBuilder.setLength(0);
+        for (int i = 0; i < POINTS; i++) {
+            GridReferenceFormatter.format(mEastings[i], mNorthings[i], mBuilder);
+            mBuilder.append('\n');
+        }
+        return mBuilder.length();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public String[] formatAll() {
+        return GridReferenceFormatter.formatAll(mEastings, mNorthings);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.bng;
+
+import com.esri.core.geometry.Envelope;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regular expression based parser that {@link GridReferenceParser} replaced, kept as a baseline for
+ * {@link GridReferenceBenchmark}.
+ */
+final class RegexGridReferenceParser {
+
+    private RegexGridReferenceParser() {}
+
+    public static OsGridReference parseGridReference(String gridRefIn) {
+        Pattern pattern = Pattern.compile("^(\\w\\w)(\\d{0,10})$");
+        Matcher matcher = pattern.matcher(gridRefIn.toUpperCase().replaceAll("\\s", ""));
+        int iIndex = 7;
+
+        boolean probableGridReference = matcher.matches();
+
+        if (probableGridReference) {
+            String characters = matcher.group(1);
+            String numbers = matcher.group(2);
+
+            // get numeric values of letter references, mapping A->0, B->1, C->2, etc:
+            int l1 = Character.codePointAt(characters, 0) - Character.codePointAt("A", 0);
+            int l2 = Character.codePointAt(characters, 1) - Character.codePointAt("A", 0);
+
+            // shuffle down letters after 'I' since 'I' is not used in grid:
+            if (l1 > iIndex) l1--;
+            if (l2 > iIndex) l2--;
+
+            // convert grid letters into 100km-square indexes from false origin (grid square SV):
+            int es = ((l1 - 2) % 5) * 5 + (l2 % 5);
+            int ns = (int) ((19 - Math.floor(l1 / 5) * 5) - Math.floor(l2 / 5));
+            if (es < 0 || es > 6 || ns < 0 || ns > 12) return null;
+
+            String e = String.valueOf(es);
+            String n = String.valueOf(ns);
+
+            // append numeric part of references to grid index:
+            e += numbers.substring(0, numbers.length() / 2);
+            n += numbers.substring(numbers.length() / 2);
+
+            // normalise to 1m grid, rounding up to centre of grid square:
+            int offset = 0;
+
+            switch (String.valueOf(numbers).length()) {
+                case 0:
+                    offset = 100000;
+                    break;
+                case 2:
+                    offset = 10000;
+                    break;
+                case 4:
+                    offset = 1000;
+                    break;
+                case 6:
+                    offset = 100;
+                    break;
+                case 8:
+                    offset = 10;
+                    break;
+                case 10:
+                    offset = 1;
+                    break;
+                default:
+                    return null;
+            }
+
+            int easting = Integer.valueOf(e) * offset;
+            int northing = Integer.valueOf(n) * offset;
+            Envelope envelope = new Envelope(easting, northing, easting + offset, northing + offset);
+
+            String beautifulName = beautifulFormat(toGridReference(easting, northing, numbers.length() / 2));
+
+            return new OsGridReference(beautifulName, easting, northing, envelope);
+        }
+        return null;
+    }
+
+    private static String toGridReference(int easting, int northing, int digits) {
+        final String[] NATGRID_LETTERS = {"VWXYZ","QRSTU","LMNOP","FGHJK","ABCDE"};
+        int e = easting;
+        int n = northing;
+        if (digits < 0) {
+            return e + "," + n;
+        }
+        // We can actually handle negative E and N in the lettered case, but that's more effort.
+        if (e < 0 || n < 0) { return null; }
+
+        String ret = "";
+
+        // 	The following code doesn't correctly handle e<0 or n<0 due to problems with / and %.
+        int big = 500000;
+        int small = big/5;
+        int firstdig = small/10;
+
+        int es = e/big;
+        int ns = n/big;
+        e = e % big;
+        n = n % big;
+        // move to the S square
+        es += 2;
+        ns += 1;
+        if (es > 4 || ns > 4) { return null; }
+        ret = ret + NATGRID_LETTERS[ns].charAt(es);
+
+        es = e/small;
+        ns = n/small;
+        e = e % small;
+        n = n % small;
+        ret= ret + NATGRID_LETTERS[ns].charAt(es);
+
+        // Only add spaces if there are digits too. This lets us have "zero-figure" grid references, e.g. "SK"
+        if (digits > 0)
+        {
+            ret += ' ';
+
+            for (int dig = firstdig, i = 0; dig != 0 && i < digits; i++, dig /= 10) {
+                ret += (e/dig%10);
+            }
+
+            ret += ' ';
+
+            for (int dig = firstdig, i = 0; dig != 0 && i < digits; i++, dig /= 10) {
+                ret += (n/dig%10);
+            }
+        }
+
+        return ret;
+    }
+
+    private static String beautifulFormat(String value) {
+        Pattern pattern = Pattern.compile("^(\\w\\w)(\\d{0,10})$");
+        Matcher matcher = pattern.matcher(value.toUpperCase().replaceAll("\\s", ""));
+        if (!matcher.matches()) {
+            throw new IllegalStateException("Failed to parse " + value);
+        }
+        String numbers = matcher.group(2);
+        String eNumber = numbers.substring(0, numbers.length() / 2);
+        String nNumber = numbers.substring(numbers.length() / 2);
+
+        String simplified;
+        if (eNumber.length() > 2) {
+            simplified = matcher.group(1)+ " " + eNumber + " " + nNumber;
+        } else {
+            simplified = matcher.group(1) + eNumber + nNumber;
+        }
+        return simplified.trim();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.latlon;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DmsConverterBenchmark {
+
+    @Param({"0", "1", "2"})
+    public int mFormat;
+
+    public double mLatitude = 50.937950;
+    public double mLongitude = -1.470654;
+    public String mDms = "50:56:16.62";
+
+    @Benchmark
+    public String getLatitude() {
+        return DmsConverter.getLatitude(mLatitude, mFormat);
+    }
+
+    @Benchmark
+    public String getLongitude() {
+        return DmsConverter.getLongitude(mLongitude, mFormat);
+    }
+
+    @Benchmark
+    public double parseLatitude() {
+        return DmsConverter.getLatitude(mDms);
+    }
+}
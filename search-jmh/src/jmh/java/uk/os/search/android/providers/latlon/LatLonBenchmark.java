@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.latlon;
+
+import com.esri.core.geometry.Point;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LatLonBenchmark {
+
+    /**
+     * decimal, degrees minutes seconds, and the place names that make up most search terms
+     */
+    @Param({"51.50722, -0.1275", "51°30'26.0\"N 0°07'39.0\"W", "Southampton", "10 Downing Street"})
+    public String mSearchTerm;
+
+    @Benchmark
+    public Point tryParseLatLon() {
+        return GeoPattern.tryParseLatLon(mSearchTerm);
+    }
+
+    /**
+     * the cost to callers that still rely on the exception
+     */
+    @Benchmark
+    public Point parseLatLon() {
+        try {
+            return GeoPattern.parseLatLon(mSearchTerm);
+        } catch (IllegalArgumentException notCoordinates) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.os.search.android.providers.opennames;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import uk.os.search.Fixtures;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.opennames.service.SearchApi;
+import uk.os.search.android.providers.opennames.service.model.ServerResponse;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MarkDuplicatesBenchmark {
+
+    /**
+     * the number of times the recorded results are repeated, so that every name after the first copy is a duplicate
+     */
+    @Param({"1", "4"})
+    public int mCopies;
+
+    private List<SearchResult> mSearchResults;
+
+    @Setup
+    public void setUp() {
+        final ServerResponse serverResponse = Fixtures.load(Fixtures.OPENNAMES, ServerResponse.class);
+        SearchApi searchApi = new SearchApi() {
+            @Override
+            public Observable<ServerResponse> search(String apiKey, String value) {
+                return Observable.just(serverResponse);
+            }
+        };
+        List<SearchResult> searchResults = new OpennamesProvider.Builder("benchmark").setSearchApi(searchApi).build()
+                .query("bournemouth").toBlocking().single();
+
+        mSearchResults = new ArrayList<>();
+        for (int i = 0; i < mCopies; i++) {
+            mSearchResults.addAll(searchResults);
+        }
+    }
+
+    @Benchmark
+    public List<SearchResult> markDuplicates() {
+        return OpennamesProvider.markDuplicates(mSearchResults);
+    }
+}
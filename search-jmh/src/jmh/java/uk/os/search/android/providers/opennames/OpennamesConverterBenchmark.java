@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.android.providers.opennames;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.converter.gson.GsonConverterFactory;
+import uk.os.search.Fixtures;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.opennames.service.StreamingSearchApi;
+import uk.os.search.android.providers.opennames.service.model.Result;
+import uk.os.search.android.providers.opennames.service.model.ServerResponse;
+
+/**
+ * Reading a recorded OS Open Names response into search results through the Gson response model, as with
+ * {@code GsonConverterFactory}, against reading it straight into search results with
+ * {@link OpennamesConverterFactory}.  Compare the allocation reported by the gc profiler as well as the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OpennamesConverterBenchmark {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private byte[] mBody;
+    private Converter<ResponseBody, ?> mModelConverter;
+    private Converter<ResponseBody, ?> mStreamingConverter;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        mBody = Fixtures.read(Fixtures.OPENNAMES).getBytes(Charset.forName("UTF-8"));
+        mModelConverter = GsonConverterFactory.create()
+                .responseBodyConverter(ServerResponse.class, new Annotation[0], null);
+
+        Type observable = StreamingSearchApi.class.getMethod("search", String.class, String.class)
+                .getGenericReturnType();
+        Type searchResults = ((ParameterizedType) observable).getActualTypeArguments()[0];
+        mStreamingConverter = OpennamesConverterFactory.create()
+                .responseBodyConverter(searchResults, new Annotation[0], null);
+    }
+
+    @Benchmark
+    public List<SearchResult> gsonModel() throws IOException {
+        ServerResponse serverResponse = (ServerResponse) mModelConverter.convert(ResponseBody.create(JSON, mBody));
+        List<SearchResult> list = new ArrayList<>(serverResponse.getResults().size());
+        for (Result result : serverResponse.getResults()) {
+            list.add(OpennamesProvider.from(result));
+        }
+        return list;
+    }
+
+    @Benchmark
+    public Object streaming() throws IOException {
+        return mStreamingConverter.convert(ResponseBody.create(JSON, mBody));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.server;
+
+import com.esri.core.geometry.Envelope;
+import com.esri.core.geometry.Point;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import uk.os.search.IndexedSearchBundle;
+import uk.os.search.QueryTrace;
+import uk.os.search.SearchBundle;
+import uk.os.search.SearchResult;
+import uk.os.search.metrics.Histogram;
+import uk.os.search.metrics.HistogramSearchMetrics;
+import uk.os.search.metrics.SearchMetrics;
+
+/**
+ * Writes search bundles and metrics as JSON, straight to the response.
+ */
+final class Json {
+
+    private Json() {}
+
+    static void write(JsonWriter writer, SearchBundle searchBundle) throws IOException {
+        writer.beginObject();
+        writer.name("recents");
+        write(writer, searchBundle.getRecents());
+        writer.name("results");
+        write(writer, searchBundle.getRemaining());
+        writer.name("errors").beginArray();
+        for (Throwable error : searchBundle.getErrors()) {
+            writer.beginObject()
+                    .name("type").value(error.getClass().getSimpleName())
+                    .name("message").value(error.getMessage())
+                    .endObject();
+        }
+        writer.endArray();
+        QueryTrace trace = searchBundle.getTrace();
+        if (trace != null) {
+            writer.name("trace");
+            write(writer, trace);
+        }
+        writer.endObject();
+    }
+
+    static void write(JsonWriter writer, IndexedSearchBundle indexedSearchBundle) throws IOException {
+        writer.beginObject()
+                .name("index").value(indexedSearchBundle.getIndex())
+                .name("query").value(indexedSearchBundle.getSearchTerm())
+                .name("bundle");
+        write(writer, indexedSearchBundle.getSearchBundle());
+        writer.endObject();
+    }
+
+    static void write(JsonWriter writer, String error, String message) throws IOException {
+        writer.beginObject().name("error").value(error).name("message").value(message).endObject();
+    }
+
+    static void write(JsonWriter writer, HistogramSearchMetrics metrics) throws IOException {
+        writer.beginObject();
+        if (metrics != null) {
+            for (String source : metrics.getSources()) {
+                HistogramSearchMetrics.ProviderMetrics providerMetrics = metrics.getMetrics(source);
+                writer.name(source).beginObject();
+                writer.name("latencyMicros");
+                write(writer, providerMetrics.getLatencyMicros());
+                writer.name("resultCount");
+                write(writer, providerMetrics.getResultCounts());
+                writer.name("errors").beginObject();
+                for (Map.Entry<String, Long> entry : providerMetrics.getErrorCounts().entrySet()) {
+                    writer.name(entry.getKey()).value(entry.getValue());
+                }
+                writer.endObject();
+                writer.name("outcomes").beginObject();
+                for (SearchMetrics.Outcome outcome : SearchMetrics.Outcome.values()) {
+                    writer.name(outcome.name()).value(providerMetrics.getOutcomeCount(outcome));
+                }
+                writer.endObject();
+                writer.endObject();
+            }
+        }
+        writer.endObject();
+    }
+
+    private static void write(JsonWriter writer, List<SearchResult> searchResults) throws IOException {
+        writer.beginArray();
+        for (SearchResult searchResult : searchResults) {
+            writer.beginObject()
+                    .name("id").value(searchResult.getId())
+                    .name("name").value(searchResult.getName())
+                    .name("context").value(searchResult.getContext());
+            Point point = searchResult.getPoint();
+            if (point != null && !point.isEmpty()) {
+                writer.name("x").value(point.getX()).name("y").value(point.getY());
+            }
+            Envelope envelope = searchResult.getEnvelope();
+            if (envelope != null && !envelope.isEmpty()) {
+                writer.name("envelope").beginArray()
+                        .value(envelope.getXMin()).value(envelope.getYMin())
+                        .value(envelope.getXMax()).value(envelope.getYMax())
+                        .endArray();
+            }
+            if (searchResult.getSpatialReference() != null) {
+                writer.name("srid").value(searchResult.getSpatialReference().getID());
+            }
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+
+    private static void write(JsonWriter writer, QueryTrace trace) throws IOException {
+        writer.beginObject();
+        writer.name("totalMicros").value(micros(trace, trace.getEndNanos()));
+        writer.name("providers").beginArray();
+        for (int i = 0; i < trace.getProviderCount(); i++) {
+            if (trace.getProviderStartNanos(i) == QueryTrace.NOT_RECORDED) {
+                continue;
+            }
+            writer.beginObject()
+                    .name("source").value(trace.getProviderSource(i))
+                    .name("startMicros").value(micros(trace, trace.getProviderStartNanos(i)))
+                    .name("endMicros").value(micros(trace, trace.getProviderEndNanos(i)))
+                    .endObject();
+        }
+        writer.endArray();
+        writer.name("phases").beginArray();
+        for (QueryTrace.Phase phase : QueryTrace.Phase.values()) {
+            if (trace.getStartNanos(phase) == QueryTrace.NOT_RECORDED) {
+                continue;
+            }
+            writer.beginObject()
+                    .name("phase").value(phase.name())
+                    .name("startMicros").value(micros(trace, trace.getStartNanos(phase)))
+                    .name("endMicros").value(micros(trace, trace.getEndNanos(phase)))
+                    .endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private static void write(JsonWriter writer, Histogram histogram) throws IOException {
+        writer.beginObject()
+                .name("count").value(histogram.getCount())
+                .name("mean").value(histogram.getMean())
+                .name("p50").value(histogram.getValueAtPercentile(50))
+                .name("p90").value(histogram.getValueAtPercentile(90))
+                .name("p99").value(histogram.getValueAtPercentile(99))
+                .name("max").value(histogram.getMax())
+                .endObject();
+    }
+
+    /**
+     * @return the microseconds from the start of the query, or -1 if the stage has not ended
+     */
+    private static long micros(QueryTrace trace, long nanos) {
+        if (nanos == QueryTrace.NOT_RECORDED) {
+            return -1;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(nanos - trace.getStartNanos());
+    }
+}
@@ -0,0 +1,541 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Notification;
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Func1;
+import uk.os.search.IndexedSearchBundle;
+import uk.os.search.SearchBundle;
+import uk.os.search.SearchManager;
+import uk.os.search.metrics.HistogramSearchMetrics;
+
+/**
+ * Serves a {@link SearchManager} over HTTP, as JSON:
+ *
+ * <ul>
+ * <li>{@code GET /search?q=...} - the search bundle of {@link SearchManager#query(String)}</li>
+ * <li>{@code GET /search/progressive?q=...} - a server-sent event stream of the search bundles of
+ * {@link SearchManager#queryProgressive(String)}, each a {@code bundle} event, then an {@code end} event</li>
+ * <li>{@code POST /batch?ordered=true&concurrency=8} - a JSON array of search terms in, one line of JSON per term
+ * out as each completes, from {@link SearchManager#queryAllOrdered(Observable, int)}, or
+ * {@link SearchManager#queryAll(Observable, int)} when not ordered</li>
+ * <li>{@code GET /health} - whether the server is up</li>
+ * <li>{@code GET /metrics} - the provider, cache, coalescing and circuit breaker metrics of the
+ * {@link HistogramSearchMetrics} given to the search manager and this server</li>
+ * </ul>
+ *
+ * Requests are accepted by the JDK's selector based HTTP server and handed to a small pool of workers, which only
+ * subscribe to the search; responses are written as the search emits, so no thread waits on a provider.
+ */
+public class SearchServer {
+
+    public static class Builder {
+
+        private final SearchManager mSearchManager;
+        private InetSocketAddress mAddress = new InetSocketAddress(8080);
+        private int mWorkerThreads = 4;
+        private long mDeadlineMillis = TimeUnit.SECONDS.toMillis(10);
+        private int mMaxBatchConcurrency = 16;
+        private HistogramSearchMetrics mMetrics;
+
+        /**
+         * @param searchManager the search manager to serve
+         */
+        public Builder(SearchManager searchManager) {
+            if (searchManager == null) {
+                throw new IllegalArgumentException("search manager is null");
+            }
+            mSearchManager = searchManager;
+        }
+
+        /**
+         * @param port the port to listen on, or 0 for any free port; 8080 by default
+         * @return this builder
+         */
+        public Builder setPort(int port) {
+            return setAddress(new InetSocketAddress(port));
+        }
+
+        /**
+         * @param address the address to listen on
+         * @return this builder
+         */
+        public Builder setAddress(InetSocketAddress address) {
+            if (address == null) {
+                throw new IllegalArgumentException("address is null");
+            }
+            mAddress = address;
+            return this;
+        }
+
+        /**
+         * @param workerThreads the number of threads that handle requests; 4 by default
+         * @return this builder
+         */
+        public Builder setWorkerThreads(int workerThreads) {
+            if (workerThreads < 1) {
+                throw new IllegalArgumentException("worker threads must be at least one");
+            }
+            mWorkerThreads = workerThreads;
+            return this;
+        }
+
+        /**
+         * A search that has not completed by the deadline is answered with a 504, or an {@code error} event when
+         * progressive.  Give the search manager a shorter query timeout to answer with partial results instead.
+         *
+         * @param deadline how long a search request may take; 10 seconds by default
+         * @param unit the unit of the deadline
+         * @return this builder
+         */
+        public Builder setRequestDeadline(long deadline, TimeUnit unit) {
+            if (deadline < 1) {
+                throw new IllegalArgumentException("deadline must be positive");
+            }
+            mDeadlineMillis = unit.toMillis(deadline);
+            return this;
+        }
+
+        /**
+         * @param maxBatchConcurrency the most search terms of one batch queried at once; 16 by default
+         * @return this builder
+         */
+        public Builder setMaxBatchConcurrency(int maxBatchConcurrency) {
+            if (maxBatchConcurrency < 1) {
+                throw new IllegalArgumentException("max batch concurrency must be at least one");
+            }
+            mMaxBatchConcurrency = maxBatchConcurrency;
+            return this;
+        }
+
+        /**
+         * @param metrics the metrics given to the search manager, to report at {@code /metrics}
+         * @return this builder
+         */
+        public Builder setMetrics(HistogramSearchMetrics metrics) {
+            mMetrics = metrics;
+            return this;
+        }
+
+        public SearchServer build() {
+            return new SearchServer(this);
+        }
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final List<String> NO_TERMS = null;
+
+    private final SearchManager mSearchManager;
+    private final InetSocketAddress mAddress;
+    private final int mWorkerThreads;
+    private final long mDeadlineMillis;
+    private final int mMaxBatchConcurrency;
+    private final HistogramSearchMetrics mMetrics;
+    private final Gson mGson = new Gson();
+
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mInFlight = new AtomicLong();
+    private final AtomicLong mDeadlinesMissed = new AtomicLong();
+
+    private HttpServer mServer;
+    private ExecutorService mExecutor;
+
+    private SearchServer(Builder builder) {
+        mSearchManager = builder.mSearchManager;
+        mAddress = builder.mAddress;
+        mWorkerThreads = builder.mWorkerThreads;
+        mDeadlineMillis = builder.mDeadlineMillis;
+        mMaxBatchConcurrency = builder.mMaxBatchConcurrency;
+        mMetrics = builder.mMetrics;
+    }
+
+    /**
+     * Listen for requests.
+     *
+     * @throws IOException if the address cannot be bound
+     */
+    public synchronized void start() throws IOException {
+        if (mServer != null) {
+            throw new IllegalStateException("already started");
+        }
+        mServer = HttpServer.create(mAddress, 0);
+        mExecutor = Executors.newFixedThreadPool(mWorkerThreads, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "search-server-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/search", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if ("/search/progressive".equals(exchange.getRequestURI().getPath())) {
+                    progressive(exchange);
+                } else {
+                    search(exchange);
+                }
+            }
+        });
+        mServer.createContext("/batch", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                batch(exchange);
+            }
+        });
+        mServer.createContext("/health", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                health(exchange);
+            }
+        });
+        mServer.createContext("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                metrics(exchange);
+            }
+        });
+        mServer.start();
+    }
+
+    /**
+     * Stop listening, waiting up to {@code delay} for requests in flight to complete.
+     */
+    public synchronized void stop(long delay, TimeUnit unit) {
+        if (mServer != null) {
+            mServer.stop((int) Math.max(0, unit.toSeconds(delay)));
+            mExecutor.shutdown();
+            mServer = null;
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * @return the address listened on, e.g. to find the port when started on port 0
+     */
+    public synchronized InetSocketAddress getAddress() {
+        if (mServer == null) {
+            throw new IllegalStateException("not started");
+        }
+        return mServer.getAddress();
+    }
+
+    private void search(final HttpExchange exchange) throws IOException {
+        String searchTerm = searchTermOf(exchange);
+        if (searchTerm == null) {
+            return;
+        }
+        started();
+        withDeadline(mSearchManager.query(searchTerm)).subscribe(new Subscriber<SearchBundle>() {
+            @Override
+            public void onNext(SearchBundle searchBundle) {
+                try {
+                    JsonWriter writer = send(exchange, 200, JSON);
+                    Json.write(writer, searchBundle);
+                    writer.close();
+                } catch (IOException e) {
+                    // the client has gone
+                    unsubscribe();
+                } finally {
+                    finished(exchange);
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                sendError(exchange, e);
+                finished(exchange);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+    }
+
+    private void progressive(final HttpExchange exchange) throws IOException {
+        String searchTerm = searchTermOf(exchange);
+        if (searchTerm == null) {
+            return;
+        }
+        started();
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        final Writer writer = new OutputStreamWriter(sendStream(exchange, 200, "text/event-stream; charset=utf-8"),
+                UTF_8);
+        withDeadline(mSearchManager.queryProgressive(searchTerm)).subscribe(new Subscriber<SearchBundle>() {
+            @Override
+            public void onNext(SearchBundle searchBundle) {
+                try {
+                    writer.write("event: bundle\ndata: ");
+                    Json.write(new JsonWriter(writer), searchBundle);
+                    writer.write("\n\n");
+                    writer.flush();
+                } catch (IOException e) {
+                    unsubscribe();
+                    finished(exchange);
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                try {
+                    writer.write("event: error\ndata: ");
+                    Json.write(new JsonWriter(writer), errorOf(e), e.getMessage());
+                    writer.write("\n\n");
+                    writer.close();
+                } catch (IOException ignored) {
+                    // the client has gone
+                } finally {
+                    finished(exchange);
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+                try {
+                    writer.write("event: end\ndata: {}\n\n");
+                    writer.close();
+                } catch (IOException ignored) {
+                    // the client has gone
+                } finally {
+                    finished(exchange);
+                }
+            }
+        });
+    }
+
+    private void batch(final HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "method not allowed", "POST a JSON array of search terms");
+            return;
+        }
+        Map<String, String> params = paramsOf(exchange);
+        List<String> searchTerms = NO_TERMS;
+        try {
+            searchTerms = mGson.fromJson(new InputStreamReader(exchange.getRequestBody(), UTF_8),
+                    new TypeToken<List<String>>() {}.getType());
+        } catch (JsonParseException e) {
+            // reported below
+        }
+        if (searchTerms == null || searchTerms.contains(null)) {
+            sendError(exchange, 400, "bad request", "the body must be a JSON array of search terms");
+            return;
+        }
+        int concurrency = mMaxBatchConcurrency;
+        if (params.containsKey("concurrency")) {
+            try {
+                concurrency = Math.min(mMaxBatchConcurrency, Integer.parseInt(params.get("concurrency")));
+            } catch (NumberFormatException e) {
+                concurrency = 0;
+            }
+            if (concurrency < 1) {
+                sendError(exchange, 400, "bad request", "concurrency must be a positive number");
+                return;
+            }
+        }
+        boolean ordered = !"false".equals(params.get("ordered"));
+
+        started();
+        final Writer writer = new OutputStreamWriter(sendStream(exchange, 200, "application/x-ndjson"), UTF_8);
+        Observable<String> terms = Observable.from(searchTerms);
+        Observable<IndexedSearchBundle> results = ordered ? mSearchManager.queryAllOrdered(terms, concurrency)
+                : mSearchManager.queryAll(terms, concurrency);
+        results.subscribe(new Subscriber<IndexedSearchBundle>() {
+            @Override
+            public void onNext(IndexedSearchBundle indexedSearchBundle) {
+                try {
+                    Json.write(new JsonWriter(writer), indexedSearchBundle);
+                    writer.write('\n');
+                    writer.flush();
+                } catch (IOException e) {
+                    unsubscribe();
+                    finished(exchange);
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                try {
+                    Json.write(new JsonWriter(writer), errorOf(e), e.getMessage());
+                    writer.write('\n');
+                    writer.close();
+                } catch (IOException ignored) {
+                    // the client has gone
+                } finally {
+                    finished(exchange);
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                    // the client has gone
+                } finally {
+                    finished(exchange);
+                }
+            }
+        });
+    }
+
+    private void health(HttpExchange exchange) throws IOException {
+        JsonWriter writer = send(exchange, 200, JSON);
+        writer.beginObject().name("status").value("UP").endObject();
+        writer.close();
+        exchange.close();
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        JsonWriter writer = send(exchange, 200, JSON);
+        writer.beginObject();
+        writer.name("requests").value(mRequests.get());
+        writer.name("inFlight").value(mInFlight.get());
+        writer.name("deadlinesMissed").value(mDeadlinesMissed.get());
+        writer.name("providers");
+        Json.write(writer, mMetrics);
+        writer.endObject();
+        writer.close();
+        exchange.close();
+    }
+
+    /**
+     * @return the search term, or null once a 400 has been sent for a missing one
+     */
+    private String searchTermOf(HttpExchange exchange) throws IOException {
+        String searchTerm = paramsOf(exchange).get("q");
+        if (searchTerm == null || searchTerm.trim().isEmpty()) {
+            sendError(exchange, 400, "bad request", "the q parameter is required");
+            return null;
+        }
+        return searchTerm;
+    }
+
+    private static Map<String, String> paramsOf(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * @return the search, failing with a {@link TimeoutException} once the request deadline has passed
+     */
+    private <T> Observable<T> withDeadline(Observable<T> search) {
+        Observable<Notification<T>> expiry = Observable.timer(mDeadlineMillis, TimeUnit.MILLISECONDS)
+                .map(new Func1<Long, Notification<T>>() {
+                    @Override
+                    public Notification<T> call(Long ignored) {
+                        mDeadlinesMissed.incrementAndGet();
+                        return Notification.createOnError(new TimeoutException("request deadline passed"));
+                    }
+                });
+        return search.materialize().mergeWith(expiry).dematerialize();
+    }
+
+    private void sendError(HttpExchange exchange, Throwable e) {
+        try {
+            if (e instanceof TimeoutException) {
+                sendError(exchange, 504, errorOf(e), e.getMessage());
+            } else {
+                sendError(exchange, 500, errorOf(e), e.getMessage());
+            }
+        } catch (IOException ignored) {
+            // the client has gone
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String error, String message)
+            throws IOException {
+        JsonWriter writer = send(exchange, status, JSON);
+        Json.write(writer, error, message);
+        writer.close();
+        exchange.close();
+    }
+
+    private static String errorOf(Throwable e) {
+        return e instanceof TimeoutException ? "deadline exceeded" : e.getClass().getSimpleName();
+    }
+
+    private static JsonWriter send(HttpExchange exchange, int status, String contentType) throws IOException {
+        return new JsonWriter(new OutputStreamWriter(sendStream(exchange, status, contentType), UTF_8));
+    }
+
+    /**
+     * @return the body of a chunked response
+     */
+    private static OutputStream sendStream(HttpExchange exchange, int status, String contentType)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, 0);
+        return exchange.getResponseBody();
+    }
+
+    private void started() {
+        mRequests.incrementAndGet();
+        mInFlight.incrementAndGet();
+    }
+
+    private void finished(HttpExchange exchange) {
+        if (exchange.getAttribute("finished") == null) {
+            exchange.setAttribute("finished", Boolean.TRUE);
+            mInFlight.decrementAndGet();
+        }
+        exchange.close();
+    }
+}
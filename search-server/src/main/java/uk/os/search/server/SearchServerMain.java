@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.server;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import uk.os.search.SearchManager;
+import uk.os.search.android.providers.recents.RecentsManagerImpl;
+import uk.os.search.metrics.HistogramSearchMetrics;
+
+/**
+ * Runs a {@link SearchServer} over grid references, coordinates and, given their API keys in the
+ * {@code OS_OPEN_NAMES_API_KEY} and {@code OS_PLACES_API_KEY} environment variables, OS Open Names and OS Places.
+ *
+ * Usage: {@code SearchServerMain [port]}
+ */
+public final class SearchServerMain {
+
+    private static final Logger LOGGER = Logger.getLogger(SearchServerMain.class.getSimpleName());
+
+    private SearchServerMain() {}
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+
+        HistogramSearchMetrics metrics = new HistogramSearchMetrics();
+        SearchManager.Builder builder = new SearchManager.Builder()
+                .setRecentsManager(new RecentsManagerImpl())
+                .setProviderTimeout(5, TimeUnit.SECONDS)
+                .cacheResults(1000, 10, TimeUnit.MINUTES)
+                .coalesceQueries()
+                .useCircuitBreakers(0.5, 30, TimeUnit.SECONDS)
+                .setSpatialDeduplication(50)
+                .setMetrics(metrics);
+        String openNamesKey = System.getenv("OS_OPEN_NAMES_API_KEY");
+        if (openNamesKey != null && !openNamesKey.isEmpty()) {
+            builder.addOpenNames(openNamesKey);
+        } else {
+            LOGGER.warning("OS_OPEN_NAMES_API_KEY not set, not searching OS Open Names");
+        }
+        String placesKey = System.getenv("OS_PLACES_API_KEY");
+        if (placesKey != null && !placesKey.isEmpty()) {
+            builder.addPlaces(placesKey);
+        } else {
+            LOGGER.warning("OS_PLACES_API_KEY not set, not searching OS Places");
+        }
+
+        final SearchServer server = new SearchServer.Builder(builder.build())
+                .setPort(port)
+                .setMetrics(metrics)
+                .build();
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.stop(5, TimeUnit.SECONDS);
+            }
+        });
+        LOGGER.info("Listening on " + server.getAddress());
+    }
+}
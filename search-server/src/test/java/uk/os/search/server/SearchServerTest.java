@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.server;
+
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import org.junit.After;
+import org.junit.Test;
+import rx.Observable;
+import uk.os.search.SearchManager;
+import uk.os.search.SearchResult;
+import uk.os.search.android.providers.Provider;
+import uk.os.search.metrics.HistogramSearchMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SearchServerTest {
+
+    private SearchServer mServer;
+
+    @After
+    public void tearDown() {
+        if (mServer != null) {
+            mServer.stop(0, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void shouldAnswerSearchWithJson() throws Exception {
+        start(new SearchServer.Builder(searchManager(new Named(), 0)).setPort(0));
+
+        HttpURLConnection connection = open("/search?q=Southampton");
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("application/json"));
+        String body = read(connection.getInputStream());
+        assertTrue(body, body.contains("\"name\":\"Southampton\""));
+        assertTrue(body, body.contains("\"srid\":27700"));
+        assertTrue(body, body.contains("\"errors\":[]"));
+    }
+
+    @Test
+    public void shouldRefuseSearchWithoutQuery() throws Exception {
+        start(new SearchServer.Builder(searchManager(new Named(), 0)).setPort(0));
+
+        HttpURLConnection connection = open("/search");
+        assertEquals(400, connection.getResponseCode());
+        assertTrue(read(connection.getErrorStream()).contains("the q parameter is required"));
+    }
+
+    @Test
+    public void shouldAnswerGatewayTimeoutWhenDeadlinePasses() throws Exception {
+        HistogramSearchMetrics metrics = new HistogramSearchMetrics();
+        start(new SearchServer.Builder(searchManager(new Named(), 2000))
+                .setPort(0)
+                .setRequestDeadline(100, TimeUnit.MILLISECONDS)
+                .setMetrics(metrics));
+
+        HttpURLConnection connection = open("/search?q=Southampton");
+        assertEquals(504, connection.getResponseCode());
+        assertTrue(read(connection.getErrorStream()).contains("deadline exceeded"));
+
+        String body = read(open("/metrics").getInputStream());
+        assertTrue(body, body.contains("\"deadlinesMissed\":1"));
+        assertTrue(body, body.contains("\"inFlight\":0"));
+    }
+
+    @Test
+    public void shouldStreamProgressiveBundlesAsEvents() throws Exception {
+        start(new SearchServer.Builder(searchManager(new Named(), 0)).setPort(0));
+
+        HttpURLConnection connection = open("/search/progressive?q=Southampton");
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("text/event-stream"));
+        String body = read(connection.getInputStream());
+        assertTrue(body, body.startsWith("event: bundle\ndata: {"));
+        assertTrue(body, body.contains("Southampton"));
+        assertTrue(body, body.endsWith("event: end\ndata: {}\n\n"));
+    }
+
+    @Test
+    public void shouldStreamBatchResultsInOrder() throws Exception {
+        start(new SearchServer.Builder(searchManager(new Named(), 0)).setPort(0));
+
+        HttpURLConnection connection = post("/batch?concurrency=2", "[\"Southampton\",\"Bournemouth\",\"Poole\"]");
+        assertEquals(200, connection.getResponseCode());
+        String[] lines = read(connection.getInputStream()).split("\n");
+        assertEquals(3, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertTrue(lines[i], lines[i].startsWith("{\"index\":" + i + ","));
+        }
+        assertTrue(lines[2], lines[2].contains("\"name\":\"Poole\""));
+    }
+
+    @Test
+    public void shouldRefuseBatchThatIsNotAnArrayOfSearchTerms() throws Exception {
+        start(new SearchServer.Builder(searchManager(new Named(), 0)).setPort(0));
+
+        assertEquals(400, post("/batch", "{\"q\":\"Southampton\"}").getResponseCode());
+        assertEquals(400, post("/batch?concurrency=0", "[\"Southampton\"]").getResponseCode());
+        assertEquals(405, open("/batch").getResponseCode());
+    }
+
+    @Test
+    public void shouldReportHealthAndMetrics() throws Exception {
+        HistogramSearchMetrics metrics = new HistogramSearchMetrics();
+        start(new SearchServer.Builder(searchManager(new Named(), 0, metrics)).setPort(0).setMetrics(metrics));
+
+        assertEquals(200, open("/search?q=Southampton").getResponseCode());
+
+        assertEquals("{\"status\":\"UP\"}", read(open("/health").getInputStream()));
+        String body = read(open("/metrics").getInputStream());
+        assertTrue(body, body.contains("\"requests\":1"));
+        assertTrue(body, body.contains("\"Named\":{"));
+        assertTrue(body, body.contains("\"latencyMicros\":{\"count\":1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotBuildWithoutSearchManager() {
+        new SearchServer.Builder(null);
+    }
+
+    private void start(SearchServer.Builder builder) throws IOException {
+        mServer = builder.build();
+        mServer.start();
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        URL url = new URL("http", "localhost", mServer.getAddress().getPort(), path);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private HttpURLConnection post(String path, String body) throws IOException {
+        HttpURLConnection connection = open(path);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        out.write(body.getBytes("UTF-8"));
+        out.close();
+        return connection;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    private static SearchManager searchManager(Provider provider, long delayMillis) {
+        return searchManager(provider, delayMillis, new HistogramSearchMetrics());
+    }
+
+    private static SearchManager searchManager(Provider provider, long delayMillis,
+                                               HistogramSearchMetrics metrics) {
+        return new SearchManager.Builder()
+                .setProviders(delayMillis > 0 ? new Delayed(provider, delayMillis) : provider)
+                .setMetrics(metrics)
+                .build();
+    }
+
+    /**
+     * Finds one place, named by the search term.
+     */
+    private static final class Named implements Provider {
+        @Override
+        public Observable<List<SearchResult>> query(String searchTerm) {
+            SearchResult searchResult = new SearchResult(searchTerm, searchTerm, "", new Point(408801, 91268), null,
+                    SpatialReference.create(27700));
+            return Observable.just(Collections.singletonList(searchResult));
+        }
+    }
+
+    private static final class Delayed implements Provider {
+        private final Provider mProvider;
+        private final long mDelayMillis;
+
+        Delayed(Provider provider, long delayMillis) {
+            mProvider = provider;
+            mDelayMillis = delayMillis;
+        }
+
+        @Override
+        public Observable<List<SearchResult>> query(String searchTerm) {
+            return mProvider.query(searchTerm).delay(mDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 Ordnance Survey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.os.search.server;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
+import retrofit2.converter.gson.GsonConverterFactory;
+import uk.os.search.SearchManager;
+import uk.os.search.android.providers.opennames.OpennamesProvider;
+import uk.os.search.android.providers.opennames.service.SearchApi;
+import uk.os.search.metrics.HistogramSearchMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Serves OS Open Names searches answered by a mock API.
+ */
+public class IntegrationSearchServerTest {
+
+    private static final String API_KEY = "nice_try!";
+
+    private MockWebServer mApi;
+    private SearchServer mServer;
+    private HistogramSearchMetrics mMetrics;
+
+    @Before
+    public void setUp() throws Exception {
+        mApi = new MockWebServer();
+        mApi.start();
+
+        mMetrics = new HistogramSearchMetrics();
+        OpennamesProvider opennamesProvider = new OpennamesProvider.Builder(API_KEY)
+                .setSearchApi(getSearchApi(mApi.url("/opennames/v1/")))
+                .build();
+        SearchManager searchManager = new SearchManager.Builder()
+                .setProviders(opennamesProvider)
+                .cacheResults(100, 1, TimeUnit.MINUTES)
+                .setMetrics(mMetrics)
+                .build();
+        mServer = new SearchServer.Builder(searchManager)
+                .setPort(0)
+                .setMetrics(mMetrics)
+                .build();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.stop(0, TimeUnit.SECONDS);
+        mApi.shutdown();
+    }
+
+    @Test
+    public void bournemouth() throws Exception {
+        mApi.enqueue(new MockResponse().setBody(getStringResource("opennames_canned.json")).setResponseCode(200));
+
+        HttpURLConnection connection = open("/search?q=Bournemouth");
+        assertEquals(200, connection.getResponseCode());
+        String body = read(connection.getInputStream());
+        assertTrue(body, body.contains("\"name\":\"Bournemouth\""));
+
+        RecordedRequest request = mApi.takeRequest(2, TimeUnit.SECONDS);
+        assertEquals("/opennames/v1/find?maxresults=25&key=nice_try!&query=Bournemouth", request.getPath());
+
+        // the second search is answered from the cache
+        assertEquals(200, open("/search?q=Bournemouth").getResponseCode());
+        assertEquals(1, mApi.getRequestCount());
+
+        String metrics = read(open("/metrics").getInputStream());
+        assertTrue(metrics, metrics.contains("\"requests\":2"));
+        assertTrue(metrics, metrics.contains("\"OpennamesProvider\":{"));
+        assertTrue(metrics, metrics.contains("\"CACHE_HIT\":1"));
+    }
+
+    @Test
+    public void apiErrorIsReportedInBundle() throws Exception {
+        mApi.enqueue(new MockResponse().setResponseCode(500));
+
+        HttpURLConnection connection = open("/search?q=Bournemouth");
+        assertEquals(200, connection.getResponseCode());
+        String body = read(connection.getInputStream());
+        assertTrue(body, body.contains("\"results\":[]"));
+        assertTrue(body, body.contains("\"type\":\"HttpException\""));
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        URL url = new URL("http", "localhost", mServer.getAddress().getPort(), path);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (Scanner scanner = new Scanner(in, "UTF-8").useDelimiter("\\A")) {
+            return scanner.hasNext() ? scanner.next() : "";
+        }
+    }
+
+    private static String getStringResource(String fileName) throws IOException {
+        File file = new File(IntegrationSearchServerTest.class.getClassLoader().getResource(fileName).getFile());
+        try (Scanner scanner = new Scanner(file, "UTF-8").useDelimiter("\\A")) {
+            return scanner.next();
+        }
+    }
+
+    private static SearchApi getSearchApi(HttpUrl baseUrl) {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .addConverterFactory(GsonConverterFactory.create())
+                .addCallAdapterFactory(RxJavaCallAdapterFactory.create())
+                .build();
+        return retrofit.create(SearchApi.class);
+    }
+}